@@ -0,0 +1,80 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.catalog.CatalogBaseTable;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing every catalog, database and table of a session, as the extension's catalog
+ * browser does: straight through the gateway service ("gateway"), and through the runner's
+ * CatalogMetadataCache once it holds the tree ("cached").
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CatalogListingBenchmark {
+
+    private static final Set<CatalogBaseTable.TableKind> TABLE_KINDS =
+        EnumSet.of(CatalogBaseTable.TableKind.TABLE, CatalogBaseTable.TableKind.VIEW);
+
+    @Param({"10", "100"})
+    public int tables;
+
+    private SessionHandle session;
+
+    @Setup(Level.Trial)
+    public void createTables(EmbeddedRunner runner) throws Exception {
+        session = runner.openSession("catalog-listing-benchmark");
+        runner.runToCompletion(session, "CREATE DATABASE bench_db");
+        for (int i = 0; i < tables; i++) {
+            runner.runToCompletion(session, "CREATE TABLE bench_db.bench_table_" + i
+                + " (id INT, name STRING, amount DOUBLE) WITH ('connector' = 'datagen')");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeSession(EmbeddedRunner runner) {
+        runner.service.closeSession(session);
+    }
+
+    @Benchmark
+    public int gateway(EmbeddedRunner runner) {
+        int count = 0;
+        for (String catalog : runner.service.listCatalogs(session)) {
+            for (String database : runner.service.listDatabases(session, catalog)) {
+                count += runner.service.listTables(session, catalog, database, TABLE_KINDS).size();
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int cached(EmbeddedRunner runner) {
+        int count = 0;
+        for (String catalog : runner.metadataCache.listCatalogs(session, false)) {
+            for (String database : runner.metadataCache.listDatabases(session, catalog, false)) {
+                count += runner.metadataCache.listTables(session, catalog, database, false).size();
+            }
+        }
+        return count;
+    }
+}
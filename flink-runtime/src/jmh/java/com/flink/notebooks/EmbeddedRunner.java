@@ -0,0 +1,79 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionEnvironment;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.util.SqlGatewayRestAPIVersion;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A MiniClusterRunner started once per trial for the gateway benchmarks, on free ports so it
+ * does not collide with a runner already listening on the default ones.
+ */
+@State(Scope.Benchmark)
+public class EmbeddedRunner {
+
+    private static final long STATEMENT_TIMEOUT_MS = 60_000;
+
+    private MiniClusterRunner runner;
+    NotebookGatewayService service;
+    CatalogMetadataCache metadataCache;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        MiniClusterRunner.Config config = new MiniClusterRunner.Config();
+        config.restPort = CdsTrainingRun.freePort();
+        config.gatewayPort = CdsTrainingRun.freePort();
+        config.runnerPort = CdsTrainingRun.freePort();
+        runner = new MiniClusterRunner();
+        runner.start(config);
+        service = runner.getGatewayService();
+        metadataCache = runner.getMetadataCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        runner.stop();
+    }
+
+    SessionHandle openSession(String name) {
+        return service.openUnpooledSession(environment(name));
+    }
+
+    static SessionEnvironment environment(String name) {
+        return SessionEnvironment.newBuilder()
+            .setSessionEndpointVersion(SqlGatewayRestAPIVersion.getDefaultVersion())
+            .setSessionName(name)
+            .build();
+    }
+
+    /**
+     * Execute a statement and read its results to the end.
+     */
+    void runToCompletion(SessionHandle session, String statement) throws Exception {
+        OperationHandle operation = service.executeStatement(session, statement, 0, new Configuration());
+        long deadline = System.currentTimeMillis() + STATEMENT_TIMEOUT_MS;
+        try {
+            long token = 0;
+            while (System.currentTimeMillis() < deadline) {
+                ResultSet result = service.fetchResults(session, operation, token, Integer.MAX_VALUE);
+                if (result.getResultType() == ResultSet.ResultType.EOS || result.getNextToken() == null) {
+                    return;
+                }
+                if (result.getResultType() != ResultSet.ResultType.NOT_READY) {
+                    token = result.getNextToken();
+                }
+                Thread.sleep(1);
+            }
+            throw new IllegalStateException("Statement did not finish within " + STATEMENT_TIMEOUT_MS + " ms: " + statement);
+        } finally {
+            service.closeOperation(session, operation);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.SqlGatewayService;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionEnvironment;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.util.SqlGatewayRestAPIVersion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmark comparing the "in-process" and "remote" execution targets.
+ *
+ * Starts a MiniClusterRunner per target and measures the time from submitting a short
+ * bounded query to receiving its first row, which is what a user waits for when running
+ * a small notebook cell.
+ *
+ * Usage: ./gradlew executionTargetBenchmark -PbenchmarkArgs='[warmup] [iterations]'
+ */
+public class ExecutionTargetBenchmark {
+
+    private static final String SOURCE_DDL =
+        "CREATE TEMPORARY TABLE bench_source (id INT, name STRING) WITH (" +
+        "'connector' = 'datagen', 'number-of-rows' = '10')";
+    private static final String QUERY = "SELECT * FROM bench_source";
+
+    public static void main(String[] args) throws Exception {
+        int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        if (warmup < 0 || iterations < 1) {
+            throw new IllegalArgumentException("Expected warmup >= 0 and iterations >= 1, got " + warmup + " and " + iterations);
+        }
+
+        System.out.println("=== Execution Target Benchmark ===\n");
+        System.out.printf("Warmup: %d, iterations: %d%n%n", warmup, iterations);
+
+        for (String target : new String[] {"remote", InProcessExecutorFactory.NAME}) {
+            List<Long> latencies = run(target, warmup, iterations);
+            report(target, latencies);
+        }
+
+        System.out.println("\n=== Benchmark complete ===");
+        System.exit(0);
+    }
+
+    private static List<Long> run(String target, int warmup, int iterations) throws Exception {
+        MiniClusterRunner.Config config = new MiniClusterRunner.Config();
+        config.executionTarget = target;
+
+        MiniClusterRunner runner = new MiniClusterRunner();
+        runner.start(config);
+        try {
+            SqlGatewayService service = runner.getGatewayService();
+            SessionHandle session = service.openSession(
+                SessionEnvironment.newBuilder()
+                    .setSessionEndpointVersion(SqlGatewayRestAPIVersion.getDefaultVersion())
+                    .setSessionName("benchmark-" + target)
+                    .build()
+            );
+            awaitCompletion(service, session, service.executeStatement(session, SOURCE_DDL, 0, new Configuration()));
+
+            for (int i = 0; i < warmup; i++) {
+                timeToFirstRow(service, session);
+            }
+
+            List<Long> latencies = new ArrayList<>(iterations);
+            for (int i = 0; i < iterations; i++) {
+                latencies.add(timeToFirstRow(service, session));
+            }
+
+            service.closeSession(session);
+            return latencies;
+        } finally {
+            runner.stop();
+        }
+    }
+
+    /**
+     * Submit the query and poll until the first row arrives, mirroring the extension's fetch loop.
+     *
+     * @return Elapsed time in nanoseconds
+     */
+    private static long timeToFirstRow(SqlGatewayService service, SessionHandle session) throws Exception {
+        long start = System.nanoTime();
+        OperationHandle operation = service.executeStatement(session, QUERY, 0, new Configuration());
+
+        long token = 0;
+        while (true) {
+            ResultSet result = service.fetchResults(session, operation, token, 100);
+            if (!result.getData().isEmpty()) {
+                break;
+            }
+            if (result.getResultType() == ResultSet.ResultType.EOS || result.getNextToken() == null) {
+                throw new IllegalStateException("Query finished without producing rows");
+            }
+            token = result.getNextToken();
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        service.closeOperation(session, operation);
+        return elapsed;
+    }
+
+    private static void awaitCompletion(SqlGatewayService service, SessionHandle session, OperationHandle operation)
+            throws InterruptedException {
+        while (!service.getOperationInfo(session, operation).getStatus().isTerminalStatus()) {
+            Thread.sleep(10);
+        }
+        service.closeOperation(session, operation);
+    }
+
+    private static void report(String target, List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        double mean = sorted.stream().mapToLong(Long::longValue).average().orElse(0);
+
+        System.out.printf("%-12s mean %8.1f ms   p50 %8.1f ms   p95 %8.1f ms   min %8.1f ms%n",
+            target,
+            mean / 1_000_000.0,
+            percentile(sorted, 0.50) / 1_000_000.0,
+            percentile(sorted, 0.95) / 1_000_000.0,
+            sorted.get(0) / 1_000_000.0
+        );
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
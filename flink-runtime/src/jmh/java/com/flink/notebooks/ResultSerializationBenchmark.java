@@ -0,0 +1,225 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.GenericArrayData;
+import org.apache.flink.table.data.GenericMapData;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.rest.serde.ResultInfo;
+import org.apache.flink.table.gateway.rest.util.RowDataLocalTimeZoneConverter;
+import org.apache.flink.table.gateway.rest.util.RowFormat;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.ArrayType;
+import org.apache.flink.table.types.logical.DecimalType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.MapType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput of encoding one fetched batch for the client, in batches per second with the
+ * rows and bytes produced as secondary "rows" and "bytes" rates: the gateway's JSON row
+ * format (ResultInfo and its ResultInfoSerializer, as the gateway REST endpoint and the
+ * runner's JSON fetches write it) against what a rowFormat=COLUMNAR fetch writes, which is
+ * JSON again for results the columnar format cannot hold.
+ *
+ * Batches hold random values with some nulls, for these schemas:
+ *   narrow    a typical notebook result: INT, STRING, DOUBLE, TIMESTAMP(3) and BOOLEAN
+ *   wide      40 columns of INT, BIGINT, STRING, DOUBLE and BOOLEAN
+ *   temporal  DECIMAL(10, 2), DECIMAL(38, 18), TIMESTAMP(3), TIMESTAMP_LTZ(3) and DATE
+ *   nested    ROW, ARRAY, MAP and an ARRAY of ROW (not columnar, so both write JSON)
+ *
+ * Run with -prof gc for allocation; ResultSerializationReport does that and turns the
+ * results into rows/s, bytes/row and allocation per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSerializationBenchmark {
+
+    static final Map<String, ResolvedSchema> SCHEMAS = Map.of(
+        "narrow", ResolvedSchema.of(
+            Column.physical("id", DataTypes.INT()),
+            Column.physical("name", DataTypes.STRING()),
+            Column.physical("amount", DataTypes.DOUBLE()),
+            Column.physical("ts", DataTypes.TIMESTAMP(3)),
+            Column.physical("flag", DataTypes.BOOLEAN())),
+        "wide", wideSchema(40),
+        "temporal", ResolvedSchema.of(
+            Column.physical("price", DataTypes.DECIMAL(10, 2)),
+            Column.physical("ratio", DataTypes.DECIMAL(38, 18)),
+            Column.physical("ts", DataTypes.TIMESTAMP(3)),
+            Column.physical("ts_ltz", DataTypes.TIMESTAMP_LTZ(3)),
+            Column.physical("day", DataTypes.DATE())),
+        "nested", ResolvedSchema.of(
+            Column.physical("id", DataTypes.INT()),
+            Column.physical("user", DataTypes.ROW(
+                DataTypes.FIELD("name", DataTypes.STRING()),
+                DataTypes.FIELD("age", DataTypes.INT()))),
+            Column.physical("tags", DataTypes.ARRAY(DataTypes.STRING())),
+            Column.physical("scores", DataTypes.MAP(DataTypes.STRING(), DataTypes.DOUBLE())),
+            Column.physical("items", DataTypes.ARRAY(DataTypes.ROW(
+                DataTypes.FIELD("sku", DataTypes.STRING()),
+                DataTypes.FIELD("quantity", DataTypes.INT()),
+                DataTypes.FIELD("price", DataTypes.DECIMAL(10, 2)))))));
+
+    @Param({"narrow", "wide", "temporal", "nested"})
+    public String schema;
+
+    @Param({"100", "1000", "10000"})
+    public int rows;
+
+    private ResultSet batch;
+    private List<String> names;
+    private List<LogicalType> types;
+    private RowDataLocalTimeZoneConverter converter;
+    private boolean columnarSupported;
+
+    /**
+     * Rows and bytes encoded, reported by JMH as rates next to the batch rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Output {
+        public long rows;
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void createBatch() {
+        ResolvedSchema resolved = SCHEMAS.get(schema);
+        if (resolved == null) {
+            throw new IllegalArgumentException("Unknown schema '" + schema + "'. Expected one of " + SCHEMAS.keySet());
+        }
+        names = resolved.getColumnNames();
+        types = resolved.getColumnDataTypes().stream().map(type -> type.getLogicalType()).collect(Collectors.toList());
+        converter = new RowDataLocalTimeZoneConverter(types, new Configuration());
+        columnarSupported = ColumnarResultEncoder.supports(types);
+
+        Random random = new Random(42);
+        List<RowData> data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            GenericRowData row = new GenericRowData(types.size());
+            for (int c = 0; c < types.size(); c++) {
+                row.setField(c, value(types.get(c), random));
+            }
+            data.add(row);
+        }
+        batch = new ResultSetImpl(ResultSet.ResultType.PAYLOAD, 1L, resolved, data, null, true, null,
+            ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    @Benchmark
+    public byte[] json(Output output) throws Exception {
+        byte[] body = RunnerHttpServer.MAPPER.writeValueAsBytes(
+            ResultInfo.createResultInfo(batch, RowFormat.JSON, converter));
+        output.rows += rows;
+        output.bytes += body.length;
+        return body;
+    }
+
+    @Benchmark
+    public byte[] columnar(Output output) throws Exception {
+        if (!columnarSupported) {
+            return json(output);
+        }
+        byte[] body = ColumnarResultEncoder.encode(names, types, batch.getData());
+        output.rows += rows;
+        output.bytes += body.length;
+        return body;
+    }
+
+    private static ResolvedSchema wideSchema(int columns) {
+        DataType[] cycle = {DataTypes.INT(), DataTypes.BIGINT(), DataTypes.STRING(), DataTypes.DOUBLE(), DataTypes.BOOLEAN()};
+        List<Column> list = new ArrayList<>(columns);
+        for (int c = 0; c < columns; c++) {
+            list.add(Column.physical("c" + c, cycle[c % cycle.length]));
+        }
+        return ResolvedSchema.of(list);
+    }
+
+    /**
+     * A random internal value of the type, null one time in ten.
+     */
+    private static Object value(LogicalType type, Random random) {
+        if (random.nextInt(10) == 0) {
+            return null;
+        }
+        switch (type.getTypeRoot()) {
+            case BOOLEAN:
+                return random.nextBoolean();
+            case INTEGER:
+                return random.nextInt(1_000_000);
+            case BIGINT:
+                return random.nextLong();
+            case DOUBLE:
+                return random.nextDouble() * 1000;
+            case VARCHAR:
+                return StringData.fromString("value-" + random.nextInt(1000));
+            case DECIMAL:
+                DecimalType decimal = (DecimalType) type;
+                BigDecimal unscaled = BigDecimal.valueOf(random.nextLong() % 100_000_000L, 2);
+                return DecimalData.fromBigDecimal(unscaled.setScale(decimal.getScale(), RoundingMode.HALF_UP),
+                    decimal.getPrecision(), decimal.getScale());
+            case DATE:
+                return 19_000 + random.nextInt(1000);
+            case TIMESTAMP_WITHOUT_TIME_ZONE:
+            case TIMESTAMP_WITH_LOCAL_TIME_ZONE:
+                return TimestampData.fromEpochMillis(1_700_000_000_000L + random.nextInt(86_400_000));
+            case ROW:
+                List<LogicalType> fields = type.getChildren();
+                GenericRowData row = new GenericRowData(fields.size());
+                for (int f = 0; f < fields.size(); f++) {
+                    row.setField(f, value(fields.get(f), random));
+                }
+                return row;
+            case ARRAY:
+                Object[] elements = new Object[random.nextInt(5)];
+                for (int e = 0; e < elements.length; e++) {
+                    elements[e] = value(((ArrayType) type).getElementType(), random);
+                }
+                return new GenericArrayData(elements);
+            case MAP:
+                Map<Object, Object> map = new HashMap<>();
+                for (int e = random.nextInt(4); e > 0; e--) {
+                    map.put(StringData.fromString("key-" + e), value(((MapType) type).getValueType(), random));
+                }
+                return new GenericMapData(map);
+            default:
+                throw new IllegalArgumentException("No values for type " + type);
+        }
+    }
+}
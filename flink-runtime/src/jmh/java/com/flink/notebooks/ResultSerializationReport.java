@@ -0,0 +1,66 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.types.DataType;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs ResultSerializationBenchmark with the GC profiler and prints, per schema, batch size
+ * and format, what choosing a result format needs: rows encoded per second, bytes per row
+ * on the wire and bytes allocated per row.
+ *
+ * Usage: java -cp <jmh classpath> com.flink.notebooks.ResultSerializationReport [JMH options]
+ * e.g. -p schema=nested -p rows=1000 -wi 1 -i 3 for a quicker run.
+ */
+public class ResultSerializationReport {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(ResultSerializationBenchmark.class.getName() + "\\.")
+            .addProfiler(GCProfiler.class)
+            .build();
+        List<RunResult> results = new ArrayList<>(new Runner(options).run());
+        results.sort(Comparator
+            .comparing((RunResult result) -> result.getParams().getParam("schema"))
+            .thenComparingInt(result -> Integer.parseInt(result.getParams().getParam("rows")))
+            .thenComparing(result -> result.getParams().getBenchmark()));
+
+        System.out.println("\n=== Result Serialization ===\n");
+        System.out.printf("%-10s %8s %-10s %14s %12s %14s%n",
+            "schema", "rows", "format", "rows/s", "bytes/row", "alloc B/row");
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String benchmark = params.getBenchmark();
+            String format = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            int batchRows = Integer.parseInt(params.getParam("rows"));
+            double rowsPerSecond = secondary(result, "rows");
+            double bytesPerSecond = secondary(result, "bytes");
+            double allocPerBatch = secondary(result, "gc.alloc.rate.norm");
+            String schema = params.getParam("schema");
+            boolean fallback = "columnar".equals(format) && !ColumnarResultEncoder.supports(
+                ResultSerializationBenchmark.SCHEMAS.get(schema).getColumnDataTypes().stream()
+                    .map(DataType::getLogicalType).collect(Collectors.toList()));
+            System.out.printf("%-10s %8d %-10s %14.0f %12.1f %14.1f%n",
+                schema, batchRows, fallback ? "columnar*" : format, rowsPerSecond,
+                rowsPerSecond > 0 ? bytesPerSecond / rowsPerSecond : 0.0, allocPerBatch / batchRows);
+        }
+        System.out.println("\n* not representable in the columnar format, so a COLUMNAR fetch writes JSON");
+    }
+
+    private static double secondary(RunResult result, String label) {
+        Result<?> value = result.getSecondaryResults().get(label);
+        return value == null ? Double.NaN : value.getScore();
+    }
+}
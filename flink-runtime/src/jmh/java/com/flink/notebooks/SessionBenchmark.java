@@ -0,0 +1,41 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of opening a session and closing it again, as the extension does per notebook: taken
+ * from the WarmSessionPool when it has one ready ("pooled"), or always created from scratch
+ * ("unpooled"), which includes building the session's catalog manager and table environment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SessionBenchmark {
+
+    @Param({"pooled", "unpooled"})
+    public String source;
+
+    @Benchmark
+    public SessionHandle openAndClose(EmbeddedRunner runner) {
+        SessionHandle session = "pooled".equals(source)
+            ? runner.service.openSession(EmbeddedRunner.environment("session-benchmark"))
+            : runner.openSession("session-benchmark");
+        runner.service.closeSession(session);
+        return session;
+    }
+}
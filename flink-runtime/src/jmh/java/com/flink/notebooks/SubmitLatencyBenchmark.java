@@ -0,0 +1,81 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from submitting a statement to its first row, which is what a user waits for when
+ * running a small notebook cell: a bounded datagen scan and an aggregation over it, run
+ * through the embedded runner's gateway service the way the gateway REST endpoint runs them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class SubmitLatencyBenchmark {
+
+    private static final String SOURCE_DDL =
+        "CREATE TEMPORARY TABLE bench_source (id INT, name STRING, amount DOUBLE) WITH (" +
+        "'connector' = 'datagen', 'number-of-rows' = '1000', 'fields.name.length' = '4')";
+
+    @Param({
+        "SELECT * FROM bench_source",
+        "SELECT name, COUNT(*) AS cnt, SUM(amount) AS total FROM bench_source GROUP BY name"
+    })
+    public String query;
+
+    private SessionHandle session;
+
+    @Setup(Level.Trial)
+    public void openSession(EmbeddedRunner runner) throws Exception {
+        session = runner.openSession("submit-latency-benchmark");
+        runner.runToCompletion(session, SOURCE_DDL);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeSession(EmbeddedRunner runner) {
+        runner.service.closeSession(session);
+    }
+
+    @Benchmark
+    public int submitToFirstRow(EmbeddedRunner runner) throws Exception {
+        OperationHandle operation = runner.service.executeStatement(session, query, 0, new Configuration());
+        try {
+            long token = 0;
+            while (true) {
+                ResultSet result = runner.service.fetchResults(session, operation, token, 100);
+                if (!result.getData().isEmpty()) {
+                    return result.getData().size();
+                }
+                if (result.getResultType() == ResultSet.ResultType.EOS || result.getNextToken() == null) {
+                    throw new IllegalStateException("Query finished without producing rows: " + query);
+                }
+                if (result.getResultType() != ResultSet.ResultType.NOT_READY) {
+                    token = result.getNextToken();
+                }
+                Thread.sleep(1);
+            }
+        } finally {
+            runner.service.closeOperation(session, operation);
+        }
+    }
+}
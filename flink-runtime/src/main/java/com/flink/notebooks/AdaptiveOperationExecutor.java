@@ -0,0 +1,262 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.config.SqlGatewayServiceConfigOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Elastic operation pool bounded by the sql-gateway.worker.* settings.
+ *
+ * The pool starts at sql-gateway.worker.threads.min and a controller checks it once per
+ * second. If operations waited in the queue longer than notebooks.worker.target-queue-wait
+ * (default 50 ms) and process CPU is below notebooks.worker.max-cpu-for-growth (default 0.85),
+ * the pool grows by one thread, up to sql-gateway.worker.threads.max. When
+ * nothing waits, it shrinks back towards the minimum. Threads above the current size exit
+ * after sql-gateway.worker.keepalive-time of idleness.
+ *
+ * Pool size, active count and completion rate are published over JMX (OperationPoolMXBean).
+ */
+public class AdaptiveOperationExecutor extends ThreadPoolExecutor implements OperationPoolMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveOperationExecutor.class);
+
+    static final ConfigOption<Duration> TARGET_QUEUE_WAIT =
+        ConfigOptions.key("notebooks.worker.target-queue-wait").durationType().defaultValue(Duration.ofMillis(50));
+    static final ConfigOption<Double> MAX_CPU_FOR_GROWTH =
+        ConfigOptions.key("notebooks.worker.max-cpu-for-growth").doubleType().defaultValue(0.85);
+
+    private static final long CONTROL_INTERVAL_MS = 1000;
+    private static final String MBEAN_NAME = "com.flink.notebooks:type=OperationPool";
+
+    private final int minThreads;
+    private final int maxThreads;
+    private final long targetQueueWaitMs;
+    private final double maxCpuForGrowth;
+    private final ScheduledExecutorService controller;
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+
+    private final AtomicLong waitNanosSinceLastCheck = new AtomicLong();
+    private final AtomicLong startedSinceLastCheck = new AtomicLong();
+    private long completedAtLastCheck;
+    private volatile double completedPerSecond;
+    private volatile long avgQueueWaitMs;
+    private volatile double cpuLoad;
+
+    public AdaptiveOperationExecutor(Configuration flinkConfig) {
+        this(
+            flinkConfig.get(SqlGatewayServiceConfigOptions.SQL_GATEWAY_WORKER_THREADS_MIN),
+            flinkConfig.get(SqlGatewayServiceConfigOptions.SQL_GATEWAY_WORKER_THREADS_MAX),
+            flinkConfig.get(SqlGatewayServiceConfigOptions.SQL_GATEWAY_WORKER_KEEPALIVE_TIME).toMillis(),
+            flinkConfig.get(TARGET_QUEUE_WAIT).toMillis(),
+            flinkConfig.get(MAX_CPU_FOR_GROWTH)
+        );
+    }
+
+    public AdaptiveOperationExecutor(int minThreads, int maxThreads, long keepAliveMs) {
+        this(minThreads, maxThreads, keepAliveMs, TARGET_QUEUE_WAIT.defaultValue().toMillis(),
+            MAX_CPU_FOR_GROWTH.defaultValue());
+    }
+
+    public AdaptiveOperationExecutor(int minThreads, int maxThreads, long keepAliveMs, long targetQueueWaitMs,
+            double maxCpuForGrowth) {
+        super(
+            Math.max(1, minThreads),
+            Math.max(Math.max(1, minThreads), maxThreads),
+            keepAliveMs,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r);
+                thread.setName("sql-gateway-operation-" + thread.getId());
+                thread.setDaemon(false); // Non-daemon to prevent premature termination
+                return thread;
+            }
+        );
+        this.minThreads = getCorePoolSize();
+        this.maxThreads = getMaximumPoolSize();
+        this.targetQueueWaitMs = targetQueueWaitMs;
+        this.maxCpuForGrowth = maxCpuForGrowth;
+
+        this.controller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sql-gateway-operation-pool-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        controller.scheduleAtFixedRate(this::adjust, CONTROL_INTERVAL_MS, CONTROL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        registerMBean();
+        LOG.info("Elastic operation pool: {}-{} thread(s), keepalive {} ms", this.minThreads, this.maxThreads, keepAliveMs);
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOG.warn("Could not register operation pool MBean: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.debug("Could not unregister operation pool MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedTask(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (r instanceof TimedTask) {
+            waitNanosSinceLastCheck.addAndGet(System.nanoTime() - ((TimedTask) r).enqueuedNanos);
+            startedSinceLastCheck.incrementAndGet();
+        }
+    }
+
+    /**
+     * Resize the pool based on queue wait and CPU load since the previous check.
+     */
+    private void adjust() {
+        try {
+            long started = startedSinceLastCheck.getAndSet(0);
+            long waitNanos = waitNanosSinceLastCheck.getAndSet(0);
+            long completed = getCompletedTaskCount();
+
+            avgQueueWaitMs = started == 0 ? 0 : waitNanos / started / 1_000_000;
+            completedPerSecond = (completed - completedAtLastCheck) * 1000.0 / CONTROL_INTERVAL_MS;
+            completedAtLastCheck = completed;
+            cpuLoad = currentCpuLoad();
+
+            int size = getCorePoolSize();
+            int target = targetSize(size, minThreads, maxThreads, avgQueueWaitMs, getQueue().size(), getActiveCount(),
+                cpuLoad, targetQueueWaitMs, maxCpuForGrowth);
+
+            if (target > size) {
+                setCorePoolSize(target);
+                LOG.debug("Grew operation pool to {} (avg queue wait {} ms, {} queued, cpu {}%)",
+                    target, avgQueueWaitMs, getQueue().size(), Math.round(cpuLoad * 100));
+            } else if (target < size) {
+                setCorePoolSize(target);
+                LOG.debug("Shrank operation pool to {} ({} active)", target, getActiveCount());
+            }
+        } catch (Throwable t) {
+            LOG.warn("Failed to adjust operation pool size", t);
+        }
+    }
+
+    /**
+     * The pool size for the next interval: one more thread if operations waited longer than
+     * the target or are still queued and there is CPU to spare, one fewer if nothing waits and
+     * a thread was idle, always within [minThreads, maxThreads].
+     */
+    static int targetSize(int size, int minThreads, int maxThreads, long avgQueueWaitMs, int queued, int active,
+            double cpuLoad, long targetQueueWaitMs, double maxCpuForGrowth) {
+        boolean waiting = avgQueueWaitMs > targetQueueWaitMs || queued > 0;
+        if (waiting && cpuLoad < maxCpuForGrowth && size < maxThreads) {
+            return size + 1;
+        }
+        if (!waiting && active < size && size > minThreads) {
+            return size - 1;
+        }
+        return size;
+    }
+
+    private double currentCpuLoad() {
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuLoad();
+            if (load >= 0) {
+                return load;
+            }
+        }
+        double loadAverage = osBean.getSystemLoadAverage();
+        return loadAverage < 0 ? 0 : loadAverage / osBean.getAvailableProcessors();
+    }
+
+    @Override
+    public int getTargetPoolSize() {
+        return getCorePoolSize();
+    }
+
+    @Override
+    public int getMinPoolSize() {
+        return minThreads;
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return maxThreads;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public double getCompletedPerSecond() {
+        return completedPerSecond;
+    }
+
+    @Override
+    public long getAvgQueueWaitMs() {
+        return avgQueueWaitMs;
+    }
+
+    @Override
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    @Override
+    protected void terminated() {
+        controller.shutdownNow();
+        unregisterMBean();
+        super.terminated();
+    }
+
+    /**
+     * Wraps a submitted operation with the time it was queued.
+     */
+    private static class TimedTask implements Runnable {
+        final Runnable delegate;
+        final long enqueuedNanos = System.nanoTime();
+
+        TimedTask(Runnable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+}
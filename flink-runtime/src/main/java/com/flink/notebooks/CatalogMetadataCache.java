@@ -0,0 +1,370 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.catalog.CatalogBaseTable;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ObjectIdentifier;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.catalog.UniqueConstraint;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.operation.OperationStatus;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Per-session cache of catalog metadata: catalog, database and table names and table schemas.
+ *
+ * Lookups go straight to the session's catalogs through SqlGatewayService's metadata methods,
+ * bypassing the operation pipeline, and are kept until they expire or DDL touches them. DDL
+ * submitted in any session invalidates the entries it may affect in every session:
+ *
+ *   CREATE/DROP/ALTER CATALOG   the catalog list and everything in the catalog
+ *   CREATE/DROP/ALTER DATABASE  the catalog's database list and everything in the database
+ *   CREATE/DROP/ALTER TABLE/VIEW, CTAS
+ *                               the database's table list and the table's schema
+ *   other CREATE/DROP/ALTER     everything
+ *
+ * Unqualified names resolve against the session's current catalog; a table name without a
+ * database invalidates the table in every database of that catalog. Entries affected by a
+ * DDL operation that is still running are loaded but not cached, and invalidated again once
+ * it completes or is closed. Completed DDL is settled on every lookup and every new DDL
+ * statement, so only DDL that is still running is remembered.
+ *
+ * Only DDL run through this runner is seen, so tables created or dropped in an external
+ * catalog by another engine show up once entries expire. Caching is therefore off unless a
+ * TTL is set; without one every lookup goes to the catalogs and nothing is remembered.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.metadata.cache-ttl-ms  how long metadata is cached, 0 to disable (default 0)
+ */
+public class CatalogMetadataCache implements NotebookGatewayService.StatementListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogMetadataCache.class);
+
+    static final ConfigOption<Long> TTL_MS =
+        ConfigOptions.key("notebooks.metadata.cache-ttl-ms").longType().defaultValue(0L);
+
+    // SqlGatewayService only lists tables and views
+    private static final EnumSet<CatalogBaseTable.TableKind> TABLE_KINDS =
+        EnumSet.of(CatalogBaseTable.TableKind.TABLE, CatalogBaseTable.TableKind.VIEW);
+
+    private final NotebookGatewayService service;
+    private final long ttlMs;
+    private final Map<SessionHandle, Map<Key, Cached>> sessions = new ConcurrentHashMap<>();
+    private final List<PendingDdl> pending = new CopyOnWriteArrayList<>();
+    /** Bumped on every invalidation, so a load that raced with one is not cached. */
+    private final AtomicLong generation = new AtomicLong();
+
+    public CatalogMetadataCache(NotebookGatewayService service, Configuration flinkConfig) {
+        this.service = service;
+        this.ttlMs = flinkConfig.get(TTL_MS);
+    }
+
+    public boolean isEnabled() {
+        return ttlMs > 0;
+    }
+
+    /**
+     * A table or view in a database listing.
+     */
+    public static final class TableEntry {
+        public final String name;
+        public final String kind;
+
+        TableEntry(String name, String kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+    }
+
+    public List<String> listCatalogs(SessionHandle session, boolean refresh) {
+        return get(session, new Key("C", null, null, null), refresh,
+            () -> sorted(service.listCatalogs(session)));
+    }
+
+    public List<String> listDatabases(SessionHandle session, String catalog, boolean refresh) {
+        return get(session, new Key("D", catalog, null, null), refresh,
+            () -> sorted(service.listDatabases(session, catalog)));
+    }
+
+    public List<TableEntry> listTables(SessionHandle session, String catalog, String database, boolean refresh) {
+        return get(session, new Key("T", catalog, database, null), refresh,
+            () -> service.listTables(session, catalog, database, TABLE_KINDS).stream()
+                .map(info -> new TableEntry(info.getIdentifier().getObjectName(), info.getTableKind().name()))
+                .sorted(Comparator.comparing(entry -> entry.name))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+    }
+
+    /**
+     * Columns of a table as {"name", "type", "nullable", "comment", "primaryKey"} maps.
+     */
+    public List<Map<String, Object>> getColumns(SessionHandle session, String catalog, String database, String table,
+            boolean refresh) {
+        return get(session, new Key("S", catalog, database, table), refresh,
+            () -> describe(service.getTable(session, ObjectIdentifier.of(catalog, database, table)).getResolvedSchema()));
+    }
+
+    public String getCurrentCatalog(SessionHandle session) {
+        return service.getCurrentCatalog(session);
+    }
+
+    @Override
+    public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+            OperationClass operationClass) {
+        if (!isEnabled()) {
+            return;
+        }
+        Scope scope = scopeOf(session, statement);
+        if (scope == null) {
+            return;
+        }
+        settlePending();
+        pending.add(new PendingDdl(session, operation, scope));
+        invalidate(scope);
+    }
+
+    @Override
+    public void onOperationClosed(SessionHandle session, OperationHandle operation) {
+        pending.removeIf(ddl -> {
+            if (ddl.operation.equals(operation)) {
+                invalidate(ddl.scope);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Number of DDL operations whose effects are not settled yet.
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void onSessionClosed(SessionHandle session) {
+        sessions.remove(session);
+        pending.removeIf(ddl -> {
+            if (ddl.session.equals(session)) {
+                invalidate(ddl.scope);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private <T> T get(SessionHandle session, Key key, boolean refresh, Supplier<T> loader) {
+        if (!isEnabled()) {
+            return loader.get();
+        }
+        settlePending();
+        Map<Key, Cached> entries = sessions.computeIfAbsent(session, s -> new ConcurrentHashMap<>());
+        long now = System.currentTimeMillis();
+        Cached cached = entries.get(key);
+        if (!refresh && cached != null && now - cached.loadedAtMillis < ttlMs) {
+            @SuppressWarnings("unchecked")
+            T value = (T) cached.value;
+            return value;
+        }
+
+        long loadGeneration = generation.get();
+        T value = loader.get();
+        boolean affectedByPending = pending.stream().anyMatch(ddl -> ddl.scope.matches(key));
+        if (!affectedByPending && generation.get() == loadGeneration) {
+            entries.put(key, new Cached(value, now));
+        }
+        return value;
+    }
+
+    private void invalidate(Scope scope) {
+        generation.incrementAndGet();
+        for (Map<Key, Cached> entries : sessions.values()) {
+            entries.keySet().removeIf(scope::matches);
+        }
+    }
+
+    /**
+     * Invalidate again what completed DDL operations touched; their effects are visible now.
+     */
+    private void settlePending() {
+        for (PendingDdl ddl : pending) {
+            OperationStatus status = service.getOperationStatus(ddl.session, ddl.operation);
+            // Null once the operation was closed
+            boolean done = status == null || status.isTerminalStatus();
+            if (done && pending.remove(ddl)) {
+                invalidate(ddl.scope);
+            }
+        }
+    }
+
+    /**
+     * What a statement may change, or null if it does not change catalog metadata.
+     */
+    private Scope scopeOf(SessionHandle session, String statement) {
+        DdlStatement ddl = DdlStatement.parse(statement);
+        if (ddl == null || "FUNCTION".equals(ddl.objectType)) {
+            return null;
+        }
+        if (ddl.objectType == null) {
+            return Scope.ALL;
+        }
+        List<String> name = ddl.name;
+
+        if (ddl.objectType.equals("CATALOG")) {
+            return new Scope(name.get(name.size() - 1), null, null);
+        }
+        String currentCatalog;
+        try {
+            currentCatalog = service.getCurrentCatalog(session);
+        } catch (Exception e) {
+            LOG.debug("Could not read current catalog of session {}: {}", session, e.getMessage());
+            return Scope.ALL;
+        }
+        if (ddl.objectType.equals("DATABASE")) {
+            return name.size() == 1
+                ? new Scope(currentCatalog, name.get(0), null)
+                : new Scope(name.get(name.size() - 2), name.get(name.size() - 1), null);
+        }
+        switch (name.size()) {
+            case 1:
+                return new Scope(currentCatalog, null, name.get(0));
+            case 2:
+                return new Scope(currentCatalog, name.get(0), name.get(1));
+            default:
+                return new Scope(name.get(name.size() - 3), name.get(name.size() - 2), name.get(name.size() - 1));
+        }
+    }
+
+    private static List<String> sorted(Collection<String> names) {
+        List<String> list = new ArrayList<>(names);
+        Collections.sort(list);
+        return Collections.unmodifiableList(list);
+    }
+
+    private static List<Map<String, Object>> describe(ResolvedSchema schema) {
+        List<String> primaryKey = schema.getPrimaryKey().map(UniqueConstraint::getColumns).orElse(Collections.emptyList());
+        List<Map<String, Object>> columns = new ArrayList<>();
+        for (Column column : schema.getColumns()) {
+            LogicalType type = column.getDataType().getLogicalType();
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("name", column.getName());
+            description.put("type", type.copy(true).asSummaryString());
+            description.put("nullable", type.isNullable());
+            description.put("comment", column.getComment().orElse(null));
+            description.put("primaryKey", primaryKey.contains(column.getName()));
+            columns.add(Collections.unmodifiableMap(description));
+        }
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Cache key: "C" for the catalog list, "D" for a catalog's databases, "T" for a
+     * database's tables and "S" for a table's schema.
+     */
+    private static final class Key {
+        final String kind;
+        final String catalog;
+        final String database;
+        final String table;
+
+        Key(String kind, String catalog, String database, String table) {
+            this.kind = kind;
+            this.catalog = catalog;
+            this.database = database;
+            this.table = table;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind.equals(other.kind) && Objects.equals(catalog, other.catalog)
+                && Objects.equals(database, other.database) && Objects.equals(table, other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, catalog, database, table);
+        }
+    }
+
+    /**
+     * Metadata a statement may change: a catalog, a database, a table in one database or
+     * (database null) in any database of the catalog, or everything.
+     */
+    private static final class Scope {
+        static final Scope ALL = new Scope(null, null, null);
+
+        final String catalog;
+        final String database;
+        final String table;
+
+        Scope(String catalog, String database, String table) {
+            this.catalog = catalog;
+            this.database = database;
+            this.table = table;
+        }
+
+        boolean matches(Key key) {
+            if (catalog == null) {
+                return true;
+            }
+            if (database == null && table == null) {
+                return key.kind.equals("C") || catalog.equals(key.catalog);
+            }
+            if (!catalog.equals(key.catalog)) {
+                return false;
+            }
+            if (table == null) {
+                return key.kind.equals("D") || database.equals(key.database);
+            }
+            if (database != null && !database.equals(key.database)) {
+                return false;
+            }
+            return key.kind.equals("T") || (key.kind.equals("S") && table.equals(key.table));
+        }
+    }
+
+    private static final class Cached {
+        final Object value;
+        final long loadedAtMillis;
+
+        Cached(Object value, long loadedAtMillis) {
+            this.value = value;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+
+    private static final class PendingDdl {
+        final SessionHandle session;
+        final OperationHandle operation;
+        final Scope scope;
+
+        PendingDdl(SessionHandle session, OperationHandle operation, Scope scope) {
+            this.session = session;
+            this.operation = operation;
+            this.scope = scope;
+        }
+    }
+}
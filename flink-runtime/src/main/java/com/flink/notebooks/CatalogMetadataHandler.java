@@ -0,0 +1,132 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Catalog metadata for a session in one call, served from a CatalogMetadataCache.
+ *
+ * GET /v1/sessions/{sessionHandle}/catalog-tree?catalog=&database=&columns=false&refresh=false
+ * GET /v1/sessions/{sessionHandle}/catalogs/{catalog}/databases/{database}/tables/{table}?refresh=false
+ *
+ * The tree is {"currentCatalog", "catalogs": [{"name", "databases": [{"name", "tables":
+ * [{"name", "kind", "columns"}]}]}]}, optionally limited to one catalog and database. Columns
+ * are only included with columns=true. A catalog or database that cannot be listed gets an
+ * "error" instead of its children; the rest of the tree is still returned. refresh=true
+ * reloads everything it returns.
+ *
+ * The table route returns {"catalog", "database", "name", "columns"} with columns as
+ * {"name", "type", "nullable", "comment", "primaryKey"}.
+ */
+public class CatalogMetadataHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogMetadataHandler.class);
+
+    private final CatalogMetadataCache cache;
+
+    public CatalogMetadataHandler(CatalogMetadataCache cache) {
+        this.cache = cache;
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("GET", "/v1/sessions/{sessionHandle}/catalog-tree", this::tree);
+        server.route("GET", "/v1/sessions/{sessionHandle}/catalogs/{catalog}/databases/{database}/tables/{table}",
+            this::table);
+    }
+
+    private void tree(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        SessionHandle session = new SessionHandle(UUID.fromString(pathParams.get("sessionHandle")));
+        Map<String, String> query = RunnerHttpServer.queryParams(exchange);
+        String onlyCatalog = query.get("catalog");
+        String onlyDatabase = query.get("database");
+        boolean columns = Boolean.parseBoolean(query.get("columns"));
+        boolean refresh = Boolean.parseBoolean(query.get("refresh"));
+
+        long start = System.nanoTime();
+        List<Map<String, Object>> catalogs = new ArrayList<>();
+        List<String> catalogNames = onlyCatalog != null ? List.of(onlyCatalog) : cache.listCatalogs(session, refresh);
+        for (String catalog : catalogNames) {
+            Map<String, Object> catalogNode = new LinkedHashMap<>();
+            catalogNode.put("name", catalog);
+            try {
+                List<Map<String, Object>> databases = new ArrayList<>();
+                List<String> databaseNames = onlyDatabase != null
+                    ? List.of(onlyDatabase)
+                    : cache.listDatabases(session, catalog, refresh);
+                for (String database : databaseNames) {
+                    databases.add(databaseNode(session, catalog, database, columns, refresh));
+                }
+                catalogNode.put("databases", databases);
+            } catch (Exception e) {
+                catalogNode.put("error", rootMessage(e));
+            }
+            catalogs.add(catalogNode);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("currentCatalog", cache.getCurrentCatalog(session));
+        response.put("catalogs", catalogs);
+        LOG.debug("Catalog tree for session {} took {} ms", session, (System.nanoTime() - start) / 1_000_000);
+        RunnerHttpServer.sendJson(exchange, 200, response);
+    }
+
+    private Map<String, Object> databaseNode(SessionHandle session, String catalog, String database, boolean columns,
+            boolean refresh) {
+        Map<String, Object> databaseNode = new LinkedHashMap<>();
+        databaseNode.put("name", database);
+        try {
+            List<Map<String, Object>> tables = new ArrayList<>();
+            for (CatalogMetadataCache.TableEntry entry : cache.listTables(session, catalog, database, refresh)) {
+                Map<String, Object> tableNode = new LinkedHashMap<>();
+                tableNode.put("name", entry.name);
+                tableNode.put("kind", entry.kind);
+                if (columns) {
+                    try {
+                        tableNode.put("columns", cache.getColumns(session, catalog, database, entry.name, refresh));
+                    } catch (Exception e) {
+                        tableNode.put("error", rootMessage(e));
+                    }
+                }
+                tables.add(tableNode);
+            }
+            databaseNode.put("tables", tables);
+        } catch (Exception e) {
+            databaseNode.put("error", rootMessage(e));
+        }
+        return databaseNode;
+    }
+
+    private void table(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        SessionHandle session = new SessionHandle(UUID.fromString(pathParams.get("sessionHandle")));
+        String catalog = pathParams.get("catalog");
+        String database = pathParams.get("database");
+        String table = pathParams.get("table");
+        boolean refresh = Boolean.parseBoolean(RunnerHttpServer.queryParams(exchange).get("refresh"));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("catalog", catalog);
+        response.put("database", database);
+        response.put("name", table);
+        response.put("columns", cache.getColumns(session, catalog, database, table, refresh));
+        RunnerHttpServer.sendJson(exchange, 200, response);
+    }
+
+    /**
+     * The gateway wraps catalog errors in "Failed to listTables." and the like; report the cause.
+     */
+    private static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+    }
+}
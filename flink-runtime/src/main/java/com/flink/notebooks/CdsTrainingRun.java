@@ -0,0 +1,153 @@
+package com.flink.notebooks;
+
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Training run for the runner's AppCDS archive.
+ *
+ * Starts a MiniClusterRunner the way the extension does, runs one notebook cell against it
+ * over HTTP (open a session, create a datagen table, run a query and fetch it through both
+ * the gateway and the runner's columnar endpoint) and stops. Run under
+ * -XX:ArchiveClassesAtExit the JVM then dumps every class loaded on that path, so later
+ * runner starts map them from the archive instead of loading and verifying them from the jar.
+ *
+ * Ports are picked at random so the run does not collide with a runner already listening
+ * on the default ones.
+ *
+ * Usage: java -XX:ArchiveClassesAtExit=flink-minicluster.jsa -cp flink-minicluster.jar com.flink.notebooks.CdsTrainingRun
+ */
+public class CdsTrainingRun {
+
+    private static final String SOURCE_DDL =
+        "CREATE TEMPORARY TABLE cds_source (id INT, name STRING, amount DOUBLE) WITH (" +
+        "'connector' = 'datagen', 'number-of-rows' = '100')";
+    private static final String QUERY =
+        "SELECT name, COUNT(*) AS cnt, SUM(amount) AS total FROM cds_source GROUP BY name";
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    private final String gatewayUrl;
+    private final String runnerUrl;
+
+    private CdsTrainingRun(int gatewayPort, int runnerPort) {
+        this.gatewayUrl = "http://localhost:" + gatewayPort;
+        this.runnerUrl = "http://localhost:" + runnerPort;
+    }
+
+    public static void main(String[] args) throws Exception {
+        MiniClusterRunner.Config config = new MiniClusterRunner.Config();
+        config.restPort = freePort();
+        config.gatewayPort = freePort();
+        config.runnerPort = freePort();
+        // Match the extension's default so the spill store's classes are trained too
+        config.resultStore = MiniClusterRunner.RESULT_STORE_SPILL;
+
+        int exitCode = 0;
+        MiniClusterRunner runner = new MiniClusterRunner();
+        runner.start(config);
+        try {
+            new CdsTrainingRun(config.gatewayPort, config.runnerPort).runCell();
+            System.out.println("CDS training run complete");
+        } catch (Exception e) {
+            System.err.println("CDS training run failed: " + e);
+            exitCode = 1;
+        } finally {
+            runner.stop();
+        }
+        System.exit(exitCode);
+    }
+
+    private void runCell() throws Exception {
+        String session = post(gatewayUrl + "/v1/sessions", Map.of("sessionName", "cds-training"))
+            .get("sessionHandle").asText();
+
+        awaitTerminal(session, execute(session, SOURCE_DDL));
+
+        // Once through each fetch path the extension uses
+        fetchAll(gatewayUrl, session, execute(session, QUERY), "JSON");
+        fetchAll(runnerUrl, session, execute(session, QUERY), "COLUMNAR");
+
+        send(HttpRequest.newBuilder(URI.create(gatewayUrl + "/v1/sessions/" + session)).DELETE());
+    }
+
+    private String execute(String session, String statement) throws IOException, InterruptedException {
+        return post(gatewayUrl + "/v1/sessions/" + session + "/statements", Map.of("statement", statement))
+            .get("operationHandle").asText();
+    }
+
+    private void awaitTerminal(String session, String operation) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        String uri = gatewayUrl + "/v1/sessions/" + session + "/operations/" + operation + "/status";
+        while (true) {
+            String status = get(uri).get("status").asText();
+            if ("FINISHED".equals(status)) {
+                return;
+            }
+            if ("ERROR".equals(status) || "CANCELED".equals(status) || "CLOSED".equals(status)
+                    || System.nanoTime() > deadline) {
+                throw new IllegalStateException("Statement ended as " + status);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Follow the result's next URI until the gateway reports end of stream. JSON responses
+     * carry it in nextResultUri, columnar ones in the X-Next-Result-Uri header.
+     */
+    private void fetchAll(String baseUrl, String session, String operation, String rowFormat)
+            throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        String next = "/v1/sessions/" + session + "/operations/" + operation + "/result/0?rowFormat=" + rowFormat;
+        while (next != null) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out fetching " + operation);
+            }
+            HttpResponse<byte[]> response = send(HttpRequest.newBuilder(URI.create(baseUrl + next)).GET());
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            if (contentType.startsWith("application/json")) {
+                JsonNode uri = RunnerHttpServer.MAPPER.readTree(response.body()).get("nextResultUri");
+                next = uri == null || uri.isNull() ? null : uri.asText();
+            } else {
+                next = response.headers().firstValue("X-Next-Result-Uri").orElse(null);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private JsonNode get(String uri) throws IOException, InterruptedException {
+        return RunnerHttpServer.MAPPER.readTree(send(HttpRequest.newBuilder(URI.create(uri)).GET()).body());
+    }
+
+    private JsonNode post(String uri, Map<String, String> body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(RunnerHttpServer.MAPPER.writeValueAsBytes(body)));
+        return RunnerHttpServer.MAPPER.readTree(send(request).body());
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request.timeout(TIMEOUT).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 400) {
+            throw new IOException(request.build().uri() + " returned " + response.statusCode() + ": "
+                + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return response;
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.types.logical.DecimalType;
+import org.apache.flink.table.types.logical.LocalZonedTimestampType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.TimestampType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact columnar binary encoding for result batches (rowFormat=COLUMNAR).
+ *
+ * The gateway's JSON row format writes every row as {"kind": ..., "fields": [...]}, building
+ * a Jackson node per field, and the client parses it back into one object per row. This
+ * encoding writes each column as a contiguous block straight from the RowData accessors, so
+ * numeric columns are copied without boxing and strings are copied as UTF-8 bytes.
+ *
+ * All integers are little-endian. Layout:
+ *
+ *   int32  magic ("FNC1")
+ *   byte   version (1, or 2 for a batch without column descriptions)
+ *   int32  column count, int32 row count
+ *   per column: string name, byte type tag, string type root (as in the JSON format), byte nullable
+ *     (version 2: only the byte type tag, for a client that already holds the columns)
+ *   byte[row count] row kinds (RowKind.toByteValue)
+ *   per column:
+ *     byte[(rows + 7) / 8] validity bitmap (bit set = not null)
+ *     fixed width (BOOLEAN bitmap, TINYINT 1, SMALLINT 2, INT/DATE/TIME 4, BIGINT 8,
+ *                  FLOAT 4, DOUBLE 8, TIMESTAMP 12: int64 millis + int32 nanos of milli)
+ *     or variable width (STRING/BINARY/DECIMAL): int32[rows + 1] offsets, then the bytes
+ *
+ * Strings are int32 length + UTF-8. DECIMAL values are plain decimal strings. Nested and
+ * interval types are not supported; callers check supports() and fall back to JSON.
+ */
+public final class ColumnarResultEncoder {
+
+    public static final String CONTENT_TYPE = "application/vnd.flink-notebooks.columnar";
+
+    static final int MAGIC = 0x3143_4E46; // "FNC1" little-endian
+    static final byte VERSION = 1;
+    static final byte VERSION_WITHOUT_COLUMNS = 2;
+
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_BOOLEAN = 1;
+    static final byte TYPE_TINYINT = 2;
+    static final byte TYPE_SMALLINT = 3;
+    static final byte TYPE_INT = 4;
+    static final byte TYPE_BIGINT = 5;
+    static final byte TYPE_FLOAT = 6;
+    static final byte TYPE_DOUBLE = 7;
+    static final byte TYPE_DECIMAL = 8;
+    static final byte TYPE_STRING = 9;
+    static final byte TYPE_BINARY = 10;
+    static final byte TYPE_DATE = 11;
+    static final byte TYPE_TIME = 12;
+    static final byte TYPE_TIMESTAMP = 13;
+    static final byte TYPE_TIMESTAMP_LTZ = 14;
+
+    private static final byte UNSUPPORTED = -1;
+
+    private ColumnarResultEncoder() {
+    }
+
+    /**
+     * Whether every column type can be encoded. Otherwise the caller should use JSON.
+     */
+    public static boolean supports(List<LogicalType> types) {
+        for (LogicalType type : types) {
+            if (typeTag(type) == UNSUPPORTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encode a batch of rows. Rows must already be converted to the session time zone.
+     *
+     * @param names Column names
+     * @param types Column logical types (see supports())
+     * @param rows Rows of the batch
+     * @return The encoded batch
+     */
+    public static byte[] encode(List<String> names, List<LogicalType> types, List<RowData> rows) {
+        return encode(names, types, rows, true);
+    }
+
+    /**
+     * Encode a batch of rows, with or without the column descriptions.
+     *
+     * @param describeColumns Whether to write each column's name, type root and nullability;
+     *     otherwise only its type tag is written, as format version 2
+     */
+    public static byte[] encode(List<String> names, List<LogicalType> types, List<RowData> rows,
+            boolean describeColumns) {
+        int columns = types.size();
+        int rowCount = rows.size();
+        Buffer out = new Buffer(64 + columns * 32 + rowCount * (1 + columns * 8));
+
+        out.putInt(MAGIC);
+        out.put(describeColumns ? VERSION : VERSION_WITHOUT_COLUMNS);
+        out.putInt(columns);
+        out.putInt(rowCount);
+
+        for (int c = 0; c < columns; c++) {
+            byte tag = typeTag(types.get(c));
+            if (tag == UNSUPPORTED) {
+                throw new IllegalArgumentException("Column '" + names.get(c) + "' has unsupported type "
+                    + types.get(c).asSummaryString() + " for the columnar row format");
+            }
+            if (!describeColumns) {
+                out.put(tag);
+                continue;
+            }
+            out.putString(names.get(c));
+            out.put(tag);
+            out.putString(types.get(c).getTypeRoot().name());
+            out.put((byte) (types.get(c).isNullable() ? 1 : 0));
+        }
+
+        for (int r = 0; r < rowCount; r++) {
+            out.put(rows.get(r).getRowKind().toByteValue());
+        }
+
+        for (int c = 0; c < columns; c++) {
+            writeColumn(out, c, types.get(c), rows);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeColumn(Buffer out, int col, LogicalType type, List<RowData> rows) {
+        int rowCount = rows.size();
+        byte[] validity = new byte[(rowCount + 7) / 8];
+        for (int r = 0; r < rowCount; r++) {
+            if (!rows.get(r).isNullAt(col)) {
+                validity[r >>> 3] |= (byte) (1 << (r & 7));
+            }
+        }
+        out.put(validity);
+
+        switch (typeTag(type)) {
+            case TYPE_NULL:
+                break;
+            case TYPE_BOOLEAN:
+                byte[] bits = new byte[(rowCount + 7) / 8];
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    if (!row.isNullAt(col) && row.getBoolean(col)) {
+                        bits[r >>> 3] |= (byte) (1 << (r & 7));
+                    }
+                }
+                out.put(bits);
+                break;
+            case TYPE_TINYINT:
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    out.put(row.isNullAt(col) ? 0 : row.getByte(col));
+                }
+                break;
+            case TYPE_SMALLINT:
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    out.putShort(row.isNullAt(col) ? 0 : row.getShort(col));
+                }
+                break;
+            case TYPE_INT:
+            case TYPE_DATE:
+            case TYPE_TIME:
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    out.putInt(row.isNullAt(col) ? 0 : row.getInt(col));
+                }
+                break;
+            case TYPE_BIGINT:
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    out.putLong(row.isNullAt(col) ? 0 : row.getLong(col));
+                }
+                break;
+            case TYPE_FLOAT:
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    out.putInt(Float.floatToRawIntBits(row.isNullAt(col) ? 0 : row.getFloat(col)));
+                }
+                break;
+            case TYPE_DOUBLE:
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    out.putLong(Double.doubleToRawLongBits(row.isNullAt(col) ? 0 : row.getDouble(col)));
+                }
+                break;
+            case TYPE_TIMESTAMP:
+            case TYPE_TIMESTAMP_LTZ:
+                int precision = timestampPrecision(type);
+                for (int r = 0; r < rowCount; r++) {
+                    RowData row = rows.get(r);
+                    if (row.isNullAt(col)) {
+                        out.putLong(0);
+                        out.putInt(0);
+                    } else {
+                        TimestampData ts = row.getTimestamp(col, precision);
+                        out.putLong(ts.getMillisecond());
+                        out.putInt(ts.getNanoOfMillisecond());
+                    }
+                }
+                break;
+            case TYPE_STRING:
+                writeVariableWidth(out, rowCount, r -> {
+                    RowData row = rows.get(r);
+                    return row.isNullAt(col) ? null : row.getString(col).toBytes();
+                });
+                break;
+            case TYPE_BINARY:
+                writeVariableWidth(out, rowCount, r -> {
+                    RowData row = rows.get(r);
+                    return row.isNullAt(col) ? null : row.getBinary(col);
+                });
+                break;
+            case TYPE_DECIMAL:
+                DecimalType decimalType = (DecimalType) type;
+                writeVariableWidth(out, rowCount, r -> {
+                    RowData row = rows.get(r);
+                    if (row.isNullAt(col)) {
+                        return null;
+                    }
+                    DecimalData value = row.getDecimal(col, decimalType.getPrecision(), decimalType.getScale());
+                    return value.toBigDecimal().toPlainString().getBytes(StandardCharsets.UTF_8);
+                });
+                break;
+            default:
+                throw new IllegalStateException("Unhandled column type " + type);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueBytes {
+        byte[] get(int row);
+    }
+
+    private static void writeVariableWidth(Buffer out, int rowCount, ValueBytes values) {
+        byte[][] data = new byte[rowCount][];
+        int offset = 0;
+        out.putInt(0);
+        for (int r = 0; r < rowCount; r++) {
+            data[r] = values.get(r);
+            offset += data[r] == null ? 0 : data[r].length;
+            out.putInt(offset);
+        }
+        for (byte[] value : data) {
+            if (value != null) {
+                out.put(value);
+            }
+        }
+    }
+
+    private static int timestampPrecision(LogicalType type) {
+        if (type instanceof TimestampType) {
+            return ((TimestampType) type).getPrecision();
+        }
+        if (type instanceof LocalZonedTimestampType) {
+            return ((LocalZonedTimestampType) type).getPrecision();
+        }
+        return TimestampType.DEFAULT_PRECISION;
+    }
+
+    private static byte typeTag(LogicalType type) {
+        switch (type.getTypeRoot()) {
+            case NULL:
+                return TYPE_NULL;
+            case BOOLEAN:
+                return TYPE_BOOLEAN;
+            case TINYINT:
+                return TYPE_TINYINT;
+            case SMALLINT:
+                return TYPE_SMALLINT;
+            case INTEGER:
+                return TYPE_INT;
+            case BIGINT:
+                return TYPE_BIGINT;
+            case FLOAT:
+                return TYPE_FLOAT;
+            case DOUBLE:
+                return TYPE_DOUBLE;
+            case DECIMAL:
+                return TYPE_DECIMAL;
+            case CHAR:
+            case VARCHAR:
+                return TYPE_STRING;
+            case BINARY:
+            case VARBINARY:
+                return TYPE_BINARY;
+            case DATE:
+                return TYPE_DATE;
+            case TIME_WITHOUT_TIME_ZONE:
+                return TYPE_TIME;
+            case TIMESTAMP_WITHOUT_TIME_ZONE:
+                return TYPE_TIMESTAMP;
+            case TIMESTAMP_WITH_LOCAL_TIME_ZONE:
+                return TYPE_TIMESTAMP_LTZ;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Growable little-endian byte buffer.
+     */
+    private static final class Buffer {
+        private byte[] bytes;
+        private int position;
+
+        Buffer(int initialCapacity) {
+            this.bytes = new byte[Math.max(64, initialCapacity)];
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+
+        void put(byte value) {
+            ensure(1);
+            bytes[position++] = value;
+        }
+
+        void put(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        void putShort(short value) {
+            ensure(2);
+            bytes[position++] = (byte) value;
+            bytes[position++] = (byte) (value >>> 8);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            bytes[position++] = (byte) value;
+            bytes[position++] = (byte) (value >>> 8);
+            bytes[position++] = (byte) (value >>> 16);
+            bytes[position++] = (byte) (value >>> 24);
+        }
+
+        void putLong(long value) {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+
+        void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putInt(utf8.length);
+            put(utf8);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+    }
+}
@@ -0,0 +1,596 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.operation.OperationStatus;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cache of compiled plans for INSERT statements and statement sets.
+ *
+ * Executing a statement parses, optimizes and generates code for it every time. For
+ * statements Flink can compile into a CompiledPlan, the cache keeps the plan's JSON in a file
+ * and runs later executions of the same statement as EXECUTE PLAN, which skips parsing and
+ * optimization. Queries (SELECT) cannot be compiled into plans in Flink 1.20 and always go
+ * through the planner.
+ *
+ * Plans are keyed by a fingerprint of the normalized statement (comments removed, whitespace
+ * outside literals collapsed), the session's configuration and current catalog, the USE
+ * statements run in the session, and the latest DDL for every object defined through the
+ * gateway. Re-running the same cells after the same DDL therefore hits; redefining a table
+ * misses. Tables changed outside this cluster are not noticed, since a plan embeds the table
+ * definitions it was compiled with.
+ *
+ * A miss compiles the statement with COMPILE PLAN in the same session before executing it,
+ * then executes the new plan. The plan is cached only if the session's fingerprint is still
+ * the one it was looked up with, so a plan is never stored under a state it was not compiled
+ * in. If compiling fails, the statement executes as usual. A plan whose execution fails is
+ * evicted. The least recently used plans are evicted beyond the entry limit. Hit and miss
+ * counts are published over JMX (PlanCacheMXBean).
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.plan-cache.max-entries  plans kept, 0 to disable (default 0)
+ *   notebooks.plan-cache.dir          plan directory (default: <java.io.tmpdir>/flink-notebooks-plans)
+ *   notebooks.plan-cache.persist      keep plans across restarts (default false)
+ */
+public class CompiledPlanCache implements NotebookGatewayService.StatementListener, PlanCacheMXBean, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledPlanCache.class);
+
+    static final ConfigOption<Integer> MAX_ENTRIES =
+        ConfigOptions.key("notebooks.plan-cache.max-entries").intType().defaultValue(0);
+    static final ConfigOption<String> DIR = ConfigOptions.key("notebooks.plan-cache.dir")
+        .stringType()
+        .defaultValue(Paths.get(System.getProperty("java.io.tmpdir"), "flink-notebooks-plans").toString());
+    static final ConfigOption<Boolean> PERSIST =
+        ConfigOptions.key("notebooks.plan-cache.persist").booleanType().defaultValue(false);
+
+    private static final String MBEAN_NAME = "com.flink.notebooks:type=PlanCache";
+    private static final String PLAN_SUFFIX = ".json";
+    private static final long WATCH_INTERVAL_MS = 100;
+    private static final int MAX_UNCOMPILABLE = 1000;
+    private static final long COMPILE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final long COMPILE_POLL_MS = 10;
+
+    private final NotebookGatewayService service;
+    private final int maxEntries;
+    private final Path directory;
+    private final boolean persist;
+    private final ScheduledExecutorService watcher;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Path> plans = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> compiling = new HashSet<>();
+    private final Set<String> uncompilable = new HashSet<>();
+
+    /** Latest DDL statement per object, from any session. */
+    private final Map<String, String> definitions = new ConcurrentHashMap<>();
+    /** Latest DDL statement per temporary object, per session. */
+    private final Map<SessionHandle, Map<String, String>> temporaryDefinitions = new ConcurrentHashMap<>();
+    /** USE statements per session, in order. */
+    private final Map<SessionHandle, List<String>> useStatements = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compiles = new AtomicLong();
+    private final AtomicLong compileFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompiledPlanCache(NotebookGatewayService service, Configuration flinkConfig) {
+        this.service = service;
+        this.maxEntries = Math.max(0, flinkConfig.get(MAX_ENTRIES));
+        this.directory = Paths.get(flinkConfig.get(DIR));
+        this.persist = flinkConfig.get(PERSIST);
+        this.watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("plan-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (maxEntries > 0) {
+            loadDirectory();
+            registerMBean();
+            LOG.info("Caching compiled plans in {} (max entries {}, persist {}, {} loaded)",
+                directory, maxEntries, persist, plans.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * A statement that can run from a compiled plan, and its plan if one is cached.
+     */
+    public static final class Plan {
+        final String fingerprint;
+        /** The normalized statement the fingerprint was computed from. */
+        final String normalized;
+        /** The statement after COMPILE PLAN '...' FOR. */
+        final String compilable;
+        final Path cachedFile;
+
+        Plan(String fingerprint, String normalized, String compilable, Path cachedFile) {
+            this.fingerprint = fingerprint;
+            this.normalized = normalized;
+            this.compilable = compilable;
+            this.cachedFile = cachedFile;
+        }
+
+        public boolean isCached() {
+            return cachedFile != null;
+        }
+
+        /**
+         * The EXECUTE PLAN statement to run instead of the original one.
+         */
+        public String executeStatement() {
+            return "EXECUTE PLAN '" + quote(cachedFile.toString()) + "'";
+        }
+    }
+
+    /**
+     * Look up the plan for a statement.
+     *
+     * @return The plan, or null if the statement cannot run from a compiled plan
+     */
+    public Plan lookup(SessionHandle session, String statement) {
+        if (maxEntries == 0) {
+            return null;
+        }
+        String sql = normalize(statement);
+        String upper = sql.toUpperCase(Locale.ROOT);
+        String body;
+        if (upper.startsWith("INSERT ")) {
+            body = sql;
+        } else if (upper.startsWith("EXECUTE INSERT ") || upper.startsWith("EXECUTE STATEMENT SET ")) {
+            body = sql.substring("EXECUTE ".length());
+        } else {
+            return null;
+        }
+
+        String fingerprint;
+        try {
+            fingerprint = fingerprint(session, sql);
+        } catch (Exception e) {
+            LOG.debug("Could not fingerprint statement in session {}: {}", session, e.getMessage());
+            return null;
+        }
+
+        Path file;
+        synchronized (this) {
+            if (uncompilable.contains(fingerprint)) {
+                return null;
+            }
+            file = plans.get(fingerprint);
+        }
+        (file != null ? hits : misses).incrementAndGet();
+        return new Plan(fingerprint, sql, body, file);
+    }
+
+    /**
+     * After a miss: compile the statement's plan in the session and wait for it.
+     *
+     * @return The plan with its compiled file, or the given plan if it was not compiled and
+     *     the statement should execute as usual
+     */
+    public Plan compile(SessionHandle session, Plan plan) {
+        if (plan.isCached()) {
+            return plan;
+        }
+        synchronized (this) {
+            if (!compiling.add(plan.fingerprint)) {
+                return plan;
+            }
+        }
+        Path target = directory.resolve(plan.fingerprint + PLAN_SUFFIX);
+        Path temporary = directory.resolve(plan.fingerprint + "-" + System.nanoTime() + ".tmp");
+        long start = System.nanoTime();
+        OperationHandle compile = null;
+        try {
+            Files.createDirectories(directory);
+            String statement = "COMPILE PLAN '" + quote(temporary.toString()) + "' FOR " + plan.compilable;
+            compile = service.submitInternal(session, statement, OperationClass.JOB);
+            OperationStatus status = awaitTerminal(session, compile);
+            if (status != OperationStatus.FINISHED || !Files.exists(temporary)) {
+                compileFailed(plan.fingerprint, status == null
+                    ? "COMPILE PLAN did not finish within " + COMPILE_TIMEOUT_MS + " ms"
+                    : "COMPILE PLAN ended " + status);
+                return plan;
+            }
+            if (!plan.fingerprint.equals(fingerprint(session, plan.normalized))) {
+                // A SET, USE or DDL ran in the session meanwhile; the plan may reflect either state
+                LOG.debug("Session {} changed while compiling plan {}, not caching it", session, plan.fingerprint);
+                return plan;
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            put(plan.fingerprint, target);
+            compiles.incrementAndGet();
+            LOG.debug("Compiled plan {} in {} ms", plan.fingerprint, (System.nanoTime() - start) / 1_000_000);
+            return new Plan(plan.fingerprint, plan.normalized, plan.compilable, target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return plan;
+        } catch (Exception e) {
+            compileFailed(plan.fingerprint, e.getMessage());
+            return plan;
+        } finally {
+            synchronized (this) {
+                compiling.remove(plan.fingerprint);
+            }
+            deleteQuietly(temporary);
+            if (compile != null) {
+                try {
+                    service.closeOperation(session, compile);
+                } catch (Exception e) {
+                    LOG.debug("Could not close COMPILE PLAN operation {}: {}", compile, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * After executing a cached plan: evict it if the execution fails.
+     */
+    public void afterExecute(SessionHandle session, OperationHandle executed, Plan plan) {
+        if (!plan.isCached()) {
+            return;
+        }
+        watch(session, executed, status -> {
+            if (status == OperationStatus.ERROR) {
+                LOG.info("Executing cached plan {} failed, evicting it", plan.fingerprint);
+                evict(plan.fingerprint);
+            }
+        });
+    }
+
+    @Override
+    public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+            OperationClass operationClass) {
+        DdlStatement ddl = DdlStatement.parse(statement);
+        boolean isUse = ddl == null && statement != null
+            && OperationClass.stripLeadingComments(statement).toUpperCase(Locale.ROOT).startsWith("USE");
+        if (ddl != null || isUse) {
+            // The gateway's own query plan cache is keyed by statement text alone
+            service.invalidateQueryPlans();
+            watch(session, operation, status -> service.invalidateQueryPlans());
+        }
+        if (ddl != null && ddl.objectType != null && ddl.verb.equals("DROP")) {
+            // Once the object is gone, plans compiled before it existed match again
+            String object = ddl.objectType + ":" + String.join(".", ddl.name);
+            watch(session, operation, status -> {
+                if (status == OperationStatus.FINISHED) {
+                    Map<String, String> objects = ddl.temporary ? temporaryDefinitions.get(session) : definitions;
+                    if (objects != null) {
+                        objects.remove(object);
+                    }
+                }
+            });
+        } else if (ddl != null) {
+            String object = ddl.objectType == null ? normalize(statement) : ddl.objectType + ":" + String.join(".", ddl.name);
+            if (ddl.temporary) {
+                temporaryDefinitions.computeIfAbsent(session, s -> new ConcurrentHashMap<>()).put(object, normalize(statement));
+            } else {
+                definitions.put(object, normalize(statement));
+            }
+        } else if (isUse) {
+            useStatements.computeIfAbsent(session, s -> Collections.synchronizedList(new ArrayList<>()))
+                .add(normalize(statement));
+        }
+    }
+
+    @Override
+    public void onSessionClosed(SessionHandle session) {
+        useStatements.remove(session);
+        temporaryDefinitions.remove(session);
+    }
+
+    @Override
+    public void close() {
+        watcher.shutdownNow();
+        if (maxEntries == 0) {
+            return;
+        }
+        unregisterMBean();
+        if (!persist) {
+            synchronized (this) {
+                plans.values().forEach(CompiledPlanCache::deleteQuietly);
+                plans.clear();
+            }
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getCompiles() {
+        return compiles.get();
+    }
+
+    @Override
+    public long getCompileFailures() {
+        return compileFailures.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return plans.size();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Calls back with an operation's terminal status, checking every WATCH_INTERVAL_MS.
+     */
+    private void watch(SessionHandle session, OperationHandle operation, Consumer<OperationStatus> done) {
+        watcher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                OperationStatus status = service.getOperationStatus(session, operation);
+                if (status == null) {
+                    // Closed by the client before it finished
+                    status = OperationStatus.CLOSED;
+                }
+                if (status.isTerminalStatus()) {
+                    done.accept(status);
+                } else {
+                    watcher.schedule(this, WATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }, WATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for an operation to end, at most COMPILE_TIMEOUT_MS.
+     *
+     * @return Its terminal status, or null if it did not end in time
+     */
+    private OperationStatus awaitTerminal(SessionHandle session, OperationHandle operation) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + COMPILE_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            OperationStatus status = service.getOperationStatus(session, operation);
+            if (status == null) {
+                return OperationStatus.CLOSED;
+            }
+            if (status.isTerminalStatus()) {
+                return status;
+            }
+            Thread.sleep(COMPILE_POLL_MS);
+        }
+        return null;
+    }
+
+    private synchronized void put(String fingerprint, Path file) {
+        plans.put(fingerprint, file);
+        Iterator<Map.Entry<String, Path>> eldest = plans.entrySet().iterator();
+        while (plans.size() > maxEntries && eldest.hasNext()) {
+            deleteQuietly(eldest.next().getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void evict(String fingerprint) {
+        Path file = plans.remove(fingerprint);
+        if (file != null) {
+            deleteQuietly(file);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void compileFailed(String fingerprint, String reason) {
+        compileFailures.incrementAndGet();
+        LOG.debug("Could not compile plan {}: {}", fingerprint, reason);
+        if (uncompilable.size() >= MAX_UNCOMPILABLE) {
+            uncompilable.clear();
+        }
+        uncompilable.add(fingerprint);
+    }
+
+    /**
+     * Fingerprint of a normalized statement in the session's current state. Tracks DDL and
+     * USE statements only while this cache is a statement listener, which QueryResultCache
+     * relies on too.
+     */
+    String fingerprint(SessionHandle session, String normalizedSql) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        update(digest, normalizedSql);
+        update(digest, service.getCurrentCatalog(session));
+        new TreeMap<>(service.getSessionConfig(session)).forEach((key, value) -> {
+            update(digest, key);
+            update(digest, value);
+        });
+        List<String> uses = useStatements.get(session);
+        if (uses != null) {
+            synchronized (uses) {
+                uses.forEach(use -> update(digest, use));
+            }
+        }
+        new TreeMap<>(definitions).forEach((object, definition) -> update(digest, definition));
+        Map<String, String> temporary = temporaryDefinitions.get(session);
+        if (temporary != null) {
+            new TreeMap<>(temporary).forEach((object, definition) -> update(digest, definition));
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Strip comments and a trailing semicolon and collapse whitespace, leaving string
+     * literals and quoted identifiers as they are.
+     */
+    static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        boolean pendingSpace = false;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '-' && i + 1 < sql.length() && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end;
+                pendingSpace = true;
+            } else if (c == '/' && i + 1 < sql.length() && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 2;
+                pendingSpace = true;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                pendingSpace = true;
+            } else {
+                if (pendingSpace && out.length() > 0) {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+                if (c == '\'' || c == '`' || c == '"') {
+                    int end = i + 1;
+                    while (end < sql.length()) {
+                        if (sql.charAt(end) == c) {
+                            if (end + 1 < sql.length() && sql.charAt(end + 1) == c) {
+                                end += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        end++;
+                    }
+                    end = Math.min(end + 1, sql.length());
+                    out.append(sql, i, end);
+                    i = end;
+                } else {
+                    out.append(c);
+                    i++;
+                }
+            }
+        }
+        while (out.length() > 0 && (out.charAt(out.length() - 1) == ';' || out.charAt(out.length() - 1) == ' ')) {
+            out.setLength(out.length() - 1);
+        }
+        return out.toString();
+    }
+
+    private static String quote(String path) {
+        return path.replace("'", "''");
+    }
+
+    private void loadDirectory() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp") || (name.endsWith(PLAN_SUFFIX) && !persist)) {
+                    deleteQuietly(file);
+                } else if (name.endsWith(PLAN_SUFFIX)) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read plan directory {}: {}", directory, e.getMessage());
+            return;
+        }
+
+        // Oldest first, so the least recently written plans are evicted first
+        files.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            put(name.substring(0, name.length() - PLAN_SUFFIX.length()), file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOG.warn("Could not register plan cache MBean: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.debug("Could not unregister plan cache MBean: {}", e.getMessage());
+        }
+    }
+}
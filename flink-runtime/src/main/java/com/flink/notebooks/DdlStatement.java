@@ -0,0 +1,74 @@
+package com.flink.notebooks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The object a CREATE, DROP, ALTER or REPLACE statement defines, read from its leading
+ * keywords and name. Only the statement's head is parsed; the definition itself is not.
+ */
+public final class DdlStatement {
+
+    private static final String IDENTIFIER = "(?:`(?:[^`]|``)*`|[\\w$]+)";
+    private static final Pattern DDL = Pattern.compile(
+        "^(CREATE|DROP|ALTER|REPLACE)\\s+(?:OR\\s+REPLACE\\s+)?(TEMPORARY\\s+)?(?:SYSTEM\\s+)?"
+            + "(CATALOG|DATABASE|MATERIALIZED\\s+TABLE|TABLE|VIEW|FUNCTION)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?"
+            + "(" + IDENTIFIER + "(?:\\s*\\.\\s*" + IDENTIFIER + ")*)",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern IDENTIFIER_PART = Pattern.compile(IDENTIFIER);
+
+    /** CREATE, DROP, ALTER or REPLACE. */
+    public final String verb;
+    /** CATALOG, DATABASE, TABLE, VIEW, MATERIALIZED TABLE or FUNCTION; null if not recognized. */
+    public final String objectType;
+    public final boolean temporary;
+    /** Name parts as written, unquoted; empty if the object type is not recognized. */
+    public final List<String> name;
+
+    private DdlStatement(String verb, String objectType, boolean temporary, List<String> name) {
+        this.verb = verb;
+        this.objectType = objectType;
+        this.temporary = temporary;
+        this.name = name;
+    }
+
+    /**
+     * Parse a statement's head.
+     *
+     * @return The DDL statement, or null if the statement is not DDL
+     */
+    public static DdlStatement parse(String statement) {
+        if (statement == null) {
+            return null;
+        }
+        String sql = OperationClass.stripLeadingComments(statement);
+        String verb = sql.split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+        if (!verb.equals("CREATE") && !verb.equals("DROP") && !verb.equals("ALTER") && !verb.equals("REPLACE")) {
+            return null;
+        }
+
+        Matcher matcher = DDL.matcher(sql);
+        if (!matcher.find()) {
+            return new DdlStatement(verb, null, false, Collections.emptyList());
+        }
+        String objectType = matcher.group(3).toUpperCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return new DdlStatement(verb, objectType, matcher.group(2) != null, identifierParts(matcher.group(4)));
+    }
+
+    private static List<String> identifierParts(String qualifiedName) {
+        List<String> parts = new ArrayList<>();
+        Matcher matcher = IDENTIFIER_PART.matcher(qualifiedName);
+        while (matcher.find()) {
+            String part = matcher.group();
+            if (part.startsWith("`")) {
+                part = part.substring(1, part.length() - 1).replace("``", "`");
+            }
+            parts.add(part);
+        }
+        return Collections.unmodifiableList(parts);
+    }
+}
@@ -0,0 +1,425 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Operation executor that shares its workers fairly between gateway sessions.
+ *
+ * With one shared FIFO pool, a notebook that fires 20 cells at once takes every worker and
+ * other sessions on the same runner wait behind it. This executor keeps one queue per
+ * SessionHandle and picks work by deficit round-robin: each session with pending work gets
+ * a quantum of operations per turn, and no session may run more than its concurrency cap
+ * at once. Each operation costs one unit, since its runtime is unknown at submission.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.fair.threads                    total worker threads (default 10)
+ *   notebooks.fair.max-concurrent-per-session running operations per session (default 4)
+ *   notebooks.fair.max-queued-per-session     queued operations per session before rejecting (default 100)
+ *   notebooks.fair.quantum                    operations per session per round (default 1)
+ *
+ * Per-session counters outlive idle periods and are dropped when the session closes; register
+ * the executor as a statement listener of the gateway service for that.
+ */
+public class FairShareOperationExecutor extends AbstractExecutorService
+        implements NotebookGatewayService.StatementListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FairShareOperationExecutor.class);
+
+    static final ConfigOption<Integer> THREADS =
+        ConfigOptions.key("notebooks.fair.threads").intType().defaultValue(10);
+    static final ConfigOption<Integer> MAX_CONCURRENT_PER_SESSION =
+        ConfigOptions.key("notebooks.fair.max-concurrent-per-session").intType().defaultValue(4);
+    static final ConfigOption<Integer> MAX_QUEUED_PER_SESSION =
+        ConfigOptions.key("notebooks.fair.max-queued-per-session").intType().defaultValue(100);
+    static final ConfigOption<Integer> QUANTUM =
+        ConfigOptions.key("notebooks.fair.quantum").intType().defaultValue(1);
+
+    /** Queue key for operations submitted without a SubmissionContext. */
+    private static final String UNKNOWN_SESSION = "unknown";
+
+    /**
+     * Idle sessions kept for their counters. Sessions that expire are never reported closed,
+     * so beyond this the least recently used idle ones are dropped.
+     */
+    private static final int MAX_RETAINED_SESSIONS = 1024;
+
+    private final int maxConcurrentPerSession;
+    private final int maxQueuedPerSession;
+    private final int quantum;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+
+    // Access order, so the eldest idle sessions are dropped first
+    private final Map<Object, SessionQueue> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<SessionQueue> ring = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private boolean shutdown;
+    private int liveWorkers;
+
+    public FairShareOperationExecutor(Configuration flinkConfig) {
+        int threads = flinkConfig.get(THREADS);
+        this.maxConcurrentPerSession = flinkConfig.get(MAX_CONCURRENT_PER_SESSION);
+        this.maxQueuedPerSession = flinkConfig.get(MAX_QUEUED_PER_SESSION);
+        this.quantum = Math.max(1, flinkConfig.get(QUANTUM));
+
+        LOG.info("Fair-share operation executor: {} thread(s), {} running / {} queued per session, quantum {}",
+            threads, maxConcurrentPerSession, maxQueuedPerSession, quantum);
+
+        liveWorkers = threads;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::workerLoop);
+            thread.setName("sql-gateway-operation-" + thread.getId());
+            thread.setDaemon(false); // Non-daemon to prevent premature termination
+            workers.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        SubmissionContext context = SubmissionContext.current();
+        Object key = context != null && context.getSessionHandle() != null
+            ? context.getSessionHandle()
+            : UNKNOWN_SESSION;
+
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Operation executor is shutting down");
+            }
+
+            SessionQueue queue = sessions.computeIfAbsent(key, SessionQueue::new);
+            if (queue.pending.size() >= maxQueuedPerSession) {
+                throw new RejectedExecutionException(String.format(
+                    "Session %s already has %d queued operations (%d running). " +
+                    "Wait for running statements to finish or cancel some before retrying.",
+                    key, queue.pending.size(), queue.running
+                ));
+            }
+
+            queue.pending.addLast(new Task(command, System.nanoTime()));
+            queue.submitted++;
+            if (!queue.inRing) {
+                queue.inRing = true;
+                ring.addLast(queue);
+            }
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workerLoop() {
+        try {
+            while (true) {
+                Task task;
+                SessionQueue queue;
+
+                lock.lock();
+                try {
+                    while ((task = nextTask()) == null) {
+                        if (shutdown && ring.isEmpty()) {
+                            return;
+                        }
+                        workAvailable.await();
+                    }
+                    queue = task.queue;
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    task.command.run();
+                } catch (Throwable t) {
+                    LOG.error("Uncaught error in gateway operation for session {}", queue.key, t);
+                } finally {
+                    completed(queue);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.lock();
+            try {
+                if (--liveWorkers == 0) {
+                    terminated.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Pick the next task by deficit round-robin. Must be called with the lock held.
+     *
+     * @return The next task, or null if every session with pending work is at its cap
+     */
+    private Task nextTask() {
+        for (int i = ring.size(); i > 0; i--) {
+            SessionQueue queue = ring.peekFirst();
+
+            if (queue.running >= maxConcurrentPerSession) {
+                ring.addLast(ring.pollFirst());
+                continue;
+            }
+
+            if (queue.deficit <= 0) {
+                queue.deficit += quantum;
+            }
+
+            Task task = queue.pending.pollFirst();
+            task.queue = queue;
+            queue.deficit--;
+            queue.running++;
+            queue.recordWait(System.nanoTime() - task.enqueuedNanos);
+
+            if (queue.pending.isEmpty()) {
+                ring.pollFirst();
+                queue.inRing = false;
+                queue.deficit = 0;
+            } else if (queue.deficit <= 0) {
+                ring.addLast(ring.pollFirst());
+            }
+            return task;
+        }
+        return null;
+    }
+
+    private void completed(SessionQueue queue) {
+        lock.lock();
+        try {
+            queue.running--;
+            if (queue.isIdle()) {
+                if (queue.closed) {
+                    sessions.remove(queue.key);
+                } else if (sessions.size() > MAX_RETAINED_SESSIONS) {
+                    dropIdleSessions();
+                }
+            }
+            // A session below its cap may have pending work again
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the least recently used idle sessions beyond MAX_RETAINED_SESSIONS. Must be called
+     * with the lock held.
+     */
+    private void dropIdleSessions() {
+        Iterator<SessionQueue> queues = sessions.values().iterator();
+        while (sessions.size() > MAX_RETAINED_SESSIONS && queues.hasNext()) {
+            if (queues.next().isIdle()) {
+                queues.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+            OperationClass operationClass) {
+    }
+
+    /**
+     * Drop the session's counters, once its last operation has finished.
+     */
+    @Override
+    public void onSessionClosed(SessionHandle session) {
+        lock.lock();
+        try {
+            SessionQueue queue = sessions.get(session);
+            if (queue == null) {
+                return;
+            }
+            if (queue.isIdle()) {
+                sessions.remove(session);
+            } else {
+                queue.closed = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Snapshot of the per-session queue state, keyed by session id. Sessions stay in it while
+     * idle, until they are closed.
+     */
+    public Map<String, SessionStats> getSessionStats() {
+        lock.lock();
+        try {
+            Map<String, SessionStats> stats = new LinkedHashMap<>();
+            long now = System.nanoTime();
+            for (SessionQueue queue : sessions.values()) {
+                Task oldest = queue.pending.peekFirst();
+                stats.put(sessionId(queue.key), new SessionStats(
+                    queue.pending.size(),
+                    queue.running,
+                    queue.submitted,
+                    queue.started == 0 ? 0 : queue.totalWaitNanos / queue.started / 1_000_000,
+                    queue.maxWaitNanos / 1_000_000,
+                    oldest == null ? 0 : (now - oldest.enqueuedNanos) / 1_000_000
+                ));
+            }
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String sessionId(Object key) {
+        return key instanceof SessionHandle ? ((SessionHandle) key).getIdentifier().toString() : String.valueOf(key);
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (SessionQueue queue : ring) {
+                for (Task task : queue.pending) {
+                    pending.add(task.command);
+                }
+                queue.pending.clear();
+            }
+            ring.clear();
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.forEach(Thread::interrupt);
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return shutdown && liveWorkers == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (liveWorkers > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = terminated.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Per-session queue state at the time of the snapshot. Wait times are in milliseconds.
+     */
+    public static class SessionStats {
+        public final int queued;
+        public final int running;
+        public final long submitted;
+        public final long avgWaitMs;
+        public final long maxWaitMs;
+        public final long oldestQueuedMs;
+
+        SessionStats(int queued, int running, long submitted, long avgWaitMs, long maxWaitMs, long oldestQueuedMs) {
+            this.queued = queued;
+            this.running = running;
+            this.submitted = submitted;
+            this.avgWaitMs = avgWaitMs;
+            this.maxWaitMs = maxWaitMs;
+            this.oldestQueuedMs = oldestQueuedMs;
+        }
+    }
+
+    private static class Task {
+        final Runnable command;
+        final long enqueuedNanos;
+        SessionQueue queue;
+
+        Task(Runnable command, long enqueuedNanos) {
+            this.command = command;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private static class SessionQueue {
+        final Object key;
+        final Deque<Task> pending = new ArrayDeque<>();
+        int running;
+        int deficit;
+        boolean inRing;
+        boolean closed;
+        long submitted;
+        long started;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        SessionQueue(Object key) {
+            this.key = key;
+        }
+
+        boolean isIdle() {
+            return running == 0 && pending.isEmpty();
+        }
+
+        void recordWait(long waitNanos) {
+            started++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+    }
+}
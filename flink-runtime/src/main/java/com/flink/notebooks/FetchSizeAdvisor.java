@@ -0,0 +1,158 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recommends how many rows each result fetch of an operation should ask for.
+ *
+ * A fixed batch of 100 rows means a 100k-row batch result takes a thousand round trips,
+ * while a large fixed batch makes wide rows produce multi-megabyte responses. The advisor
+ * tracks, per operation, the encoded bytes per row and the rate at which the client drains
+ * rows, and recommends:
+ *
+ *   min(target bytes / bytes per row, max rows)            upper bound from row width
+ *   max(buffered rows, drain rate x fetch interval)         demand, doubled after a full batch
+ *
+ * Buffered rows are what the gateway already holds for the operation (see
+ * NotebookGatewayService#getBufferedRowCount). A batch result that is fully buffered is thus
+ * fetched in batches of the row-width bound, while a slow stream gets small batches.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.fetch.target-batch-bytes  encoded bytes per batch to aim for (default 1048576)
+ *   notebooks.fetch.min-rows            smallest recommendation (default 100)
+ *   notebooks.fetch.max-rows            largest recommendation (default 10000)
+ */
+public class FetchSizeAdvisor {
+
+    static final ConfigOption<Long> TARGET_BATCH_BYTES =
+        ConfigOptions.key("notebooks.fetch.target-batch-bytes").longType().defaultValue(1024L * 1024);
+    static final ConfigOption<Integer> MIN_ROWS =
+        ConfigOptions.key("notebooks.fetch.min-rows").intType().defaultValue(100);
+    static final ConfigOption<Integer> MAX_ROWS =
+        ConfigOptions.key("notebooks.fetch.max-rows").intType().defaultValue(10000);
+
+    /** Row width assumed before the first batch of an operation has been encoded. */
+    private static final int INITIAL_ROW_BYTES = 128;
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final long FETCH_INTERVAL_MS = 1000;
+    private static final long IDLE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final long targetBatchBytes;
+    private final int minRows;
+    private final int maxRows;
+    private final Map<OperationHandle, Stats> operations = new ConcurrentHashMap<>();
+
+    public FetchSizeAdvisor(Configuration flinkConfig) {
+        this.targetBatchBytes = flinkConfig.get(TARGET_BATCH_BYTES);
+        this.minRows = Math.max(1, flinkConfig.get(MIN_ROWS));
+        this.maxRows = Math.max(minRows, flinkConfig.get(MAX_ROWS));
+    }
+
+    /**
+     * Recommended number of rows for the next fetch of an operation.
+     *
+     * @param operation The operation being fetched
+     * @param bufferedRows Rows the gateway holds for the operation, or -1 if unknown
+     */
+    public int recommend(OperationHandle operation, int bufferedRows) {
+        Stats stats = operations.get(operation);
+        double rowBytes = stats != null ? stats.avgRowBytes : INITIAL_ROW_BYTES;
+        int widthBound = clamp((long) (targetBatchBytes / Math.max(1.0, rowBytes)));
+
+        if (stats == null) {
+            return bufferedRows < 0 ? widthBound : Math.min(widthBound, clamp(bufferedRows));
+        }
+
+        long demand = (long) Math.ceil(stats.drainRowsPerSecond * FETCH_INTERVAL_MS / 1000.0);
+        if (stats.lastBatchFull) {
+            demand = Math.max(demand, stats.lastRows * 2L);
+        }
+        if (bufferedRows > 0) {
+            demand = Math.max(demand, bufferedRows);
+        } else if (bufferedRows < 0 && stats.lastBatchFull) {
+            demand = widthBound;
+        }
+        return Math.min(widthBound, clamp(demand));
+    }
+
+    /**
+     * Largest row count expected to fit in the given number of bytes, based on the row
+     * width seen so far for the operation.
+     */
+    public int rowsForBytes(OperationHandle operation, long maxBytes) {
+        Stats stats = operations.get(operation);
+        double rowBytes = stats != null ? stats.avgRowBytes : INITIAL_ROW_BYTES;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (long) (maxBytes / Math.max(1.0, rowBytes))));
+    }
+
+    /**
+     * Record a fetch that returned rows.
+     *
+     * @param operation The operation fetched
+     * @param requestedRows The maxRows the fetch asked for
+     * @param rows Rows returned
+     * @param encodedBytes Size of the encoded response body
+     */
+    public void record(OperationHandle operation, int requestedRows, int rows, long encodedBytes) {
+        long now = System.nanoTime();
+        Stats stats = operations.computeIfAbsent(operation, k -> new Stats(now));
+        synchronized (stats) {
+            if (rows > 0) {
+                double rowBytes = (double) encodedBytes / rows;
+                stats.avgRowBytes = stats.samples == 0
+                    ? rowBytes
+                    : EWMA_WEIGHT * rowBytes + (1 - EWMA_WEIGHT) * stats.avgRowBytes;
+                stats.samples++;
+            }
+
+            double elapsedSeconds = (now - stats.lastFetchNanos) / 1e9;
+            if (stats.fetches > 0 && elapsedSeconds > 0) {
+                double rate = rows / elapsedSeconds;
+                stats.drainRowsPerSecond = EWMA_WEIGHT * rate + (1 - EWMA_WEIGHT) * stats.drainRowsPerSecond;
+            }
+
+            stats.lastRows = rows;
+            stats.lastBatchFull = rows > 0 && rows >= requestedRows;
+            stats.lastFetchNanos = now;
+            stats.fetches++;
+        }
+        expireIdle(now);
+    }
+
+    /**
+     * Forget an operation once its results are exhausted.
+     */
+    public void finished(OperationHandle operation) {
+        operations.remove(operation);
+    }
+
+    private void expireIdle(long now) {
+        long expiryNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_EXPIRY_MS);
+        operations.entrySet().removeIf(entry -> now - entry.getValue().lastFetchNanos > expiryNanos);
+    }
+
+    private int clamp(long rows) {
+        return (int) Math.max(minRows, Math.min(maxRows, rows));
+    }
+
+    private static class Stats {
+        double avgRowBytes = INITIAL_ROW_BYTES;
+        double drainRowsPerSecond;
+        int lastRows;
+        boolean lastBatchFull;
+        long lastFetchNanos;
+        long fetches;
+        long samples;
+
+        Stats(long now) {
+            this.lastFetchNanos = now;
+        }
+    }
+}
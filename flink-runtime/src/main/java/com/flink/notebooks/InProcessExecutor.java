@@ -0,0 +1,48 @@
+package com.flink.notebooks;
+
+import org.apache.flink.api.dag.Pipeline;
+import org.apache.flink.client.deployment.executors.PipelineExecutorUtils;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.core.execution.JobClient;
+import org.apache.flink.core.execution.PipelineExecutor;
+import org.apache.flink.runtime.jobgraph.JobGraph;
+import org.apache.flink.runtime.minicluster.MiniCluster;
+import org.apache.flink.runtime.minicluster.MiniClusterJobClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pipeline executor that hands JobGraphs directly to the runner's MiniCluster.
+ *
+ * The "remote" target serializes every JobGraph and uploads it through the MiniCluster's
+ * own REST endpoint on port 8081. Since the SQL Gateway runs in the same JVM, this executor
+ * skips the HTTP round-trip and submits to the Dispatcher in-process.
+ */
+public class InProcessExecutor implements PipelineExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InProcessExecutor.class);
+
+    private final MiniCluster miniCluster;
+
+    public InProcessExecutor(MiniCluster miniCluster) {
+        this.miniCluster = miniCluster;
+    }
+
+    @Override
+    public CompletableFuture<JobClient> execute(
+            Pipeline pipeline, Configuration configuration, ClassLoader userCodeClassloader) throws Exception {
+        JobGraph jobGraph = PipelineExecutorUtils.getJobGraph(pipeline, configuration, userCodeClassloader);
+        LOG.debug("Submitting job {} ({}) to in-process MiniCluster", jobGraph.getJobID(), jobGraph.getName());
+
+        // NOTHING: the MiniCluster is shared by all sessions and must outlive every job
+        return miniCluster.submitJob(jobGraph)
+            .thenApply(result -> new MiniClusterJobClient(
+                result.getJobID(),
+                miniCluster,
+                userCodeClassloader,
+                MiniClusterJobClient.JobFinalizationBehavior.NOTHING
+            ));
+    }
+}
@@ -0,0 +1,96 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.DeploymentOptions;
+import org.apache.flink.core.execution.PipelineExecutor;
+import org.apache.flink.core.execution.PipelineExecutorFactory;
+import org.apache.flink.runtime.minicluster.MiniCluster;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Factory for the "in-process" execution target.
+ *
+ * Flink discovers executor factories through the ServiceLoader, so the factory itself is
+ * created by Flink and cannot be handed the MiniCluster directly. MiniClusterRunner registers
+ * its MiniCluster here once it has started, and every executor created afterwards submits
+ * to that instance.
+ *
+ * The gateway accepts statements while the MiniCluster is still starting (see StartupPhases),
+ * so the runner announces the MiniCluster with {@link #expect()} first; executors requested in
+ * between wait for it to be registered.
+ */
+public class InProcessExecutorFactory implements PipelineExecutorFactory {
+
+    public static final String NAME = "in-process";
+
+    private static final long STARTUP_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    /** Completed with the registered MiniCluster; null while none is registered or expected. */
+    private static final AtomicReference<CompletableFuture<MiniCluster>> MINI_CLUSTER = new AtomicReference<>();
+
+    /**
+     * Announce that a MiniCluster is starting and will be registered.
+     */
+    static void expect() {
+        MINI_CLUSTER.compareAndSet(null, new CompletableFuture<>());
+    }
+
+    /**
+     * Register the MiniCluster that in-process executors should submit jobs to.
+     */
+    static void register(MiniCluster miniCluster) {
+        expect();
+        if (!MINI_CLUSTER.get().complete(miniCluster)) {
+            MINI_CLUSTER.set(CompletableFuture.completedFuture(miniCluster));
+        }
+    }
+
+    /**
+     * Clear the registered MiniCluster (called when the runner stops).
+     */
+    static void unregister(MiniCluster miniCluster) {
+        CompletableFuture<MiniCluster> registered = MINI_CLUSTER.get();
+        if (registered != null && (!registered.isDone() || registered.getNow(null) == miniCluster)) {
+            MINI_CLUSTER.compareAndSet(registered, null);
+            // Release executors still waiting for a MiniCluster that will not come
+            registered.complete(null);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCompatibleWith(Configuration configuration) {
+        return NAME.equalsIgnoreCase(configuration.get(DeploymentOptions.TARGET));
+    }
+
+    @Override
+    public PipelineExecutor getExecutor(Configuration configuration) {
+        CompletableFuture<MiniCluster> registered = MINI_CLUSTER.get();
+        MiniCluster miniCluster = null;
+        if (registered != null) {
+            try {
+                miniCluster = registered.get(STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // Reported below like a missing MiniCluster
+            }
+        }
+        if (miniCluster == null) {
+            throw new IllegalStateException(
+                "No MiniCluster registered for execution target '" + NAME + "'. " +
+                "This target is only available inside a running MiniClusterRunner."
+            );
+        }
+        return new InProcessExecutor(miniCluster);
+    }
+}
@@ -0,0 +1,298 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.catalog.UniqueConstraint;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.binary.BinaryRowData;
+import org.apache.flink.table.runtime.typeutils.RowDataSerializer;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.RowType;
+import org.apache.flink.types.RowKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The current state of a changelog result, compacted into a table of rows.
+ *
+ * Streaming aggregations emit -U/+U pairs for every update, so a client that only wants to
+ * show the current result would otherwise receive, and reconcile, the whole changelog. The
+ * view applies the changelog as it arrives and serves either a snapshot of the current rows
+ * or the rows changed and deleted since a version the client already has.
+ *
+ * Rows are identified by an id that stays the same while a row is updated in place:
+ *
+ *   keyed      with key columns, +I/+U replace the row with the same key and -U/-D remove it
+ *   row-equal  without, -U/-D remove one row equal to the retracted one
+ *
+ * In both modes a +U directly following a -U takes over the id of the retracted row, so a
+ * retraction pair is one update of one row rather than a delete and an insert.
+ *
+ * Every change gets the next version number. Deletes are remembered as tombstones, at most
+ * as many as the row limit; a client asking for changes from before the oldest dropped
+ * tombstone gets a snapshot instead. When the view exceeds the row limit, the oldest rows
+ * are removed. Not thread-safe; callers synchronize.
+ */
+public class MaterializedResultView {
+
+    private final RowDataSerializer rowSerializer;
+    private final RowDataSerializer keySerializer;
+    private final RowData.FieldGetter[] keyGetters;
+    private final List<String> keyNames;
+    private final int maxRows;
+
+    /** Live rows by id, oldest first. */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    /** Live rows by key (keyed mode) or by row content (row-equal mode). */
+    private final Map<BinaryRowData, ArrayDeque<Entry>> index = new HashMap<>();
+    /** Live rows by the version of their last change. */
+    private final TreeMap<Long, Entry> changes = new TreeMap<>();
+    /** Ids of deleted rows by the version of the delete. */
+    private final TreeMap<Long, Long> tombstones = new TreeMap<>();
+
+    private long version;
+    private long nextId;
+    /** Changes from before this version may be missing tombstones. */
+    private long horizon;
+    /** Row removed by the last change if it was a -U, for the +U that may follow. */
+    private Entry retracted;
+    private long retractedVersion;
+
+    /**
+     * @param schema Result schema
+     * @param keyColumns Key columns, or null to use the schema's primary key if it has one
+     * @param maxRows Maximum number of rows kept
+     */
+    public MaterializedResultView(ResolvedSchema schema, List<String> keyColumns, int maxRows) {
+        RowType rowType = (RowType) schema.toPhysicalRowDataType().getLogicalType();
+        this.rowSerializer = new RowDataSerializer(rowType);
+        this.maxRows = Math.max(1, maxRows);
+
+        List<String> names = keyColumns;
+        if (names == null || names.isEmpty()) {
+            names = schema.getPrimaryKey().map(UniqueConstraint::getColumns).orElse(null);
+        }
+        if (names == null || names.isEmpty()) {
+            this.keyNames = null;
+            this.keySerializer = null;
+            this.keyGetters = null;
+            return;
+        }
+
+        List<String> columnNames = schema.getColumnNames();
+        LogicalType[] keyTypes = new LogicalType[names.size()];
+        this.keyGetters = new RowData.FieldGetter[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            int field = columnNames.indexOf(names.get(i));
+            if (field < 0) {
+                throw new IllegalArgumentException("Key column '" + names.get(i) + "' is not in the result. Columns: "
+                    + String.join(", ", columnNames));
+            }
+            Column column = schema.getColumns().get(field);
+            keyTypes[i] = column.getDataType().getLogicalType();
+            keyGetters[i] = RowData.createFieldGetter(keyTypes[i], field);
+        }
+        this.keyNames = names;
+        this.keySerializer = new RowDataSerializer(keyTypes);
+    }
+
+    /**
+     * Key columns, or null if rows are matched by content.
+     */
+    public List<String> getKeyColumns() {
+        return keyNames;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Apply a batch of changelog rows.
+     */
+    public void apply(List<RowData> rows) {
+        for (RowData row : rows) {
+            switch (row.getRowKind()) {
+                case INSERT:
+                case UPDATE_AFTER:
+                    upsert(row, row.getRowKind() == RowKind.UPDATE_AFTER);
+                    break;
+                case UPDATE_BEFORE:
+                case DELETE:
+                    retract(row, row.getRowKind() == RowKind.UPDATE_BEFORE);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown row kind " + row.getRowKind());
+            }
+        }
+        while (entries.size() > maxRows) {
+            Entry oldest = entries.values().iterator().next();
+            remove(oldest);
+            addTombstone(oldest.id);
+        }
+    }
+
+    /**
+     * Rows changed and deleted since the given version, or all rows if the client has no
+     * version yet or changes from that far back are no longer known.
+     */
+    public Changes changesSince(long since) {
+        List<Entry> changed;
+        List<Long> deleted;
+        boolean snapshot = since <= 0 || since < horizon;
+        if (snapshot) {
+            changed = new ArrayList<>(entries.values());
+            deleted = new ArrayList<>();
+        } else {
+            changed = new ArrayList<>(changes.tailMap(since, false).values());
+            changed.sort(Comparator.comparingLong(entry -> entry.id));
+            deleted = new ArrayList<>(tombstones.tailMap(since, false).values());
+        }
+
+        List<RowData> rows = new ArrayList<>(changed.size());
+        List<Long> ids = new ArrayList<>(changed.size());
+        for (Entry entry : changed) {
+            rows.add(entry.row);
+            ids.add(entry.id);
+        }
+        return new Changes(version, snapshot, rows, ids, deleted);
+    }
+
+    private void upsert(RowData row, boolean isUpdate) {
+        BinaryRowData copy = copyOf(row);
+        Entry pending = isUpdate ? retracted : null;
+        retracted = null;
+
+        if (keyGetters != null) {
+            BinaryRowData key = keyOf(row);
+            ArrayDeque<Entry> existing = index.get(key);
+            if (existing != null && !existing.isEmpty()) {
+                Entry entry = existing.peekFirst();
+                entry.row = copy;
+                touch(entry);
+                return;
+            }
+            insert(key, copy, pending);
+        } else {
+            insert(copy, copy, pending);
+        }
+    }
+
+    private void insert(BinaryRowData indexKey, BinaryRowData row, Entry pending) {
+        long id;
+        if (pending != null) {
+            // Continue the row retracted by the preceding -U under its id
+            tombstones.remove(retractedVersion);
+            id = pending.id;
+        } else {
+            id = nextId++;
+        }
+        Entry entry = new Entry(id, indexKey, row);
+        entries.put(id, entry);
+        index.computeIfAbsent(indexKey, k -> new ArrayDeque<>()).addLast(entry);
+        touch(entry);
+    }
+
+    private void retract(RowData row, boolean isUpdateBefore) {
+        retracted = null;
+        BinaryRowData indexKey = keyGetters != null ? keyOf(row) : copyOf(row);
+        ArrayDeque<Entry> matches = index.get(indexKey);
+        if (matches == null || matches.isEmpty()) {
+            return;
+        }
+        Entry entry = matches.peekLast();
+        remove(entry);
+        addTombstone(entry.id);
+        if (isUpdateBefore) {
+            retracted = entry;
+            retractedVersion = version;
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.id);
+        changes.remove(entry.version);
+        ArrayDeque<Entry> matches = index.get(entry.indexKey);
+        if (matches != null) {
+            matches.remove(entry);
+            if (matches.isEmpty()) {
+                index.remove(entry.indexKey);
+            }
+        }
+    }
+
+    private void touch(Entry entry) {
+        changes.remove(entry.version);
+        entry.version = ++version;
+        changes.put(entry.version, entry);
+    }
+
+    private void addTombstone(long id) {
+        tombstones.put(++version, id);
+        Iterator<Map.Entry<Long, Long>> oldest = tombstones.entrySet().iterator();
+        while (tombstones.size() > maxRows && oldest.hasNext()) {
+            horizon = oldest.next().getKey();
+            oldest.remove();
+        }
+    }
+
+    private BinaryRowData copyOf(RowData row) {
+        BinaryRowData copy = rowSerializer.toBinaryRow(row).copy();
+        // Retractions must match the row they retract regardless of kind
+        copy.setRowKind(RowKind.INSERT);
+        return copy;
+    }
+
+    private BinaryRowData keyOf(RowData row) {
+        GenericRowData key = new GenericRowData(keyGetters.length);
+        for (int i = 0; i < keyGetters.length; i++) {
+            key.setField(i, keyGetters[i].getFieldOrNull(row));
+        }
+        return keySerializer.toBinaryRow(key).copy();
+    }
+
+    private static final class Entry {
+        final long id;
+        final BinaryRowData indexKey;
+        BinaryRowData row;
+        long version;
+
+        Entry(long id, BinaryRowData indexKey, BinaryRowData row) {
+            this.id = id;
+            this.indexKey = indexKey;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Rows to upsert and ids to delete to bring a client from one version to another.
+     */
+    public static final class Changes {
+        public final long version;
+        public final boolean snapshot;
+        public final List<RowData> rows;
+        public final List<Long> ids;
+        public final List<Long> deletes;
+
+        Changes(long version, boolean snapshot, List<RowData> rows, List<Long> ids, List<Long> deletes) {
+            this.version = version;
+            this.snapshot = snapshot;
+            this.rows = rows;
+            this.ids = ids;
+            this.deletes = deletes;
+        }
+    }
+}
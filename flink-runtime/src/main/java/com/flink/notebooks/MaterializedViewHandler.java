@@ -0,0 +1,359 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.gateway.api.SqlGatewayService;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.serde.ResultInfo;
+import org.apache.flink.table.gateway.rest.util.RowDataLocalTimeZoneConverter;
+import org.apache.flink.table.gateway.rest.util.RowFormat;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.utils.print.RowDataToStringConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized result mode: the runner consumes an operation's changelog into a
+ * MaterializedResultView and clients poll for snapshots or diffs instead of the changelog.
+ *
+ * POST   /v1/sessions/{sessionHandle}/operations/{operationHandle}/view  {"key": ["col", ...], "token": 0}
+ * GET    /v1/sessions/{sessionHandle}/operations/{operationHandle}/view?since=<version>
+ * DELETE /v1/sessions/{sessionHandle}/operations/{operationHandle}/view
+ *
+ * POST starts consuming the operation's results from the given token (default 0). Without
+ * "key" the result's primary key is used if it has one, otherwise rows are matched by
+ * content. The operation's results must not be fetched elsewhere once the view is open.
+ *
+ * GET returns {"resultType", "version", "snapshot", "rowCount", "keyColumns", "results",
+ * "ids", "deletes"}. "results" has the gateway's JSON row format and "ids" the id of each row
+ * in it. Clients remove the deleted ids, then upsert the rows by id; a snapshot replaces
+ * everything. resultType is NOT_READY until the job produced its first rows and EOS once
+ * the result is complete.
+ *
+ * A view is dropped when it is DELETEd, when its operation or session closes, and when it
+ * has not been polled for 10 minutes.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.view.max-rows  rows kept per view before the oldest are dropped (default 100000)
+ */
+public class MaterializedViewHandler implements NotebookGatewayService.StatementListener, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MaterializedViewHandler.class);
+
+    static final ConfigOption<Integer> MAX_ROWS =
+        ConfigOptions.key("notebooks.view.max-rows").intType().defaultValue(100000);
+
+    private static final int DRAIN_BATCH_ROWS = 5000;
+    private static final long MIN_IDLE_BACKOFF_MS = 5;
+    private static final long MAX_IDLE_BACKOFF_MS = 100;
+    private static final long IDLE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long EXPIRY_CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final SqlGatewayService service;
+    private final int maxRows;
+    private final Map<OperationHandle, ViewState> views = new ConcurrentHashMap<>();
+    private final ExecutorService drainers;
+    private final ScheduledExecutorService expiry;
+
+    public MaterializedViewHandler(SqlGatewayService service, Configuration flinkConfig) {
+        this.service = service;
+        this.maxRows = Math.max(1, flinkConfig.get(MAX_ROWS));
+
+        AtomicInteger threadId = new AtomicInteger();
+        this.drainers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("result-view-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "result-view-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiry.scheduleWithFixedDelay(() -> expireIdle(System.currentTimeMillis() - IDLE_EXPIRY_MS),
+            EXPIRY_CHECK_INTERVAL_MS, EXPIRY_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("POST", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/view", this::open);
+        server.route("GET", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/view", this::poll);
+        server.route("DELETE", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/view", this::delete);
+    }
+
+    @Override
+    public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+            OperationClass operationClass) {
+    }
+
+    @Override
+    public void onOperationClosed(SessionHandle session, OperationHandle operation) {
+        ViewState state = views.remove(operation);
+        if (state != null) {
+            state.stop();
+        }
+    }
+
+    @Override
+    public void onSessionClosed(SessionHandle session) {
+        views.values().removeIf(state -> {
+            boolean ofSession = state.session.equals(session);
+            if (ofSession) {
+                state.stop();
+            }
+            return ofSession;
+        });
+    }
+
+    @Override
+    public void close() {
+        expiry.shutdownNow();
+        views.values().forEach(ViewState::stop);
+        views.clear();
+        drainers.shutdownNow();
+    }
+
+    private void open(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        SessionHandle session = new SessionHandle(UUID.fromString(pathParams.get("sessionHandle")));
+        OperationHandle operation = new OperationHandle(UUID.fromString(pathParams.get("operationHandle")));
+
+        Map<String, Object> body = RunnerHttpServer.readJsonBody(exchange);
+        List<String> keyColumns = stringList(body.get("key"));
+        Object token = body.getOrDefault("token", 0);
+        if (!(token instanceof Number) || ((Number) token).longValue() < 0) {
+            throw new IllegalArgumentException("'token' must be a non-negative number");
+        }
+
+        ViewState view = openView(session, operation, keyColumns, ((Number) token).longValue());
+        long version;
+        synchronized (view) {
+            version = view.version();
+        }
+        RunnerHttpServer.sendJson(exchange, 200, Collections.singletonMap("version", version));
+    }
+
+    /**
+     * Start materializing an operation's results, or return its view if it has one.
+     */
+    ViewState openView(SessionHandle session, OperationHandle operation, List<String> keyColumns, long startToken) {
+        ViewState state = new ViewState(session, operation, keyColumns);
+        ViewState existing = views.putIfAbsent(operation, state);
+        if (existing != null) {
+            return existing;
+        }
+        state.future = drainers.submit(() -> state.drain(startToken));
+        LOG.info("Materializing results of operation {}", operation);
+        return state;
+    }
+
+    int getViewCount() {
+        return views.size();
+    }
+
+    private void poll(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        OperationHandle operation = new OperationHandle(UUID.fromString(pathParams.get("operationHandle")));
+        ViewState state = views.get(operation);
+        if (state == null) {
+            RunnerHttpServer.sendError(exchange, 404, "No materialized view for operation " + operation);
+            return;
+        }
+        state.lastPollMillis = System.currentTimeMillis();
+
+        Map<String, String> query = RunnerHttpServer.queryParams(exchange);
+        long since = parseVersion(query.getOrDefault("since", "0"));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        synchronized (state) {
+            if (state.failure instanceof IllegalArgumentException) {
+                views.remove(operation, state);
+                throw (IllegalArgumentException) state.failure;
+            } else if (state.failure != null) {
+                views.remove(operation, state);
+                throw new RuntimeException("Materializing results failed: " + state.failure.getMessage(), state.failure);
+            }
+            if (state.view == null) {
+                response.put("resultType", ResultSet.ResultType.NOT_READY.name());
+                response.put("version", 0);
+            } else {
+                putChanges(response, state, since);
+            }
+        }
+        // Rows in the view are never modified in place, so they can be written outside the lock
+        RunnerHttpServer.sendJson(exchange, 200, response);
+    }
+
+    private void putChanges(Map<String, Object> response, ViewState state, long since) {
+        MaterializedResultView.Changes changes = state.view.changesSince(since);
+        ResultSet rows = new ResultSetImpl(ResultSet.ResultType.PAYLOAD, null, state.schema, changes.rows,
+            state.converter, true, null, ResultKind.SUCCESS_WITH_CONTENT);
+
+        response.put("resultType", (state.finished ? ResultSet.ResultType.EOS : ResultSet.ResultType.PAYLOAD).name());
+        response.put("version", changes.version);
+        response.put("snapshot", changes.snapshot);
+        response.put("rowCount", state.view.size());
+        response.put("keyColumns", state.view.getKeyColumns());
+        response.put("results", ResultInfo.createResultInfo(rows, RowFormat.JSON, state.timeZoneConverter));
+        response.put("ids", changes.ids);
+        response.put("deletes", changes.deletes);
+    }
+
+    private void delete(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        OperationHandle operation = new OperationHandle(UUID.fromString(pathParams.get("operationHandle")));
+        ViewState state = views.remove(operation);
+        if (state == null) {
+            RunnerHttpServer.sendError(exchange, 404, "No materialized view for operation " + operation);
+            return;
+        }
+        state.stop();
+        RunnerHttpServer.sendJson(exchange, 200, Collections.singletonMap("status", "CLOSED"));
+    }
+
+    /**
+     * Drop the views last polled before the given time.
+     */
+    void expireIdle(long polledBeforeMillis) {
+        views.values().removeIf(state -> {
+            boolean idle = state.lastPollMillis < polledBeforeMillis;
+            if (idle) {
+                state.stop();
+            }
+            return idle;
+        });
+    }
+
+    private static long parseVersion(String version) {
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'since' must be a version number: " + version);
+        }
+    }
+
+    private static List<String> stringList(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("'key' must be a list of column names");
+        }
+        return ((List<?>) value).stream().map(String::valueOf).collect(Collectors.toList());
+    }
+
+    private RowDataLocalTimeZoneConverter timeZoneConverter(SessionHandle session, ResolvedSchema schema) {
+        List<LogicalType> logicalTypes = schema.getColumnDataTypes().stream()
+            .map(DataType::getLogicalType)
+            .collect(Collectors.toList());
+        return new RowDataLocalTimeZoneConverter(logicalTypes, Configuration.fromMap(service.getSessionConfig(session)));
+    }
+
+    /**
+     * A view and the thread consuming the operation's changelog into it.
+     */
+    class ViewState {
+        final SessionHandle session;
+        final OperationHandle operation;
+        final List<String> keyColumns;
+        volatile Future<?> future;
+        volatile boolean stopped;
+        volatile long lastPollMillis = System.currentTimeMillis();
+
+        // Guarded by this
+        MaterializedResultView view;
+        ResolvedSchema schema;
+        RowDataToStringConverter converter;
+        RowDataLocalTimeZoneConverter timeZoneConverter;
+        boolean finished;
+        Throwable failure;
+
+        ViewState(SessionHandle session, OperationHandle operation, List<String> keyColumns) {
+            this.session = session;
+            this.operation = operation;
+            this.keyColumns = keyColumns;
+        }
+
+        long version() {
+            return view == null ? 0 : view.getVersion();
+        }
+
+        void drain(long startToken) {
+            long token = startToken;
+            long backoffMs = MIN_IDLE_BACKOFF_MS;
+            try {
+                while (!stopped) {
+                    ResultSet result = service.fetchResults(session, operation, token, DRAIN_BATCH_ROWS);
+                    if (result.getResultType() == ResultSet.ResultType.NOT_READY) {
+                        Thread.sleep(backoffMs);
+                        backoffMs = Math.min(MAX_IDLE_BACKOFF_MS, backoffMs * 2);
+                        continue;
+                    }
+
+                    synchronized (this) {
+                        if (view == null) {
+                            schema = result.getResultSchema();
+                            converter = ((ResultSetImpl) result).getConverter();
+                            timeZoneConverter = timeZoneConverter(session, schema);
+                            view = new MaterializedResultView(schema, keyColumns, maxRows);
+                        }
+                        if (result.getResultType() == ResultSet.ResultType.EOS) {
+                            finished = true;
+                            return;
+                        }
+                        view.apply(result.getData());
+                    }
+
+                    if (result.getData().isEmpty()) {
+                        Thread.sleep(backoffMs);
+                        backoffMs = Math.min(MAX_IDLE_BACKOFF_MS, backoffMs * 2);
+                    } else {
+                        backoffMs = MIN_IDLE_BACKOFF_MS;
+                    }
+                    if (result.getNextToken() == null) {
+                        synchronized (this) {
+                            finished = true;
+                        }
+                        return;
+                    }
+                    token = result.getNextToken();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                if (!stopped) {
+                    LOG.debug("Materializing results of operation {} failed: {}", operation, t.getMessage());
+                    synchronized (this) {
+                        failure = t;
+                    }
+                }
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
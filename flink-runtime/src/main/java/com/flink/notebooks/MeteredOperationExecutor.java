@@ -0,0 +1,132 @@
+package com.flink.notebooks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Operation executor that counts queued and running operations and records how long each
+ * waited for a thread, whichever executor type it wraps (see RunnerMetrics).
+ *
+ * Operations are handed to the wrapped executor through execute() on the submitting thread,
+ * so executors that read the SubmissionContext there still see it. The thread running each
+ * submitted task is tracked for OperationIntrospector.
+ */
+class MeteredOperationExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final RunnerMetrics.LatencyHistogram queueWait;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    // Keyed by the task passed to submit(), e.g. an Operation's invocation
+    private final Map<Object, Thread> threads = new ConcurrentHashMap<>();
+
+    MeteredOperationExecutor(ExecutorService delegate, RunnerMetrics.LatencyHistogram queueWait) {
+        this.delegate = delegate;
+        this.queueWait = queueWait;
+    }
+
+    /** The wrapped executor. */
+    ExecutorService getDelegate() {
+        return delegate;
+    }
+
+    /** Operations submitted but not started yet. */
+    int getQueued() {
+        return queued.get();
+    }
+
+    /** Operations currently holding a thread. */
+    int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * The thread currently running a task, as passed to submit(), or null if it is not running.
+     */
+    Thread getThread(Object task) {
+        return threads.get(task);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Object task = command instanceof SubmittedTask ? ((SubmittedTask<?>) command).task : command;
+        long enqueuedNanos = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queued.decrementAndGet();
+                queueWait.record(System.nanoTime() - enqueuedNanos);
+                running.incrementAndGet();
+                threads.put(task, Thread.currentThread());
+                try {
+                    command.run();
+                } finally {
+                    threads.remove(task);
+                    running.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new SubmittedTask<>(runnable, Executors.callable(runnable, value));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new SubmittedTask<>(callable, callable);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = delegate.shutdownNow();
+        queued.addAndGet(-pending.size());
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Future for a task passed to submit(), remembering that task.
+     */
+    private static final class SubmittedTask<T> extends FutureTask<T> {
+        final Object task;
+
+        SubmittedTask(Object task, Callable<T> callable) {
+            super(callable);
+            this.task = task;
+        }
+    }
+}
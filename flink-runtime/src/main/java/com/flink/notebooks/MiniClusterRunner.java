@@ -1,27 +1,34 @@
 package com.flink.notebooks;
 
+import com.sun.management.HotSpotDiagnosticMXBean;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.CoreOptions;
+import org.apache.flink.configuration.JobManagerOptions;
 import org.apache.flink.configuration.RestOptions;
+import org.apache.flink.runtime.metrics.groups.ProcessMetricGroup;
 import org.apache.flink.runtime.minicluster.MiniCluster;
 import org.apache.flink.runtime.minicluster.MiniClusterConfiguration;
+import org.apache.flink.table.gateway.api.config.SqlGatewayServiceConfigOptions;
 import org.apache.flink.table.gateway.rest.SqlGatewayRestEndpoint;
 import org.apache.flink.table.gateway.rest.SqlGatewayRestEndpointFactory;
-import org.apache.flink.table.gateway.service.SqlGatewayServiceImpl;
 import org.apache.flink.table.gateway.service.context.DefaultContext;
 import org.apache.flink.table.gateway.service.session.SessionManagerImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -37,12 +44,32 @@ public class MiniClusterRunner {
 
     private static final int DEFAULT_PARALLELISM = 2;
     private static final int DEFAULT_TASK_SLOTS = 2;
+    private static final int DEFAULT_TASK_MANAGERS = 1;
+    private static final int AUTO_SIZE_SLOTS_PER_TASK_MANAGER = 4;
+    private static final int DEFAULT_REST_PORT = 8081;
     private static final int DEFAULT_GATEWAY_PORT = 8083;
+    private static final int DEFAULT_RUNNER_PORT = 8084;
+    private static final String DEFAULT_EXECUTION_TARGET = InProcessExecutorFactory.NAME;
+    private static final String RESULT_STORE_GATEWAY = "gateway";
+    static final String RESULT_STORE_SPILL = "spill";
 
     private MiniCluster miniCluster;
     private SqlGatewayRestEndpoint gateway;
+    private RunnerHttpServer runnerEndpoint;
+    private MaterializedViewHandler viewHandler;
+    private NotebookGatewayService gatewayService;
+    private ResultSpillManager spillManager;
+    private WarmSessionPool sessionPool;
+    private CompiledPlanCache planCache;
+    private QueryResultCache resultCache;
+    private CatalogMetadataCache metadataCache;
+    private OperationIntrospector introspector;
+    private RunnerTimings timings;
+    private final RunnerMetrics metrics = new RunnerMetrics();
     private ExecutorService operationExecutor;
-    private ExecutorService cleanupExecutor;
+    private FairShareOperationExecutor fairShareExecutor;
+    private ScheduledExecutorService cleanupExecutor;
+    private VirtualThreadPinningMonitor pinningMonitor;
 
     public static void main(String[] args) throws Exception {
         MiniClusterRunner runner = new MiniClusterRunner();
@@ -52,8 +79,14 @@ public class MiniClusterRunner {
 
         LOG.info("Starting Flink MiniCluster Runner");
         LOG.info("  Parallelism: {}", config.parallelism);
-        LOG.info("  Task Slots: {}", config.taskSlots);
+        LOG.info("  TaskManagers: {}{}", config.taskManagers, config.autoSize ? " (auto-sized)" : "");
+        LOG.info("  Task Slots: {} per TaskManager", config.taskSlots);
         LOG.info("  Gateway Port: {}", config.gatewayPort);
+        LOG.info("  Runner Port: {}", config.runnerPort);
+        LOG.info("  Execution Target: {}", config.executionTarget);
+        LOG.info("  Operation Executor: {}", config.operationExecutor);
+        LOG.info("  Result Store: {}", config.resultStore);
+        LOG.info("  CDS Archive: {}", sharedArchive());
 
         try {
             runner.start(config);
@@ -85,152 +118,296 @@ public class MiniClusterRunner {
         // Load configuration from flink-conf.yaml
         // This is important to pick up security.delegation.tokens.enabled=false
         Configuration flinkConfig = org.apache.flink.configuration.GlobalConfiguration.loadConfiguration();
+        timings = new RunnerTimings(flinkConfig);
+        RunnerTimings.Phase total = timings.begin(RunnerTimings.START, RunnerTimings.TOTAL);
 
         // Override REST port
-        flinkConfig.set(RestOptions.PORT, 8081);
+        flinkConfig.set(RestOptions.PORT, config.restPort);
+        flinkConfig.set(CoreOptions.DEFAULT_PARALLELISM, config.parallelism);
+
+        int totalSlots = config.taskManagers * config.taskSlots;
+        if (config.parallelism > totalSlots) {
+            LOG.warn("Parallelism {} exceeds the {} available task slots; jobs will wait for slots that never free up",
+                config.parallelism, totalSlots);
+        }
+
+        if (!RESULT_STORE_SPILL.equals(config.resultStore) && !RESULT_STORE_GATEWAY.equals(config.resultStore)) {
+            throw new IllegalArgumentException("Unknown result store '" + config.resultStore + "'. Expected gateway or spill");
+        }
 
         MiniClusterConfiguration miniClusterConfig = new MiniClusterConfiguration.Builder()
             .setConfiguration(flinkConfig)
-            .setNumTaskManagers(1)
+            .setNumTaskManagers(config.taskManagers)
             .setNumSlotsPerTaskManager(config.taskSlots)
             .build();
 
-        // Start MiniCluster
-        LOG.info("Starting Flink MiniCluster...");
-        miniCluster = new MiniCluster(miniClusterConfig);
-        miniCluster.start();
-        LOG.info("MiniCluster started successfully");
-
-        // Configure and start SQL Gateway
-        LOG.info("Starting SQL Gateway on port {}...", config.gatewayPort);
-
         // Configure for connecting to the already-running MiniCluster
-        // Use 'remote' target pointing to MiniCluster's REST endpoint at localhost:8081
+        // 'in-process' hands JobGraphs straight to the MiniCluster (see InProcessExecutor),
+        // 'remote' submits through the MiniCluster's REST endpoint at localhost:<restPort>
         Configuration sessionConfig = new Configuration();
-        sessionConfig.set(org.apache.flink.configuration.DeploymentOptions.TARGET, "remote");
+        sessionConfig.set(org.apache.flink.configuration.DeploymentOptions.TARGET, config.executionTarget);
         sessionConfig.setString("jobmanager.rpc.address", "localhost");
-        sessionConfig.setInteger("jobmanager.rpc.port", 6123);
+        sessionConfig.set(JobManagerOptions.PORT, 6123);
         sessionConfig.setString("rest.address", "localhost");
-        sessionConfig.setInteger("rest.port", 8081);
+        sessionConfig.set(RestOptions.PORT, config.restPort);
+        sessionConfig.set(CoreOptions.DEFAULT_PARALLELISM, config.parallelism);
 
         // Configuration for SQL Gateway's own REST endpoint (port 8083)
         Configuration gatewayConfig = new Configuration();
-        gatewayConfig.setInteger("rest.port", config.gatewayPort);
+        gatewayConfig.set(RestOptions.PORT, config.gatewayPort);
         gatewayConfig.setString("rest.address", "0.0.0.0");
         gatewayConfig.setString("rest.bind-address", "0.0.0.0");
 
-        // Create executor service for SQL Gateway operations
-        // Non-daemon threads ensure operations complete before JVM shutdown
-        operationExecutor = Executors.newFixedThreadPool(
-            10,
-            r -> {
-                Thread thread = new Thread(r);
-                thread.setName("sql-gateway-operation-" + thread.getId());
-                thread.setDaemon(false); // Non-daemon to prevent premature termination
-                return thread;
+        // The gateway does not need a running MiniCluster until the first job is submitted, so
+        // it starts while the TaskManagers register; in-process job submission waits for the
+        // MiniCluster (remote submission retries until its REST endpoint is up)
+        StartupPhases phases = new StartupPhases(timings);
+        TimedMiniCluster timedMiniCluster = new TimedMiniCluster(miniClusterConfig, timings);
+        miniCluster = timedMiniCluster;
+        InProcessExecutorFactory.expect();
+
+        phases.run("minicluster", () -> {
+            LOG.info("Starting Flink MiniCluster...");
+            miniCluster.start();
+            InProcessExecutorFactory.register(miniCluster);
+            // Alongside the JobManager's own process metrics, so reporters and the web UI see them
+            metrics.registerWith(ProcessMetricGroup.create(timedMiniCluster.getMetricRegistry(), "localhost"));
+            LOG.info("MiniCluster started successfully");
+        });
+
+        CompletableFuture<Void> executors = phases.run("operation-executor", () -> {
+            // Create executor service for SQL Gateway operations
+            ExecutorService executor = OperationExecutors.create(config.operationExecutor, flinkConfig);
+            if (executor instanceof FairShareOperationExecutor) {
+                fairShareExecutor = (FairShareOperationExecutor) executor;
             }
-        );
-
-        // Scan and log external connector JARs from lib directory
-        // Note: These JARs are already loaded via the system classpath (java -cp)
-        // so we don't need to pass them to DefaultContext.load()
-        List<java.net.URL> additionalJars = scanLibDirectory();
-        if (!additionalJars.isEmpty()) {
-            LOG.info("Found {} connector JAR(s) in lib directory (loaded via system classpath)", additionalJars.size());
-            for (java.net.URL jar : additionalJars) {
-                LOG.info("  - {}", jar);
+            operationExecutor = metrics.meter(executor);
+            if (OperationExecutors.VIRTUAL.equals(config.operationExecutor) && OperationExecutors.virtualThreadsAvailable()) {
+                pinningMonitor = new VirtualThreadPinningMonitor();
+                pinningMonitor.start();
+                metrics.bindPinningMonitor(pinningMonitor);
             }
-        } else {
-            LOG.info("No connector JARs found in lib directory (this is normal for minimal setup)");
-        }
+        });
+
+        phases.run("lib-scan", () -> {
+            // Scan and log external connector JARs from lib directory
+            // Note: These JARs are already loaded via the system classpath (java -cp)
+            // so we don't need to pass them to DefaultContext.load()
+            List<java.net.URL> additionalJars = scanLibDirectory();
+            if (!additionalJars.isEmpty()) {
+                LOG.info("Found {} connector JAR(s) in lib directory (loaded via system classpath)", additionalJars.size());
+                for (java.net.URL jar : additionalJars) {
+                    LOG.info("  - {}", jar);
+                }
+            } else {
+                LOG.info("No connector JARs found in lib directory (this is normal for minimal setup)");
+            }
+        });
 
         // Load DefaultContext with the session configuration (for connecting to MiniCluster)
         // Pass empty list for JARs since they're already in the system classpath
-        DefaultContext defaultContext = DefaultContext.load(sessionConfig, Collections.emptyList(), true);
-
-        SessionManagerImpl sessionManager = new SessionManagerImpl(defaultContext);
+        CompletableFuture<DefaultContext> defaultContext = phases.supply("default-context",
+            () -> DefaultContext.load(sessionConfig, Collections.emptyList(), true));
 
-        SqlGatewayServiceImpl gatewayService = new SqlGatewayServiceImpl(sessionManager);
+        CompletableFuture<Void> service = phases.run("gateway-service", () -> {
+            SessionManagerImpl sessionManager = new SessionManagerImpl(defaultContext.join());
 
-        // Set the executor service in SessionManagerImpl via reflection
-        // Note: This is necessary because Flink 1.20.0 doesn't expose a public API
-        // for custom executor injection. This approach is fragile and may break
-        // with Flink version upgrades.
-        try {
-            injectOperationExecutor(sessionManager, operationExecutor);
+            if (RESULT_STORE_SPILL.equals(config.resultStore)) {
+                spillManager = new ResultSpillManager(flinkConfig);
+            }
+            gatewayService = new NotebookGatewayService(sessionManager, spillManager);
+            injectExecutors(sessionManager);
+            gatewayService.setMetrics(metrics);
+            metrics.bindService(gatewayService);
+            metrics.bindCleanupExecutor(cleanupExecutor);
+            // Sessions can expire without closeSession, which is what releases the runner's state
+            long reapIntervalMs =
+                flinkConfig.get(SqlGatewayServiceConfigOptions.SQL_GATEWAY_SESSION_CHECK_INTERVAL).toMillis();
+            if (reapIntervalMs > 0) {
+                cleanupExecutor.scheduleWithFixedDelay(() -> {
+                    try {
+                        gatewayService.reapExpiredSessions();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Failed to release expired sessions", e);
+                    }
+                }, reapIntervalMs, reapIntervalMs, TimeUnit.MILLISECONDS);
+            }
 
-            cleanupExecutor = Executors.newScheduledThreadPool(1, r -> {
-                Thread thread = new Thread(r);
-                thread.setName("sql-gateway-cleanup");
-                thread.setDaemon(false); // Non-daemon to ensure proper cleanup
-                return thread;
-            });
-            injectCleanupExecutor(sessionManager, cleanupExecutor);
+            // Caches and listeners are in place before either endpoint accepts a statement
+            metadataCache = new CatalogMetadataCache(gatewayService, flinkConfig);
+            gatewayService.addStatementListener(metadataCache);
+            introspector = new OperationIntrospector(gatewayService, sessionManager, operationExecutor);
+            gatewayService.addStatementListener(introspector);
+            if (fairShareExecutor != null) {
+                // Keeps per-session counters until the session closes
+                gatewayService.addStatementListener(fairShareExecutor);
+            }
+            planCache = new CompiledPlanCache(gatewayService, flinkConfig);
+            resultCache = new QueryResultCache(gatewayService, planCache, miniCluster, flinkConfig);
+            if (planCache.isEnabled() || resultCache.isEnabled()
+                    || flinkConfig.get(SqlGatewayServiceConfigOptions.SQL_GATEWAY_SESSION_PLAN_CACHE_ENABLED)) {
+                // The result cache keys queries by the plan cache's fingerprint, and the
+                // gateway's own plan cache is cleared on DDL and USE
+                gatewayService.addStatementListener(planCache);
+            }
+            if (planCache.isEnabled()) {
+                gatewayService.setPlanCache(planCache);
+            }
+            if (resultCache.isEnabled()) {
+                gatewayService.setResultCache(resultCache);
+            }
+            metrics.bindCaches(planCache.isEnabled() ? planCache : null, resultCache.isEnabled() ? resultCache : null);
+            sessionPool = new WarmSessionPool(gatewayService, flinkConfig);
+            gatewayService.setSessionPool(sessionPool);
+        }, defaultContext, executors);
+
+        phases.run("gateway-endpoint", () -> {
+            LOG.info("Starting SQL Gateway on port {}...", config.gatewayPort);
+            gateway = new SqlGatewayRestEndpoint(gatewayConfig, gatewayService);
+            gateway.start();
+            LOG.info("SQL Gateway started successfully on http://localhost:{}", config.gatewayPort);
+        }, service);
+
+        phases.run("runner-endpoint", () -> {
+            runnerEndpoint = new RunnerHttpServer("0.0.0.0", config.runnerPort);
+            ResponseCompression compression = new ResponseCompression(flinkConfig);
+            if (compression.isEnabled()) {
+                runnerEndpoint.setCompression(compression);
+                metrics.bindCompression(compression);
+            }
+            new ResultStreamHandler(gatewayService, metrics).register(runnerEndpoint);
+            ResultFetchHandler fetchHandler =
+                new ResultFetchHandler(gatewayService, new FetchSizeAdvisor(flinkConfig), metrics);
+            // Forgets an operation's schema version when it closes
+            gatewayService.addStatementListener(fetchHandler);
+            fetchHandler.register(runnerEndpoint);
+            viewHandler = new MaterializedViewHandler(gatewayService, flinkConfig);
+            // Drops a view when its operation or session closes
+            gatewayService.addStatementListener(viewHandler);
+            viewHandler.register(runnerEndpoint);
+            new CatalogMetadataHandler(metadataCache).register(runnerEndpoint);
+            timings.register(runnerEndpoint);
+            metrics.register(runnerEndpoint);
+            introspector.register(runnerEndpoint);
+            runnerEndpoint.start();
+        }, service);
+
+        phases.run("session-pool", () -> sessionPool.start(), service);
 
-            LOG.info("Successfully initialized operation and cleanup executors");
-        } catch (NoSuchFieldException e) {
-            LOG.error(
-                "Failed to inject executors: field not found. " +
-                "This likely means you're using an incompatible Flink version. " +
-                "This code is tested with Flink 1.20.0. Field: {}",
-                e.getMessage()
-            );
-            throw new RuntimeException(
-                "Incompatible Flink version - executor injection failed. " +
-                "Expected Flink 1.20.0, but fields don't match. " +
-                "Please check compatibility or update the code.",
-                e
-            );
-        } catch (IllegalAccessException e) {
-            LOG.error("Failed to access private field for executor injection: {}", e.getMessage(), e);
-            throw new RuntimeException("Security policy prevented executor injection", e);
+        try {
+            phases.await();
+            total.end();
         } catch (Exception e) {
-            LOG.error("Unexpected error during executor injection: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to initialize SQL Gateway executors", e);
+            total.fail(e);
+            throw e;
         }
 
-        gateway = new SqlGatewayRestEndpoint(gatewayConfig, gatewayService);
-        gateway.start();
+        LOG.info("Flink Web UI available at http://localhost:{}", config.restPort);
+    }
+
+    /**
+     * The gateway service backing the REST endpoint, for in-JVM tools such as benchmarks.
+     */
+    NotebookGatewayService getGatewayService() {
+        return gatewayService;
+    }
 
-        LOG.info("SQL Gateway started successfully on http://localhost:{}", config.gatewayPort);
-        LOG.info("Flink Web UI available at http://localhost:8081");
+    /**
+     * The catalog metadata cache behind the runner's catalog-tree route.
+     */
+    CatalogMetadataCache getMetadataCache() {
+        return metadataCache;
     }
 
     public void stop() throws Exception {
         LOG.info("Stopping MiniCluster...");
+        RunnerTimings.Phase total = timings != null ? timings.begin(RunnerTimings.STOP, RunnerTimings.TOTAL) : null;
+
+        if (runnerEndpoint != null) {
+            stopPhase("runner-endpoint", () -> {
+                runnerEndpoint.stop();
+                LOG.info("Runner endpoint stopped");
+            }, "Error stopping runner endpoint");
+        }
+
+        if (viewHandler != null) {
+            stopPhase("result-views", viewHandler::close, "Error closing materialized views");
+        }
+
+        if (sessionPool != null) {
+            stopPhase("session-pool", sessionPool::close, "Error closing session pool");
+        }
+
+        if (resultCache != null) {
+            stopPhase("result-cache", resultCache::close, "Error closing result cache");
+        }
+
+        if (planCache != null) {
+            stopPhase("plan-cache", planCache::close, "Error closing plan cache");
+        }
 
         if (gateway != null) {
-            try {
+            stopPhase("gateway-endpoint", () -> {
                 gateway.close();
                 LOG.info("SQL Gateway stopped");
-            } catch (Exception e) {
-                LOG.error("Error stopping SQL Gateway", e);
-            }
+            }, "Error stopping SQL Gateway");
+        }
+
+        if (spillManager != null) {
+            stopPhase("spill-stores", () -> {
+                spillManager.close();
+                LOG.info("Result spill stores released");
+            }, "Error releasing result spill stores");
         }
 
         if (operationExecutor != null) {
-            try {
-                shutdownExecutorGracefully(operationExecutor, "Operation executor", 10);
-            } catch (Exception e) {
-                LOG.error("Error stopping operation executor", e);
-            }
+            stopPhase("operation-executor-drain",
+                () -> shutdownExecutorGracefully(operationExecutor, "Operation executor", 10),
+                "Error stopping operation executor");
         }
 
         if (cleanupExecutor != null) {
-            try {
-                shutdownExecutorGracefully(cleanupExecutor, "Cleanup executor", 5);
-            } catch (Exception e) {
-                LOG.error("Error stopping cleanup executor", e);
-            }
+            stopPhase("cleanup-executor-drain",
+                () -> shutdownExecutorGracefully(cleanupExecutor, "Cleanup executor", 5),
+                "Error stopping cleanup executor");
+        }
+
+        if (pinningMonitor != null) {
+            stopPhase("pinning-monitor", pinningMonitor::close, "Error closing pinning monitor");
         }
 
+        stopPhase("metrics", metrics::close, "Error closing runner metrics");
+
         if (miniCluster != null) {
-            try {
+            InProcessExecutorFactory.unregister(miniCluster);
+            stopPhase("minicluster", () -> {
                 miniCluster.close();
                 LOG.info("MiniCluster stopped");
-            } catch (Exception e) {
-                LOG.error("Error stopping MiniCluster", e);
+            }, "Error stopping MiniCluster");
+        }
+
+        if (total != null) {
+            total.end();
+            timings.save();
+        }
+    }
+
+    /**
+     * Run one step of stop(), timed in RunnerTimings. A failing step is logged and the
+     * remaining steps still run.
+     */
+    private void stopPhase(String name, RunnerTimings.Body body, String errorMessage) {
+        RunnerTimings.Phase phase = timings != null ? timings.begin(RunnerTimings.STOP, name) : null;
+        try {
+            body.run();
+            if (phase != null) {
+                phase.end();
             }
+        } catch (Exception e) {
+            if (phase != null) {
+                phase.fail(e);
+            }
+            LOG.error(errorMessage, e);
         }
     }
 
@@ -274,6 +451,47 @@ public class MiniClusterRunner {
         }
     }
 
+    /**
+     * Set the operation and cleanup executors in SessionManagerImpl via reflection.
+     * Note: This is necessary because Flink 1.20.0 doesn't expose a public API
+     * for custom executor injection. This approach is fragile and may break
+     * with Flink version upgrades.
+     */
+    private void injectExecutors(SessionManagerImpl sessionManager) {
+        try {
+            injectOperationExecutor(sessionManager, operationExecutor);
+
+            cleanupExecutor = Executors.newScheduledThreadPool(1, r -> {
+                Thread thread = new Thread(r);
+                thread.setName("sql-gateway-cleanup");
+                thread.setDaemon(false); // Non-daemon to ensure proper cleanup
+                return thread;
+            });
+            injectCleanupExecutor(sessionManager, cleanupExecutor);
+
+            LOG.info("Successfully initialized operation and cleanup executors");
+        } catch (NoSuchFieldException e) {
+            LOG.error(
+                "Failed to inject executors: field not found. " +
+                "This likely means you're using an incompatible Flink version. " +
+                "This code is tested with Flink 1.20.0. Field: {}",
+                e.getMessage()
+            );
+            throw new RuntimeException(
+                "Incompatible Flink version - executor injection failed. " +
+                "Expected Flink 1.20.0, but fields don't match. " +
+                "Please check compatibility or update the code.",
+                e
+            );
+        } catch (IllegalAccessException e) {
+            LOG.error("Failed to access private field for executor injection: {}", e.getMessage(), e);
+            throw new RuntimeException("Security policy prevented executor injection", e);
+        } catch (Exception e) {
+            LOG.error("Unexpected error during executor injection: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to initialize SQL Gateway executors", e);
+        }
+    }
+
     /**
      * Inject custom operation executor into SessionManagerImpl via reflection.
      * This is necessary because Flink 1.20.0 doesn't provide a public API for this.
@@ -370,14 +588,24 @@ public class MiniClusterRunner {
 
     private static Config parseArgs(String[] args) {
         Config config = new Config();
+        boolean explicitParallelism = false;
 
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
                 case "--parallelism":
                     if (i + 1 < args.length) {
                         config.parallelism = Integer.parseInt(args[++i]);
+                        explicitParallelism = true;
+                    }
+                    break;
+                case "--taskmanagers":
+                    if (i + 1 < args.length) {
+                        config.taskManagers = Integer.parseInt(args[++i]);
                     }
                     break;
+                case "--auto-size":
+                    config.autoSize = true;
+                    break;
                 case "--taskslots":
                     if (i + 1 < args.length) {
                         config.taskSlots = Integer.parseInt(args[++i]);
@@ -388,6 +616,26 @@ public class MiniClusterRunner {
                         config.gatewayPort = Integer.parseInt(args[++i]);
                     }
                     break;
+                case "--runner-port":
+                    if (i + 1 < args.length) {
+                        config.runnerPort = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "--execution-target":
+                    if (i + 1 < args.length) {
+                        config.executionTarget = args[++i];
+                    }
+                    break;
+                case "--operation-executor":
+                    if (i + 1 < args.length) {
+                        config.operationExecutor = args[++i];
+                    }
+                    break;
+                case "--result-store":
+                    if (i + 1 < args.length) {
+                        config.resultStore = args[++i];
+                    }
+                    break;
                 case "--help":
                     printHelp();
                     System.exit(0);
@@ -395,9 +643,40 @@ public class MiniClusterRunner {
             }
         }
 
+        if (config.autoSize) {
+            applyAutoSize(config, explicitParallelism);
+        }
+
         return config;
     }
 
+    /**
+     * Size the TaskManager topology from the number of available cores.
+     * Cores are split into as few TaskManagers of up to 4 slots each as cover them, with the
+     * slots spread evenly, so a 32-core machine gets 8 TaskManagers x 4 slots and a 6-core
+     * machine 2 TaskManagers x 3 slots. When the cores do not divide evenly the last slots
+     * round up (7 cores give 2 x 4) rather than leaving cores without a slot. Unless
+     * --parallelism was given, the default parallelism is set to the total number of slots.
+     */
+    static void applyAutoSize(Config config, boolean explicitParallelism) {
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        config.taskManagers = ceilDiv(cores, AUTO_SIZE_SLOTS_PER_TASK_MANAGER);
+        config.taskSlots = ceilDiv(cores, config.taskManagers);
+
+        int totalSlots = config.taskManagers * config.taskSlots;
+        if (!explicitParallelism) {
+            config.parallelism = totalSlots;
+        }
+
+        LOG.info("Auto-sized topology for {} cores: {} TaskManager(s) x {} slot(s) = {} slots, parallelism {}",
+            cores, config.taskManagers, config.taskSlots, totalSlots, config.parallelism);
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
     private static void printHelp() {
         System.out.println("Flink MiniCluster Runner");
         System.out.println();
@@ -406,13 +685,40 @@ public class MiniClusterRunner {
         System.out.println("Options:");
         System.out.println("  --parallelism <num>     Set parallelism level (default: 2)");
         System.out.println("  --taskslots <num>       Set task slots per TaskManager (default: 2)");
+        System.out.println("  --taskmanagers <num>    Set number of in-JVM TaskManagers (default: 1)");
+        System.out.println("  --auto-size             Size TaskManagers, slots and parallelism from available cores");
         System.out.println("  --gateway-port <port>   Set SQL Gateway port (default: 8083)");
+        System.out.println("  --runner-port <port>    Set runner endpoint port for result streaming and fetches (default: 8084)");
+        System.out.println("  --execution-target <t>  Job submission target: in-process or remote (default: in-process)");
+        System.out.println("  --operation-executor <t> Gateway operation executor: platform, virtual, priority or fair (default: platform)");
+        System.out.println("  --result-store <t>      Query result buffer: gateway (heap) or spill (heap tail + local disk) (default: gateway)");
         System.out.println("  --help                  Show this help message");
     }
 
-    private static class Config {
+    /**
+     * The AppCDS archive this JVM was started with (see CdsTrainingRun). The JVM itself warns
+     * and ignores the archive when it no longer matches the JDK or the jar.
+     */
+    private static String sharedArchive() {
+        try {
+            String archive = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                .getVMOption("SharedArchiveFile").getValue();
+            return archive.isEmpty() ? "none" : archive;
+        } catch (RuntimeException e) {
+            return "unknown";
+        }
+    }
+
+    static class Config {
         int parallelism = DEFAULT_PARALLELISM;
         int taskSlots = DEFAULT_TASK_SLOTS;
+        int taskManagers = DEFAULT_TASK_MANAGERS;
+        boolean autoSize = false;
+        String operationExecutor = OperationExecutors.PLATFORM;
+        int restPort = DEFAULT_REST_PORT;
         int gatewayPort = DEFAULT_GATEWAY_PORT;
+        int runnerPort = DEFAULT_RUNNER_PORT;
+        String executionTarget = DEFAULT_EXECUTION_TARGET;
+        String resultStore = RESULT_STORE_GATEWAY;
     }
 }
@@ -0,0 +1,519 @@
+package com.flink.notebooks;
+
+import org.apache.flink.api.common.RuntimeExecutionMode;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.ExecutionOptions;
+import org.apache.flink.table.api.internal.PlanCacheManager;
+import org.apache.flink.table.catalog.Catalog;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.operation.OperationStatus;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionEnvironment;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.api.utils.SqlGatewayException;
+import org.apache.flink.table.gateway.service.SqlGatewayServiceImpl;
+import org.apache.flink.table.gateway.service.operation.OperationManager;
+import org.apache.flink.table.gateway.service.result.ResultFetcher;
+import org.apache.flink.table.gateway.service.session.SessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SqlGatewayServiceImpl that records what is being submitted in a SubmissionContext,
+ * so the operation executor can schedule by statement type and session.
+ *
+ * With a ResultSpillManager, results of query operations are drained into spill stores and
+ * fetches are served from there, for the gateway REST endpoint and the runner endpoint alike.
+ * Spill stores of operations that no longer exist are released on every new spill and by
+ * reapExpiredSessions, which the runner calls on a timer.
+ *
+ * StatementListeners are told about every submitted statement, so caches of session state
+ * can be invalidated whichever client ran it. With a WarmSessionPool, new sessions are
+ * handed out from the pool when it has a matching one. With a CompiledPlanCache, statements
+ * with a cached plan are executed from it. With a QueryResultCache, queries with a cached
+ * result are served from it without a job, and the results of other cacheable queries are
+ * recorded as they are fetched. With RunnerMetrics, submit, first-row and fetch latencies
+ * are recorded.
+ */
+public class NotebookGatewayService extends SqlGatewayServiceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotebookGatewayService.class);
+
+    private static final long BUFFER_POLL_INTERVAL_MS = 10;
+
+    /**
+     * Notified after a statement was submitted and before an operation or session closes.
+     */
+    public interface StatementListener {
+        void onStatement(SessionHandle session, OperationHandle operation, String statement, OperationClass operationClass);
+
+        default void onOperationClosed(SessionHandle session, OperationHandle operation) {
+        }
+
+        default void onSessionClosed(SessionHandle session) {
+        }
+    }
+
+    private final SessionManager sessionManager;
+    private final ResultSpillManager spillManager;
+    private final List<StatementListener> statementListeners = new CopyOnWriteArrayList<>();
+    private volatile WarmSessionPool sessionPool;
+    private volatile CompiledPlanCache planCache;
+    private volatile QueryResultCache resultCache;
+    private volatile RunnerMetrics metrics;
+    private final Set<SessionHandle> openSessions = ConcurrentHashMap.newKeySet();
+
+    // Operation.resultFetcher and ResultFetcher.bufferedResults are private in Flink 1.20.0
+    private final Field resultFetcherField;
+    private final Field bufferedResultsField;
+
+    public NotebookGatewayService(SessionManager sessionManager) {
+        this(sessionManager, null);
+    }
+
+    /**
+     * @param spillManager Spill stores for query results, or null to keep results in the gateway
+     */
+    public NotebookGatewayService(SessionManager sessionManager, ResultSpillManager spillManager) {
+        super(sessionManager);
+        this.sessionManager = sessionManager;
+        this.spillManager = spillManager;
+        this.resultFetcherField = accessibleField(OperationManager.Operation.class, "resultFetcher");
+        this.bufferedResultsField = accessibleField(ResultFetcher.class, "bufferedResults");
+    }
+
+    public void addStatementListener(StatementListener listener) {
+        statementListeners.add(listener);
+    }
+
+    public void setSessionPool(WarmSessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Run INSERT statements and statement sets from compiled plans cached by the given cache.
+     */
+    public void setPlanCache(CompiledPlanCache planCache) {
+        this.planCache = planCache;
+    }
+
+    /**
+     * Serve and record query results with the given cache.
+     */
+    public void setResultCache(QueryResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Record submit, first-row and fetch latencies and rows served in the given metrics.
+     */
+    public void setMetrics(RunnerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Execute a statement on behalf of the runner itself, bypassing the plan cache and
+     * statement listeners.
+     */
+    public OperationHandle submitInternal(SessionHandle sessionHandle, String statement, OperationClass operationClass)
+            throws SqlGatewayException {
+        SubmissionContext.set(new SubmissionContext(sessionHandle, statement, operationClass));
+        try {
+            return super.executeStatement(sessionHandle, statement, 0, new Configuration());
+        } finally {
+            SubmissionContext.clear();
+        }
+    }
+
+    @Override
+    public SessionHandle openSession(SessionEnvironment environment) throws SqlGatewayException {
+        WarmSessionPool pool = sessionPool;
+        SessionHandle pooled = pool == null ? null : pool.take(environment);
+        return pooled != null ? pooled : openUnpooledSession(environment);
+    }
+
+    /**
+     * Open a new session, bypassing the session pool.
+     */
+    public SessionHandle openUnpooledSession(SessionEnvironment environment) throws SqlGatewayException {
+        SessionHandle session = super.openSession(environment);
+        openSessions.add(session);
+        return session;
+    }
+
+    /**
+     * Open sessions, including pooled ones. Sessions found expired are released.
+     */
+    public int getOpenSessionCount() {
+        int count = 0;
+        for (SessionHandle session : openSessions) {
+            if (isSessionAlive(session)) {
+                count++;
+            } else {
+                sessionClosed(session);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Operations not yet closed, over all open sessions. Sessions found expired are released.
+     */
+    public int getOpenOperationCount() {
+        int count = 0;
+        for (SessionHandle session : openSessions) {
+            try {
+                count += sessionManager.getSession(session).getOperationManager().getOperationCount();
+            } catch (SqlGatewayException e) {
+                // Closed or expired
+                sessionClosed(session);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drop the plans in every session's query plan cache (sql-gateway.session.plan-cache.enabled).
+     */
+    public void invalidateQueryPlans() {
+        for (SessionHandle session : openSessions) {
+            try {
+                PlanCacheManager plans = sessionManager.getSession(session).getPlanCacheManager();
+                if (plans != null) {
+                    plans.invalidateAll();
+                }
+            } catch (Exception e) {
+                // Expired without closeSession
+                sessionClosed(session);
+            }
+        }
+    }
+
+    /**
+     * Release what the runner holds for sessions the session manager expired or otherwise
+     * dropped without closeSession, and for spilled operations that no longer exist. The
+     * statement listeners are told as if the session had been closed.
+     */
+    public void reapExpiredSessions() {
+        for (SessionHandle session : openSessions) {
+            if (!isSessionAlive(session)) {
+                LOG.debug("Session {} expired, releasing its resources", session);
+                sessionClosed(session);
+            }
+        }
+        if (spillManager != null) {
+            spillManager.reap(this::isOperationAlive);
+        }
+    }
+
+    private boolean isSessionAlive(SessionHandle session) {
+        try {
+            sessionManager.getSession(session);
+            return true;
+        } catch (SqlGatewayException e) {
+            return false;
+        }
+    }
+
+    private boolean isOperationAlive(SessionHandle session, OperationHandle operation) {
+        return getOperationStatus(session, operation) != null;
+    }
+
+    /**
+     * A catalog of a session, or null if the session has no catalog of that name.
+     */
+    public Catalog getCatalog(SessionHandle sessionHandle, String catalogName) throws SqlGatewayException {
+        // Session keeps its SessionContext private; an executor is a cheap way to reach it
+        return sessionManager.getSession(sessionHandle).createExecutor().getSessionContext().getSessionState()
+            .catalogManager.getCatalog(catalogName).orElse(null);
+    }
+
+    /**
+     * Status of an operation, or null if it was closed or its session is gone. Unlike
+     * getOperationInfo, a missing operation is not logged as an error, so this suits polling
+     * operations the client may close at any time.
+     */
+    public OperationStatus getOperationStatus(SessionHandle sessionHandle, OperationHandle operationHandle) {
+        try {
+            return sessionManager.getSession(sessionHandle).getOperationManager().getOperation(operationHandle)
+                .getOperationInfo().getStatus();
+        } catch (SqlGatewayException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public OperationHandle executeStatement(
+            SessionHandle sessionHandle,
+            String statement,
+            long executionTimeoutMs,
+            Configuration executionConfig) throws SqlGatewayException {
+        long startNanos = System.nanoTime();
+        OperationClass operationClass = OperationClass.classify(statement);
+        QueryResultCache.Lookup cachedResult = resultCache == null || operationClass != OperationClass.QUERY
+            ? null
+            : resultCache.lookup(sessionHandle, statement);
+        OperationHandle operationHandle;
+        if (cachedResult != null && cachedResult.isHit()) {
+            // Served like a metadata lookup: no job, and nothing to queue behind running ones
+            SubmissionContext.set(new SubmissionContext(sessionHandle, statement, OperationClass.METADATA));
+            try {
+                operationHandle = super.submitOperation(sessionHandle, cachedResult::getResult);
+            } finally {
+                SubmissionContext.clear();
+            }
+        } else {
+            CompiledPlanCache.Plan plan = planCache == null ? null : planCache.lookup(sessionHandle, statement);
+            if (plan != null && !plan.isCached()) {
+                plan = planCache.compile(sessionHandle, plan);
+            }
+            String executed = plan != null && plan.isCached() ? plan.executeStatement() : statement;
+            SubmissionContext.set(new SubmissionContext(sessionHandle, statement, operationClass));
+            try {
+                operationHandle = super.executeStatement(sessionHandle, executed, executionTimeoutMs, executionConfig);
+            } finally {
+                SubmissionContext.clear();
+            }
+            if (plan != null) {
+                planCache.afterExecute(sessionHandle, operationHandle, plan);
+            }
+            if (cachedResult != null) {
+                resultCache.record(sessionHandle, operationHandle, cachedResult);
+            }
+            if (spillManager != null && operationClass == OperationClass.QUERY) {
+                spillManager.reap(this::isOperationAlive);
+                spillManager.register(sessionHandle, operationHandle, super::fetchResults,
+                    isBatch(sessionHandle, executionConfig));
+            }
+        }
+        RunnerMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onSubmitted(sessionHandle, operationHandle, startNanos);
+        }
+        for (StatementListener listener : statementListeners) {
+            try {
+                listener.onStatement(sessionHandle, operationHandle, statement, operationClass);
+            } catch (RuntimeException e) {
+                LOG.warn("Statement listener failed for operation {}: {}", operationHandle, e.getMessage());
+            }
+        }
+        return operationHandle;
+    }
+
+    @Override
+    public OperationHandle submitOperation(SessionHandle sessionHandle, Callable<ResultSet> executor)
+            throws SqlGatewayException {
+        // Programmatic operations (catalog listing etc.) are metadata lookups
+        SubmissionContext.set(new SubmissionContext(sessionHandle, null, OperationClass.METADATA));
+        try {
+            return super.submitOperation(sessionHandle, executor);
+        } finally {
+            SubmissionContext.clear();
+        }
+    }
+
+    @Override
+    public ResultSet fetchResults(
+            SessionHandle sessionHandle,
+            OperationHandle operationHandle,
+            long token,
+            int maxRows) throws SqlGatewayException {
+        long startNanos = System.nanoTime();
+        SpillingResultStore store = spillStore(operationHandle);
+        ResultSet result = store != null
+            ? store.fetch(token, maxRows)
+            : super.fetchResults(sessionHandle, operationHandle, token, maxRows);
+        QueryResultCache cache = resultCache;
+        if (cache != null) {
+            cache.onFetch(operationHandle, token, result);
+        }
+        RunnerMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onFetched(operationHandle, result, startNanos);
+        }
+        return result;
+    }
+
+    @Override
+    public void cancelOperation(SessionHandle sessionHandle, OperationHandle operationHandle) throws SqlGatewayException {
+        releaseSpillStore(operationHandle);
+        releaseRecording(operationHandle);
+        if (metrics != null) {
+            metrics.onClosed(operationHandle);
+        }
+        super.cancelOperation(sessionHandle, operationHandle);
+    }
+
+    @Override
+    public void closeOperation(SessionHandle sessionHandle, OperationHandle operationHandle) throws SqlGatewayException {
+        releaseSpillStore(operationHandle);
+        releaseRecording(operationHandle);
+        if (metrics != null) {
+            metrics.onClosed(operationHandle);
+        }
+        for (StatementListener listener : statementListeners) {
+            listener.onOperationClosed(sessionHandle, operationHandle);
+        }
+        super.closeOperation(sessionHandle, operationHandle);
+    }
+
+    @Override
+    public void closeSession(SessionHandle sessionHandle) throws SqlGatewayException {
+        sessionClosed(sessionHandle);
+        super.closeSession(sessionHandle);
+    }
+
+    private void sessionClosed(SessionHandle sessionHandle) {
+        // Only once, when closeSession, the reaper and the gauges race for an expired session
+        if (!openSessions.remove(sessionHandle)) {
+            return;
+        }
+        if (spillManager != null) {
+            spillManager.releaseSession(sessionHandle);
+        }
+        if (resultCache != null) {
+            resultCache.releaseSession(sessionHandle);
+        }
+        if (metrics != null) {
+            metrics.onSessionClosed(sessionHandle);
+        }
+        for (StatementListener listener : statementListeners) {
+            listener.onSessionClosed(sessionHandle);
+        }
+    }
+
+    /**
+     * Whether statements of a session run in batch mode, so their results are bounded.
+     */
+    private boolean isBatch(SessionHandle sessionHandle, Configuration executionConfig) {
+        Configuration config = Configuration.fromMap(getSessionConfig(sessionHandle));
+        config.addAll(executionConfig);
+        return config.get(ExecutionOptions.RUNTIME_MODE) == RuntimeExecutionMode.BATCH;
+    }
+
+    /**
+     * Number of result rows the gateway holds for an operation but has not handed out yet:
+     * rows in the ResultStore plus rows the ResultFetcher already pulled from it, or the
+     * unfetched rows of the operation's spill store.
+     *
+     * @return The row count, or -1 if the operation has no results yet or the gateway
+     *         internals do not match Flink 1.20.0
+     */
+    public int getBufferedRowCount(SessionHandle sessionHandle, OperationHandle operationHandle) {
+        SpillingResultStore store = spillStore(operationHandle);
+        if (store != null) {
+            return store.getBufferedRowCount();
+        }
+        ResultFetcher fetcher = resultFetcher(sessionHandle, operationHandle);
+        return fetcher == null ? -1 : bufferedRowCount(fetcher);
+    }
+
+    /**
+     * getBufferedRowCount for an operation that was already looked up, so its session is not
+     * touched.
+     */
+    int getBufferedRowCount(OperationHandle operationHandle, OperationManager.Operation operation) {
+        SpillingResultStore store = spillStore(operationHandle);
+        if (store != null) {
+            return store.getBufferedRowCount();
+        }
+        if (resultFetcherField == null || bufferedResultsField == null) {
+            return -1;
+        }
+        try {
+            ResultFetcher fetcher = (ResultFetcher) resultFetcherField.get(operation);
+            return fetcher == null ? -1 : bufferedRowCount(fetcher);
+        } catch (IllegalAccessException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Wait until the gateway buffers at least the given number of rows for an operation,
+     * the job stops producing results, or the timeout passes. Lets a fetch return one full
+     * batch instead of several partial ones while a job is still producing.
+     *
+     * @return The buffered row count when the wait ended, or -1 if unknown
+     */
+    public int awaitBufferedRows(SessionHandle sessionHandle, OperationHandle operationHandle, int rows, long timeoutMs)
+            throws InterruptedException {
+        SpillingResultStore store = spillStore(operationHandle);
+        if (store != null) {
+            return store.awaitBufferedRows(rows, timeoutMs);
+        }
+        ResultFetcher fetcher = resultFetcher(sessionHandle, operationHandle);
+        if (fetcher == null) {
+            return -1;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int buffered = bufferedRowCount(fetcher);
+        while (buffered >= 0 && buffered < rows
+                && fetcher.getResultStore().isRetrieving()
+                && System.nanoTime() < deadline) {
+            Thread.sleep(BUFFER_POLL_INTERVAL_MS);
+            buffered = bufferedRowCount(fetcher);
+        }
+        return buffered;
+    }
+
+    SpillingResultStore spillStore(OperationHandle operationHandle) {
+        return spillManager == null ? null : spillManager.getStore(operationHandle);
+    }
+
+    private void releaseSpillStore(OperationHandle operationHandle) {
+        if (spillManager != null) {
+            spillManager.release(operationHandle);
+        }
+    }
+
+    private void releaseRecording(OperationHandle operationHandle) {
+        if (resultCache != null) {
+            resultCache.release(operationHandle);
+        }
+    }
+
+    private ResultFetcher resultFetcher(SessionHandle sessionHandle, OperationHandle operationHandle) {
+        if (resultFetcherField == null || bufferedResultsField == null) {
+            return null;
+        }
+        try {
+            OperationManager.Operation operation = sessionManager.getSession(sessionHandle)
+                .getOperationManager()
+                .getOperation(operationHandle);
+            return (ResultFetcher) resultFetcherField.get(operation);
+        } catch (Exception e) {
+            LOG.debug("Could not read result fetcher of operation {}: {}", operationHandle, e.getMessage());
+            return null;
+        }
+    }
+
+    private int bufferedRowCount(ResultFetcher fetcher) {
+        try {
+            // Read without the fetcher's lock; a slightly stale size is fine for sizing batches
+            List<?> pending = (List<?>) bufferedResultsField.get(fetcher);
+            return fetcher.getResultStore().getBufferedRecordSize() + pending.size();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static Field accessibleField(Class<?> owner, String name) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            LOG.warn("{}.{} not found (expected Flink 1.20.0); buffered row counts are unavailable",
+                owner.getSimpleName(), name);
+            return null;
+        }
+    }
+}
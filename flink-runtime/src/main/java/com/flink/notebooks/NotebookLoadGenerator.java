@@ -0,0 +1,603 @@
+package com.flink.notebooks;
+
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Load generator that replays the SQL cells of .flinknb notebooks through the gateway REST
+ * API from a number of simulated users, to see how one runner copes with a team's workload.
+ *
+ * Each user opens a session per notebook, runs its SQL cells in order with a think time
+ * between them, closes the session and moves on to the next notebook until the run is over.
+ * Cells are run the way the VS Code extension runs them: the cell text is submitted as one
+ * statement and its result fetched until end of stream, in the columnar format from the
+ * runner endpoint or as JSON from the gateway. A result that has not ended --stream-seconds
+ * after its first rows (or after --max-rows) is counted as a streaming query and closed, which
+ * cancels its job.
+ *
+ * Polling:
+ *   extension  poll the operation status every second until it runs, wait a second, then
+ *              fetch, retrying empty fetches after --poll-ms (what the extension does)
+ *   eager      fetch right away, retrying empty fetches after --poll-ms
+ *
+ * Reported: cells and rows per second, errors, and p50 / p99 / max of cell latency (submit
+ * until the result was read to the end, or until a streaming query's first rows), of time to
+ * first row for queries, and of each result fetch request. Without --gateway an embedded
+ * MiniClusterRunner is started on free ports, so notebooks reading datagen tables (like
+ * those in examples/) run fully locally.
+ *
+ * Usage: java -cp flink-minicluster.jar com.flink.notebooks.NotebookLoadGenerator [options] <notebook.flinknb|dir>...
+ *   --users N            simulated users (default 4)
+ *   --duration S         length of the run in seconds (default 60)
+ *   --think-ms T         mean pause between cells, varied by +-50% (default 2000)
+ *   --polling MODE       extension or eager (default extension)
+ *   --poll-ms P          pause before fetching again after an empty fetch (default 500)
+ *   --stream-seconds S   how long a result is read after its first rows (default 10)
+ *   --max-rows N         stop reading a result after this many rows (default 10000)
+ *   --row-format F       COLUMNAR or JSON (default COLUMNAR)
+ *   --gateway URL        replay against a running gateway instead of an embedded runner
+ *   --runner URL         its runner endpoint, for COLUMNAR (default: gateway host, port 8084)
+ *   --report FILE        also write the report as JSON
+ */
+public class NotebookLoadGenerator {
+
+    private static final int DEFAULT_RUNNER_PORT = 8084;
+    private static final Duration HTTP_TIMEOUT = Duration.ofSeconds(60);
+    private static final long CELL_TIMEOUT_MS = 5 * 60_000;
+    private static final long STATUS_TIMEOUT_MS = 60_000;
+    // The extension's fetch sizes (see sqlGatewayClient.ts)
+    private static final int DEFAULT_FETCH_ROWS = 100;
+    private static final int MAX_FETCH_ROWS = 10_000;
+    private static final int MAX_FETCH_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_FETCH_WAIT_MS = 250;
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final Options options;
+    private final List<Notebook> notebooks;
+    private final String gatewayUrl;
+    private final String runnerUrl;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(HTTP_TIMEOUT).build();
+
+    private final Map<String, Latencies> latencies = new LinkedHashMap<>();
+    private final AtomicLong cells = new AtomicLong();
+    private final AtomicLong failedCells = new AtomicLong();
+    private final AtomicLong streamingCells = new AtomicLong();
+    private final AtomicLong notebooksRun = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final Set<String> errors = Collections.synchronizedSet(new LinkedHashSet<>());
+    private volatile long endNanos;
+
+    private NotebookLoadGenerator(Options options, List<Notebook> notebooks, String gatewayUrl, String runnerUrl) {
+        this.options = options;
+        this.notebooks = notebooks;
+        this.gatewayUrl = gatewayUrl;
+        this.runnerUrl = runnerUrl;
+        for (String name : List.of("cell", "cell.metadata", "cell.ddl", "cell.query", "cell.job", "firstRow", "fetch")) {
+            latencies.put(name, new Latencies());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = parseArgs(args);
+        List<Notebook> notebooks = new ArrayList<>();
+        for (Path path : options.paths) {
+            notebooks.addAll(Notebook.load(path));
+        }
+        if (notebooks.isEmpty()) {
+            throw new IllegalArgumentException("No .flinknb notebooks with SQL cells in " + options.paths);
+        }
+
+        MiniClusterRunner runner = null;
+        String gatewayUrl = options.gatewayUrl;
+        String runnerUrl = options.runnerUrl;
+        if (gatewayUrl == null) {
+            MiniClusterRunner.Config config = new MiniClusterRunner.Config();
+            config.restPort = CdsTrainingRun.freePort();
+            config.gatewayPort = CdsTrainingRun.freePort();
+            config.runnerPort = CdsTrainingRun.freePort();
+            runner = new MiniClusterRunner();
+            runner.start(config);
+            gatewayUrl = "http://localhost:" + config.gatewayPort;
+            runnerUrl = "http://localhost:" + config.runnerPort;
+        } else if (runnerUrl == null) {
+            URI gateway = URI.create(gatewayUrl);
+            runnerUrl = gateway.getScheme() + "://" + gateway.getHost() + ":" + DEFAULT_RUNNER_PORT;
+        }
+
+        int exitCode = 0;
+        try {
+            NotebookLoadGenerator generator = new NotebookLoadGenerator(options, notebooks, gatewayUrl, runnerUrl);
+            Map<String, Object> report = generator.run();
+            generator.print(report);
+            if (options.reportFile != null) {
+                Files.write(Paths.get(options.reportFile),
+                    RunnerHttpServer.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(report));
+                System.out.println("\nReport written to " + options.reportFile);
+            }
+        } catch (Exception e) {
+            System.err.println("Load run failed: " + e);
+            exitCode = 1;
+        } finally {
+            if (runner != null) {
+                runner.stop();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private Map<String, Object> run() throws Exception {
+        System.out.printf("Replaying %d notebook(s) with %d user(s) for %d s against %s%n",
+            notebooks.size(), options.users, options.durationSeconds, gatewayUrl);
+
+        long startNanos = System.nanoTime();
+        endNanos = startNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        ExecutorService users = Executors.newFixedThreadPool(options.users, r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < options.users; i++) {
+            int user = i;
+            futures.add(users.submit(() -> {
+                simulateUser(user);
+                return null;
+            }));
+        }
+        while (!futures.stream().allMatch(Future::isDone)) {
+            Thread.sleep(1000);
+            long elapsed = (System.nanoTime() - startNanos) / 1_000_000_000;
+            if (elapsed > 0 && elapsed % 10 == 0) {
+                System.out.printf("  %3d s: %d cells, %d failed, %d rows%n", elapsed, cells.get(), failedCells.get(), rows.get());
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        users.shutdown();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", options.users);
+        report.put("durationSeconds", seconds);
+        report.put("thinkMs", options.thinkMs);
+        report.put("polling", options.polling);
+        report.put("pollMs", options.pollMs);
+        report.put("rowFormat", options.rowFormat);
+        report.put("notebooks", notebooks.stream().map(notebook -> notebook.name).collect(Collectors.toList()));
+        report.put("notebooksRun", notebooksRun.get());
+        report.put("cells", cells.get());
+        report.put("failedCells", failedCells.get());
+        report.put("streamingCells", streamingCells.get());
+        report.put("cellsPerSecond", cells.get() / seconds);
+        report.put("rows", rows.get());
+        report.put("rowsPerSecond", rows.get() / seconds);
+        Map<String, Object> latencyReport = new LinkedHashMap<>();
+        latencies.forEach((name, values) -> latencyReport.put(name, values.summary()));
+        report.put("latencyMs", latencyReport);
+        report.put("errors", new ArrayList<>(errors));
+        return report;
+    }
+
+    private void simulateUser(int user) throws InterruptedException {
+        for (int pass = 0; System.nanoTime() < endNanos; pass++) {
+            Notebook notebook = notebooks.get((user + pass) % notebooks.size());
+            String session;
+            try {
+                session = post(gatewayUrl + "/v1/sessions", Map.of("sessionName", "load-user-" + user))
+                    .get("sessionHandle").asText();
+            } catch (IOException e) {
+                recordError("open session: " + e.getMessage());
+                Thread.sleep(options.thinkMs);
+                continue;
+            }
+            try {
+                for (String cell : notebook.cells) {
+                    if (System.nanoTime() >= endNanos) {
+                        break;
+                    }
+                    runCell(session, cell);
+                    think();
+                }
+                notebooksRun.incrementAndGet();
+            } finally {
+                try {
+                    send(HttpRequest.newBuilder(URI.create(gatewayUrl + "/v1/sessions/" + session)).DELETE());
+                } catch (IOException e) {
+                    recordError("close session: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void runCell(String session, String cell) throws InterruptedException {
+        OperationClass operationClass = OperationClass.classify(cell);
+        long start = System.nanoTime();
+        String operation = null;
+        try {
+            operation = post(gatewayUrl + "/v1/sessions/" + session + "/statements", Map.of("statement", cell))
+                .get("operationHandle").asText();
+            if ("extension".equals(options.polling)) {
+                awaitRunning(session, operation);
+                Thread.sleep(1000);
+            }
+            long cellNanos = readResult(session, operation, operationClass, start);
+            latencies.get("cell").record(cellNanos);
+            latencies.get("cell." + operationClass.laneName()).record(cellNanos);
+            cells.incrementAndGet();
+        } catch (IOException | IllegalStateException e) {
+            failedCells.incrementAndGet();
+            recordError(OperationClass.stripLeadingComments(cell).split("\n")[0] + ": " + e.getMessage());
+        } finally {
+            if (operation != null) {
+                try {
+                    send(HttpRequest.newBuilder(URI.create(operationUrl(gatewayUrl, session, operation) + "/close"))
+                        .DELETE());
+                } catch (IOException e) {
+                    // Already closed with its session, or failed
+                }
+            }
+        }
+    }
+
+    /**
+     * Poll the operation status once a second until it runs or finished, as the extension does.
+     */
+    private void awaitRunning(String session, String operation) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + STATUS_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            String status = status(session, operation);
+            if ("ERROR".equals(status)) {
+                throw new IllegalStateException("Operation failed");
+            }
+            if ("FINISHED".equals(status) || "RUNNING".equals(status)) {
+                return;
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    /**
+     * Read the result until end of stream. A result still open --stream-seconds after its first
+     * rows, or once --max-rows were read, is taken to be a streaming query and left there.
+     *
+     * @return The cell latency: until the end of the result, or a streaming query's first rows
+     */
+    private long readResult(String session, String operation, OperationClass operationClass, long start)
+            throws IOException, InterruptedException {
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(CELL_TIMEOUT_MS);
+        long token = 0;
+        long read = 0;
+        int maxRows = DEFAULT_FETCH_ROWS;
+        long firstRowNanos = 0;
+        long watchDeadline = Long.MAX_VALUE;
+        while (true) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Result not read within " + CELL_TIMEOUT_MS + " ms");
+            }
+            Batch batch = fetch(session, operation, token, maxRows);
+            read += batch.rows;
+            rows.addAndGet(batch.rows);
+            if (batch.rows > 0 && firstRowNanos == 0) {
+                firstRowNanos = System.nanoTime() - start;
+                watchDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.streamSeconds);
+                if (operationClass == OperationClass.QUERY) {
+                    latencies.get("firstRow").record(firstRowNanos);
+                }
+            }
+            if (batch.nextToken == null) {
+                return System.nanoTime() - start;
+            }
+            // The gateway reports a query FINISHED once its job is submitted, so whether it is
+            // bounded only shows in whether its result ends
+            if (System.nanoTime() > watchDeadline || read >= options.maxRows) {
+                streamingCells.incrementAndGet();
+                return firstRowNanos;
+            }
+            if (!batch.notReady) {
+                token = batch.nextToken;
+            }
+            if (batch.rows >= maxRows) {
+                maxRows = Math.min(maxRows * 2, MAX_FETCH_ROWS);
+            }
+            if (batch.rows == 0) {
+                Thread.sleep(options.pollMs);
+            } else if ("extension".equals(options.polling)) {
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private Batch fetch(String session, String operation, long token, int maxRows)
+            throws IOException, InterruptedException {
+        boolean columnar = "COLUMNAR".equals(options.rowFormat);
+        String uri = columnar
+            ? operationUrl(runnerUrl, session, operation) + "/result/" + token + "?rowFormat=COLUMNAR&maxBytes="
+                + MAX_FETCH_BYTES + "&maxWaitMs=" + MAX_FETCH_WAIT_MS
+            : operationUrl(gatewayUrl, session, operation) + "/result/" + token + "?rowFormat=JSON&maxRows=" + maxRows;
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = send(HttpRequest.newBuilder(URI.create(uri)).GET());
+        latencies.get("fetch").record(System.nanoTime() - start);
+
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        if (contentType.startsWith(ColumnarResultEncoder.CONTENT_TYPE)) {
+            // Row count follows the magic number, format version and column count, little-endian
+            int rowCount = ByteBuffer.wrap(response.body()).order(ByteOrder.LITTLE_ENDIAN).getInt(9);
+            String resultType = response.headers().firstValue("X-Result-Type").orElse("");
+            return new Batch(rowCount, "NOT_READY".equals(resultType),
+                nextToken(response.headers().firstValue("X-Next-Result-Uri").orElse(null), resultType));
+        }
+        JsonNode body = RunnerHttpServer.MAPPER.readTree(response.body());
+        String resultType = body.path("resultType").asText();
+        JsonNode data = body.path("results").path("data");
+        JsonNode next = body.get("nextResultUri");
+        return new Batch(data.isArray() ? data.size() : 0, "NOT_READY".equals(resultType),
+            nextToken(next == null || next.isNull() ? null : next.asText(), resultType));
+    }
+
+    private static Long nextToken(String nextResultUri, String resultType) {
+        if (nextResultUri == null || "EOS".equals(resultType)) {
+            return null;
+        }
+        String path = nextResultUri.contains("?") ? nextResultUri.substring(0, nextResultUri.indexOf('?')) : nextResultUri;
+        return Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+    }
+
+    private String status(String session, String operation) throws IOException, InterruptedException {
+        return RunnerHttpServer.MAPPER.readTree(
+            send(HttpRequest.newBuilder(URI.create(operationUrl(gatewayUrl, session, operation) + "/status")).GET())
+                .body()).path("status").asText();
+    }
+
+    private void think() throws InterruptedException {
+        if (options.thinkMs > 0) {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(options.thinkMs / 2, options.thinkMs * 3 / 2 + 1));
+        }
+    }
+
+    private void recordError(String message) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(message.length() > 300 ? message.substring(0, 300) + "..." : message);
+        }
+    }
+
+    private void print(Map<String, Object> report) {
+        System.out.println("\n=== Notebook Replay Load ===\n");
+        System.out.printf("Users: %d, think time: %d ms, polling: %s (%d ms), row format: %s%n",
+            options.users, options.thinkMs, options.polling, options.pollMs, options.rowFormat);
+        System.out.printf("Notebooks run: %d, cells: %d (%.2f/s), streaming: %d, failed: %d, rows: %d (%.1f/s)%n%n",
+            notebooksRun.get(), cells.get(), (Double) report.get("cellsPerSecond"), streamingCells.get(), failedCells.get(),
+            rows.get(), (Double) report.get("rowsPerSecond"));
+        System.out.printf("%-16s %8s %10s %10s %10s%n", "latency (ms)", "count", "p50", "p99", "max");
+        latencies.forEach((name, values) -> {
+            Map<String, Object> summary = values.summary();
+            if ((Integer) summary.get("count") > 0) {
+                System.out.printf("%-16s %8d %10.1f %10.1f %10.1f%n", name, summary.get("count"),
+                    summary.get("p50"), summary.get("p99"), summary.get("max"));
+            }
+        });
+        if (!errors.isEmpty()) {
+            System.out.println("\nErrors (first " + MAX_REPORTED_ERRORS + "):");
+            errors.forEach(error -> System.out.println("  " + error));
+        }
+    }
+
+    private static String operationUrl(String baseUrl, String session, String operation) {
+        return baseUrl + "/v1/sessions/" + session + "/operations/" + operation;
+    }
+
+    private JsonNode post(String uri, Map<String, String> body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(RunnerHttpServer.MAPPER.writeValueAsBytes(body)));
+        return RunnerHttpServer.MAPPER.readTree(send(request).body());
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request.timeout(HTTP_TIMEOUT).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 400) {
+            throw new IOException(request.build().uri().getPath() + " returned " + response.statusCode() + ": "
+                + errorMessage(response.body()));
+        }
+        return response;
+    }
+
+    /**
+     * The root cause from a gateway error response, which lists the whole stack trace.
+     */
+    private static String errorMessage(byte[] body) {
+        String text = new String(body, StandardCharsets.UTF_8);
+        int cause = text.lastIndexOf("Caused by: ");
+        if (cause >= 0) {
+            int end = text.indexOf("\\n", cause);
+            return text.substring(cause + "Caused by: ".length(), end > 0 ? end : text.length());
+        }
+        return text;
+    }
+
+    private static Options parseArgs(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--users":
+                    options.users = Integer.parseInt(args[++i]);
+                    break;
+                case "--duration":
+                    options.durationSeconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--think-ms":
+                    options.thinkMs = Long.parseLong(args[++i]);
+                    break;
+                case "--polling":
+                    options.polling = args[++i].toLowerCase(Locale.ROOT);
+                    break;
+                case "--poll-ms":
+                    options.pollMs = Long.parseLong(args[++i]);
+                    break;
+                case "--stream-seconds":
+                    options.streamSeconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-rows":
+                    options.maxRows = Long.parseLong(args[++i]);
+                    break;
+                case "--row-format":
+                    options.rowFormat = args[++i].toUpperCase(Locale.ROOT);
+                    break;
+                case "--gateway":
+                    options.gatewayUrl = args[++i];
+                    break;
+                case "--runner":
+                    options.runnerUrl = args[++i];
+                    break;
+                case "--report":
+                    options.reportFile = args[++i];
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    }
+                    options.paths.add(Paths.get(args[i]));
+            }
+        }
+        if (options.paths.isEmpty()) {
+            throw new IllegalArgumentException("Usage: NotebookLoadGenerator [options] <notebook.flinknb|dir>...");
+        }
+        if (!"extension".equals(options.polling) && !"eager".equals(options.polling)) {
+            throw new IllegalArgumentException("Unknown polling '" + options.polling + "'. Expected extension or eager");
+        }
+        if (!"COLUMNAR".equals(options.rowFormat) && !"JSON".equals(options.rowFormat)) {
+            throw new IllegalArgumentException("Unknown row format '" + options.rowFormat + "'. Expected COLUMNAR or JSON");
+        }
+        if (options.users < 1 || options.durationSeconds < 1) {
+            throw new IllegalArgumentException("--users and --duration must be at least 1");
+        }
+        return options;
+    }
+
+    private static final class Options {
+        int users = 4;
+        int durationSeconds = 60;
+        long thinkMs = 2000;
+        String polling = "extension";
+        long pollMs = 500;
+        int streamSeconds = 10;
+        long maxRows = 10_000;
+        String rowFormat = "COLUMNAR";
+        String gatewayUrl;
+        String runnerUrl;
+        String reportFile;
+        final List<Path> paths = new ArrayList<>();
+    }
+
+    private static final class Notebook {
+        final String name;
+        final List<String> cells;
+
+        Notebook(String name, List<String> cells) {
+            this.name = name;
+            this.cells = cells;
+        }
+
+        /**
+         * The notebook at the path, or every .flinknb notebook in the directory, in name order.
+         * Notebooks without SQL cells are left out.
+         */
+        static List<Notebook> load(Path path) throws IOException {
+            List<Path> files;
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> listing = Files.list(path)) {
+                    files = listing.filter(file -> file.toString().endsWith(".flinknb")).sorted().collect(Collectors.toList());
+                }
+            } else {
+                files = List.of(path);
+            }
+            List<Notebook> notebooks = new ArrayList<>();
+            for (Path file : files) {
+                List<String> cells = new ArrayList<>();
+                for (JsonNode cell : RunnerHttpServer.MAPPER.readTree(file.toFile()).path("cells")) {
+                    // Code cells; kind 1 is markdown
+                    String sql = cell.path("value").asText().trim();
+                    if (cell.path("kind").asInt() == 2 && !OperationClass.stripLeadingComments(sql).isEmpty()) {
+                        cells.add(sql);
+                    }
+                }
+                if (!cells.isEmpty()) {
+                    notebooks.add(new Notebook(file.getFileName().toString(), cells));
+                }
+            }
+            return notebooks;
+        }
+    }
+
+    private static final class Batch {
+        final int rows;
+        final boolean notReady;
+        /** Null at end of stream. */
+        final Long nextToken;
+
+        Batch(int rows, boolean notReady, Long nextToken) {
+            this.rows = rows;
+            this.notReady = notReady;
+            this.nextToken = nextToken;
+        }
+    }
+
+    /**
+     * Latencies of one kind, kept in full for percentiles.
+     */
+    private static final class Latencies {
+        // Guarded by this
+        private final List<Long> nanos = new ArrayList<>();
+
+        synchronized void record(long value) {
+            nanos.add(value);
+        }
+
+        synchronized Map<String, Object> summary() {
+            List<Long> sorted = new ArrayList<>(nanos);
+            Collections.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", sorted.size());
+            summary.put("p50", percentile(sorted, 0.50));
+            summary.put("p99", percentile(sorted, 0.99));
+            summary.put("max", sorted.isEmpty() ? 0.0 : sorted.get(sorted.size() - 1) / 1e6);
+            return summary;
+        }
+
+        private static double percentile(List<Long> sorted, double p) {
+            if (sorted.isEmpty()) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(p * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1e6;
+        }
+    }
+}
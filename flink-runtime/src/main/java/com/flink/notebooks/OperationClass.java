@@ -0,0 +1,90 @@
+package com.flink.notebooks;
+
+import java.util.Locale;
+
+/**
+ * Coarse classification of gateway operations, used to keep short metadata lookups from
+ * queueing behind long-running jobs.
+ */
+public enum OperationClass {
+
+    /** SHOW / DESCRIBE / EXPLAIN / USE / SET and other catalog lookups. */
+    METADATA("metadata"),
+
+    /** CREATE / DROP / ALTER of catalog objects. */
+    DDL("ddl"),
+
+    /** Interactive SELECT queries. */
+    QUERY("query"),
+
+    /** INSERT, CTAS, statement sets and other long-running jobs. */
+    JOB("job");
+
+    private final String laneName;
+
+    OperationClass(String laneName) {
+        this.laneName = laneName;
+    }
+
+    /**
+     * Lane name used in configuration keys and error messages.
+     */
+    public String laneName() {
+        return laneName;
+    }
+
+    /**
+     * Classify a SQL statement by its leading keywords.
+     * Unknown or missing statements are treated as interactive queries.
+     */
+    public static OperationClass classify(String statement) {
+        if (statement == null) {
+            return QUERY;
+        }
+
+        String sql = stripLeadingComments(statement).toUpperCase(Locale.ROOT);
+
+        if (startsWithKeyword(sql, "SHOW") || startsWithKeyword(sql, "DESCRIBE") || startsWithKeyword(sql, "DESC")
+                || startsWithKeyword(sql, "EXPLAIN") || startsWithKeyword(sql, "USE") || startsWithKeyword(sql, "SET")
+                || startsWithKeyword(sql, "RESET") || startsWithKeyword(sql, "HELP")) {
+            return METADATA;
+        }
+
+        if (startsWithKeyword(sql, "INSERT") || startsWithKeyword(sql, "EXECUTE")
+                || startsWithKeyword(sql, "BEGIN") || startsWithKeyword(sql, "STATEMENT")) {
+            return JOB;
+        }
+
+        if (startsWithKeyword(sql, "CREATE") || startsWithKeyword(sql, "REPLACE")) {
+            // CREATE TABLE ... AS SELECT runs a job
+            return sql.matches("(?s).*\\bAS\\s+(SELECT|WITH|VALUES)\\b.*") ? JOB : DDL;
+        }
+
+        if (startsWithKeyword(sql, "DROP") || startsWithKeyword(sql, "ALTER") || startsWithKeyword(sql, "ADD")
+                || startsWithKeyword(sql, "REMOVE") || startsWithKeyword(sql, "LOAD") || startsWithKeyword(sql, "UNLOAD")) {
+            return DDL;
+        }
+
+        return QUERY;
+    }
+
+    private static boolean startsWithKeyword(String sql, String keyword) {
+        return sql.startsWith(keyword)
+            && (sql.length() == keyword.length() || !Character.isLetterOrDigit(sql.charAt(keyword.length())));
+    }
+
+    static String stripLeadingComments(String sql) {
+        String s = sql.trim();
+        while (true) {
+            if (s.startsWith("--")) {
+                int end = s.indexOf('\n');
+                s = end < 0 ? "" : s.substring(end + 1).trim();
+            } else if (s.startsWith("/*")) {
+                int end = s.indexOf("*/");
+                s = end < 0 ? "" : s.substring(end + 2).trim();
+            } else {
+                return s;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Factory for the executor that runs SQL Gateway operations.
+ *
+ * Each gateway operation occupies its executor thread for as long as it runs, and a
+ * streaming SELECT runs until it is cancelled. With a bounded platform pool, streaming
+ * cells beyond the pool size therefore queue behind the others.
+ *
+ * Supported types:
+ * - platform: elastic pool sized by sql-gateway.worker.* (see AdaptiveOperationExecutor, default)
+ * - virtual:  one virtual thread per operation (Java 21+, falls back to platform)
+ * - priority: bounded lanes per operation class with admission control (see PriorityOperationExecutor)
+ * - fair:     per-session deficit round-robin with concurrency caps (see FairShareOperationExecutor)
+ */
+public final class OperationExecutors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OperationExecutors.class);
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+    public static final String PRIORITY = "priority";
+    public static final String FAIR = "fair";
+
+    private static final String THREAD_NAME_PREFIX = "sql-gateway-operation-";
+
+    private OperationExecutors() {
+    }
+
+    /**
+     * Create the operation executor of the given type.
+     *
+     * @param type Executor type (platform, virtual, priority or fair)
+     * @param flinkConfig Configuration loaded from flink-conf.yaml
+     * @return The executor service to inject into SessionManagerImpl
+     */
+    public static ExecutorService create(String type, Configuration flinkConfig) {
+        switch (type) {
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadExecutor();
+                if (virtual != null) {
+                    LOG.info("Using virtual-thread-per-operation executor");
+                    return virtual;
+                }
+                LOG.warn("Virtual threads require Java 21+ (running {}), falling back to platform executor",
+                    System.getProperty("java.version"));
+                return new AdaptiveOperationExecutor(flinkConfig);
+            case PRIORITY:
+                LOG.info("Using priority operation executor with per-class lanes");
+                return new PriorityOperationExecutor(flinkConfig);
+            case FAIR:
+                LOG.info("Using fair-share operation executor");
+                return new FairShareOperationExecutor(flinkConfig);
+            case PLATFORM:
+                return new AdaptiveOperationExecutor(flinkConfig);
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown operation executor type '" + type + "'. Expected one of: "
+                        + PLATFORM + ", " + VIRTUAL + ", " + PRIORITY + ", " + FAIR
+                );
+        }
+    }
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     */
+    public static boolean virtualThreadsAvailable() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Create Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(...).factory()).
+     * The runner is compiled for Java 17, so the Java 21 API is reached via reflection.
+     *
+     * @return The executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (!virtualThreadsAvailable()) {
+            return null;
+        }
+
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, THREAD_NAME_PREFIX + "v", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method newThreadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTask.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Failed to create virtual thread executor: {}", e.getMessage());
+            return null;
+        }
+    }
+}
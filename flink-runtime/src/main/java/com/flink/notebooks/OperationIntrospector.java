@@ -0,0 +1,275 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.OperationInfo;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.service.operation.OperationManager;
+import org.apache.flink.table.gateway.service.session.Session;
+import org.apache.flink.table.gateway.service.session.SessionManagerImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Live view of the gateway's sessions and operations, for finding operations that are never
+ * closed and keep their results on the heap.
+ *
+ * GET /v1/runner/operations?minAgeMs=0&stacks=false
+ *
+ * returns {"sampledAt", "sessionCount", "operationCount", "sessions": [{"sessionHandle",
+ * "idleMs", "operationCount", "complete", "operations": [{"operationHandle", "status",
+ * "ageMs", "statement", "operationClass", "bufferedRows", "spilledBytes", "thread"}]}]}, the
+ * oldest operations first. "thread" is {"name", "state"} (plus "stack" with stacks=true) for
+ * an operation that holds an operation executor thread, otherwise null. minAgeMs leaves out
+ * younger operations. Age and statement are only known for statements submitted through
+ * executeStatement; catalog listings and the like report null. With the fair-share operation
+ * executor the response also has "fairShare": {sessionId: {"queued", "running", "submitted",
+ * "avgWaitMs", "maxWaitMs", "oldestQueuedMs"}}, which keeps idle sessions until they close.
+ *
+ * Sessions and operations are read from SessionManagerImpl and each OperationManager via
+ * reflection (Flink 1.20.0 does not expose them), never through getSession(), which would
+ * count as session access and keep idle sessions from expiring. An OperationManager's
+ * operation map is copied under its read lock only if that is free right away; otherwise the
+ * session is reported with "complete": false and no operations, so sampling never waits on
+ * the operation path.
+ */
+public class OperationIntrospector implements NotebookGatewayService.StatementListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OperationIntrospector.class);
+
+    private static final int MAX_STATEMENT_LENGTH = 500;
+
+    private final NotebookGatewayService service;
+    private final SessionManagerImpl sessionManager;
+    private final MeteredOperationExecutor operationExecutor;
+    private final FairShareOperationExecutor fairShare;
+    private final Map<OperationHandle, Submitted> submitted = new ConcurrentHashMap<>();
+
+    private final Field sessionsField;
+    private final Field submittedOperationsField;
+    private final Field stateLockField;
+    private final Field invocationField;
+
+    /**
+     * @param operationExecutor The operation executor, whose threads are reported if it was
+     *                          wrapped by RunnerMetrics
+     */
+    public OperationIntrospector(NotebookGatewayService service, SessionManagerImpl sessionManager,
+            ExecutorService operationExecutor) {
+        this.service = service;
+        this.sessionManager = sessionManager;
+        this.operationExecutor = operationExecutor instanceof MeteredOperationExecutor
+            ? (MeteredOperationExecutor) operationExecutor
+            : null;
+        this.fairShare = this.operationExecutor != null
+                && this.operationExecutor.getDelegate() instanceof FairShareOperationExecutor
+            ? (FairShareOperationExecutor) this.operationExecutor.getDelegate()
+            : null;
+        this.sessionsField = accessibleField(SessionManagerImpl.class, "sessions");
+        this.submittedOperationsField = accessibleField(OperationManager.class, "submittedOperations");
+        this.stateLockField = accessibleField(OperationManager.class, "stateLock");
+        this.invocationField = accessibleField(OperationManager.Operation.class, "invocation");
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("GET", "/v1/runner/operations", this::operations);
+    }
+
+    @Override
+    public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+            OperationClass operationClass) {
+        submitted.put(operation, new Submitted(session, statement, operationClass));
+    }
+
+    @Override
+    public void onOperationClosed(SessionHandle session, OperationHandle operation) {
+        submitted.remove(operation);
+    }
+
+    @Override
+    public void onSessionClosed(SessionHandle session) {
+        submitted.values().removeIf(entry -> entry.session.equals(session));
+    }
+
+    private void operations(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        Map<String, String> query = RunnerHttpServer.queryParams(exchange);
+        long minAgeMs = RunnerHttpServer.intParam(query, "minAgeMs", 0);
+        boolean stacks = Boolean.parseBoolean(query.get("stacks"));
+        if (sessionsField == null || submittedOperationsField == null || stateLockField == null) {
+            RunnerHttpServer.sendError(exchange, 501, "Gateway internals do not match Flink 1.20.0");
+            return;
+        }
+        RunnerHttpServer.sendJson(exchange, 200, sample(minAgeMs, stacks));
+    }
+
+    Map<String, Object> sample(long minAgeMs, boolean stacks) throws IllegalAccessException {
+        long sampleNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        Map<?, ?> sessions = (Map<?, ?>) sessionsField.get(sessionManager);
+
+        List<Map<String, Object>> sessionNodes = new ArrayList<>();
+        Set<OperationHandle> seen = new HashSet<>();
+        boolean complete = true;
+        int operationCount = 0;
+        for (Object value : new ArrayList<>(sessions.values())) {
+            Session session = (Session) value;
+            Map<String, Object> sessionNode = new LinkedHashMap<>();
+            sessionNode.put("sessionHandle", session.getSessionHandle().getIdentifier().toString());
+            sessionNode.put("idleMs", Math.max(0, nowMillis - session.getLastAccessTime()));
+
+            List<Map.Entry<OperationHandle, OperationManager.Operation>> entries =
+                snapshot(session.getOperationManager());
+            sessionNode.put("operationCount", entries == null ? null : entries.size());
+            sessionNode.put("complete", entries != null);
+            List<Map<String, Object>> operationNodes = new ArrayList<>();
+            if (entries == null) {
+                complete = false;
+            } else {
+                operationCount += entries.size();
+                for (Map.Entry<OperationHandle, OperationManager.Operation> entry : entries) {
+                    seen.add(entry.getKey());
+                    Map<String, Object> operationNode = describe(entry.getKey(), entry.getValue(), sampleNanos, stacks);
+                    Long ageMs = (Long) operationNode.get("ageMs");
+                    if (minAgeMs <= 0 || (ageMs != null && ageMs >= minAgeMs)) {
+                        operationNodes.add(operationNode);
+                    }
+                }
+            }
+            operationNodes.sort(Comparator.comparing(
+                (Map<String, Object> node) -> (Long) node.get("ageMs"),
+                Comparator.nullsLast(Comparator.reverseOrder())));
+            sessionNode.put("operations", operationNodes);
+            sessionNodes.add(sessionNode);
+        }
+        if (complete) {
+            // Operations of sessions that went away without closeSession (e.g. expired)
+            submitted.entrySet().removeIf(entry ->
+                entry.getValue().startNanos < sampleNanos && !seen.contains(entry.getKey()));
+        }
+        sessionNodes.sort(Comparator.comparing(
+            (Map<String, Object> node) -> ((List<?>) node.get("operations")).size()).reversed());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sampledAt", Instant.ofEpochMilli(nowMillis).toString());
+        response.put("sessionCount", sessionNodes.size());
+        response.put("operationCount", operationCount);
+        response.put("sessions", sessionNodes);
+        if (fairShare != null) {
+            response.put("fairShare", fairShare.getSessionStats());
+        }
+        return response;
+    }
+
+    /**
+     * The operations of an OperationManager, or null if its lock is taken right now.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map.Entry<OperationHandle, OperationManager.Operation>> snapshot(OperationManager manager)
+            throws IllegalAccessException {
+        Lock lock = ((ReadWriteLock) stateLockField.get(manager)).readLock();
+        if (!lock.tryLock()) {
+            return null;
+        }
+        try {
+            Map<OperationHandle, OperationManager.Operation> operations =
+                (Map<OperationHandle, OperationManager.Operation>) submittedOperationsField.get(manager);
+            List<Map.Entry<OperationHandle, OperationManager.Operation>> entries = new ArrayList<>(operations.size());
+            for (Map.Entry<OperationHandle, OperationManager.Operation> entry : operations.entrySet()) {
+                entries.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, Object> describe(OperationHandle handle, OperationManager.Operation operation,
+            long sampleNanos, boolean stacks) {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("operationHandle", handle.getIdentifier().toString());
+        OperationInfo info = operation.getOperationInfo();
+        node.put("status", info.getStatus().name());
+        Submitted entry = submitted.get(handle);
+        node.put("ageMs", entry == null ? null : Math.max(0, (sampleNanos - entry.startNanos) / 1_000_000));
+        node.put("statement", entry == null ? null : truncate(entry.statement));
+        node.put("operationClass", entry == null ? null : entry.operationClass.name());
+        int bufferedRows = service.getBufferedRowCount(handle, operation);
+        node.put("bufferedRows", bufferedRows < 0 ? null : bufferedRows);
+        SpillingResultStore store = service.spillStore(handle);
+        node.put("spilledBytes", store == null ? null : store.getDiskBytes());
+        node.put("thread", thread(operation, stacks));
+        return node;
+    }
+
+    private Map<String, Object> thread(OperationManager.Operation operation, boolean stacks) {
+        if (operationExecutor == null || invocationField == null) {
+            return null;
+        }
+        Thread thread;
+        try {
+            Object invocation = invocationField.get(operation);
+            thread = invocation == null ? null : operationExecutor.getThread(invocation);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        if (thread == null) {
+            return null;
+        }
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("name", thread.getName());
+        node.put("state", thread.getState().name());
+        if (stacks) {
+            node.put("stack", Arrays.stream(thread.getStackTrace())
+                .map(StackTraceElement::toString)
+                .collect(Collectors.toList()));
+        }
+        return node;
+    }
+
+    private static String truncate(String statement) {
+        return statement.length() <= MAX_STATEMENT_LENGTH
+            ? statement
+            : statement.substring(0, MAX_STATEMENT_LENGTH) + "...";
+    }
+
+    private static Field accessibleField(Class<?> owner, String name) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            LOG.warn("{}.{} not found (expected Flink 1.20.0); operation introspection is limited",
+                owner.getSimpleName(), name);
+            return null;
+        }
+    }
+
+    private static final class Submitted {
+        final SessionHandle session;
+        final String statement;
+        final OperationClass operationClass;
+        final long startNanos = System.nanoTime();
+
+        Submitted(SessionHandle session, String statement, OperationClass operationClass) {
+            this.session = session;
+            this.statement = statement;
+            this.operationClass = operationClass;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.flink.notebooks;
+
+/**
+ * JMX view of the elastic operation pool, registered as com.flink.notebooks:type=OperationPool.
+ */
+public interface OperationPoolMXBean {
+
+    /** Threads currently alive in the pool. */
+    int getPoolSize();
+
+    /** Size the controller is currently steering towards. */
+    int getTargetPoolSize();
+
+    int getMinPoolSize();
+
+    int getMaxPoolSize();
+
+    /** Threads currently running an operation. */
+    int getActiveCount();
+
+    /** Operations waiting for a thread. */
+    int getQueueDepth();
+
+    long getCompletedTaskCount();
+
+    /** Operations completed per second over the last control interval. */
+    double getCompletedPerSecond();
+
+    /** Average queue wait over the last control interval, in milliseconds. */
+    long getAvgQueueWaitMs();
+
+    /** Process CPU load (0.0 - 1.0) at the last control interval. */
+    double getCpuLoad();
+}
@@ -0,0 +1,28 @@
+package com.flink.notebooks;
+
+/**
+ * JMX view of the compiled-plan cache, registered as com.flink.notebooks:type=PlanCache.
+ */
+public interface PlanCacheMXBean {
+
+    /** Statements executed from a cached plan. */
+    long getHits();
+
+    /** Cacheable statements that had no plan yet. */
+    long getMisses();
+
+    /** Plans compiled in the background after a miss. */
+    long getCompiles();
+
+    /** Plans that could not be compiled; their statements are not retried. */
+    long getCompileFailures();
+
+    /** Plans removed to stay within the entry limit, or because executing them failed. */
+    long getEvictions();
+
+    /** Plans currently cached. */
+    int getEntries();
+
+    /** Hits over hits plus misses, 0 before the first lookup. */
+    double getHitRatio();
+}
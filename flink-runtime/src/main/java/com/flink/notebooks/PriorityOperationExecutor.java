@@ -0,0 +1,170 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operation executor with a separate, bounded lane per OperationClass.
+ *
+ * A single shared pool lets a SHOW TABLES from the catalog tree wait behind several long
+ * batch INSERTs. Here each class of operation gets its own threads and its own queue-depth
+ * limit, so metadata lookups always have a free worker. When a lane is saturated the
+ * submission is rejected immediately with a message naming the lane, instead of queueing
+ * without bound.
+ *
+ * Lane sizes are read from flink-conf.yaml:
+ *   notebooks.scheduler.{metadata|ddl|query|job}.threads
+ *   notebooks.scheduler.{metadata|ddl|query|job}.queue-depth
+ */
+public class PriorityOperationExecutor extends AbstractExecutorService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriorityOperationExecutor.class);
+
+    static final ConfigOption<Integer> METADATA_THREADS =
+        ConfigOptions.key("notebooks.scheduler.metadata.threads").intType().defaultValue(2);
+    static final ConfigOption<Integer> METADATA_QUEUE_DEPTH =
+        ConfigOptions.key("notebooks.scheduler.metadata.queue-depth").intType().defaultValue(100);
+    static final ConfigOption<Integer> DDL_THREADS =
+        ConfigOptions.key("notebooks.scheduler.ddl.threads").intType().defaultValue(2);
+    static final ConfigOption<Integer> DDL_QUEUE_DEPTH =
+        ConfigOptions.key("notebooks.scheduler.ddl.queue-depth").intType().defaultValue(50);
+    static final ConfigOption<Integer> QUERY_THREADS =
+        ConfigOptions.key("notebooks.scheduler.query.threads").intType().defaultValue(8);
+    static final ConfigOption<Integer> QUERY_QUEUE_DEPTH =
+        ConfigOptions.key("notebooks.scheduler.query.queue-depth").intType().defaultValue(50);
+    static final ConfigOption<Integer> JOB_THREADS =
+        ConfigOptions.key("notebooks.scheduler.job.threads").intType().defaultValue(4);
+    static final ConfigOption<Integer> JOB_QUEUE_DEPTH =
+        ConfigOptions.key("notebooks.scheduler.job.queue-depth").intType().defaultValue(20);
+
+    private final Map<OperationClass, ThreadPoolExecutor> lanes = new EnumMap<>(OperationClass.class);
+
+    public PriorityOperationExecutor(Configuration flinkConfig) {
+        for (OperationClass operationClass : OperationClass.values()) {
+            int threads = flinkConfig.get(threadsOption(operationClass));
+            int queueDepth = flinkConfig.get(queueDepthOption(operationClass));
+
+            lanes.put(operationClass, newLane(operationClass, threads, queueDepth));
+            LOG.info("Operation lane '{}': {} thread(s), queue depth {}", operationClass.laneName(), threads, queueDepth);
+        }
+    }
+
+    static ConfigOption<Integer> threadsOption(OperationClass operationClass) {
+        switch (operationClass) {
+            case METADATA:
+                return METADATA_THREADS;
+            case DDL:
+                return DDL_THREADS;
+            case QUERY:
+                return QUERY_THREADS;
+            default:
+                return JOB_THREADS;
+        }
+    }
+
+    static ConfigOption<Integer> queueDepthOption(OperationClass operationClass) {
+        switch (operationClass) {
+            case METADATA:
+                return METADATA_QUEUE_DEPTH;
+            case DDL:
+                return DDL_QUEUE_DEPTH;
+            case QUERY:
+                return QUERY_QUEUE_DEPTH;
+            default:
+                return JOB_QUEUE_DEPTH;
+        }
+    }
+
+    private static ThreadPoolExecutor newLane(OperationClass operationClass, int threads, int queueDepth) {
+        String lane = operationClass.laneName();
+        return new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueDepth)),
+            r -> {
+                Thread thread = new Thread(r);
+                thread.setName("sql-gateway-" + lane + "-" + thread.getId());
+                thread.setDaemon(false); // Non-daemon to prevent premature termination
+                return thread;
+            },
+            (r, executor) -> {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Operation executor is shutting down");
+                }
+                throw new RejectedExecutionException(String.format(
+                    "The '%s' operation lane is saturated (%d running, %d queued). " +
+                    "Wait for running statements to finish or cancel some before retrying.",
+                    lane, executor.getActiveCount(), executor.getQueue().size()
+                ));
+            }
+        );
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        SubmissionContext context = SubmissionContext.current();
+        OperationClass operationClass = context != null ? context.getOperationClass() : OperationClass.QUERY;
+        lanes.get(operationClass).execute(command);
+    }
+
+    /** Number of operations waiting in the given lane. */
+    public int getQueueDepth(OperationClass operationClass) {
+        return lanes.get(operationClass).getQueue().size();
+    }
+
+    /** Number of operations currently running in the given lane. */
+    public int getActiveCount(OperationClass operationClass) {
+        return lanes.get(operationClass).getActiveCount();
+    }
+
+    @Override
+    public void shutdown() {
+        lanes.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        for (ThreadPoolExecutor lane : lanes.values()) {
+            pending.addAll(lane.shutdownNow());
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return lanes.values().stream().allMatch(ThreadPoolExecutor::isShutdown);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return lanes.values().stream().allMatch(ThreadPoolExecutor::isTerminated);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor lane : lanes.values()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
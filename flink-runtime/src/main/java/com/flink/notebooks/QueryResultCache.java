@@ -0,0 +1,708 @@
+package com.flink.notebooks;
+
+import org.apache.flink.api.common.JobID;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.ExecutionOptions;
+import org.apache.flink.core.fs.FileStatus;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.memory.DataInputViewStreamWrapper;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.runtime.minicluster.MiniCluster;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.Catalog;
+import org.apache.flink.table.catalog.CatalogBaseTable;
+import org.apache.flink.table.catalog.ObjectIdentifier;
+import org.apache.flink.table.catalog.ObjectPath;
+import org.apache.flink.table.catalog.ResolvedCatalogBaseTable;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.runtime.typeutils.RowDataSerializer;
+import org.apache.flink.table.types.logical.RowType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Opt-in cache of the results of queries over bounded sources.
+ *
+ * Batch cells are often re-run unchanged while the cells after them are edited. With the
+ * cache enabled, a query in a session running in batch mode is looked up by its
+ * CompiledPlanCache fingerprint (normalized statement, session configuration, current
+ * catalog, USE statements and DDL). A cached result is only served while its source tables
+ * are unchanged: same schema and options, and for filesystem tables the same files (path,
+ * size, modification time) or for tables of an Iceberg catalog the same current snapshot.
+ * A hit is served as a gateway operation without submitting a job.
+ *
+ * Results are recorded while a client fetches a missed query to its end; the source tables
+ * are read from the finished job's plan. Not cached are queries calling time or random
+ * functions (NOW, RAND, UUID, ...), queries reading any other kind of table or no table
+ * found in the plan, and results whose sources changed while the query ran. User-defined functions are assumed to be
+ * deterministic, and a datagen table with number-of-rows counts as unchanged data: a hit
+ * returns the rows of the run that was recorded.
+ *
+ * Entries are files of RowDataSerializer rows, as in the spill store's segments, compressed
+ * with deflate. Results larger than max-entry-rows are not cached, and the least recently
+ * used entries are evicted beyond max-bytes. Entries do not outlive the runner. A hit's
+ * operation reports no job ID and isQueryResult false, as for other results the gateway
+ * serves without a job. Counts are published over JMX (ResultCacheMXBean).
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.result-cache.enabled         cache batch query results (default false)
+ *   notebooks.result-cache.max-bytes       compressed bytes kept on disk (default 268435456)
+ *   notebooks.result-cache.max-entry-rows  rows of the largest result cached (default 100000)
+ *   notebooks.result-cache.dir             entry directory (default: <java.io.tmpdir>/flink-notebooks-result-cache)
+ */
+public class QueryResultCache implements ResultCacheMXBean, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryResultCache.class);
+
+    static final ConfigOption<Boolean> ENABLED =
+        ConfigOptions.key("notebooks.result-cache.enabled").booleanType().defaultValue(false);
+    static final ConfigOption<Long> MAX_BYTES =
+        ConfigOptions.key("notebooks.result-cache.max-bytes").longType().defaultValue(256L * 1024 * 1024);
+    static final ConfigOption<Integer> MAX_ENTRY_ROWS =
+        ConfigOptions.key("notebooks.result-cache.max-entry-rows").intType().defaultValue(100000);
+    static final ConfigOption<String> DIR = ConfigOptions.key("notebooks.result-cache.dir")
+        .stringType()
+        .defaultValue(Paths.get(System.getProperty("java.io.tmpdir"), "flink-notebooks-result-cache").toString());
+
+    private static final String MBEAN_NAME = "com.flink.notebooks:type=ResultCache";
+    private static final String ENTRY_SUFFIX = ".rows";
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_UNCACHEABLE = 1000;
+    private static final long JOB_PLAN_TIMEOUT_MS = 10_000;
+
+    private static final Pattern NONDETERMINISTIC = Pattern.compile(
+        "\\b(NOW|RAND|RAND_INTEGER|UUID|CURRENT_TIMESTAMP|CURRENT_DATE|CURRENT_TIME|CURRENT_ROW_TIMESTAMP"
+            + "|LOCALTIME|LOCALTIMESTAMP|PROCTIME|UNIX_TIMESTAMP)\\b",
+        Pattern.CASE_INSENSITIVE);
+    /** Scanned tables in operator descriptions, e.g. TableSourceScan(table=[[cat, db, t, project=[a]]]). */
+    private static final Pattern SCANNED_TABLE = Pattern.compile("table=\\[\\[([^\\]]*)\\]");
+
+    private final NotebookGatewayService service;
+    private final CompiledPlanCache planCache;
+    private final MiniCluster miniCluster;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxEntryRows;
+    private final Path directory;
+    private final ExecutorService writer;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> uncacheable = new HashSet<>();
+    private long bytes;
+
+    private final Map<OperationHandle, Recording> recordings = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param planCache Fingerprints statements; must be a statement listener of the service
+     */
+    public QueryResultCache(NotebookGatewayService service, CompiledPlanCache planCache, MiniCluster miniCluster,
+            Configuration flinkConfig) {
+        this.service = service;
+        this.planCache = planCache;
+        this.miniCluster = miniCluster;
+        this.enabled = flinkConfig.get(ENABLED);
+        this.maxBytes = Math.max(0, flinkConfig.get(MAX_BYTES));
+        this.maxEntryRows = Math.max(0, flinkConfig.get(MAX_ENTRY_ROWS));
+        this.directory = Paths.get(flinkConfig.get(DIR));
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("result-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (enabled) {
+            deleteEntries();
+            registerMBean();
+            LOG.info("Caching batch query results in {} (max bytes {}, max entry rows {})",
+                directory, maxBytes, maxEntryRows);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * A cacheable query, and its result if one is cached.
+     */
+    public static final class Lookup {
+        final String key;
+        /** When the lookup happened; sources changed since then make a recording stale. */
+        final long startMillis;
+        final ResultSet result;
+
+        Lookup(String key, long startMillis, ResultSet result) {
+            this.key = key;
+            this.startMillis = startMillis;
+            this.result = result;
+        }
+
+        public boolean isHit() {
+            return result != null;
+        }
+
+        /** The cached result, for a hit. */
+        public ResultSet getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Look up the result of a query.
+     *
+     * @return The lookup, or null if the query's result cannot be cached
+     */
+    public Lookup lookup(SessionHandle session, String statement) {
+        if (!enabled) {
+            return null;
+        }
+        String sql = CompiledPlanCache.normalize(statement);
+        if (isNondeterministic(sql)) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        String key;
+        try {
+            String runtimeMode = service.getSessionConfig(session).get(ExecutionOptions.RUNTIME_MODE.key());
+            if (!"batch".equalsIgnoreCase(runtimeMode)) {
+                return null;
+            }
+            key = planCache.fingerprint(session, sql);
+        } catch (Exception e) {
+            LOG.debug("Could not fingerprint query in session {}: {}", session, e.getMessage());
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            if (uncacheable.contains(key)) {
+                return null;
+            }
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            try {
+                if (entry.sourceIdentity.equals(sourceIdentity(session, entry.sources, Long.MAX_VALUE))) {
+                    ResultSet result = read(entry);
+                    hits.incrementAndGet();
+                    return new Lookup(key, start, result);
+                }
+                LOG.debug("Sources of cached result {} changed, evicting it", key);
+            } catch (Exception e) {
+                LOG.debug("Could not serve cached result {}: {}", key, e.getMessage());
+            }
+            evict(key, entry);
+        }
+        misses.incrementAndGet();
+        return new Lookup(key, start, null);
+    }
+
+    /**
+     * After a miss: record the operation's results as a client fetches them.
+     */
+    public void record(SessionHandle session, OperationHandle operation, Lookup lookup) {
+        recordings.put(operation, new Recording(session, lookup));
+    }
+
+    /**
+     * Called with every result fetched from an operation. Once a recorded operation's results
+     * were fetched to the end, they are stored in the background.
+     */
+    public void onFetch(OperationHandle operation, long token, ResultSet result) {
+        Recording recording = recordings.get(operation);
+        if (recording == null) {
+            return;
+        }
+        boolean complete;
+        try {
+            complete = recording.add(token, result);
+        } catch (Exception e) {
+            LOG.debug("Stopped recording results of operation {}: {}", operation, e.getMessage());
+            recordings.remove(operation);
+            return;
+        }
+        if (recording.rows > maxEntryRows || recording.out.length() > maxBytes) {
+            recordings.remove(operation);
+            markUncacheable(recording.lookup.key);
+        } else if (complete && recordings.remove(operation, recording)) {
+            writer.execute(() -> store(recording));
+        }
+    }
+
+    /**
+     * Stop recording an operation, as when it is closed before its results were fetched.
+     */
+    public void release(OperationHandle operation) {
+        recordings.remove(operation);
+    }
+
+    public void releaseSession(SessionHandle session) {
+        recordings.values().removeIf(recording -> recording.session.equals(session));
+    }
+
+    @Override
+    public void close() {
+        writer.shutdownNow();
+        recordings.clear();
+        if (!enabled) {
+            return;
+        }
+        unregisterMBean();
+        synchronized (this) {
+            entries.values().forEach(entry -> deleteQuietly(entry.file));
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getStores() {
+        return stores.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private void store(Recording recording) {
+        if (recording.jobID == null || recording.schema == null) {
+            return;
+        }
+        List<ObjectIdentifier> sources;
+        try {
+            String plan = miniCluster.getExecutionGraph(recording.jobID)
+                .get(JOB_PLAN_TIMEOUT_MS, TimeUnit.MILLISECONDS).getJsonPlan();
+            sources = scannedTables(plan);
+        } catch (Exception e) {
+            LOG.debug("Could not read the plan of result {}: {}", recording.lookup.key, e.getMessage());
+            return;
+        }
+        store(recording, sources);
+    }
+
+    /**
+     * Store a complete recording read from the given source tables.
+     */
+    void store(Recording recording, List<ObjectIdentifier> sources) {
+        String key = recording.lookup.key;
+        Path temporary = directory.resolve(key + "-" + System.nanoTime() + ".tmp");
+        try {
+            if (sources.isEmpty()) {
+                // No table found in the plan: nothing would tell when the result is stale
+                LOG.debug("Found no source tables in the plan of result {}", key);
+                markUncacheable(key);
+                return;
+            }
+            String identity = sourceIdentity(recording.session, sources, recording.lookup.startMillis);
+            if (identity == null) {
+                LOG.debug("Result {} reads sources that cannot be cached", key);
+                markUncacheable(key);
+                return;
+            }
+
+            Files.createDirectories(directory);
+            try (OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), IO_BUFFER_BYTES))) {
+                out.write(recording.out.getSharedBuffer(), 0, recording.out.length());
+            }
+            Path file = directory.resolve(key + ENTRY_SUFFIX);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            put(key, new Entry(file, recording.schema, recording.rows, Files.size(file), sources, identity));
+            stores.incrementAndGet();
+            LOG.debug("Cached result {}: {} rows from {}", key, recording.rows, sources);
+        } catch (SourceChangedException e) {
+            LOG.debug("Not caching result {}: {}", key, e.getMessage());
+        } catch (Exception e) {
+            LOG.debug("Could not cache result {}: {}", key, e.getMessage());
+        } finally {
+            deleteQuietly(temporary);
+        }
+    }
+
+    private ResultSet read(Entry entry) throws IOException {
+        RowDataSerializer serializer = serializer(entry.schema);
+        List<RowData> rows = new ArrayList<>(entry.rows);
+        try (InputStream in = new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(entry.file), IO_BUFFER_BYTES))) {
+            DataInputViewStreamWrapper view = new DataInputViewStreamWrapper(in);
+            for (int i = 0; i < entry.rows; i++) {
+                rows.add(serializer.deserialize(view));
+            }
+        }
+        return new ResultSetImpl(ResultSet.ResultType.PAYLOAD, null, entry.schema, rows, null, false, null,
+            ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    static boolean isNondeterministic(String sql) {
+        return NONDETERMINISTIC.matcher(sql).find();
+    }
+
+    /**
+     * Tables a job scanned, read from the operator descriptions in its JSON plan.
+     */
+    static List<ObjectIdentifier> scannedTables(String plan) throws IOException {
+        Set<ObjectIdentifier> tables = new LinkedHashSet<>();
+        Matcher matcher = SCANNED_TABLE.matcher(plan);
+        while (matcher.find()) {
+            String[] parts = matcher.group(1).split(",\\s*");
+            if (parts.length < 3) {
+                throw new IOException("Unexpected table reference in job plan: " + matcher.group());
+            }
+            tables.add(ObjectIdentifier.of(parts[0], parts[1], parts[2]));
+        }
+        return new ArrayList<>(tables);
+    }
+
+    /**
+     * Digest of the state of the given source tables.
+     *
+     * @param changedSinceMillis Fail if a source was modified at or after this time
+     * @return The digest, or null if a source cannot be cached
+     */
+    private String sourceIdentity(SessionHandle session, List<ObjectIdentifier> sources, long changedSinceMillis)
+            throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (ObjectIdentifier source : sources) {
+            String identity = tableIdentity(session, source, changedSinceMillis);
+            if (identity == null) {
+                return null;
+            }
+            digest.update(identity.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private String tableIdentity(SessionHandle session, ObjectIdentifier source, long changedSinceMillis)
+            throws Exception {
+        ResolvedCatalogBaseTable<?> table = service.getTable(session, source);
+        if (table.getTableKind() != CatalogBaseTable.TableKind.TABLE) {
+            return null;
+        }
+        Map<String, String> options = table.getOptions();
+        StringBuilder identity = new StringBuilder()
+            .append(source.asSerializableString()).append('\n')
+            .append(table.getResolvedSchema()).append('\n')
+            .append(new TreeMap<>(options)).append('\n');
+
+        String connector = options.get("connector");
+        if ("datagen".equals(connector)) {
+            return options.containsKey("number-of-rows") ? identity.toString() : null;
+        } else if ("filesystem".equals(connector) && options.containsKey("path")) {
+            org.apache.flink.core.fs.Path path = new org.apache.flink.core.fs.Path(options.get("path"));
+            FileSystem fileSystem = path.getFileSystem();
+            if (!fileSystem.exists(path)) {
+                return null;
+            }
+            appendFiles(fileSystem, fileSystem.getFileStatus(path), changedSinceMillis, identity);
+            return identity.toString();
+        } else if (connector == null) {
+            Catalog catalog = service.getCatalog(session, source.getCatalogName());
+            if (catalog != null && IcebergSnapshots.isIcebergCatalog(catalog)) {
+                return identity.append(IcebergSnapshots.current(catalog, source.toObjectPath(), changedSinceMillis))
+                    .toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Append the files below a path, sorted by name.
+     */
+    private static void appendFiles(FileSystem fileSystem, FileStatus status, long changedSinceMillis,
+            StringBuilder identity) throws IOException, SourceChangedException {
+        if (status.getModificationTime() >= changedSinceMillis) {
+            throw new SourceChangedException(status.getPath() + " was modified while the query ran");
+        }
+        identity.append(status.getPath()).append(' ').append(status.getLen()).append(' ')
+            .append(status.getModificationTime()).append('\n');
+        if (!status.isDir()) {
+            return;
+        }
+        FileStatus[] children = fileSystem.listStatus(status.getPath());
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children, Comparator.comparing(child -> child.getPath().getName()));
+        for (FileStatus child : children) {
+            appendFiles(fileSystem, child, changedSinceMillis, identity);
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+            if (!previous.file.equals(entry.file)) {
+                deleteQuietly(previous.file);
+            }
+        }
+        bytes += entry.bytes;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.bytes;
+            deleteQuietly(evicted.file);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void evict(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            bytes -= entry.bytes;
+            deleteQuietly(entry.file);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void markUncacheable(String key) {
+        if (uncacheable.size() >= MAX_UNCACHEABLE) {
+            uncacheable.clear();
+        }
+        uncacheable.add(key);
+    }
+
+    private static RowDataSerializer serializer(ResolvedSchema schema) {
+        return new RowDataSerializer((RowType) schema.toPhysicalRowDataType().getLogicalType());
+    }
+
+    private void deleteEntries() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(ENTRY_SUFFIX) || name.endsWith(".tmp")) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not clear result cache directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOG.warn("Could not register result cache MBean: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.debug("Could not unregister result cache MBean: {}", e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        final Path file;
+        final ResolvedSchema schema;
+        final int rows;
+        final long bytes;
+        final List<ObjectIdentifier> sources;
+        final String sourceIdentity;
+
+        Entry(Path file, ResolvedSchema schema, int rows, long bytes, List<ObjectIdentifier> sources,
+                String sourceIdentity) {
+            this.file = file;
+            this.schema = schema;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.sources = sources;
+            this.sourceIdentity = sourceIdentity;
+        }
+    }
+
+    /**
+     * Rows of a missed query, serialized as the client fetches them.
+     */
+    static final class Recording {
+        final SessionHandle session;
+        final Lookup lookup;
+        final DataOutputSerializer out = new DataOutputSerializer(IO_BUFFER_BYTES);
+        RowDataSerializer serializer;
+        ResolvedSchema schema;
+        JobID jobID;
+        long nextToken;
+        int rows;
+
+        Recording(SessionHandle session, Lookup lookup) {
+            this.session = session;
+            this.lookup = lookup;
+        }
+
+        /**
+         * Add a fetched result. Only the fetch continuing where the last one ended is
+         * recorded; fetching a token again returns rows already recorded.
+         *
+         * @return Whether the result is complete
+         */
+        synchronized boolean add(long token, ResultSet result) throws IOException {
+            if (token != nextToken || result.getResultType() == ResultSet.ResultType.NOT_READY) {
+                return false;
+            }
+            if (result.getJobID() != null) {
+                jobID = result.getJobID();
+            }
+            if (schema == null) {
+                schema = result.getResultSchema();
+                serializer = serializer(schema);
+            }
+            if (result.getResultType() == ResultSet.ResultType.EOS) {
+                return true;
+            }
+            for (RowData row : result.getData()) {
+                serializer.serialize(row, out);
+            }
+            rows += result.getData().size();
+            nextToken = result.getNextToken();
+            return false;
+        }
+    }
+
+    /**
+     * Kept apart so Iceberg classes, which are optional at runtime, are only loaded for
+     * Iceberg catalogs.
+     */
+    private static final class IcebergSnapshots {
+
+        static boolean isIcebergCatalog(Catalog catalog) {
+            return catalog.getClass().getName().equals("org.apache.iceberg.flink.FlinkCatalog");
+        }
+
+        /**
+         * The table's current snapshot.
+         */
+        static String current(Catalog catalog, ObjectPath path, long changedSinceMillis) throws SourceChangedException {
+            org.apache.iceberg.Table table = ((org.apache.iceberg.flink.FlinkCatalog) catalog).catalog()
+                .loadTable(org.apache.iceberg.catalog.TableIdentifier.of(
+                    org.apache.iceberg.catalog.Namespace.of(path.getDatabaseName()), path.getObjectName()));
+            // Scans load the table afresh, so bypass the catalog's table cache
+            table.refresh();
+            org.apache.iceberg.Snapshot snapshot = table.currentSnapshot();
+            if (snapshot == null) {
+                return "no snapshot";
+            }
+            if (snapshot.timestampMillis() >= changedSinceMillis) {
+                throw new SourceChangedException("snapshot " + snapshot.snapshotId() + " was committed while the query ran");
+            }
+            return "snapshot " + snapshot.snapshotId();
+        }
+    }
+
+    /**
+     * A source was modified after the lookup, so a recorded result may mix old and new data.
+     */
+    private static final class SourceChangedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        SourceChangedException(String message) {
+            super(message);
+        }
+    }
+}
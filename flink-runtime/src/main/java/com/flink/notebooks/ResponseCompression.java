@@ -0,0 +1,199 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of runner endpoint responses, negotiated per request with Accept-Encoding.
+ *
+ * JSON result pages repeat the column metadata and field names on every fetch and datagen
+ * strings compress well, which adds up once the runner is on a remote machine reached over
+ * a VPN. Result fetches, catalog metadata and every other response sent through
+ * RunnerHttpServer.sendBytes are compressed with one of:
+ *
+ *   gzip  which HTTP clients such as axios and curl --compressed decode on their own
+ *   lz4   the LZ4 frame format (lz4-java, which Flink already ships), cheap on CPU
+ *
+ * Only gzip is offered by default: the extension's HTTP client does not decode lz4, so it
+ * is for clients that ask for it once added to the codecs. The client's q-values decide
+ * between offered codecs; equally preferred ones are taken in the configured order. Bodies below min-bytes, and bodies that do not get smaller, are sent as
+ * they are. Streamed results (/stream) are not compressed, as each event is flushed alone.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.compression.codecs     codecs offered, most preferred first (default gzip; empty disables)
+ *   notebooks.compression.min-bytes  smallest body worth compressing (default 1024)
+ */
+public class ResponseCompression {
+
+    /** HttpExchange attribute RunnerHttpServer sets to the compression in use. */
+    static final String ATTRIBUTE = ResponseCompression.class.getName();
+
+    static final ConfigOption<String> CODECS =
+        ConfigOptions.key("notebooks.compression.codecs").stringType().defaultValue("gzip");
+    static final ConfigOption<Integer> MIN_BYTES =
+        ConfigOptions.key("notebooks.compression.min-bytes").intType().defaultValue(1024);
+
+    public enum Codec {
+        LZ4("lz4"),
+        GZIP("gzip");
+
+        private final String token;
+
+        Codec(String token) {
+            this.token = token;
+        }
+
+        /**
+         * Content-Encoding token of the codec.
+         */
+        public String token() {
+            return token;
+        }
+
+        static Codec fromToken(String token) {
+            for (Codec codec : values()) {
+                if (codec.token.equalsIgnoreCase(token)) {
+                    return codec;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final List<Codec> codecs = new ArrayList<>();
+    private final int minBytes;
+    private final Map<Codec, LongAdder> inputBytes = new EnumMap<>(Codec.class);
+    private final Map<Codec, LongAdder> outputBytes = new EnumMap<>(Codec.class);
+
+    public ResponseCompression(Configuration flinkConfig) {
+        for (String token : flinkConfig.get(CODECS).split(",")) {
+            if (token.isBlank()) {
+                continue;
+            }
+            Codec codec = Codec.fromToken(token.trim());
+            if (codec == null) {
+                throw new IllegalArgumentException("Unknown notebooks.compression.codecs entry '" + token.trim()
+                    + "'. Expected lz4 or gzip");
+            }
+            if (!codecs.contains(codec)) {
+                codecs.add(codec);
+            }
+        }
+        this.minBytes = Math.max(0, flinkConfig.get(MIN_BYTES));
+        for (Codec codec : Codec.values()) {
+            inputBytes.put(codec, new LongAdder());
+            outputBytes.put(codec, new LongAdder());
+        }
+    }
+
+    public boolean isEnabled() {
+        return !codecs.isEmpty();
+    }
+
+    /**
+     * Compress a response body with the codec the request accepts, setting Content-Encoding.
+     *
+     * @return The body to send, unchanged if it is not compressed
+     */
+    byte[] encode(HttpExchange exchange, byte[] body) throws IOException {
+        if (codecs.isEmpty()) {
+            return body;
+        }
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (body.length < minBytes) {
+            return body;
+        }
+        Codec codec = negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (codec == null) {
+            return body;
+        }
+        byte[] compressed = compress(codec, body);
+        if (compressed.length >= body.length) {
+            return body;
+        }
+        inputBytes.get(codec).add(body.length);
+        outputBytes.get(codec).add(compressed.length);
+        exchange.getResponseHeaders().set("Content-Encoding", codec.token());
+        return compressed;
+    }
+
+    /**
+     * The offered codec the Accept-Encoding header prefers, or null to send the body as is.
+     */
+    Codec negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+        Codec best = null;
+        double bestQuality = 0;
+        double wildcard = -1;
+        Map<Codec, Double> accepted = new EnumMap<>(Codec.class);
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.trim().split(";");
+            String token = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if ("*".equals(token)) {
+                wildcard = quality;
+            } else {
+                Codec codec = Codec.fromToken(token);
+                if (codec != null) {
+                    accepted.put(codec, quality);
+                }
+            }
+        }
+        for (Codec codec : codecs) {
+            double quality = accepted.getOrDefault(codec, wildcard);
+            if (quality > bestQuality) {
+                best = codec;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    static byte[] compress(Codec codec, byte[] body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = codec == Codec.LZ4 ? new LZ4FrameOutputStream(buffer) : new GZIPOutputStream(buffer)) {
+            out.write(body);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Bytes of the responses compressed with the codec, before compression.
+     */
+    public long getInputBytes(Codec codec) {
+        return inputBytes.get(codec).sum();
+    }
+
+    /**
+     * Bytes sent for the responses compressed with the codec.
+     */
+    public long getOutputBytes(Codec codec) {
+        return outputBytes.get(codec).sum();
+    }
+}
@@ -0,0 +1,28 @@
+package com.flink.notebooks;
+
+/**
+ * JMX view of the query result cache, registered as com.flink.notebooks:type=ResultCache.
+ */
+public interface ResultCacheMXBean {
+
+    /** Queries served from a cached result without running a job. */
+    long getHits();
+
+    /** Cacheable queries that had no result cached, or whose sources changed. */
+    long getMisses();
+
+    /** Results recorded after a miss. */
+    long getStores();
+
+    /** Results removed to stay within the size limit, or because their sources changed. */
+    long getEvictions();
+
+    /** Results currently cached. */
+    int getEntries();
+
+    /** Compressed bytes of the cached results on disk. */
+    long getBytes();
+
+    /** Hits over hits plus misses, 0 before the first lookup. */
+    double getHitRatio();
+}
@@ -0,0 +1,349 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.filter.FilteringGeneratorDelegate;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.filter.TokenFilter;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.serde.ColumnInfo;
+import org.apache.flink.table.gateway.rest.util.RowDataLocalTimeZoneConverter;
+import org.apache.flink.table.types.logical.LogicalType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Result fetch endpoint with a choice of row format.
+ *
+ * GET /v1/sessions/{sessionHandle}/operations/{operationHandle}/result/{token}?rowFormat=COLUMNAR&maxRows=500&maxBytes=1048576&maxWaitMs=250
+ *
+ * rowFormat=JSON returns the same body as the gateway's fetch endpoint. rowFormat=COLUMNAR
+ * returns the batch encoded by ColumnarResultEncoder, with the result metadata in headers:
+ *
+ *   X-Result-Type, X-Result-Kind, X-Is-Query-Result, X-Job-Id, X-Next-Result-Uri
+ *
+ * Without maxRows the batch size comes from FetchSizeAdvisor. maxBytes caps the batch at
+ * the number of rows expected to fit, based on the row width seen so far. Every response
+ * carries the advisor's recommendation for the next fetch, as "recommendedMaxRows" in JSON
+ * or the X-Recommended-Max-Rows header. maxWaitMs lets the fetch wait up to that long for
+ * the batch to fill while the job is still producing rows, so a batch result arrives in
+ * full batches rather than as many partial ones.
+ *
+ * If the result has a column type the columnar encoding does not support, the response falls
+ * back to JSON, so clients must check the Content-Type.
+ *
+ * JSON bodies repeat the columns with their logicalType trees on every page, which for wide
+ * results is more than the rows. With schema=once every JSON body carries a "schemaVersion"
+ * and leaves out results.columns when the request's schemaVersion matches it; the next result
+ * URI passes it on, so only the first page has the columns. The version is computed once per
+ * operation and forgotten when the operation or its session closes. The columns are also served by
+ *
+ * GET /v1/sessions/{sessionHandle}/operations/{operationHandle}/schema
+ *
+ * Columnar batches with schema=once carry the version in an X-Schema-Version header and are
+ * encoded without the column names and types (format version 2) when the request's
+ * schemaVersion matches it.
+ */
+public class ResultFetchHandler implements NotebookGatewayService.StatementListener {
+
+    public static final String ROW_FORMAT_JSON = "JSON";
+    public static final String ROW_FORMAT_COLUMNAR = "COLUMNAR";
+
+    static final String SCHEMA_EVERY_PAGE = "every";
+    static final String SCHEMA_ONCE = "once";
+
+    private static final int MAX_WAIT_MS = 5000;
+
+    /** Keeps everything but the "columns" of the "results" object. */
+    private static final TokenFilter WITHOUT_COLUMNS = new TokenFilter() {
+        private final TokenFilter resultsWithoutColumns = new TokenFilter() {
+            @Override
+            public TokenFilter includeProperty(String name) {
+                return "columns".equals(name) ? null : TokenFilter.INCLUDE_ALL;
+            }
+        };
+
+        @Override
+        public TokenFilter includeProperty(String name) {
+            return "results".equals(name) ? resultsWithoutColumns : TokenFilter.INCLUDE_ALL;
+        }
+    };
+
+    private final NotebookGatewayService service;
+    private final FetchSizeAdvisor advisor;
+    private final RunnerMetrics metrics;
+    private final Map<OperationHandle, CachedSchemaVersion> schemaVersions = new ConcurrentHashMap<>();
+
+    public ResultFetchHandler(NotebookGatewayService service, FetchSizeAdvisor advisor) {
+        this(service, advisor, null);
+    }
+
+    /**
+     * @param metrics Counts the result bytes served, or null
+     */
+    public ResultFetchHandler(NotebookGatewayService service, FetchSizeAdvisor advisor, RunnerMetrics metrics) {
+        this.service = service;
+        this.advisor = advisor;
+        this.metrics = metrics;
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("GET", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/result/{token}", this::fetch);
+        server.route("GET", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/schema", this::schema);
+    }
+
+    @Override
+    public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+            OperationClass operationClass) {
+    }
+
+    @Override
+    public void onOperationClosed(SessionHandle session, OperationHandle operation) {
+        schemaVersions.remove(operation);
+    }
+
+    @Override
+    public void onSessionClosed(SessionHandle session) {
+        schemaVersions.values().removeIf(entry -> entry.session.equals(session));
+    }
+
+    private void fetch(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        SessionHandle session = new SessionHandle(UUID.fromString(pathParams.get("sessionHandle")));
+        OperationHandle operation = new OperationHandle(UUID.fromString(pathParams.get("operationHandle")));
+        long token = parseToken(pathParams.get("token"));
+
+        Map<String, String> query = RunnerHttpServer.queryParams(exchange);
+        String rowFormat = query.getOrDefault("rowFormat", ROW_FORMAT_JSON).toUpperCase(Locale.ROOT);
+        if (!ROW_FORMAT_JSON.equals(rowFormat) && !ROW_FORMAT_COLUMNAR.equals(rowFormat)) {
+            throw new IllegalArgumentException("Unsupported rowFormat '" + rowFormat + "'. Expected JSON or COLUMNAR");
+        }
+        String schemaMode = query.getOrDefault("schema", SCHEMA_EVERY_PAGE).toLowerCase(Locale.ROOT);
+        if (!SCHEMA_EVERY_PAGE.equals(schemaMode) && !SCHEMA_ONCE.equals(schemaMode)) {
+            throw new IllegalArgumentException("Unsupported schema '" + schemaMode + "'. Expected every or once");
+        }
+        boolean schemaOnce = SCHEMA_ONCE.equals(schemaMode);
+        int maxRows = RunnerHttpServer.intParam(query, "maxRows", -1);
+        if (maxRows <= 0) {
+            maxRows = advisor.recommend(operation, service.getBufferedRowCount(session, operation));
+        }
+        int maxBytes = RunnerHttpServer.intParam(query, "maxBytes", -1);
+        if (maxBytes > 0) {
+            maxRows = Math.min(maxRows, advisor.rowsForBytes(operation, maxBytes));
+        }
+        int maxWaitMs = Math.min(MAX_WAIT_MS, RunnerHttpServer.intParam(query, "maxWaitMs", 0));
+        if (maxWaitMs > 0) {
+            service.awaitBufferedRows(session, operation, maxRows, maxWaitMs);
+        }
+
+        ResultSet result = service.fetchResults(session, operation, token, maxRows);
+
+        if (result.getResultType() == ResultSet.ResultType.NOT_READY) {
+            // No schema yet; answer like the gateway does, in JSON for either row format
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("resultType", result.getResultType().name());
+            body.put("nextResultUri", resultUri(session, operation, token, rowFormat)
+                + (schemaOnce ? schemaQuery(query.get("schemaVersion")) : ""));
+            RunnerHttpServer.sendJson(exchange, 200, body);
+            return;
+        }
+
+        List<LogicalType> types = result.getResultSchema().getColumns().stream()
+            .map(column -> column.getDataType().getLogicalType())
+            .collect(Collectors.toList());
+        RowDataLocalTimeZoneConverter converter =
+            new RowDataLocalTimeZoneConverter(types, Configuration.fromMap(service.getSessionConfig(session)));
+
+        if (ROW_FORMAT_COLUMNAR.equals(rowFormat) && ColumnarResultEncoder.supports(types)) {
+            String version = schemaOnce ? schemaVersion(session, operation, result.getResultSchema()) : null;
+            boolean describeColumns = version == null || !version.equals(query.get("schemaVersion"));
+            byte[] body = encodeColumnar(result, types, converter, describeColumns);
+            int recommended = recordFetch(session, operation, result, maxRows, body.length);
+
+            setColumnarHeaders(exchange, session, operation, result, version);
+            exchange.getResponseHeaders().set("X-Recommended-Max-Rows", String.valueOf(recommended));
+            RunnerHttpServer.sendBytes(exchange, 200, ColumnarResultEncoder.CONTENT_TYPE, body);
+            if (metrics != null) {
+                metrics.onColumnarBytes(body.length);
+            }
+        } else {
+            Map<String, Object> response = ResultStreamHandler.toResponseBody(result, token, converter);
+            String next = nextResultUri(session, operation, result, ROW_FORMAT_JSON);
+            boolean omitColumns = false;
+            if (schemaOnce) {
+                String version = schemaVersion(session, operation, result.getResultSchema());
+                response.put("schemaVersion", version);
+                omitColumns = version.equals(query.get("schemaVersion"));
+                next = next == null ? null : next + schemaQuery(version);
+            }
+            response.put("nextResultUri", next);
+            // Size the row width from the body without the recommendation, then splice it in
+            byte[] body = writeJson(response, omitColumns);
+            int recommended = recordFetch(session, operation, result, maxRows, body.length);
+            body = withRecommendedMaxRows(body, recommended);
+            RunnerHttpServer.sendBytes(exchange, 200, "application/json", body);
+            if (metrics != null) {
+                metrics.onJsonBytes(body.length);
+            }
+        }
+    }
+
+    private void schema(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        SessionHandle session = new SessionHandle(UUID.fromString(pathParams.get("sessionHandle")));
+        OperationHandle operation = new OperationHandle(UUID.fromString(pathParams.get("operationHandle")));
+        ResolvedSchema schema = service.getOperationResultSchema(session, operation);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("schemaVersion", schemaVersion(session, operation, schema));
+        body.put("columns", columnInfos(schema));
+        RunnerHttpServer.sendJson(exchange, 200, body);
+    }
+
+    /**
+     * The schema version of an operation's result, which does not change once it has a schema.
+     */
+    String schemaVersion(SessionHandle session, OperationHandle operation, ResolvedSchema schema) throws IOException {
+        CachedSchemaVersion cached = schemaVersions.get(operation);
+        if (cached == null) {
+            cached = new CachedSchemaVersion(session, schemaVersion(schema));
+            schemaVersions.put(operation, cached);
+        }
+        return cached.version;
+    }
+
+    int getCachedSchemaVersionCount() {
+        return schemaVersions.size();
+    }
+
+    /**
+     * Identifies a result schema: a checksum of its columns as the JSON body writes them.
+     */
+    static String schemaVersion(ResolvedSchema schema) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(RunnerHttpServer.MAPPER.writeValueAsBytes(columnInfos(schema)));
+        return String.format("%08x", checksum.getValue());
+    }
+
+    private static List<ColumnInfo> columnInfos(ResolvedSchema schema) {
+        return schema.getColumns().stream().map(ColumnInfo::toColumnInfo).collect(Collectors.toList());
+    }
+
+    /**
+     * Write a JSON response body, optionally without results.columns.
+     */
+    private static byte[] writeJson(Map<String, Object> response, boolean omitColumns) throws IOException {
+        if (!omitColumns) {
+            return RunnerHttpServer.MAPPER.writeValueAsBytes(response);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = new FilteringGeneratorDelegate(
+                RunnerHttpServer.MAPPER.getFactory().createGenerator(out), WITHOUT_COLUMNS,
+                TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, true)) {
+            RunnerHttpServer.MAPPER.writeValue(generator, response);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Add recommendedMaxRows as the last field of a serialized JSON object.
+     */
+    static byte[] withRecommendedMaxRows(byte[] body, int recommended) {
+        byte[] field = (",\"recommendedMaxRows\":" + recommended + "}").getBytes(StandardCharsets.US_ASCII);
+        byte[] spliced = Arrays.copyOf(body, body.length - 1 + field.length);
+        System.arraycopy(field, 0, spliced, body.length - 1, field.length);
+        return spliced;
+    }
+
+    private static String schemaQuery(String schemaVersion) {
+        return "&schema=" + SCHEMA_ONCE + (schemaVersion == null ? "" : "&schemaVersion=" + schemaVersion);
+    }
+
+    /**
+     * Feed the fetch into the advisor and return its recommendation for the next one.
+     */
+    private int recordFetch(SessionHandle session, OperationHandle operation, ResultSet result, int maxRows, long bytes) {
+        if (result.getResultType() == ResultSet.ResultType.EOS) {
+            advisor.finished(operation);
+            return maxRows;
+        }
+        advisor.record(operation, maxRows, result.getData().size(), bytes);
+        return advisor.recommend(operation, service.getBufferedRowCount(session, operation));
+    }
+
+    static byte[] encodeColumnar(ResultSet result, List<LogicalType> types, RowDataLocalTimeZoneConverter converter,
+            boolean describeColumns) {
+        List<RowData> rows = result.getData();
+        if (converter.hasTimeZoneData()) {
+            rows = rows.stream().map(converter::convertTimeZoneRowData).collect(Collectors.toList());
+        }
+        List<String> names = result.getResultSchema().getColumns().stream()
+            .map(Column::getName)
+            .collect(Collectors.toList());
+
+        return ColumnarResultEncoder.encode(names, types, rows, describeColumns);
+    }
+
+    /**
+     * @param schemaVersion Version of the result schema for schema=once, or null
+     */
+    private static void setColumnarHeaders(HttpExchange exchange, SessionHandle session, OperationHandle operation,
+            ResultSet result, String schemaVersion) {
+        exchange.getResponseHeaders().set("X-Result-Type", result.getResultType().name());
+        exchange.getResponseHeaders().set("X-Is-Query-Result", String.valueOf(result.isQueryResult()));
+        if (result.getResultKind() != null) {
+            exchange.getResponseHeaders().set("X-Result-Kind", result.getResultKind().name());
+        }
+        if (result.getJobID() != null) {
+            exchange.getResponseHeaders().set("X-Job-Id", result.getJobID().toString());
+        }
+        if (schemaVersion != null) {
+            exchange.getResponseHeaders().set("X-Schema-Version", schemaVersion);
+        }
+        String next = nextResultUri(session, operation, result, ROW_FORMAT_COLUMNAR);
+        if (next != null) {
+            exchange.getResponseHeaders().set("X-Next-Result-Uri",
+                schemaVersion == null ? next : next + schemaQuery(schemaVersion));
+        }
+    }
+
+    private static String nextResultUri(SessionHandle session, OperationHandle operation, ResultSet result, String rowFormat) {
+        return result.getNextToken() == null ? null : resultUri(session, operation, result.getNextToken(), rowFormat);
+    }
+
+    private static String resultUri(SessionHandle session, OperationHandle operation, long token, String rowFormat) {
+        return String.format("/v1/sessions/%s/operations/%s/result/%d?rowFormat=%s", session, operation, token, rowFormat);
+    }
+
+    private static long parseToken(String token) {
+        try {
+            return Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Token must be a number: " + token);
+        }
+    }
+
+    private static final class CachedSchemaVersion {
+        final SessionHandle session;
+        final String version;
+
+        CachedSchemaVersion(SessionHandle session, String version) {
+            this.session = session;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+/**
+ * Moves query results out of the gateway's heap buffers into SpillingResultStores.
+ *
+ * The gateway's ResultFetcher holds results on the heap and stops the job once its buffer is
+ * full, so a paused notebook either stalls its job or, with a larger buffer, fills the heap.
+ * With spilling enabled, a drainer thread per query operation fetches from the gateway as
+ * fast as the job produces and appends to a SpillingResultStore, which keeps a bounded tail
+ * in memory and the rest on local disk. Fetches for the operation are then served from the
+ * store (see NotebookGatewayService#fetchResults).
+ *
+ * Stores are released when their operation or session closes, and by reap() for operations
+ * that went away without a close, e.g. with an expired session. Segment files left in the
+ * spill directory by an earlier run are deleted on startup.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.result-store.dir             spill directory (default: <java.io.tmpdir>/flink-notebooks-results)
+ *   notebooks.result-store.memory-rows     rows kept on the heap per operation before spilling (default 10000)
+ *   notebooks.result-store.max-disk-bytes  spilled bytes per operation; a batch result's drain waits for the
+ *                                          client to read, a streaming result's oldest rows are evicted
+ *                                          (default 536870912)
+ *   notebooks.result-store.retention-ms    age after which spilled rows of a streaming result are evicted, 0 to
+ *                                          keep (default 0)
+ */
+public class ResultSpillManager implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultSpillManager.class);
+
+    static final ConfigOption<String> DIR = ConfigOptions.key("notebooks.result-store.dir")
+        .stringType()
+        .defaultValue(Paths.get(System.getProperty("java.io.tmpdir"), "flink-notebooks-results").toString());
+    static final ConfigOption<Integer> MEMORY_ROWS =
+        ConfigOptions.key("notebooks.result-store.memory-rows").intType().defaultValue(10000);
+    static final ConfigOption<Long> MAX_DISK_BYTES =
+        ConfigOptions.key("notebooks.result-store.max-disk-bytes").longType().defaultValue(512L * 1024 * 1024);
+    static final ConfigOption<Long> RETENTION_MS =
+        ConfigOptions.key("notebooks.result-store.retention-ms").longType().defaultValue(0L);
+
+    private static final int DRAIN_BATCH_ROWS = 5000;
+    private static final long MIN_IDLE_BACKOFF_MS = 5;
+    private static final long MAX_IDLE_BACKOFF_MS = 100;
+
+    /**
+     * Fetches from the gateway's own result buffers.
+     */
+    @FunctionalInterface
+    public interface GatewayFetcher {
+        ResultSet fetch(SessionHandle session, OperationHandle operation, long token, int maxRows);
+    }
+
+    private final Path directory;
+    private final int memoryRows;
+    private final long maxDiskBytes;
+    private final long retentionMs;
+    private final ExecutorService drainers;
+    private final Map<OperationHandle, Drain> drains = new ConcurrentHashMap<>();
+
+    public ResultSpillManager(Configuration flinkConfig) {
+        this.directory = Paths.get(flinkConfig.get(DIR));
+        this.memoryRows = Math.max(1, flinkConfig.get(MEMORY_ROWS));
+        this.maxDiskBytes = flinkConfig.get(MAX_DISK_BYTES);
+        this.retentionMs = flinkConfig.get(RETENTION_MS);
+
+        AtomicInteger threadId = new AtomicInteger();
+        this.drainers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("result-spill-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        deleteSegments();
+        LOG.info("Spilling query results to {} (memory rows {}, max disk bytes {}, retention {} ms)",
+            directory, memoryRows, maxDiskBytes, retentionMs);
+    }
+
+    /**
+     * Start draining an operation's results into a spill store.
+     *
+     * @param bounded Whether the results are bounded, so rows are never evicted before they are read
+     */
+    public void register(SessionHandle session, OperationHandle operation, GatewayFetcher fetcher, boolean bounded) {
+        SpillingResultStore store =
+            new SpillingResultStore(operation, directory, memoryRows, maxDiskBytes, retentionMs, bounded);
+        Drain drain = new Drain(session, operation, store);
+        drains.put(operation, drain);
+        drain.future = drainers.submit(() -> drain.run(fetcher));
+    }
+
+    /**
+     * The spill store of an operation, or null if its results are served by the gateway.
+     */
+    public SpillingResultStore getStore(OperationHandle operation) {
+        Drain drain = drains.get(operation);
+        return drain == null ? null : drain.store;
+    }
+
+    /**
+     * Stop draining an operation and delete its spilled rows.
+     */
+    public void release(OperationHandle operation) {
+        Drain drain = drains.remove(operation);
+        if (drain != null) {
+            drain.stop();
+        }
+    }
+
+    /**
+     * Release every operation of a session.
+     */
+    public void releaseSession(SessionHandle session) {
+        List<OperationHandle> operations = new ArrayList<>();
+        drains.forEach((operation, drain) -> {
+            if (drain.session.equals(session)) {
+                operations.add(operation);
+            }
+        });
+        operations.forEach(this::release);
+    }
+
+    /**
+     * Release every operation the predicate reports as gone.
+     */
+    public void reap(BiPredicate<SessionHandle, OperationHandle> alive) {
+        List<OperationHandle> operations = new ArrayList<>();
+        drains.forEach((operation, drain) -> {
+            if (!alive.test(drain.session, operation)) {
+                operations.add(operation);
+            }
+        });
+        if (!operations.isEmpty()) {
+            LOG.debug("Releasing spilled results of {} operation(s) that no longer exist", operations.size());
+            operations.forEach(this::release);
+        }
+    }
+
+    /** Number of operations whose results are being spilled. */
+    int getStoreCount() {
+        return drains.size();
+    }
+
+    @Override
+    public void close() {
+        new ArrayList<>(drains.keySet()).forEach(this::release);
+        drainers.shutdownNow();
+    }
+
+    private void deleteSegments() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SpillingResultStore.SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not clear result spill directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static final class Drain {
+        final SessionHandle session;
+        final OperationHandle operation;
+        final SpillingResultStore store;
+        volatile Future<?> future;
+        volatile boolean stopped;
+
+        Drain(SessionHandle session, OperationHandle operation, SpillingResultStore store) {
+            this.session = session;
+            this.operation = operation;
+            this.store = store;
+        }
+
+        void run(GatewayFetcher fetcher) {
+            long token = 0;
+            long backoffMs = MIN_IDLE_BACKOFF_MS;
+            try {
+                while (!stopped) {
+                    ResultSet result = fetcher.fetch(session, operation, token, DRAIN_BATCH_ROWS);
+                    if (result.getResultType() == ResultSet.ResultType.NOT_READY) {
+                        Thread.sleep(backoffMs);
+                        backoffMs = Math.min(MAX_IDLE_BACKOFF_MS, backoffMs * 2);
+                        continue;
+                    }
+
+                    store.open((ResultSetImpl) result);
+                    if (result.getResultType() == ResultSet.ResultType.EOS) {
+                        store.finish();
+                        return;
+                    }
+                    if (result.getData().isEmpty()) {
+                        Thread.sleep(backoffMs);
+                        backoffMs = Math.min(MAX_IDLE_BACKOFF_MS, backoffMs * 2);
+                    } else {
+                        store.append(result.getData());
+                        backoffMs = MIN_IDLE_BACKOFF_MS;
+                    }
+                    token = result.getNextToken();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                if (!stopped) {
+                    LOG.debug("Draining results of operation {} failed: {}", operation, t.getMessage());
+                    store.fail(t);
+                }
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+            store.close();
+        }
+    }
+}
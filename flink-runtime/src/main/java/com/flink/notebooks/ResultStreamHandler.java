@@ -0,0 +1,265 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.SqlGatewayService;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.serde.ResultInfo;
+import org.apache.flink.table.gateway.rest.util.RowDataLocalTimeZoneConverter;
+import org.apache.flink.table.gateway.rest.util.RowFormat;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Server-sent events endpoint that pushes result batches as soon as the gateway has them.
+ *
+ * Polling the gateway's fetch endpoint every 500 ms adds up to 500 ms of latency per row
+ * and keeps issuing empty requests while a notebook is paused. Here the runner fetches
+ * in-process and writes each non-empty batch to the open event stream.
+ *
+ * Flow control is credit-based, counted in rows. The client grants initial credits when it
+ * opens the stream and tops them up via the credits endpoint as it drains rows. The server
+ * never sends more rows than granted, and fetches nothing while credits are zero, so a
+ * paused notebook costs nothing.
+ *
+ * GET  /v1/sessions/{sessionHandle}/operations/{operationHandle}/stream?token=0&credits=1000&maxRows=500
+ * POST /v1/sessions/{sessionHandle}/operations/{operationHandle}/stream/credits  {"credits": 500}
+ *
+ * Events: "results" (same body as the gateway's fetch response), "end" and "error".
+ */
+public class ResultStreamHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultStreamHandler.class);
+
+    private static final int DEFAULT_CREDITS = 1000;
+    private static final int DEFAULT_MAX_ROWS = 500;
+    private static final long MIN_IDLE_WAIT_MS = 2;
+    private static final long MAX_IDLE_WAIT_MS = 50;
+    private static final long KEEPALIVE_INTERVAL_MS = 15_000;
+
+    private final SqlGatewayService service;
+    private final RunnerMetrics metrics;
+    private final Map<String, ResultStream> streams = new ConcurrentHashMap<>();
+
+    public ResultStreamHandler(SqlGatewayService service) {
+        this(service, null);
+    }
+
+    /**
+     * @param metrics Counts the result bytes streamed, or null
+     */
+    public ResultStreamHandler(SqlGatewayService service, RunnerMetrics metrics) {
+        this.service = service;
+        this.metrics = metrics;
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("GET", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/stream", this::stream);
+        server.route("POST", "/v1/sessions/{sessionHandle}/operations/{operationHandle}/stream/credits", this::grant);
+    }
+
+    private void stream(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        SessionHandle session = new SessionHandle(UUID.fromString(pathParams.get("sessionHandle")));
+        OperationHandle operation = new OperationHandle(UUID.fromString(pathParams.get("operationHandle")));
+
+        Map<String, String> query = RunnerHttpServer.queryParams(exchange);
+        long token = RunnerHttpServer.intParam(query, "token", 0);
+        int maxRows = Math.max(1, RunnerHttpServer.intParam(query, "maxRows", DEFAULT_MAX_ROWS));
+        ResultStream state = new ResultStream(RunnerHttpServer.intParam(query, "credits", DEFAULT_CREDITS));
+
+        if (streams.putIfAbsent(operation.toString(), state) != null) {
+            throw new IllegalArgumentException("A stream is already open for operation " + operation);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream out = exchange.getResponseBody();
+        RowDataLocalTimeZoneConverter timeZoneConverter = null;
+        long idleWaitMs = MIN_IDLE_WAIT_MS;
+
+        try {
+            while (true) {
+                int budget = state.awaitCredits(KEEPALIVE_INTERVAL_MS);
+                if (budget == 0) {
+                    // Client is paused; keep the connection alive without fetching
+                    writeComment(out, "keepalive");
+                    continue;
+                }
+
+                ResultSet result = service.fetchResults(session, operation, token, Math.min(budget, maxRows));
+
+                if (result.getResultType() == ResultSet.ResultType.EOS) {
+                    writeEvent(out, "end", Collections.singletonMap("token", token));
+                    break;
+                }
+
+                if (result.getData().isEmpty()) {
+                    Long next = result.getNextToken();
+                    token = next != null ? next : token;
+                    Thread.sleep(idleWaitMs);
+                    idleWaitMs = Math.min(idleWaitMs * 2, MAX_IDLE_WAIT_MS);
+                    continue;
+                }
+
+                if (timeZoneConverter == null) {
+                    timeZoneConverter = timeZoneConverter(session, result);
+                }
+                int bytes = writeEvent(out, "results", toResponseBody(result, token, timeZoneConverter));
+                if (metrics != null) {
+                    metrics.onStreamBytes(bytes);
+                }
+                state.consume(result.getData().size());
+                idleWaitMs = MIN_IDLE_WAIT_MS;
+
+                if (result.getNextToken() == null) {
+                    writeEvent(out, "end", Collections.singletonMap("token", token));
+                    break;
+                }
+                token = result.getNextToken();
+            }
+        } catch (IOException e) {
+            LOG.debug("Result stream for operation {} closed by client: {}", operation, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn("Result stream for operation {} failed", operation, e);
+            try {
+                writeEvent(out, "error", Collections.singletonMap("errors", Collections.singletonList(e.getMessage())));
+            } catch (IOException ignored) {
+                // client already gone
+            }
+        } finally {
+            streams.remove(operation.toString(), state);
+            out.close();
+        }
+    }
+
+    private void grant(HttpExchange exchange, Map<String, String> pathParams) throws Exception {
+        ResultStream state = streams.get(pathParams.get("operationHandle"));
+        if (state == null) {
+            RunnerHttpServer.sendError(exchange, 404, "No open stream for operation " + pathParams.get("operationHandle"));
+            return;
+        }
+
+        Object credits = RunnerHttpServer.readJsonBody(exchange).get("credits");
+        if (!(credits instanceof Number) || ((Number) credits).intValue() <= 0) {
+            throw new IllegalArgumentException("Body must contain a positive 'credits' value");
+        }
+
+        int available = state.grant(((Number) credits).intValue());
+        RunnerHttpServer.sendJson(exchange, 200, Collections.singletonMap("credits", available));
+    }
+
+    private RowDataLocalTimeZoneConverter timeZoneConverter(SessionHandle session, ResultSet result) {
+        List<LogicalType> logicalTypes = result.getResultSchema().getColumnDataTypes().stream()
+            .map(DataType::getLogicalType)
+            .collect(Collectors.toList());
+        return new RowDataLocalTimeZoneConverter(logicalTypes, Configuration.fromMap(service.getSessionConfig(session)));
+    }
+
+    /**
+     * Build the same body as the gateway's fetch-results response.
+     */
+    static Map<String, Object> toResponseBody(ResultSet result, long token, RowDataLocalTimeZoneConverter converter) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("resultType", result.getResultType().name());
+        body.put("isQueryResult", result.isQueryResult());
+        body.put("jobID", result.getJobID() != null ? result.getJobID().toString() : null);
+        body.put("resultKind", result.getResultKind() != null ? result.getResultKind().name() : null);
+        body.put("token", token);
+        body.put("nextToken", result.getNextToken());
+        body.put("results", ResultInfo.createResultInfo(result, RowFormat.JSON, converter));
+        return body;
+    }
+
+    /**
+     * @return Bytes of the event's data
+     */
+    private static int writeEvent(OutputStream out, String event, Object data) throws IOException {
+        byte[] payload = RunnerHttpServer.MAPPER.writeValueAsBytes(data);
+        out.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+        out.write(payload);
+        out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return payload.length;
+    }
+
+    private static void writeComment(OutputStream out, String comment) throws IOException {
+        out.write((": " + comment + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Row credits granted by the client for one open stream.
+     */
+    private static class ResultStream {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition creditsAvailable = lock.newCondition();
+        private long credits;
+
+        ResultStream(int initialCredits) {
+            this.credits = Math.max(0, initialCredits);
+        }
+
+        /**
+         * Wait until credits are available.
+         *
+         * @return Available credits (capped at Integer.MAX_VALUE), or 0 on timeout
+         */
+        int awaitCredits(long timeoutMs) throws InterruptedException {
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (credits <= 0) {
+                    if (remaining <= 0) {
+                        return 0;
+                    }
+                    remaining = creditsAvailable.awaitNanos(remaining);
+                }
+                return (int) Math.min(credits, Integer.MAX_VALUE);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int grant(int amount) {
+            lock.lock();
+            try {
+                credits += amount;
+                creditsAvailable.signalAll();
+                return (int) Math.min(credits, Integer.MAX_VALUE);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void consume(int rows) {
+            lock.lock();
+            try {
+                credits -= rows;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.flink.runtime.rest.util.RestMapperUtils;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP server for runner-specific endpoints, hosted next to the SQL Gateway REST endpoint.
+ *
+ * The Flink SQL Gateway's REST API cannot be extended without forking it, so endpoints the
+ * notebook extension needs beyond that API are served here on a separate port (default 8084).
+ * Routes are registered with path patterns such as
+ * /v1/sessions/{sessionHandle}/operations/{operationHandle}/stream and responses use the same
+ * JSON mapper and error shape ({"errors": [...]}) as the gateway. Responses are compressed
+ * when the client accepts it (see ResponseCompression).
+ */
+public class RunnerHttpServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RunnerHttpServer.class);
+
+    static final ObjectMapper MAPPER = RestMapperUtils.getStrictObjectMapper();
+
+    private final String bindAddress;
+    private final int port;
+    private final List<Route> routes = new ArrayList<>();
+
+    private volatile ResponseCompression compression;
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+
+    public RunnerHttpServer(String bindAddress, int port) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+    }
+
+    /**
+     * Handler for a single route. Path parameters are passed by name.
+     */
+    @FunctionalInterface
+    public interface RouteHandler {
+        void handle(HttpExchange exchange, Map<String, String> pathParams) throws Exception;
+    }
+
+    /**
+     * Register a handler for the given method and path pattern. Must be called before start().
+     */
+    public void route(String method, String pattern, RouteHandler handler) {
+        routes.add(new Route(method, pattern, handler));
+    }
+
+    /**
+     * Compress responses sent with sendBytes() and sendJson() as negotiated with each client.
+     */
+    public void setCompression(ResponseCompression compression) {
+        this.compression = compression;
+    }
+
+    public void start() throws IOException {
+        handlerExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("runner-http-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.createContext("/", this::dispatch);
+        server.setExecutor(handlerExecutor);
+        server.start();
+        LOG.info("Runner endpoint started on http://localhost:{}", port);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdownNow();
+            try {
+                handlerExecutor.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handlerExecutor = null;
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (compression != null) {
+            exchange.setAttribute(ResponseCompression.ATTRIBUTE, compression);
+        }
+
+        try {
+            boolean pathMatched = false;
+            for (Route route : routes) {
+                Map<String, String> params = route.match(path);
+                if (params == null) {
+                    continue;
+                }
+                pathMatched = true;
+                if (route.method.equalsIgnoreCase(method)) {
+                    route.handler.handle(exchange, params);
+                    return;
+                }
+            }
+
+            if (pathMatched) {
+                sendError(exchange, 405, "Method " + method + " not allowed for " + path);
+            } else {
+                sendError(exchange, 404, "Not found: " + path);
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            LOG.warn("Error handling {} {}", method, path, e);
+            sendError(exchange, 500, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Send an object as a JSON response.
+     */
+    public static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        sendBytes(exchange, status, "application/json", MAPPER.writeValueAsBytes(body));
+    }
+
+    /**
+     * Send a raw response body with the given content type, compressed if the server
+     * compresses responses and the client accepts it.
+     */
+    public static void sendBytes(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        ResponseCompression compression = (ResponseCompression) exchange.getAttribute(ResponseCompression.ATTRIBUTE);
+        if (compression != null) {
+            body = compression.encode(exchange, body);
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Send an error in the gateway's {"errors": [...]} shape. Ignored if headers were already sent.
+     */
+    public static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            if (exchange.getResponseCode() == -1) {
+                sendJson(exchange, status, Collections.singletonMap("errors", Collections.singletonList(message)));
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to send error response: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Read the request body as a JSON object (empty map if there is no body).
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> readJsonBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length == 0) {
+                return Collections.emptyMap();
+            }
+            return MAPPER.readValue(body, Map.class);
+        }
+    }
+
+    /**
+     * Parse the query string into a map (last value wins).
+     */
+    public static Map<String, String> queryParams(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    /**
+     * Read an integer query parameter, or return the default if absent.
+     */
+    public static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Query parameter '" + name + "' must be an integer: " + value);
+        }
+    }
+
+    private static class Route {
+        final String method;
+        final String[] segments;
+        final RouteHandler handler;
+
+        Route(String method, String pattern, RouteHandler handler) {
+            this.method = method;
+            this.segments = pattern.split("/");
+            this.handler = handler;
+        }
+
+        /**
+         * @return Path parameters if the path matches this route, otherwise null
+         */
+        Map<String, String> match(String path) {
+            String[] parts = path.split("/");
+            if (parts.length != segments.length) {
+                return null;
+            }
+            Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    params.put(segment.substring(1, segment.length() - 1), parts[i]);
+                } else if (!segment.equals(parts[i])) {
+                    return null;
+                }
+            }
+            return params;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.runtime.metrics.DescriptiveStatisticsHistogram;
+import org.apache.flink.runtime.metrics.groups.ProcessMetricGroup;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics about the runner's own workload, for sizing the gateway for concurrent use:
+ * operation executor queue depth, queue wait and running operations, latency histograms for
+ * submitting a statement, its first row and each fetch, result rows and bytes served, bytes
+ * before and after response compression, open sessions and operations, cleanup executor
+ * activity, and plan / result cache hits.
+ *
+ * Served in the Prometheus text format at
+ *
+ * GET /metrics
+ *
+ * on the runner endpoint, as flink_notebooks_* metrics. Once the MiniCluster is up they are
+ * also registered in Flink's metric system under the JobManager process group as
+ * "notebooks.*", so Flink's reporters and the web UI's Job Manager metrics see them too
+ * (histograms there cover the last 1024 values, in milliseconds).
+ */
+public class RunnerMetrics implements AutoCloseable {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "flink_notebooks_";
+    private static final double[] BUCKET_SECONDS =
+        {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final int FLINK_HISTOGRAM_WINDOW = 1024;
+
+    private final LatencyHistogram queueWait = new LatencyHistogram("operation_queue_wait_seconds",
+        "operationQueueWait", "Time operations waited for an executor thread.");
+    private final LatencyHistogram submit = new LatencyHistogram("operation_submit_seconds",
+        "operationSubmit", "Time the gateway took to accept a statement.");
+    private final LatencyHistogram firstRow = new LatencyHistogram("operation_first_row_seconds",
+        "operationFirstRow", "Time from submitting a statement to the first fetch that returned rows.");
+    private final LatencyHistogram fetch = new LatencyHistogram("operation_fetch_seconds",
+        "operationFetch", "Time a result fetch took, on the gateway and runner endpoints.");
+    private final LongAdder rowsServed = new LongAdder();
+    private final LongAdder columnarBytes = new LongAdder();
+    private final LongAdder jsonBytes = new LongAdder();
+    private final LongAdder streamBytes = new LongAdder();
+    private final Map<OperationHandle, Submitted> awaitingFirstRow = new ConcurrentHashMap<>();
+    private final List<Sample> samples = new ArrayList<>();
+
+    private volatile MeteredOperationExecutor operationExecutor;
+    private volatile ThreadPoolExecutor cleanupExecutor;
+    private volatile NotebookGatewayService service;
+    private volatile PlanCacheMXBean planCache;
+    private volatile ResultCacheMXBean resultCache;
+    private volatile ResponseCompression compression;
+    private volatile VirtualThreadPinningMonitor pinningMonitor;
+    private ProcessMetricGroup processGroup;
+
+    public RunnerMetrics() {
+        gauge("operation_queue_depth", "operationQueueDepth", "Operations waiting for an executor thread.",
+            () -> operationExecutor == null ? 0 : operationExecutor.getQueued());
+        gauge("operations_running", "operationsRunning", "Operations holding an executor thread.",
+            () -> operationExecutor == null ? 0 : operationExecutor.getRunning());
+        gauge("sessions_open", "sessionsOpen", "Open gateway sessions, including pooled ones.",
+            () -> service == null ? 0 : service.getOpenSessionCount());
+        gauge("operations_open", "operationsOpen", "Operations not yet closed, over all open sessions.",
+            () -> service == null ? 0 : service.getOpenOperationCount());
+        counter("result_rows_total", "resultRows", "Result rows handed out by fetches.", rowsServed::sum);
+        counter("result_bytes_total{format=\"columnar\"}", "resultBytesColumnar",
+            "Result bytes served by the runner endpoint.", columnarBytes::sum);
+        counter("result_bytes_total{format=\"json\"}", "resultBytesJson", null, jsonBytes::sum);
+        counter("result_bytes_total{format=\"stream\"}", "resultBytesStream", null, streamBytes::sum);
+        counter("compression_input_bytes_total{codec=\"lz4\"}", "compressionInputBytesLz4",
+            "Response bytes compressed by the runner endpoint, before compression.",
+            () -> compression == null ? 0 : compression.getInputBytes(ResponseCompression.Codec.LZ4));
+        counter("compression_input_bytes_total{codec=\"gzip\"}", "compressionInputBytesGzip", null,
+            () -> compression == null ? 0 : compression.getInputBytes(ResponseCompression.Codec.GZIP));
+        counter("compression_output_bytes_total{codec=\"lz4\"}", "compressionOutputBytesLz4",
+            "Bytes sent for compressed responses of the runner endpoint.",
+            () -> compression == null ? 0 : compression.getOutputBytes(ResponseCompression.Codec.LZ4));
+        counter("compression_output_bytes_total{codec=\"gzip\"}", "compressionOutputBytesGzip", null,
+            () -> compression == null ? 0 : compression.getOutputBytes(ResponseCompression.Codec.GZIP));
+        counter("cleanup_tasks_completed_total", "cleanupTasksCompleted",
+            "Tasks the gateway's cleanup executor has run.",
+            () -> cleanupExecutor == null ? 0 : cleanupExecutor.getCompletedTaskCount());
+        gauge("cleanup_tasks_active", "cleanupTasksActive", "Tasks the cleanup executor is running.",
+            () -> cleanupExecutor == null ? 0 : cleanupExecutor.getActiveCount());
+        gauge("cleanup_tasks_scheduled", "cleanupTasksScheduled", "Tasks waiting in the cleanup executor.",
+            () -> cleanupExecutor == null ? 0 : cleanupExecutor.getQueue().size());
+        counter("plan_cache_hits_total", "planCacheHits", "Statements executed from a cached plan.",
+            () -> planCache == null ? 0 : planCache.getHits());
+        counter("plan_cache_misses_total", "planCacheMisses", "Cacheable statements that had no plan yet.",
+            () -> planCache == null ? 0 : planCache.getMisses());
+        counter("result_cache_hits_total", "resultCacheHits", "Queries served from a cached result.",
+            () -> resultCache == null ? 0 : resultCache.getHits());
+        counter("result_cache_misses_total", "resultCacheMisses", "Cacheable queries without a usable result.",
+            () -> resultCache == null ? 0 : resultCache.getMisses());
+        counter("virtual_thread_pinned_total", "virtualThreadPinned",
+            "Virtual threads that pinned their carrier thread longer than the monitor's threshold.",
+            () -> pinningMonitor == null ? 0 : pinningMonitor.getPinnedCount());
+        counter("virtual_thread_pinned_milliseconds_total", "virtualThreadPinnedTime",
+            "Time carrier threads spent pinned by those virtual threads.",
+            () -> pinningMonitor == null ? 0 : pinningMonitor.getPinnedTimeMillis());
+        gauge("virtual_thread_pinned_max_milliseconds", "virtualThreadPinnedMaxTime",
+            "Longest single time a virtual thread pinned its carrier thread.",
+            () -> pinningMonitor == null ? 0 : pinningMonitor.getMaxPinnedTimeMillis());
+    }
+
+    /**
+     * Wrap the operation executor so its queue and wait time are measured.
+     */
+    public ExecutorService meter(ExecutorService executor) {
+        MeteredOperationExecutor metered = new MeteredOperationExecutor(executor, queueWait);
+        operationExecutor = metered;
+        return metered;
+    }
+
+    public void bindService(NotebookGatewayService service) {
+        this.service = service;
+    }
+
+    public void bindCleanupExecutor(ExecutorService executor) {
+        this.cleanupExecutor = executor instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executor : null;
+    }
+
+    /**
+     * Report the hits and misses of the given caches; null for a disabled cache.
+     */
+    public void bindCaches(PlanCacheMXBean planCache, ResultCacheMXBean resultCache) {
+        this.planCache = planCache;
+        this.resultCache = resultCache;
+    }
+
+    public void bindCompression(ResponseCompression compression) {
+        this.compression = compression;
+    }
+
+    public void bindPinningMonitor(VirtualThreadPinningMonitor pinningMonitor) {
+        this.pinningMonitor = pinningMonitor;
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("GET", "/metrics", this::scrape);
+    }
+
+    /**
+     * Register the metrics with Flink's metric system under the given process group.
+     */
+    public synchronized void registerWith(ProcessMetricGroup processGroup) {
+        this.processGroup = processGroup;
+        MetricGroup group = processGroup.addGroup("notebooks");
+        for (Sample sample : samples) {
+            if (sample.counter) {
+                group.counter(sample.flinkName, new SampleCounter(sample.value));
+            } else {
+                group.gauge(sample.flinkName, (Gauge<Long>) sample.value::getAsLong);
+            }
+        }
+        for (LatencyHistogram histogram : List.of(queueWait, submit, firstRow, fetch)) {
+            group.histogram(histogram.flinkName, histogram.window);
+        }
+    }
+
+    void onSubmitted(SessionHandle session, OperationHandle operation, long startNanos) {
+        long now = System.nanoTime();
+        submit.record(now - startNanos);
+        awaitingFirstRow.put(operation, new Submitted(session, startNanos));
+    }
+
+    void onFetched(OperationHandle operation, ResultSet result, long startNanos) {
+        long now = System.nanoTime();
+        fetch.record(now - startNanos);
+        int rows = result.getData().size();
+        rowsServed.add(rows);
+        if (rows > 0) {
+            Submitted submitted = awaitingFirstRow.remove(operation);
+            if (submitted != null) {
+                firstRow.record(now - submitted.startNanos);
+            }
+        } else if (result.getResultType() == ResultSet.ResultType.EOS) {
+            awaitingFirstRow.remove(operation);
+        }
+    }
+
+    void onClosed(OperationHandle operation) {
+        awaitingFirstRow.remove(operation);
+    }
+
+    void onSessionClosed(SessionHandle session) {
+        awaitingFirstRow.values().removeIf(submitted -> submitted.session.equals(session));
+    }
+
+    void onColumnarBytes(long bytes) {
+        columnarBytes.add(bytes);
+    }
+
+    void onJsonBytes(long bytes) {
+        jsonBytes.add(bytes);
+    }
+
+    void onStreamBytes(long bytes) {
+        streamBytes.add(bytes);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (processGroup != null) {
+            processGroup.close();
+            processGroup = null;
+        }
+    }
+
+    private void scrape(HttpExchange exchange, Map<String, String> pathParams) throws IOException {
+        RunnerHttpServer.sendBytes(exchange, 200, CONTENT_TYPE, render().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The metrics in the Prometheus text exposition format.
+     */
+    String render() {
+        StringBuilder out = new StringBuilder();
+        for (Sample sample : samples) {
+            String name = sample.name.contains("{") ? sample.name.substring(0, sample.name.indexOf('{')) : sample.name;
+            if (sample.help != null) {
+                out.append("# HELP ").append(PREFIX).append(name).append(' ').append(sample.help).append('\n');
+                out.append("# TYPE ").append(PREFIX).append(name).append(sample.counter ? " counter" : " gauge").append('\n');
+            }
+            out.append(PREFIX).append(sample.name).append(' ').append(sample.value.getAsLong()).append('\n');
+        }
+        for (LatencyHistogram histogram : List.of(queueWait, submit, firstRow, fetch)) {
+            histogram.render(out);
+        }
+        return out.toString();
+    }
+
+    private void gauge(String name, String flinkName, String help, LongSupplier value) {
+        samples.add(new Sample(name, flinkName, help, false, value));
+    }
+
+    private void counter(String name, String flinkName, String help, LongSupplier value) {
+        samples.add(new Sample(name, flinkName, help, true, value));
+    }
+
+    private static final class Sample {
+        final String name;
+        final String flinkName;
+        /** Null for further labelled samples of the metric before. */
+        final String help;
+        final boolean counter;
+        final LongSupplier value;
+
+        Sample(String name, String flinkName, String help, boolean counter, LongSupplier value) {
+            this.name = name;
+            this.flinkName = flinkName;
+            this.help = help;
+            this.counter = counter;
+            this.value = value;
+        }
+    }
+
+    private static final class Submitted {
+        final SessionHandle session;
+        final long startNanos;
+
+        Submitted(SessionHandle session, long startNanos) {
+            this.session = session;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Read-only Flink view of a counter kept elsewhere.
+     */
+    private static final class SampleCounter implements Counter {
+        private final LongSupplier value;
+
+        SampleCounter(LongSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void inc() {
+        }
+
+        @Override
+        public void inc(long n) {
+        }
+
+        @Override
+        public void dec() {
+        }
+
+        @Override
+        public void dec(long n) {
+        }
+
+        @Override
+        public long getCount() {
+            return value.getAsLong();
+        }
+    }
+
+    /**
+     * Latency histogram with fixed buckets for Prometheus and a sliding window for Flink.
+     */
+    static final class LatencyHistogram {
+        private final String name;
+        private final String flinkName;
+        private final String help;
+        private final LongAdder[] buckets = new LongAdder[BUCKET_SECONDS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+        private final DescriptiveStatisticsHistogram window = new DescriptiveStatisticsHistogram(FLINK_HISTOGRAM_WINDOW);
+
+        LatencyHistogram(String name, String flinkName, String help) {
+            this.name = name;
+            this.flinkName = flinkName;
+            this.help = help;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < BUCKET_SECONDS.length && seconds > BUCKET_SECONDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+            window.update(nanos / 1_000_000);
+        }
+
+        void render(StringBuilder out) {
+            out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(PREFIX).append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < BUCKET_SECONDS.length ? formatSeconds(BUCKET_SECONDS[i]) : "+Inf";
+                out.append(PREFIX).append(name).append("_bucket{le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+            }
+            out.append(PREFIX).append(name).append("_sum ").append(formatSeconds(sumNanos.sum() / 1e9)).append('\n');
+            out.append(PREFIX).append(name).append("_count ").append(cumulative).append('\n');
+        }
+
+        private static String formatSeconds(double seconds) {
+            return Double.toString(seconds);
+        }
+    }
+}
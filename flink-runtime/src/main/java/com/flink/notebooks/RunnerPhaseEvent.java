@@ -0,0 +1,30 @@
+package com.flink.notebooks;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one phase of the runner starting or stopping, recorded by RunnerTimings.
+ * The event's duration is the phase's; a phase named "total" spans the whole start or stop.
+ */
+@Name("com.flink.notebooks.RunnerPhase")
+@Label("Runner Phase")
+@Category({"Flink Notebooks", "Runner"})
+@Description("A phase of MiniClusterRunner start() or stop()")
+@StackTrace(false)
+class RunnerPhaseEvent extends Event {
+
+    @Label("Lifecycle")
+    @Description("start or stop")
+    String lifecycle;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
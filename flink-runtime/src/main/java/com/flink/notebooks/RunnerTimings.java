@@ -0,0 +1,193 @@
+package com.flink.notebooks;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.util.EnvironmentInformation;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timings of the phases of MiniClusterRunner start() and stop(): MiniCluster services,
+ * connector JAR scanning, DefaultContext load, gateway bind, executor drains and so on.
+ *
+ * Every phase is committed as a RunnerPhaseEvent for JFR recordings (e.g. started with
+ * -XX:StartFlightRecording) and kept for the report served at
+ *
+ * GET /v1/runner/timings
+ *
+ * as {"flinkVersion", "javaVersion", "current", "previous"}. A run is {"flinkVersion",
+ * "javaVersion", "startedAt", "phases": [{"lifecycle", "phase", "thread", "offsetMs",
+ * "durationMs", "succeeded", "error"}]} with offsets from the start of its lifecycle; the
+ * "total" phase spans the whole start or stop. The current run is written to
+ * notebooks.timings.file once stop() finishes, so the next runner reports it as previous,
+ * including how long it took to stop. (A JFR recording dumped on exit may miss the stop
+ * phases, since the JVM dumps it from its own shutdown hook.)
+ */
+public class RunnerTimings {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RunnerTimings.class);
+
+    public static final String START = "start";
+    public static final String STOP = "stop";
+    public static final String TOTAL = "total";
+
+    static final ConfigOption<String> FILE = ConfigOptions.key("notebooks.timings.file")
+        .stringType()
+        .defaultValue(Paths.get(System.getProperty("java.io.tmpdir"), "flink-notebooks-runner-timings.json").toString());
+
+    private final Path file;
+    private final JsonNode previous;
+    private final Instant startedAt = Instant.now();
+    private final Map<String, Long> origins = new ConcurrentHashMap<>();
+    // Guarded by this
+    private final List<Map<String, Object>> phases = new ArrayList<>();
+
+    public RunnerTimings(Configuration flinkConfig) {
+        this.file = Paths.get(flinkConfig.get(FILE));
+        this.previous = readPrevious(file);
+    }
+
+    public void register(RunnerHttpServer server) {
+        server.route("GET", "/v1/runner/timings", this::report);
+    }
+
+    /**
+     * Start timing a phase. The first phase of a lifecycle sets the origin of its offsets.
+     */
+    public Phase begin(String lifecycle, String name) {
+        return new Phase(lifecycle, name);
+    }
+
+    /**
+     * Time a phase that has no result of its own.
+     */
+    public void time(String lifecycle, String name, Body body) throws Exception {
+        Phase phase = begin(lifecycle, name);
+        try {
+            body.run();
+            phase.end();
+        } catch (Exception e) {
+            phase.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Write the current run to notebooks.timings.file for the next runner to report.
+     */
+    public void save() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, RunnerHttpServer.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(run()));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not write runner timings to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void report(HttpExchange exchange, Map<String, String> pathParams) throws IOException {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("flinkVersion", EnvironmentInformation.getVersion());
+        response.put("javaVersion", System.getProperty("java.version"));
+        response.put("current", run());
+        response.put("previous", previous);
+        RunnerHttpServer.sendJson(exchange, 200, response);
+    }
+
+    private synchronized Map<String, Object> run() {
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("flinkVersion", EnvironmentInformation.getVersion());
+        run.put("javaVersion", System.getProperty("java.version"));
+        run.put("startedAt", startedAt.toString());
+        List<Map<String, Object>> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparing((Map<String, Object> phase) -> !START.equals(phase.get("lifecycle")))
+            .thenComparing(phase -> (Long) phase.get("offsetMs")));
+        run.put("phases", sorted);
+        return run;
+    }
+
+    private synchronized void record(Map<String, Object> phase) {
+        phases.add(phase);
+    }
+
+    private static JsonNode readPrevious(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return RunnerHttpServer.MAPPER.readTree(file.toFile());
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable runner timings in {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Body of a phase.
+     */
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    /**
+     * A phase being timed. Exactly one of end() and fail() is called.
+     */
+    public final class Phase {
+        private final String lifecycle;
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final RunnerPhaseEvent event = new RunnerPhaseEvent();
+
+        private Phase(String lifecycle, String name) {
+            this.lifecycle = lifecycle;
+            this.name = name;
+            origins.putIfAbsent(lifecycle, startNanos);
+            event.begin();
+        }
+
+        public void end() {
+            finish(null);
+        }
+
+        public void fail(Throwable error) {
+            finish(error);
+        }
+
+        private void finish(Throwable error) {
+            long endNanos = System.nanoTime();
+            event.lifecycle = lifecycle;
+            event.phase = name;
+            event.succeeded = error == null;
+            event.commit();
+
+            Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("lifecycle", lifecycle);
+            phase.put("phase", name);
+            phase.put("thread", Thread.currentThread().getName());
+            phase.put("offsetMs", (startNanos - origins.get(lifecycle)) / 1_000_000);
+            phase.put("durationMs", (endNanos - startNanos) / 1_000_000);
+            phase.put("succeeded", error == null);
+            if (error != null) {
+                phase.put("error", error.getMessage() != null ? error.getMessage() : error.getClass().getName());
+            }
+            record(phase);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package com.flink.notebooks;
+
+import org.apache.flink.api.common.JobID;
+import org.apache.flink.core.memory.DataInputViewStreamWrapper;
+import org.apache.flink.core.memory.DataOutputViewStreamWrapper;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.utils.SqlGatewayException;
+import org.apache.flink.table.gateway.service.result.NotReadyResult;
+import org.apache.flink.table.runtime.typeutils.RowDataSerializer;
+import org.apache.flink.table.types.logical.RowType;
+import org.apache.flink.table.utils.print.RowDataToStringConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result buffer of one operation that keeps the newest rows on the heap and spills older
+ * rows to segment files on local disk.
+ *
+ * Rows are numbered from 0 in the order the job produced them, and fetch tokens are row
+ * numbers: fetching token t returns the rows from t on and acknowledges everything before t,
+ * which is then dropped from memory and disk. Fetching the same token twice returns the same
+ * rows, as with the gateway's own ResultFetcher.
+ *
+ * Disk use is bounded by maxDiskBytes. For a bounded result, append() then blocks until the
+ * client has read enough rows to free a segment, so the drainer stops fetching and the job
+ * is backpressured as with the gateway's own buffer, and every row is delivered. For an
+ * unbounded result the oldest segment is evicted instead, even if it has not been read, and
+ * so are segments older than retentionMs if set; the next fetch then continues at the oldest
+ * retained row, so a paused streaming notebook loses the rows it did not read in time
+ * instead of stalling its job. getEvictedRows() counts the rows lost that way.
+ *
+ * Segment files hold rows written with RowDataSerializer. Reads continue from where the last
+ * one stopped, so fetching a spilled result in order reads each segment once.
+ */
+public class SpillingResultStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillingResultStore.class);
+
+    static final String SEGMENT_SUFFIX = ".rows";
+
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    private final OperationHandle operation;
+    private final Path directory;
+    private final int memoryRows;
+    private final long maxDiskBytes;
+    private final long retentionMs;
+    private final boolean bounded;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final List<RowData> tail = new ArrayList<>();
+
+    private ResolvedSchema schema;
+    private RowDataToStringConverter converter;
+    private boolean isQueryResult;
+    private JobID jobID;
+    private ResultKind resultKind;
+    private RowDataSerializer serializer;
+
+    /** Oldest row still retained. */
+    private long firstRow;
+    /** Row number of tail.get(0). */
+    private long tailStart;
+    /** Row number the next appended row gets. */
+    private long endRow;
+    /** Row after the last one handed out by a fetch. */
+    private long fetchedRow;
+
+    private long diskBytes;
+    private long spilledRows;
+    private long evictedRows;
+    private int segmentSequence;
+    private boolean finished;
+    private Throwable failure;
+    private boolean closed;
+    private boolean evictionLogged;
+    private boolean backpressureLogged;
+
+    private ReadCursor cursor;
+
+    /**
+     * @param bounded Whether the result is bounded; see the class comment for how that
+     *                changes what happens when maxDiskBytes is reached
+     */
+    public SpillingResultStore(OperationHandle operation, Path directory, int memoryRows, long maxDiskBytes,
+            long retentionMs, boolean bounded) {
+        this.operation = operation;
+        this.directory = directory;
+        this.memoryRows = memoryRows;
+        this.maxDiskBytes = maxDiskBytes;
+        this.retentionMs = retentionMs;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Take the result metadata from the first batch the job produced.
+     */
+    public synchronized void open(ResultSetImpl first) {
+        if (schema != null) {
+            return;
+        }
+        this.schema = first.getResultSchema();
+        this.converter = first.getConverter();
+        this.isQueryResult = first.isQueryResult();
+        this.jobID = first.getJobID();
+        this.resultKind = first.getResultKind();
+        this.serializer = new RowDataSerializer((RowType) schema.toPhysicalRowDataType().getLogicalType());
+        notifyAll();
+    }
+
+    /**
+     * Add rows the job produced. For a bounded result this waits while the spilled rows
+     * exceed maxDiskBytes, until fetches free a segment or the store is closed.
+     */
+    public synchronized void append(List<RowData> rows) throws IOException, InterruptedException {
+        if (closed || rows.isEmpty()) {
+            return;
+        }
+        tail.addAll(rows);
+        endRow += rows.size();
+        if (tail.size() > memoryRows) {
+            spillTail();
+        }
+        notifyAll();
+        if (bounded) {
+            awaitDiskSpace();
+        } else {
+            enforceRetention();
+        }
+    }
+
+    /** The job produced all its rows. */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /** Fetching results from the gateway failed; fetches rethrow the failure. */
+    public synchronized void fail(Throwable cause) {
+        failure = cause;
+        notifyAll();
+    }
+
+    /**
+     * Fetch up to maxRows rows starting at the given token. A fetch returns at most the
+     * in-memory row limit, since the gateway REST endpoint asks for everything available.
+     */
+    public synchronized ResultSet fetch(long token, int maxRows) {
+        if (failure instanceof SqlGatewayException) {
+            throw (SqlGatewayException) failure;
+        } else if (failure != null) {
+            throw new SqlGatewayException("Failed to fetch results.", failure);
+        }
+        if (closed) {
+            throw new SqlGatewayException("Results of operation " + operation + " were released.");
+        }
+        if (schema == null) {
+            return NotReadyResult.INSTANCE;
+        }
+
+        acknowledge(token);
+        long start = Math.max(token, firstRow);
+        if (start > token) {
+            LOG.warn("Operation {}: rows {} to {} were evicted before they were fetched", operation, token, start - 1);
+        }
+        if (start >= endRow) {
+            if (finished) {
+                return result(ResultSet.ResultType.EOS, null, Collections.emptyList());
+            }
+            return result(ResultSet.ResultType.PAYLOAD, start, Collections.emptyList());
+        }
+
+        int count = (int) Math.min(Math.min(Math.max(1, maxRows), memoryRows), endRow - start);
+        try {
+            List<RowData> rows = read(start, count);
+            fetchedRow = Math.max(fetchedRow, start + rows.size());
+            return result(ResultSet.ResultType.PAYLOAD, start + rows.size(), rows);
+        } catch (IOException e) {
+            throw new SqlGatewayException("Failed to read spilled results of operation " + operation + ".", e);
+        }
+    }
+
+    /**
+     * Rows retained but not handed out by a fetch yet.
+     */
+    public synchronized int getBufferedRowCount() {
+        return (int) Math.min(Integer.MAX_VALUE, endRow - Math.max(firstRow, fetchedRow));
+    }
+
+    /**
+     * Wait until at least the given number of rows is buffered, the result is complete, or
+     * the timeout passes.
+     */
+    public synchronized int awaitBufferedRows(int rows, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int buffered = getBufferedRowCount();
+        while (buffered < rows && !finished && failure == null && !closed) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                break;
+            }
+            wait(remainingMs);
+            buffered = getBufferedRowCount();
+        }
+        return buffered;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public synchronized long getSpilledRows() {
+        return spilledRows;
+    }
+
+    public synchronized long getEvictedRows() {
+        return evictedRows;
+    }
+
+    /** Whether append() is waiting for the client to read spilled rows. */
+    public synchronized boolean isBackpressured() {
+        return bounded && !closed && overDiskLimit();
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeCursor();
+        while (!segments.isEmpty()) {
+            deleteSegment(segments.pollFirst());
+        }
+        tail.clear();
+        diskBytes = 0;
+        notifyAll();
+    }
+
+    private ResultSet result(ResultSet.ResultType type, Long nextToken, List<RowData> rows) {
+        return new ResultSetImpl(type, nextToken, schema, rows, converter, isQueryResult, jobID, resultKind);
+    }
+
+    private void acknowledge(long token) {
+        if (cursor == null) {
+            cursor = new ReadCursor();
+        }
+        cursor.acknowledged = Math.max(cursor.acknowledged, Math.min(token, endRow));
+
+        while (!segments.isEmpty() && segments.peekFirst().endRow() <= cursor.acknowledged) {
+            Segment segment = segments.pollFirst();
+            if (cursor.segment == segment) {
+                closeCursor();
+            }
+            deleteSegment(segment);
+            firstRow = segment.endRow();
+            // A drain waiting for disk space may continue
+            notifyAll();
+        }
+        if (cursor.acknowledged > tailStart) {
+            int drop = (int) (cursor.acknowledged - tailStart);
+            tail.subList(0, drop).clear();
+            tailStart = cursor.acknowledged;
+        }
+        firstRow = Math.max(firstRow, Math.min(cursor.acknowledged, tailStart));
+    }
+
+    private List<RowData> read(long start, int count) throws IOException {
+        List<RowData> rows = new ArrayList<>(count);
+        long row = start;
+        for (Segment segment : segments) {
+            if (rows.size() == count) {
+                break;
+            }
+            if (row >= segment.endRow()) {
+                continue;
+            }
+            DataInputViewStreamWrapper in = cursorAt(segment, row);
+            int n = (int) Math.min(count - rows.size(), segment.endRow() - row);
+            for (int i = 0; i < n; i++) {
+                rows.add(serializer.deserialize(in));
+            }
+            row += n;
+            cursor.nextRow = row;
+        }
+        while (rows.size() < count) {
+            rows.add(tail.get((int) (row - tailStart)));
+            row++;
+        }
+        return rows;
+    }
+
+    /**
+     * A reader positioned at the given row of a segment, reusing the current one if the
+     * previous read stopped exactly there.
+     */
+    private DataInputViewStreamWrapper cursorAt(Segment segment, long row) throws IOException {
+        if (cursor.segment != segment || cursor.nextRow != row || cursor.in == null) {
+            closeCursor();
+            InputStream stream = new BufferedInputStream(Files.newInputStream(segment.file), IO_BUFFER_BYTES);
+            cursor.in = new DataInputViewStreamWrapper(stream);
+            cursor.segment = segment;
+            for (long skip = segment.firstRow; skip < row; skip++) {
+                serializer.deserialize(cursor.in);
+            }
+        }
+        return cursor.in;
+    }
+
+    private void closeCursor() {
+        if (cursor != null && cursor.in != null) {
+            try {
+                cursor.in.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close result segment reader: {}", e.getMessage());
+            }
+            cursor.in = null;
+            cursor.segment = null;
+        }
+    }
+
+    private void spillTail() throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(operation + "-" + (segmentSequence++) + SEGMENT_SUFFIX);
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_BYTES)) {
+            DataOutputViewStreamWrapper out = new DataOutputViewStreamWrapper(stream);
+            for (RowData row : tail) {
+                serializer.serialize(row, out);
+            }
+        }
+        Segment segment = new Segment(file, tailStart, tail.size(), Files.size(file), System.currentTimeMillis());
+        segments.addLast(segment);
+        diskBytes += segment.bytes;
+        spilledRows += segment.rows;
+        tailStart = endRow;
+        tail.clear();
+        LOG.debug("Operation {}: spilled {} rows ({} bytes) to {}", operation, segment.rows, segment.bytes, file);
+    }
+
+    private boolean overDiskLimit() {
+        return maxDiskBytes > 0 && diskBytes > maxDiskBytes;
+    }
+
+    private void awaitDiskSpace() throws InterruptedException {
+        if (overDiskLimit() && !backpressureLogged) {
+            LOG.info("Operation {}: spill size limit reached, waiting for the client to fetch before draining more rows",
+                operation);
+            backpressureLogged = true;
+        }
+        while (!closed && overDiskLimit()) {
+            wait();
+        }
+    }
+
+    private void enforceRetention() {
+        long now = System.currentTimeMillis();
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            boolean overSize = overDiskLimit();
+            boolean expired = retentionMs > 0 && now - oldest.createdMillis > retentionMs;
+            if (!overSize && !expired) {
+                break;
+            }
+            segments.pollFirst();
+            if (cursor != null && cursor.segment == oldest) {
+                closeCursor();
+            }
+            deleteSegment(oldest);
+            long read = cursor != null ? cursor.acknowledged : 0;
+            long unread = oldest.endRow() - Math.max(oldest.firstRow, Math.max(firstRow, read));
+            evictedRows += unread;
+            firstRow = oldest.endRow();
+            if (!evictionLogged) {
+                LOG.info("Operation {}: evicting unread rows ({}), further evictions are logged at debug level",
+                    operation, overSize ? "spill size limit reached" : "retention expired");
+                evictionLogged = true;
+            }
+            LOG.debug("Operation {}: evicted {} unread rows", operation, unread);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.file);
+            diskBytes -= segment.bytes;
+        } catch (IOException e) {
+            LOG.warn("Could not delete result segment {}: {}", segment.file, e.getMessage());
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long firstRow;
+        final int rows;
+        final long bytes;
+        final long createdMillis;
+
+        Segment(Path file, long firstRow, int rows, long bytes, long createdMillis) {
+            this.file = file;
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.createdMillis = createdMillis;
+        }
+
+        long endRow() {
+            return firstRow + rows;
+        }
+    }
+
+    private static final class ReadCursor {
+        long acknowledged;
+        Segment segment;
+        long nextRow;
+        DataInputViewStreamWrapper in;
+    }
+}
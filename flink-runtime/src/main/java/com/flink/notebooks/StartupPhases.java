@@ -0,0 +1,164 @@
+package com.flink.notebooks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Startup of MiniClusterRunner as a graph of named phases.
+ *
+ * Each phase runs on its own thread as soon as the phases it depends on have finished, so
+ * independent ones overlap: the MiniCluster's TaskManagers register while the gateway's
+ * DefaultContext loads and its REST endpoint comes up. Once all phases are done, their start
+ * offsets and durations are logged together with the critical path, the chain of phases that
+ * decided when startup finished. Phases are also recorded in RunnerTimings.
+ */
+class StartupPhases {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupPhases.class);
+
+    private final RunnerTimings timings;
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("runner-startup-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Guarded by this
+    private final Map<CompletableFuture<?>, Phase> phases = new IdentityHashMap<>();
+
+    StartupPhases(RunnerTimings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Run a phase once the given phases have completed. Their results are available to it
+     * through join(). If one of them fails, this phase is skipped and fails with the same cause.
+     */
+    synchronized <T> CompletableFuture<T> supply(String name, Callable<T> body, CompletableFuture<?>... dependsOn) {
+        List<Phase> dependencies = new ArrayList<>(dependsOn.length);
+        for (CompletableFuture<?> future : dependsOn) {
+            Phase dependency = phases.get(future);
+            if (dependency == null) {
+                throw new IllegalArgumentException("Phase '" + name + "' depends on a future that is not a phase");
+            }
+            dependencies.add(dependency);
+        }
+        Phase phase = new Phase(name, dependencies);
+        CompletableFuture<T> future = CompletableFuture.allOf(dependsOn).thenApplyAsync(ignored -> {
+            RunnerTimings.Phase timing = timings.begin(RunnerTimings.START, name);
+            phase.startNanos = System.nanoTime();
+            try {
+                T result = body.call();
+                timing.end();
+                return result;
+            } catch (Exception e) {
+                timing.fail(e);
+                throw new CompletionException(e);
+            } finally {
+                phase.endNanos = System.nanoTime();
+            }
+        }, executor);
+        phases.put(future, phase);
+        return future;
+    }
+
+    /** {@link #supply} for phases that only have side effects. */
+    CompletableFuture<Void> run(String name, RunnerTimings.Body body, CompletableFuture<?>... dependsOn) {
+        return supply(name, () -> {
+            body.run();
+            return null;
+        }, dependsOn);
+    }
+
+    /**
+     * Wait for every phase, log the timings and rethrow the first failure. Phases that do not
+     * depend on a failed one still run to completion, so stopping the runner cleans them up.
+     */
+    void await() throws Exception {
+        List<CompletableFuture<?>> futures;
+        synchronized (this) {
+            futures = new ArrayList<>(phases.keySet());
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            logTimings();
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+        logTimings();
+    }
+
+    private synchronized void logTimings() {
+        List<Phase> ran = new ArrayList<>();
+        for (Phase phase : phases.values()) {
+            if (phase.endNanos != 0) {
+                ran.add(phase);
+            }
+        }
+        if (ran.isEmpty()) {
+            return;
+        }
+        ran.sort((a, b) -> Long.compare(a.startNanos, b.startNanos));
+
+        LOG.info("Startup phases (offset from start, duration):");
+        for (Phase phase : ran) {
+            LOG.info("  {} +{} ms, {} ms", phase.name, millis(phase.startNanos - startNanos),
+                millis(phase.endNanos - phase.startNanos));
+        }
+
+        // Walk back from the phase that finished last through the dependency that held it up
+        Phase last = Collections.max(ran, (a, b) -> Long.compare(a.endNanos, b.endNanos));
+        List<String> path = new ArrayList<>();
+        for (Phase phase = last; phase != null; phase = phase.latestDependency()) {
+            path.add(0, phase.name + " (" + millis(phase.endNanos - phase.startNanos) + " ms)");
+        }
+        LOG.info("Startup took {} ms, critical path: {}", millis(last.endNanos - startNanos),
+            String.join(" -> ", path));
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    private static final class Phase {
+        final String name;
+        final List<Phase> dependencies;
+        volatile long startNanos;
+        volatile long endNanos;
+
+        Phase(String name, List<Phase> dependencies) {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+
+        Phase latestDependency() {
+            Phase latest = null;
+            for (Phase dependency : dependencies) {
+                if (latest == null || dependency.endNanos > latest.endNanos) {
+                    latest = dependency;
+                }
+            }
+            return latest;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+
+/**
+ * Describes the gateway operation currently being submitted on this thread.
+ *
+ * OperationManager hands operations to the injected executor as plain Runnables, without
+ * the statement or session. It does so synchronously on the thread that called
+ * SqlGatewayService.executeStatement, so NotebookGatewayService publishes the details here
+ * and custom executors read them in execute().
+ */
+public final class SubmissionContext {
+
+    private static final ThreadLocal<SubmissionContext> CURRENT = new ThreadLocal<>();
+
+    private final SessionHandle sessionHandle;
+    private final String statement;
+    private final OperationClass operationClass;
+
+    SubmissionContext(SessionHandle sessionHandle, String statement, OperationClass operationClass) {
+        this.sessionHandle = sessionHandle;
+        this.statement = statement;
+        this.operationClass = operationClass;
+    }
+
+    /**
+     * The context of the operation being submitted on this thread, or null if the
+     * submission did not go through NotebookGatewayService.
+     */
+    public static SubmissionContext current() {
+        return CURRENT.get();
+    }
+
+    static void set(SubmissionContext context) {
+        CURRENT.set(context);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    public SessionHandle getSessionHandle() {
+        return sessionHandle;
+    }
+
+    /** The SQL statement, or null for operations submitted without one. */
+    public String getStatement() {
+        return statement;
+    }
+
+    public OperationClass getOperationClass() {
+        return operationClass;
+    }
+}
@@ -0,0 +1,139 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.blob.BlobServer;
+import org.apache.flink.runtime.entrypoint.component.DispatcherResourceManagerComponent;
+import org.apache.flink.runtime.heartbeat.HeartbeatServices;
+import org.apache.flink.runtime.highavailability.HighAvailabilityServices;
+import org.apache.flink.runtime.metrics.MetricRegistry;
+import org.apache.flink.runtime.metrics.MetricRegistryImpl;
+import org.apache.flink.runtime.minicluster.MiniCluster;
+import org.apache.flink.runtime.minicluster.MiniClusterConfiguration;
+import org.apache.flink.runtime.rpc.FatalErrorHandler;
+import org.apache.flink.runtime.rpc.RpcService;
+import org.apache.flink.runtime.rpc.RpcSystem;
+import org.apache.flink.runtime.security.token.DelegationTokenManager;
+import org.apache.flink.runtime.webmonitor.retriever.MetricQueryServiceRetriever;
+import org.apache.flink.util.ExceptionUtils;
+import org.apache.flink.util.FlinkException;
+import org.apache.flink.util.Reference;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * MiniCluster that times the services it starts through its protected factory methods:
+ * loading the RPC system, the metric registry, the RPC service, HA services, each
+ * TaskManager and the dispatcher / resource manager components (including the web UI's REST
+ * endpoint). Phases are reported to RunnerTimings as "minicluster/...".
+ */
+class TimedMiniCluster extends MiniCluster {
+
+    private final RunnerTimings timings;
+    private final AtomicInteger taskManagers = new AtomicInteger();
+    private volatile MetricRegistryImpl metricRegistry;
+
+    TimedMiniCluster(MiniClusterConfiguration configuration, RunnerTimings timings) {
+        super(configuration, () -> time(timings, "rpc-system",
+            () -> Reference.owned(RpcSystem.load(configuration.getConfiguration()))));
+        this.timings = timings;
+    }
+
+    /**
+     * The cluster's metric registry, or null before start().
+     */
+    MetricRegistryImpl getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * Close like MiniCluster, but an interrupt while waiting for the shutdown restores the
+     * thread's interrupt flag and fails the close instead of throwing InterruptedException,
+     * which AutoCloseable implementations should not throw.
+     */
+    @Override
+    public void close() throws FlinkException {
+        try {
+            closeAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlinkException("Interrupted while closing the MiniCluster", e);
+        } catch (ExecutionException e) {
+            throw new FlinkException("Could not close resource.", ExceptionUtils.stripExecutionException(e));
+        }
+    }
+
+    @Override
+    protected MetricRegistryImpl createMetricRegistry(Configuration config, long maximumMessageSizeInBytes) {
+        metricRegistry = time(timings, "metric-registry", () -> super.createMetricRegistry(config, maximumMessageSizeInBytes));
+        return metricRegistry;
+    }
+
+    @Override
+    protected RpcService createLocalRpcService(Configuration configuration, RpcSystem rpcSystem) throws Exception {
+        return timeChecked("rpc-service", () -> super.createLocalRpcService(configuration, rpcSystem));
+    }
+
+    @Override
+    protected RpcService createRemoteRpcService(Configuration configuration, String bindAddress, int bindPort,
+            RpcSystem rpcSystem) throws Exception {
+        return timeChecked("rpc-service", () -> super.createRemoteRpcService(configuration, bindAddress, bindPort, rpcSystem));
+    }
+
+    @Override
+    protected HighAvailabilityServices createHighAvailabilityServices(Configuration configuration, Executor executor)
+            throws Exception {
+        return timeChecked("ha-services", () -> super.createHighAvailabilityServices(configuration, executor));
+    }
+
+    @Override
+    public void startTaskManager() throws Exception {
+        timeChecked("task-manager-" + taskManagers.incrementAndGet(), () -> {
+            super.startTaskManager();
+            return null;
+        });
+    }
+
+    @Override
+    protected Collection<? extends DispatcherResourceManagerComponent> createDispatcherResourceManagerComponents(
+            Configuration configuration,
+            RpcServiceFactory rpcServiceFactory,
+            BlobServer blobServer,
+            HeartbeatServices heartbeatServices,
+            DelegationTokenManager delegationTokenManager,
+            MetricRegistry metricRegistry,
+            MetricQueryServiceRetriever metricQueryServiceRetriever,
+            FatalErrorHandler fatalErrorHandler) throws Exception {
+        return timeChecked("dispatcher", () -> super.createDispatcherResourceManagerComponents(configuration,
+            rpcServiceFactory, blobServer, heartbeatServices, delegationTokenManager, metricRegistry,
+            metricQueryServiceRetriever, fatalErrorHandler));
+    }
+
+    private <T> T timeChecked(String name, Callable<T> body) throws Exception {
+        RunnerTimings.Phase phase = timings.begin(RunnerTimings.START, "minicluster/" + name);
+        try {
+            T result = body.call();
+            phase.end();
+            return result;
+        } catch (Exception e) {
+            phase.fail(e);
+            throw e;
+        }
+    }
+
+    private static <T> T time(RunnerTimings timings, String name, Supplier<T> body) {
+        RunnerTimings.Phase phase = timings.begin(RunnerTimings.START, "minicluster/" + name);
+        try {
+            T result = body.get();
+            phase.end();
+            return result;
+        } catch (RuntimeException e) {
+            phase.fail(e);
+            throw e;
+        }
+    }
+}
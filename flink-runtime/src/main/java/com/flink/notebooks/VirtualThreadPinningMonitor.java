@@ -0,0 +1,101 @@
+package com.flink.notebooks;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks virtual threads that pin their carrier thread.
+ *
+ * A virtual thread blocking inside a synchronized block or native frame cannot unmount,
+ * so it holds on to one of the few carrier threads. Connector and Flink client code that
+ * does this under load can starve every other operation. The monitor subscribes to the
+ * jdk.VirtualThreadPinned JFR event and keeps running counters.
+ */
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private final AtomicLong pinnedNanos = new AtomicLong();
+    private final AtomicLong maxPinnedNanos = new AtomicLong();
+
+    private RecordingStream stream;
+
+    /**
+     * Start listening for pinning events in the background.
+     */
+    public void start() {
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(PINNED_THRESHOLD).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+            LOG.info("Monitoring virtual thread pinning (threshold: {} ms)", PINNED_THRESHOLD.toMillis());
+        } catch (Exception e) {
+            LOG.warn("Could not start virtual thread pinning monitor: {}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        long nanos = event.getDuration().toNanos();
+        pinnedCount.incrementAndGet();
+        pinnedNanos.addAndGet(nanos);
+        maxPinnedNanos.accumulateAndGet(nanos, Math::max);
+
+        LOG.warn("Virtual thread {} pinned its carrier for {} ms at {}",
+            event.getThread() != null ? event.getThread().getJavaName() : "unknown",
+            nanos / 1_000_000,
+            topFrame(event.getStackTrace()));
+    }
+
+    private static String topFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (RecordedFrame frame : frames) {
+            if (frame.isJavaFrame() && !frame.getMethod().getType().getName().startsWith("java.")) {
+                return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                    + ":" + frame.getLineNumber();
+            }
+        }
+        return frames.isEmpty() ? "unknown" : frames.get(0).getMethod().getName();
+    }
+
+    /** Number of pinning events longer than the threshold. */
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+
+    /** Total time carrier threads spent pinned, in milliseconds. */
+    public long getPinnedTimeMillis() {
+        return pinnedNanos.get() / 1_000_000;
+    }
+
+    /** Longest single pinning event, in milliseconds. */
+    public long getMaxPinnedTimeMillis() {
+        return maxPinnedNanos.get() / 1_000_000;
+    }
+
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+            LOG.info("Virtual thread pinning: {} event(s), {} ms total, {} ms max",
+                getPinnedCount(), getPinnedTimeMillis(), getMaxPinnedTimeMillis());
+            stream = null;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.endpoint.EndpointVersion;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionEnvironment;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.util.SqlGatewayRestAPIVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-opened gateway sessions, handed out by NotebookGatewayService#openSession.
+ *
+ * The first statement after startup pays for loading the planner through
+ * flink-table-planner-loader, code generation and the first job submission; the first
+ * statement of every session additionally pays for creating its catalogs. At startup the
+ * pool runs a warmup script in a throwaway session, so its temporary objects do not leak
+ * into user sessions, then opens sessions ahead of time and opens their current catalog.
+ *
+ * Pooled sessions are opened with the configured session name. A session request with that
+ * name and without catalogs, modules or a default catalog takes a pooled session of the same
+ * endpoint version; its properties are applied with SET. Any other request opens a session of
+ * its own. Each handout triggers a replacement. Pooled sessions are kept from expiring while
+ * idle.
+ *
+ * Configured in flink-conf.yaml:
+ *   notebooks.session-pool.size           sessions kept ready, 0 to disable (default 0)
+ *   notebooks.session-pool.session-name   name of pooled sessions (default notebook-session,
+ *                                         the name the VS Code extension asks for)
+ *   notebooks.session-pool.warmup-script  SQL file run once at startup; statements end with
+ *                                         ';' at the end of a line (default: a small datagen query)
+ */
+public class WarmSessionPool implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmSessionPool.class);
+
+    static final ConfigOption<Integer> SIZE =
+        ConfigOptions.key("notebooks.session-pool.size").intType().defaultValue(0);
+    static final ConfigOption<String> SESSION_NAME =
+        ConfigOptions.key("notebooks.session-pool.session-name").stringType().defaultValue("notebook-session");
+    static final ConfigOption<String> WARMUP_SCRIPT =
+        ConfigOptions.key("notebooks.session-pool.warmup-script").stringType().noDefaultValue();
+
+    private static final String DEFAULT_WARMUP_SCRIPT =
+        "CREATE TEMPORARY TABLE notebooks_warmup (id BIGINT, name STRING, ts TIMESTAMP(3))\n"
+            + "WITH ('connector' = 'datagen', 'number-of-rows' = '100');\n"
+            + "SELECT id % 10 AS bucket, COUNT(*) AS cnt, MAX(ts) AS latest FROM notebooks_warmup\n"
+            + "WHERE name IS NOT NULL GROUP BY id % 10;\n";
+
+    private static final long WARMUP_STATEMENT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+    private static final long KEEP_ALIVE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final NotebookGatewayService service;
+    private final int size;
+    private final String sessionName;
+    private final String warmupScriptPath;
+    private final ScheduledExecutorService worker;
+
+    // Guarded by this
+    private final Map<EndpointVersion, Deque<SessionHandle>> idle = new HashMap<>();
+    /** Version the pool refills with: the one most recently asked for. */
+    private EndpointVersion targetVersion = SqlGatewayRestAPIVersion.V1;
+    private boolean closed;
+
+    public WarmSessionPool(NotebookGatewayService service, Configuration flinkConfig) {
+        this.service = service;
+        this.size = Math.max(0, flinkConfig.get(SIZE));
+        this.sessionName = flinkConfig.get(SESSION_NAME);
+        this.warmupScriptPath = flinkConfig.get(WARMUP_SCRIPT);
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("session-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run the warmup script and fill the pool in the background.
+     */
+    public void start() {
+        if (size == 0) {
+            return;
+        }
+        worker.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                warmUp();
+                LOG.info("Warmup script finished in {} ms", (System.nanoTime() - start) / 1_000_000);
+            } catch (Exception e) {
+                LOG.warn("Warmup script failed, sessions are pooled without it: {}", e.getMessage());
+            }
+            refill();
+        });
+        worker.scheduleWithFixedDelay(this::keepAlive, KEEP_ALIVE_INTERVAL_MS, KEEP_ALIVE_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A pooled session for the environment, or null if none is ready or the environment
+     * needs a session built for it.
+     */
+    public SessionHandle take(SessionEnvironment environment) {
+        if (size == 0 || !matches(environment)) {
+            return null;
+        }
+
+        SessionHandle session;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            targetVersion = environment.getSessionEndpointVersion();
+            Deque<SessionHandle> sessions = idle.get(targetVersion);
+            session = sessions == null ? null : sessions.pollFirst();
+        }
+        worker.execute(this::refill);
+        if (session == null) {
+            return null;
+        }
+
+        try {
+            // Also fails if the session expired since the last keep-alive
+            service.getSessionConfig(session);
+            StringBuilder statements = new StringBuilder();
+            environment.getSessionConfig().forEach((key, value) -> statements
+                .append("SET '").append(escape(key)).append("' = '").append(escape(value)).append("';\n"));
+            if (statements.length() > 0) {
+                service.configureSession(session, statements.toString(), 0);
+            }
+            LOG.debug("Handing out pooled session {}", session);
+            return session;
+        } catch (Exception e) {
+            // Let the gateway open the session itself and report what is wrong with the config
+            LOG.debug("Could not configure pooled session {}: {}", session, e.getMessage());
+            closeQuietly(session);
+            return null;
+        }
+    }
+
+    /**
+     * Whether a pooled session can stand in for a session opened with the environment:
+     * everything but its properties must be what pooled sessions are opened with.
+     */
+    private boolean matches(SessionEnvironment environment) {
+        return sessionName.equals(environment.getSessionName().orElse(null))
+            && environment.getRegisteredCatalogCreators().isEmpty()
+            && environment.getRegisteredModuleCreators().isEmpty()
+            && !environment.getDefaultCatalog().isPresent();
+    }
+
+    @Override
+    public void close() {
+        List<SessionHandle> sessions = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            idle.values().forEach(sessions::addAll);
+            idle.clear();
+        }
+        worker.shutdownNow();
+        sessions.forEach(this::closeQuietly);
+    }
+
+    private void refill() {
+        while (true) {
+            EndpointVersion version;
+            synchronized (this) {
+                Deque<SessionHandle> sessions = idle.get(targetVersion);
+                if (closed || (sessions != null && sessions.size() >= size)) {
+                    return;
+                }
+                version = targetVersion;
+            }
+
+            SessionHandle session;
+            try {
+                session = openWarmSession(version);
+            } catch (Exception e) {
+                LOG.warn("Could not open a pooled session: {}", e.getMessage());
+                return;
+            }
+            boolean added;
+            synchronized (this) {
+                added = !closed;
+                if (added) {
+                    idle.computeIfAbsent(version, v -> new ArrayDeque<>()).addLast(session);
+                }
+            }
+            if (!added) {
+                closeQuietly(session);
+                return;
+            }
+        }
+    }
+
+    private SessionHandle openWarmSession(EndpointVersion version) {
+        long start = System.nanoTime();
+        SessionHandle session = service.openUnpooledSession(
+            SessionEnvironment.newBuilder()
+                .setSessionEndpointVersion(version)
+                .setSessionName(sessionName)
+                .build());
+        // Catalogs from the catalog store are created on first access
+        String catalog = service.getCurrentCatalog(session);
+        service.listDatabases(session, catalog);
+        LOG.debug("Opened pooled session {} in {} ms", session, (System.nanoTime() - start) / 1_000_000);
+        return session;
+    }
+
+    private void warmUp() throws Exception {
+        String script = warmupScriptPath == null
+            ? DEFAULT_WARMUP_SCRIPT
+            : new String(Files.readAllBytes(Paths.get(warmupScriptPath)), StandardCharsets.UTF_8);
+
+        SessionHandle session = service.openUnpooledSession(
+            SessionEnvironment.newBuilder()
+                .setSessionEndpointVersion(SqlGatewayRestAPIVersion.getDefaultVersion())
+                .setSessionName("warmup")
+                .build());
+        try {
+            for (String statement : splitStatements(script)) {
+                runToCompletion(session, statement);
+            }
+        } finally {
+            closeQuietly(session);
+        }
+    }
+
+    /**
+     * Execute a statement and read its results to the end.
+     */
+    private void runToCompletion(SessionHandle session, String statement) throws Exception {
+        OperationHandle operation = service.executeStatement(session, statement, 0, new Configuration());
+        long deadline = System.currentTimeMillis() + WARMUP_STATEMENT_TIMEOUT_MS;
+        try {
+            long token = 0;
+            while (System.currentTimeMillis() < deadline) {
+                ResultSet result = service.fetchResults(session, operation, token, Integer.MAX_VALUE);
+                if (result.getResultType() == ResultSet.ResultType.EOS || result.getNextToken() == null) {
+                    return;
+                }
+                if (result.getResultType() == ResultSet.ResultType.NOT_READY || result.getData().isEmpty()) {
+                    Thread.sleep(10);
+                }
+                if (result.getResultType() != ResultSet.ResultType.NOT_READY) {
+                    token = result.getNextToken();
+                }
+            }
+            throw new IOException("Warmup statement did not finish within "
+                + WARMUP_STATEMENT_TIMEOUT_MS + " ms: " + statement);
+        } finally {
+            service.closeOperation(session, operation);
+        }
+    }
+
+    private void keepAlive() {
+        List<SessionHandle> sessions = new ArrayList<>();
+        synchronized (this) {
+            idle.values().forEach(sessions::addAll);
+        }
+        for (SessionHandle session : sessions) {
+            try {
+                // Any lookup touches the session and resets its idle timeout
+                service.getSessionConfig(session);
+            } catch (Exception e) {
+                synchronized (this) {
+                    idle.values().forEach(pooled -> pooled.remove(session));
+                }
+            }
+        }
+        refill();
+    }
+
+    private void closeQuietly(SessionHandle session) {
+        try {
+            service.closeSession(session);
+        } catch (Exception e) {
+            LOG.debug("Could not close session {}: {}", session, e.getMessage());
+        }
+    }
+
+    static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String statement = current.toString().trim();
+                statements.add(statement.substring(0, statement.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    private static String escape(String value) {
+        return value.replace("'", "''");
+    }
+}
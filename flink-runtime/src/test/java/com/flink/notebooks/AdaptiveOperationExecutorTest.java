@@ -0,0 +1,52 @@
+package com.flink.notebooks;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveOperationExecutorTest {
+
+    private static final long TARGET_WAIT_MS = 50;
+    private static final double MAX_CPU = 0.85;
+
+    @Test
+    void growsWhenOperationsWaitTooLong() {
+        assertEquals(5, size(4, 51, 0, 4, 0.5));
+        // At the target is not too long
+        assertEquals(4, size(4, 50, 0, 4, 0.5));
+    }
+
+    @Test
+    void growsWhileOperationsAreQueued() {
+        assertEquals(5, size(4, 0, 3, 4, 0.5));
+    }
+
+    @Test
+    void doesNotGrowWhenCpuIsBusy() {
+        assertEquals(4, size(4, 200, 3, 4, 0.85));
+        assertEquals(4, size(4, 200, 3, 4, 0.99));
+    }
+
+    @Test
+    void doesNotGrowPastTheMaximum() {
+        assertEquals(8, size(8, 200, 3, 8, 0.1));
+    }
+
+    @Test
+    void shrinksWhenIdle() {
+        assertEquals(3, size(4, 0, 0, 3, 0.5));
+        assertEquals(3, size(4, 0, 0, 0, 0.99));
+    }
+
+    @Test
+    void keepsBusyThreadsAndTheMinimum() {
+        // Every thread is running an operation
+        assertEquals(4, size(4, 0, 0, 4, 0.5));
+        assertEquals(2, size(2, 0, 0, 0, 0.5));
+    }
+
+    private static int size(int size, long avgQueueWaitMs, int queued, int active, double cpuLoad) {
+        return AdaptiveOperationExecutor.targetSize(size, 2, 8, avgQueueWaitMs, queued, active, cpuLoad,
+            TARGET_WAIT_MS, MAX_CPU);
+    }
+}
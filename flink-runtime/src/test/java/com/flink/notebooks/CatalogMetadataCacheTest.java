@@ -0,0 +1,105 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.operation.OperationStatus;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CatalogMetadataCacheTest {
+
+    private final SessionHandle session = SessionHandle.create();
+    private final Map<OperationHandle, OperationStatus> statuses = new HashMap<>();
+    private final AtomicInteger catalogLoads = new AtomicInteger();
+    private final CatalogMetadataCache cache = new CatalogMetadataCache(new FakeService(), cachingConfig());
+
+    @Test
+    void disabledByDefault() {
+        CatalogMetadataCache uncached = new CatalogMetadataCache(new FakeService(), new Configuration());
+        uncached.onStatement(session, OperationHandle.create(), "CREATE DATABASE a", OperationClass.DDL);
+        assertEquals(0, uncached.getPendingCount());
+
+        uncached.listCatalogs(session, false);
+        uncached.listCatalogs(session, false);
+        assertEquals(2, catalogLoads.get());
+    }
+
+    @Test
+    void closedDdlIsSettledWithoutALookup() {
+        OperationHandle create = ddl("CREATE CATALOG lake WITH ('type' = 'generic_in_memory')", OperationStatus.RUNNING);
+        assertEquals(1, cache.getPendingCount());
+
+        cache.onOperationClosed(session, create);
+        assertEquals(0, cache.getPendingCount());
+    }
+
+    @Test
+    void completedDdlIsSettledByTheNextDdl() {
+        ddl("CREATE DATABASE a", OperationStatus.FINISHED);
+        OperationHandle running = ddl("CREATE DATABASE b", OperationStatus.RUNNING);
+        ddl("CREATE DATABASE c", OperationStatus.FINISHED);
+        // The finished first one is settled; the running one and the newest are remembered
+        assertEquals(2, cache.getPendingCount());
+
+        statuses.put(running, OperationStatus.FINISHED);
+        ddl("DROP DATABASE a", OperationStatus.FINISHED);
+        assertEquals(1, cache.getPendingCount());
+    }
+
+    @Test
+    void runningDdlKeepsAffectedEntriesUncached() {
+        OperationHandle create = ddl("CREATE CATALOG lake WITH ('type' = 'generic_in_memory')", OperationStatus.RUNNING);
+        cache.listCatalogs(session, false);
+        cache.listCatalogs(session, false);
+        assertEquals(2, catalogLoads.get());
+
+        cache.onOperationClosed(session, create);
+        cache.listCatalogs(session, false);
+        cache.listCatalogs(session, false);
+        assertEquals(3, catalogLoads.get());
+    }
+
+    private static Configuration cachingConfig() {
+        Configuration config = new Configuration();
+        config.set(CatalogMetadataCache.TTL_MS, 300000L);
+        return config;
+    }
+
+    private OperationHandle ddl(String statement, OperationStatus status) {
+        OperationHandle operation = OperationHandle.create();
+        statuses.put(operation, status);
+        cache.onStatement(session, operation, statement, OperationClass.DDL);
+        return operation;
+    }
+
+    private class FakeService extends NotebookGatewayService {
+
+        FakeService() {
+            super(null);
+        }
+
+        @Override
+        public OperationStatus getOperationStatus(SessionHandle sessionHandle, OperationHandle operationHandle) {
+            return statuses.get(operationHandle);
+        }
+
+        @Override
+        public String getCurrentCatalog(SessionHandle sessionHandle) {
+            return "default_catalog";
+        }
+
+        @Override
+        public Set<String> listCatalogs(SessionHandle sessionHandle) {
+            catalogLoads.incrementAndGet();
+            return Set.copyOf(List.of("default_catalog", "lake"));
+        }
+    }
+}
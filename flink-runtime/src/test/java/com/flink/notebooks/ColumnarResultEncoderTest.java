@@ -0,0 +1,282 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ArrayNode;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.rest.serde.ResultInfo;
+import org.apache.flink.table.gateway.rest.util.RowDataLocalTimeZoneConverter;
+import org.apache.flink.table.gateway.rest.util.RowFormat;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.types.RowKind;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The encoder is checked against src/test/resources/columnar: batch.bin is the encoded batch
+ * and batch.json the same rows as the gateway's JSON row format returns them;
+ * batch-without-columns.bin is the batch as sent to a client that holds the columns. The
+ * extension's columnarDecoder test decodes both and expects batch.json, so together they cover
+ * the round trip. Run with -Dcolumnar.fixtures.update=true to rewrite both after a format change.
+ */
+class ColumnarResultEncoderTest {
+
+    private static final Path FIXTURES = Paths.get("src/test/resources/columnar");
+
+    // A zone west of UTC, so TIMESTAMP_LTZ values move across midnight when converted
+    private static final Map<String, String> SESSION_CONFIG = Map.of("table.local-time-zone", "America/Los_Angeles");
+
+    private static final ResolvedSchema SCHEMA = ResolvedSchema.of(
+        Column.physical("id", DataTypes.INT().notNull()),
+        Column.physical("flag", DataTypes.BOOLEAN()),
+        Column.physical("tiny", DataTypes.TINYINT()),
+        Column.physical("small", DataTypes.SMALLINT()),
+        Column.physical("big", DataTypes.BIGINT()),
+        Column.physical("ratio", DataTypes.DOUBLE()),
+        Column.physical("price", DataTypes.DECIMAL(10, 2)),
+        Column.physical("name", DataTypes.STRING()),
+        Column.physical("day", DataTypes.DATE()),
+        Column.physical("at", DataTypes.TIME(3)),
+        Column.physical("ts", DataTypes.TIMESTAMP(3)),
+        Column.physical("ts_nanos", DataTypes.TIMESTAMP(9)),
+        Column.physical("ts_ltz", DataTypes.TIMESTAMP_LTZ(3)));
+
+    @Test
+    void encodesTheFixtureBatch() throws Exception {
+        ResultSet batch = fixtureBatch();
+        byte[] encoded = ResultFetchHandler.encodeColumnar(batch, types(), converter(), true);
+        byte[] withoutColumns = ResultFetchHandler.encodeColumnar(batch, types(), converter(), false);
+        JsonNode json = gatewayJson(batch);
+
+        if (Boolean.getBoolean("columnar.fixtures.update")) {
+            Files.createDirectories(FIXTURES);
+            Files.write(FIXTURES.resolve("batch.bin"), encoded);
+            Files.write(FIXTURES.resolve("batch-without-columns.bin"), withoutColumns);
+            Files.write(FIXTURES.resolve("batch.json"),
+                RunnerHttpServer.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(json));
+        }
+
+        assertArrayEquals(Files.readAllBytes(FIXTURES.resolve("batch.bin")), encoded);
+        assertArrayEquals(Files.readAllBytes(FIXTURES.resolve("batch-without-columns.bin")), withoutColumns);
+        // Compared as parsed text, as the client sees it (DECIMAL is a DecimalNode until written)
+        assertEquals(RunnerHttpServer.MAPPER.readTree(FIXTURES.resolve("batch.json").toFile()),
+            RunnerHttpServer.MAPPER.readTree(RunnerHttpServer.MAPPER.writeValueAsBytes(json)));
+    }
+
+    @Test
+    void leavesOutColumnDescriptionsForAClientHoldingThem() {
+        List<String> names = List.of("id", "name");
+        List<LogicalType> types = List.of(DataTypes.INT().getLogicalType(), DataTypes.STRING().getLogicalType());
+        List<RowData> rows = List.of(GenericRowData.of(1, StringData.fromString("a")), GenericRowData.of(2, null));
+
+        byte[] described = ColumnarResultEncoder.encode(names, types, rows);
+        byte[] encoded = ColumnarResultEncoder.encode(names, types, rows, false);
+        ByteBuffer in = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ColumnarResultEncoder.MAGIC, in.getInt());
+        assertEquals(ColumnarResultEncoder.VERSION_WITHOUT_COLUMNS, in.get());
+        assertEquals(2, in.getInt());
+        assertEquals(2, in.getInt());
+        assertEquals(ColumnarResultEncoder.TYPE_INT, in.get());
+        assertEquals(ColumnarResultEncoder.TYPE_STRING, in.get());
+
+        // Row kinds and columns are written as with the descriptions
+        ByteBuffer rest = afterHeader(described, 2, 2);
+        rest.position(rest.position() - rows.size());
+        assertEquals(rest, in);
+    }
+
+    @Test
+    void writesNullBitmapsAndBooleanBits() {
+        // Nine rows, so both bitmaps spill into a second byte
+        Boolean[] flags = {true, false, null, true, null, false, true, true, null};
+        List<RowData> rows = Arrays.stream(flags)
+            .map(flag -> (RowData) GenericRowData.of(flag))
+            .collect(Collectors.toList());
+
+        ByteBuffer in = afterHeader(ColumnarResultEncoder.encode(
+            List.of("flag"), List.of(DataTypes.BOOLEAN().getLogicalType()), rows), 1, flags.length);
+
+        // Validity: set for every non-null row
+        assertEquals(0b1110_1011, in.get() & 0xFF);
+        assertEquals(0b0000_0000, in.get() & 0xFF);
+        // Values: set only for true; nulls are written as unset bits
+        assertEquals(0b1100_1001, in.get() & 0xFF);
+        assertEquals(0b0000_0000, in.get() & 0xFF);
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void writesNegativeEpochTemporalsAsIs() {
+        List<RowData> rows = List.of(
+            GenericRowData.of(
+                (int) LocalDate.of(1969, 12, 31).toEpochDay(),
+                TimestampData.fromLocalDateTime(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000))),
+            GenericRowData.of(
+                (int) LocalDate.of(1900, 1, 1).toEpochDay(),
+                TimestampData.fromLocalDateTime(LocalDateTime.of(1960, 6, 15, 12, 30, 0, 500_000_000))));
+
+        ByteBuffer in = afterHeader(ColumnarResultEncoder.encode(List.of("day", "ts"),
+            List.of(DataTypes.DATE().getLogicalType(), DataTypes.TIMESTAMP(3).getLogicalType()), rows), 2, 2);
+
+        in.get(); // validity
+        assertEquals(-1, in.getInt());
+        assertEquals(-25567, in.getInt());
+        in.get(); // validity
+        assertEquals(-1L, in.getLong());
+        assertEquals(0, in.getInt());
+        assertEquals(LocalDateTime.of(1960, 6, 15, 12, 30, 0, 500_000_000).toInstant(ZoneOffset.UTC).toEpochMilli(),
+            in.getLong());
+        assertEquals(0, in.getInt());
+    }
+
+    @Test
+    void writesDecimalsAsPlainStrings() {
+        List<RowData> rows = List.of(
+            GenericRowData.of(DecimalData.fromBigDecimal(new BigDecimal("1E+3"), 10, 2)),
+            GenericRowData.of((Object) null),
+            GenericRowData.of(DecimalData.fromBigDecimal(new BigDecimal("-0.05"), 10, 2)));
+
+        ByteBuffer in = afterHeader(ColumnarResultEncoder.encode(
+            List.of("price"), List.of(DataTypes.DECIMAL(10, 2).getLogicalType()), rows), 1, 3);
+
+        assertEquals(0b101, in.get());
+        int[] offsets = {in.getInt(), in.getInt(), in.getInt(), in.getInt()};
+        assertArrayEquals(new int[] {0, 7, 7, 12}, offsets);
+        byte[] values = new byte[12];
+        in.get(values);
+        assertEquals("1000.00-0.05", new String(values));
+    }
+
+    @Test
+    void rejectsNestedTypes() {
+        List<LogicalType> nested = List.of(DataTypes.INT().getLogicalType(),
+            DataTypes.ARRAY(DataTypes.INT()).getLogicalType());
+        assertFalse(ColumnarResultEncoder.supports(nested));
+        assertTrue(ColumnarResultEncoder.supports(types()));
+        assertThrows(IllegalArgumentException.class,
+            () -> ColumnarResultEncoder.encode(List.of("id", "tags"), nested, List.of()));
+    }
+
+    private static ResultSet fixtureBatch() {
+        List<RowData> rows = List.of(
+            row(RowKind.INSERT, 1, true, (byte) -128, (short) 32767, Long.MAX_VALUE >> 12, 0.25,
+                new BigDecimal("12.50"), "plain",
+                LocalDate.of(2024, 2, 29), LocalTime.of(23, 59, 59, 999_000_000),
+                LocalDateTime.of(2024, 2, 29, 12, 0), LocalDateTime.of(2024, 2, 29, 12, 0, 0, 123_456_789),
+                LocalDateTime.of(2024, 3, 1, 3, 30)),
+            row(RowKind.UPDATE_BEFORE, 2, false, null, null, -1L, -1.5,
+                new BigDecimal("-0.01"), "",
+                LocalDate.of(1969, 12, 31), LocalTime.MIDNIGHT,
+                LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000),
+                LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999),
+                LocalDateTime.of(1970, 1, 1, 0, 0)),
+            row(RowKind.UPDATE_AFTER, 3, null, (byte) 7, (short) -2, null, null,
+                null, "ünïcødé ✓",
+                LocalDate.of(1900, 1, 1), LocalTime.of(0, 0, 0, 1_000_000),
+                LocalDateTime.of(1960, 6, 15, 12, 30, 0, 500_000_000),
+                LocalDateTime.of(1960, 6, 15, 12, 30, 0, 1_000),
+                LocalDateTime.of(1969, 12, 31, 20, 0)),
+            row(RowKind.DELETE, 4, true, null, null, null, null, null, null,
+                null, null, null, null, null));
+        return new ResultSetImpl(ResultSet.ResultType.PAYLOAD, 1L, SCHEMA, rows, null, true, null,
+            ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    private static RowData row(RowKind kind, int id, Boolean flag, Byte tiny, Short small, Long big, Double ratio,
+            BigDecimal price, String name, LocalDate day, LocalTime at, LocalDateTime ts, LocalDateTime tsNanos,
+            LocalDateTime tsLtz) {
+        return GenericRowData.ofKind(kind, id, flag, tiny, small, big, ratio,
+            price == null ? null : DecimalData.fromBigDecimal(price, 10, 2),
+            name == null ? null : StringData.fromString(name),
+            day == null ? null : (int) day.toEpochDay(),
+            at == null ? null : (int) (at.toNanoOfDay() / 1_000_000),
+            ts == null ? null : TimestampData.fromLocalDateTime(ts),
+            tsNanos == null ? null : TimestampData.fromLocalDateTime(tsNanos),
+            // TIMESTAMP_LTZ data is an instant; given here in UTC
+            tsLtz == null ? null : TimestampData.fromLocalDateTime(tsLtz));
+    }
+
+    /**
+     * The columns and rows of the gateway's JSON row format for the batch, in the shape
+     * columnarDecoder returns: columns as {name, logicalType: {type, nullable}}.
+     */
+    private static JsonNode gatewayJson(ResultSet batch) throws Exception {
+        JsonNode results = RunnerHttpServer.MAPPER.valueToTree(
+            ResultInfo.createResultInfo(batch, RowFormat.JSON, converter()));
+        ArrayNode columns = RunnerHttpServer.MAPPER.createArrayNode();
+        for (JsonNode column : results.get("columns")) {
+            ObjectNode logicalType = RunnerHttpServer.MAPPER.createObjectNode();
+            logicalType.set("type", column.get("logicalType").get("type"));
+            logicalType.set("nullable", column.get("logicalType").get("nullable"));
+            columns.addObject().put("name", column.get("name").asText()).set("logicalType", logicalType);
+        }
+        ObjectNode json = RunnerHttpServer.MAPPER.createObjectNode();
+        json.set("columns", columns);
+        json.set("data", results.get("data"));
+        return json;
+    }
+
+    private static RowDataLocalTimeZoneConverter converter() {
+        return new RowDataLocalTimeZoneConverter(types(), Configuration.fromMap(SESSION_CONFIG));
+    }
+
+    private static List<LogicalType> types() {
+        return SCHEMA.getColumnDataTypes().stream().map(DataType::getLogicalType).collect(Collectors.toList());
+    }
+
+    /**
+     * The buffer positioned at the first column's validity bitmap.
+     */
+    private static ByteBuffer afterHeader(byte[] encoded, int columns, int rows) {
+        ByteBuffer in = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ColumnarResultEncoder.MAGIC, in.getInt());
+        assertEquals(ColumnarResultEncoder.VERSION, in.get());
+        assertEquals(columns, in.getInt());
+        assertEquals(rows, in.getInt());
+        for (int c = 0; c < columns; c++) {
+            skipString(in); // name
+            in.get(); // tag
+            skipString(in); // type root
+            in.get(); // nullable
+        }
+        in.position(in.position() + rows); // row kinds
+        return in;
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = in.getInt();
+        in.position(in.position() + length);
+    }
+}
@@ -0,0 +1,201 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.operation.OperationStatus;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledPlanCacheTest {
+
+    private static final Pattern COMPILE_TARGET = Pattern.compile("^COMPILE PLAN '(.*)' FOR ");
+
+    private final SessionHandle session = SessionHandle.create();
+    private final Map<String, String> sessionConfig = new ConcurrentHashMap<>();
+    private final Map<OperationHandle, OperationStatus> statuses = new ConcurrentHashMap<>();
+    /** Run while a COMPILE PLAN is submitted, before it finishes. */
+    private Runnable duringCompile = () -> { };
+    private CompiledPlanCache cache;
+
+    @AfterEach
+    void close() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    void normalizeStripsCommentsAndWhitespace() {
+        assertEquals("INSERT INTO t SELECT a, b FROM s",
+            CompiledPlanCache.normalize("-- load t\nINSERT  INTO t\n\tSELECT a, /* both */ b\nFROM s ;\n"));
+        assertEquals("SELECT 1", CompiledPlanCache.normalize("SELECT 1;;"));
+        assertEquals("", CompiledPlanCache.normalize("  -- nothing\n"));
+    }
+
+    @Test
+    void normalizeKeepsQuotedText() {
+        assertEquals("SELECT '  a -- b  ', `x  /* y */`, \"it''s\" FROM t",
+            CompiledPlanCache.normalize("SELECT '  a -- b  ',   `x  /* y */`, \"it''s\"\n FROM t"));
+        assertEquals("SELECT 'it''s  here'", CompiledPlanCache.normalize("SELECT 'it''s  here'"));
+        // An unterminated literal runs to the end
+        assertEquals("SELECT 'open -- x", CompiledPlanCache.normalize("SELECT 'open -- x"));
+    }
+
+    @Test
+    void fingerprintFollowsSessionState() throws Exception {
+        cache = new CompiledPlanCache(new FakeService(), new Configuration());
+        String sql = "INSERT INTO t SELECT * FROM s";
+        String initial = cache.fingerprint(session, sql);
+        assertEquals(initial, cache.fingerprint(session, sql));
+        assertNotEquals(initial, cache.fingerprint(session, "INSERT INTO u SELECT * FROM s"));
+
+        sessionConfig.put("parallelism.default", "4");
+        String configured = cache.fingerprint(session, sql);
+        assertNotEquals(initial, configured);
+
+        cache.onStatement(session, OperationHandle.create(), "USE db", OperationClass.METADATA);
+        String used = cache.fingerprint(session, sql);
+        assertNotEquals(configured, used);
+
+        // Another session's temporary objects do not matter, its permanent ones do
+        SessionHandle other = SessionHandle.create();
+        cache.onStatement(other, OperationHandle.create(), "CREATE TEMPORARY VIEW v AS SELECT 1", OperationClass.DDL);
+        assertEquals(used, cache.fingerprint(session, sql));
+        cache.onStatement(other, OperationHandle.create(), "CREATE TABLE s (id INT)", OperationClass.DDL);
+        assertNotEquals(used, cache.fingerprint(session, sql));
+    }
+
+    @Test
+    void droppingAnObjectForgetsItsDefinition() throws Exception {
+        cache = new CompiledPlanCache(new FakeService(), new Configuration());
+        String sql = "INSERT INTO t SELECT * FROM s";
+        String before = cache.fingerprint(session, sql);
+        cache.onStatement(session, finished(), "CREATE TABLE s (id INT)", OperationClass.DDL);
+        assertNotEquals(before, cache.fingerprint(session, sql));
+
+        OperationHandle drop = OperationHandle.create();
+        statuses.put(drop, OperationStatus.RUNNING);
+        cache.onStatement(session, drop, "DROP TABLE IF EXISTS s", OperationClass.DDL);
+        Thread.sleep(300);
+        // Kept while the DROP runs
+        assertNotEquals(before, cache.fingerprint(session, sql));
+
+        statuses.put(drop, OperationStatus.FINISHED);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!before.equals(cache.fingerprint(session, sql)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(before, cache.fingerprint(session, sql));
+    }
+
+    @Test
+    void onlyInsertsAndStatementSetsHavePlans(@TempDir Path directory) {
+        cache = new CompiledPlanCache(new FakeService(), enabled(directory));
+        assertNull(cache.lookup(session, "SELECT * FROM s"));
+        assertNull(cache.lookup(session, "CREATE TABLE t (id INT)"));
+        assertFalse(cache.lookup(session, "INSERT INTO t SELECT * FROM s").isCached());
+        assertEquals("STATEMENT SET BEGIN INSERT INTO t SELECT * FROM s; END",
+            cache.lookup(session, "EXECUTE STATEMENT SET BEGIN INSERT INTO t SELECT * FROM s; END").compilable);
+        assertNull(new CompiledPlanCache(new FakeService(), new Configuration()).lookup(session, "INSERT INTO t VALUES (1)"));
+    }
+
+    @Test
+    void compilesBeforeExecutingAndHitsNextTime(@TempDir Path directory) {
+        cache = new CompiledPlanCache(new FakeService(), enabled(directory));
+        String sql = "INSERT INTO t SELECT * FROM s";
+
+        CompiledPlanCache.Plan compiled = cache.compile(session, cache.lookup(session, sql));
+        assertTrue(compiled.isCached());
+        assertTrue(Files.exists(compiled.cachedFile));
+        assertEquals(1, cache.getCompiles());
+
+        CompiledPlanCache.Plan hit = cache.lookup(session, sql);
+        assertTrue(hit.isCached());
+        assertEquals("EXECUTE PLAN '" + compiled.cachedFile + "'", hit.executeStatement());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void planIsNotCachedIfTheSessionChangesWhileCompiling(@TempDir Path directory) {
+        cache = new CompiledPlanCache(new FakeService(), enabled(directory));
+        String sql = "INSERT INTO t SELECT * FROM s";
+        CompiledPlanCache.Plan miss = cache.lookup(session, sql);
+
+        duringCompile = () -> sessionConfig.put("table.exec.state.ttl", "1 h");
+        assertSame(miss, cache.compile(session, miss));
+        assertEquals(0, cache.getEntries());
+        assertFalse(cache.lookup(session, sql).isCached());
+    }
+
+    private Configuration enabled(Path directory) {
+        Configuration config = new Configuration();
+        config.set(CompiledPlanCache.MAX_ENTRIES, 4);
+        config.set(CompiledPlanCache.DIR, directory.toString());
+        return config;
+    }
+
+    private OperationHandle finished() {
+        OperationHandle operation = OperationHandle.create();
+        statuses.put(operation, OperationStatus.FINISHED);
+        return operation;
+    }
+
+    private class FakeService extends NotebookGatewayService {
+
+        FakeService() {
+            super(null);
+        }
+
+        @Override
+        public String getCurrentCatalog(SessionHandle sessionHandle) {
+            return "default_catalog";
+        }
+
+        @Override
+        public Map<String, String> getSessionConfig(SessionHandle sessionHandle) {
+            return sessionConfig;
+        }
+
+        @Override
+        public OperationStatus getOperationStatus(SessionHandle sessionHandle, OperationHandle operationHandle) {
+            return statuses.get(operationHandle);
+        }
+
+        @Override
+        public OperationHandle submitInternal(SessionHandle sessionHandle, String statement,
+                OperationClass operationClass) {
+            Matcher target = COMPILE_TARGET.matcher(statement);
+            assertTrue(target.find(), statement);
+            try {
+                Files.write(Paths.get(target.group(1)), "{}".getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            duringCompile.run();
+            return finished();
+        }
+
+        @Override
+        public void closeOperation(SessionHandle sessionHandle, OperationHandle operationHandle) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.flink.notebooks;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DdlStatementTest {
+
+    @Test
+    void readsVerbObjectTypeAndName() {
+        DdlStatement ddl = DdlStatement.parse("CREATE TABLE orders (id INT) WITH ('connector' = 'datagen')");
+        assertEquals("CREATE", ddl.verb);
+        assertEquals("TABLE", ddl.objectType);
+        assertFalse(ddl.temporary);
+        assertEquals(List.of("orders"), ddl.name);
+
+        assertEquals("DROP", DdlStatement.parse("drop view v").verb);
+        assertEquals("ALTER", DdlStatement.parse("ALTER DATABASE db SET ('k' = 'v')").verb);
+        assertEquals("REPLACE", DdlStatement.parse("REPLACE TABLE t AS SELECT 1").verb);
+    }
+
+    @Test
+    void qualifiedAndQuotedNames() {
+        assertEquals(List.of("lake", "sales", "orders"),
+            DdlStatement.parse("DROP TABLE lake . sales.orders").name);
+        assertEquals(List.of("my catalog", "db", "we`ird"),
+            DdlStatement.parse("CREATE TABLE `my catalog`.db.`we``ird` (id INT)").name);
+    }
+
+    @Test
+    void modifiersBeforeTheName() {
+        DdlStatement temporary = DdlStatement.parse("CREATE TEMPORARY VIEW IF NOT EXISTS v AS SELECT 1");
+        assertTrue(temporary.temporary);
+        assertEquals("VIEW", temporary.objectType);
+        assertEquals(List.of("v"), temporary.name);
+
+        DdlStatement function = DdlStatement.parse("CREATE OR REPLACE TEMPORARY SYSTEM FUNCTION f AS 'com.example.F'");
+        assertEquals("FUNCTION", function.objectType);
+        assertEquals(List.of("f"), function.name);
+
+        assertEquals(List.of("c"), DdlStatement.parse("DROP CATALOG IF EXISTS c").name);
+        assertEquals("MATERIALIZED TABLE",
+            DdlStatement.parse("CREATE MATERIALIZED\n TABLE mt FRESHNESS = INTERVAL '1' MINUTE AS SELECT 1").objectType);
+    }
+
+    @Test
+    void leadingCommentsAreSkipped() {
+        DdlStatement ddl = DdlStatement.parse("-- clean up\n/* old */ DROP DATABASE staging");
+        assertEquals("DATABASE", ddl.objectType);
+        assertEquals(List.of("staging"), ddl.name);
+    }
+
+    @Test
+    void unrecognizedObjectTypeKeepsTheVerb() {
+        DdlStatement ddl = DdlStatement.parse("ALTER MODEL m SET ('k' = 'v')");
+        assertEquals("ALTER", ddl.verb);
+        assertNull(ddl.objectType);
+        assertEquals(List.of(), ddl.name);
+    }
+
+    @Test
+    void otherStatementsAreNotDdl() {
+        assertNull(DdlStatement.parse(null));
+        assertNull(DdlStatement.parse(""));
+        assertNull(DdlStatement.parse("SELECT * FROM orders"));
+        assertNull(DdlStatement.parse("INSERT INTO t SELECT 1"));
+        assertNull(DdlStatement.parse("CREATED"));
+    }
+}
@@ -0,0 +1,177 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairShareOperationExecutorTest {
+
+    private final SessionHandle busy = SessionHandle.create();
+    private final SessionHandle quiet = SessionHandle.create();
+    private FairShareOperationExecutor executor;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void busySessionDoesNotStarveAnother() throws Exception {
+        executor = newExecutor(1, 4);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(13);
+
+        // Hold the only worker while both sessions queue up
+        CountDownLatch holding = new CountDownLatch(1);
+        submit(busy, () -> {
+            holding.countDown();
+            await(release);
+        }, done);
+        assertTrue(holding.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            String name = "busy-" + i;
+            submit(busy, () -> order.add(name), done);
+        }
+        submit(quiet, () -> order.add("quiet-0"), done);
+        submit(quiet, () -> order.add("quiet-1"), done);
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // One operation per session per round: the quiet session's two operations run
+        // within the first four, not after the busy session's ten
+        assertEquals(List.of("busy-0", "quiet-0", "busy-1", "quiet-1"), order.subList(0, 4));
+        assertEquals(12, order.size());
+    }
+
+    @Test
+    void sessionCannotHoldMoreThanItsCap() throws Exception {
+        executor = newExecutor(4, 2);
+        AtomicInteger busyRunning = new AtomicInteger();
+        AtomicInteger busyPeak = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch quietRan = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(11);
+
+        for (int i = 0; i < 10; i++) {
+            submit(busy, () -> {
+                busyPeak.accumulateAndGet(busyRunning.incrementAndGet(), Math::max);
+                await(release);
+                busyRunning.decrementAndGet();
+            }, done);
+        }
+        submit(quiet, quietRan::countDown, done);
+
+        // Runs on a free worker while the busy session's operations are all blocked
+        assertTrue(quietRan.await(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (busyRunning.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        assertEquals(2, executor.getSessionStats().get(id(busy)).running);
+        assertEquals(8, executor.getSessionStats().get(id(busy)).queued);
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, busyPeak.get());
+    }
+
+    @Test
+    void statsOutliveIdleSessionsUntilTheyClose() throws Exception {
+        executor = newExecutor(2, 4);
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            submit(busy, () -> { }, done);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // The last completion updates the stats after the task itself
+        FairShareOperationExecutor.SessionStats stats = awaitIdle(busy);
+        assertEquals(3, stats.submitted);
+        assertEquals(0, stats.queued);
+
+        executor.onSessionClosed(busy);
+        assertFalse(executor.getSessionStats().containsKey(id(busy)));
+    }
+
+    @Test
+    void closedSessionIsDroppedOnceItsOperationsFinish() throws Exception {
+        executor = newExecutor(1, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        submit(busy, () -> await(release), done);
+
+        executor.onSessionClosed(busy);
+        assertTrue(executor.getSessionStats().containsKey(id(busy)));
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getSessionStats().containsKey(id(busy)) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(executor.getSessionStats().containsKey(id(busy)));
+    }
+
+    private FairShareOperationExecutor newExecutor(int threads, int maxConcurrentPerSession) {
+        Configuration config = new Configuration();
+        config.set(FairShareOperationExecutor.THREADS, threads);
+        config.set(FairShareOperationExecutor.MAX_CONCURRENT_PER_SESSION, maxConcurrentPerSession);
+        return new FairShareOperationExecutor(config);
+    }
+
+    private void submit(SessionHandle session, Runnable task, CountDownLatch done) {
+        SubmissionContext.set(new SubmissionContext(session, "SELECT 1", OperationClass.QUERY));
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            });
+        } finally {
+            SubmissionContext.clear();
+        }
+    }
+
+    private FairShareOperationExecutor.SessionStats awaitIdle(SessionHandle session) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        FairShareOperationExecutor.SessionStats stats = executor.getSessionStats().get(id(session));
+        while (stats.running > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            stats = executor.getSessionStats().get(id(session));
+        }
+        assertEquals(0, stats.running);
+        return stats;
+    }
+
+    private static String id(SessionHandle session) {
+        return session.getIdentifier().toString();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
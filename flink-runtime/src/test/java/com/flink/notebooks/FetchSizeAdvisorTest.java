@@ -0,0 +1,87 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FetchSizeAdvisorTest {
+
+    private final OperationHandle operation = OperationHandle.create();
+
+    @Test
+    void firstFetchIsBoundedByAssumedRowWidthAndBufferedRows() {
+        FetchSizeAdvisor advisor = new FetchSizeAdvisor(new Configuration());
+        // 1 MiB at the assumed 128 bytes per row
+        assertEquals(8192, advisor.recommend(operation, -1));
+        assertEquals(500, advisor.recommend(operation, 500));
+        assertEquals(100, advisor.recommend(operation, 3));
+        assertEquals(8192, advisor.recommend(operation, 50_000));
+    }
+
+    @Test
+    void wideRowsShrinkTheBatch() {
+        FetchSizeAdvisor advisor = advisor(64 * 1024, 10, 10000);
+        // 4 KiB rows: 16 fit in the target
+        advisor.record(operation, 100, 100, 100 * 4096);
+        assertEquals(16, advisor.recommend(operation, 5000));
+        assertEquals(2, advisor.rowsForBytes(operation, 8192));
+        assertEquals(1, advisor.rowsForBytes(operation, 100));
+    }
+
+    @Test
+    void fullBatchDoublesTheNextOne() {
+        FetchSizeAdvisor advisor = new FetchSizeAdvisor(new Configuration());
+        advisor.record(operation, 200, 200, 200 * 16);
+        assertEquals(400, advisor.recommend(operation, 0));
+        // Buffered rows beyond that are fetched at once
+        assertEquals(3000, advisor.recommend(operation, 3000));
+        // Unknown buffer after a full batch: as much as the row width allows
+        assertEquals(10000, advisor.recommend(operation, -1));
+    }
+
+    @Test
+    void partialBatchFallsBackToTheMinimum() {
+        FetchSizeAdvisor advisor = new FetchSizeAdvisor(new Configuration());
+        advisor.record(operation, 200, 5, 5 * 16);
+        assertEquals(100, advisor.recommend(operation, 0));
+    }
+
+    @Test
+    void finishedOperationStartsOver() {
+        FetchSizeAdvisor advisor = advisor(64 * 1024, 10, 10000);
+        advisor.record(operation, 100, 100, 100 * 4096);
+        advisor.finished(operation);
+        assertEquals(512, advisor.recommend(operation, -1));
+    }
+
+    @Test
+    void recommendationIsSplicedIntoTheJsonBody() throws Exception {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("resultType", "PAYLOAD");
+        response.put("results", Map.of("data", List.of()));
+        byte[] body = RunnerHttpServer.MAPPER.writeValueAsBytes(response);
+
+        byte[] spliced = ResultFetchHandler.withRecommendedMaxRows(body, 250);
+        JsonNode json = RunnerHttpServer.MAPPER.readTree(spliced);
+        assertEquals(250, json.get("recommendedMaxRows").asInt());
+        assertEquals("PAYLOAD", json.get("resultType").asText());
+        assertEquals(new String(body, StandardCharsets.UTF_8).length() + ",\"recommendedMaxRows\":250".length(),
+            spliced.length);
+    }
+
+    private static FetchSizeAdvisor advisor(long targetBytes, int minRows, int maxRows) {
+        Configuration config = new Configuration();
+        config.set(FetchSizeAdvisor.TARGET_BATCH_BYTES, targetBytes);
+        config.set(FetchSizeAdvisor.MIN_ROWS, minRows);
+        config.set(FetchSizeAdvisor.MAX_ROWS, maxRows);
+        return new FetchSizeAdvisor(config);
+    }
+}
@@ -0,0 +1,130 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.types.RowKind;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaterializedResultViewTest {
+
+    private static final ResolvedSchema SCHEMA = ResolvedSchema.of(
+        Column.physical("word", DataTypes.STRING()),
+        Column.physical("cnt", DataTypes.BIGINT()));
+
+    @Test
+    void keyedUpdatePairKeepsTheRowId() {
+        MaterializedResultView view = new MaterializedResultView(SCHEMA, List.of("word"), 100);
+        view.apply(List.of(row(RowKind.INSERT, "a", 1), row(RowKind.INSERT, "b", 1)));
+        long before = view.getVersion();
+        long idOfA = view.changesSince(0).ids.get(0);
+
+        view.apply(List.of(row(RowKind.UPDATE_BEFORE, "a", 1), row(RowKind.UPDATE_AFTER, "a", 2)));
+
+        assertEquals(2, view.size());
+        MaterializedResultView.Changes changes = view.changesSince(before);
+        assertFalse(changes.snapshot);
+        assertEquals(List.of(idOfA), changes.ids);
+        assertEquals(2L, changes.rows.get(0).getLong(1));
+        // The retraction is an update, not a delete
+        assertEquals(List.of(), changes.deletes);
+    }
+
+    @Test
+    void rowEqualUpdatePairKeepsTheRowId() {
+        MaterializedResultView view = new MaterializedResultView(SCHEMA, null, 100);
+        view.apply(List.of(row(RowKind.INSERT, "a", 1), row(RowKind.INSERT, "a", 1)));
+        long before = view.getVersion();
+
+        // Retracts one of the two equal rows and continues it
+        view.apply(List.of(row(RowKind.UPDATE_BEFORE, "a", 1), row(RowKind.UPDATE_AFTER, "a", 5)));
+
+        assertEquals(2, view.size());
+        MaterializedResultView.Changes changes = view.changesSince(before);
+        assertEquals(List.of(1L), changes.ids);
+        assertEquals(5L, changes.rows.get(0).getLong(1));
+        assertEquals(List.of(), changes.deletes);
+    }
+
+    @Test
+    void deleteThenInsertIsANewRow() {
+        MaterializedResultView view = new MaterializedResultView(SCHEMA, List.of("word"), 100);
+        view.apply(List.of(row(RowKind.INSERT, "a", 1)));
+        long before = view.getVersion();
+
+        view.apply(List.of(row(RowKind.DELETE, "a", 1), row(RowKind.INSERT, "a", 2)));
+
+        MaterializedResultView.Changes changes = view.changesSince(before);
+        assertEquals(List.of(1L), changes.ids);
+        assertEquals(List.of(0L), changes.deletes);
+    }
+
+    @Test
+    void updateAfterWithoutRetractionUpsertsByKey() {
+        MaterializedResultView view = new MaterializedResultView(SCHEMA, List.of("word"), 100);
+        view.apply(List.of(row(RowKind.INSERT, "a", 1), row(RowKind.UPDATE_AFTER, "a", 3)));
+
+        MaterializedResultView.Changes snapshot = view.changesSince(0);
+        assertTrue(snapshot.snapshot);
+        assertEquals(List.of(0L), snapshot.ids);
+        assertEquals(3L, snapshot.rows.get(0).getLong(1));
+    }
+
+    @Test
+    void changesFromBeforeTheTombstoneHorizonAreASnapshot() {
+        MaterializedResultView view = new MaterializedResultView(SCHEMA, List.of("word"), 2);
+        view.apply(List.of(row(RowKind.INSERT, "a", 1), row(RowKind.INSERT, "b", 1)));
+        long early = view.getVersion();
+        view.apply(List.of(row(RowKind.DELETE, "a", 1)));
+        long middle = view.getVersion();
+
+        // Two tombstones fit; from the early version the client learns about the delete
+        view.apply(List.of(row(RowKind.DELETE, "b", 1)));
+        assertEquals(List.of(0L, 1L), view.changesSince(early).deletes);
+        assertFalse(view.changesSince(early).snapshot);
+
+        // A third drops the oldest, so the early version can no longer be brought up to date
+        view.apply(List.of(row(RowKind.INSERT, "c", 1), row(RowKind.DELETE, "c", 1)));
+        MaterializedResultView.Changes stale = view.changesSince(early);
+        assertTrue(stale.snapshot);
+        assertEquals(List.of(), stale.ids);
+        assertEquals(List.of(), stale.deletes);
+
+        MaterializedResultView.Changes recent = view.changesSince(middle);
+        assertFalse(recent.snapshot);
+        assertEquals(List.of(1L, 2L), recent.deletes);
+    }
+
+    @Test
+    void oldestRowsAreEvictedOverTheLimit() {
+        MaterializedResultView view = new MaterializedResultView(SCHEMA, List.of("word"), 2);
+        view.apply(List.of(row(RowKind.INSERT, "a", 1)));
+        long before = view.getVersion();
+        view.apply(List.of(row(RowKind.INSERT, "b", 1), row(RowKind.INSERT, "c", 1)));
+
+        assertEquals(2, view.size());
+        MaterializedResultView.Changes changes = view.changesSince(before);
+        assertEquals(List.of(1L, 2L), changes.ids);
+        assertEquals(List.of(0L), changes.deletes);
+    }
+
+    @Test
+    void rejectsUnknownKeyColumns() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new MaterializedResultView(SCHEMA, List.of("missing"), 10));
+    }
+
+    private static RowData row(RowKind kind, String word, long count) {
+        return GenericRowData.ofKind(kind, StringData.fromString(word), count);
+    }
+}
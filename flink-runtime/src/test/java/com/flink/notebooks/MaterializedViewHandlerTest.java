@@ -0,0 +1,79 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.service.result.NotReadyResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaterializedViewHandlerTest {
+
+    private final SessionHandle session = SessionHandle.create();
+    private final MaterializedViewHandler handler = new MaterializedViewHandler(new FakeService(), new Configuration());
+
+    @AfterEach
+    void close() {
+        handler.close();
+    }
+
+    @Test
+    void openingTwiceReturnsTheSameView() {
+        OperationHandle operation = OperationHandle.create();
+        MaterializedViewHandler.ViewState view = handler.openView(session, operation, null, 0);
+        assertSame(view, handler.openView(session, operation, null, 0));
+        assertEquals(1, handler.getViewCount());
+    }
+
+    @Test
+    void closingTheOperationDropsItsView() {
+        OperationHandle operation = OperationHandle.create();
+        MaterializedViewHandler.ViewState view = handler.openView(session, operation, null, 0);
+        handler.openView(session, OperationHandle.create(), null, 0);
+
+        handler.onOperationClosed(session, operation);
+        assertEquals(1, handler.getViewCount());
+        assertTrue(view.stopped);
+        assertTrue(view.future.isCancelled());
+    }
+
+    @Test
+    void closingTheSessionDropsItsViews() {
+        handler.openView(session, OperationHandle.create(), null, 0);
+        handler.openView(session, OperationHandle.create(), null, 0);
+        handler.openView(SessionHandle.create(), OperationHandle.create(), null, 0);
+
+        handler.onSessionClosed(session);
+        assertEquals(1, handler.getViewCount());
+    }
+
+    @Test
+    void viewsNotPolledRecentlyExpire() {
+        MaterializedViewHandler.ViewState stale = handler.openView(session, OperationHandle.create(), null, 0);
+        MaterializedViewHandler.ViewState polled = handler.openView(session, OperationHandle.create(), null, 0);
+        stale.lastPollMillis = 1000;
+        polled.lastPollMillis = 3000;
+
+        handler.expireIdle(2000);
+        assertEquals(1, handler.getViewCount());
+        assertTrue(stale.stopped);
+    }
+
+    private static class FakeService extends NotebookGatewayService {
+
+        FakeService() {
+            super(null);
+        }
+
+        @Override
+        public ResultSet fetchResults(SessionHandle sessionHandle, OperationHandle operationHandle, long token,
+                int maxRows) {
+            return NotReadyResult.INSTANCE;
+        }
+    }
+}
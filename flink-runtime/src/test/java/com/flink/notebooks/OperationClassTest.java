@@ -0,0 +1,80 @@
+package com.flink.notebooks;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OperationClassTest {
+
+    @Test
+    void metadataStatements() {
+        assertEquals(OperationClass.METADATA, OperationClass.classify("SHOW TABLES"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("describe orders"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("DESC orders"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("EXPLAIN SELECT 1"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("USE CATALOG lake"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("SET 'parallelism.default' = '2'"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("RESET"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("HELP"));
+    }
+
+    @Test
+    void jobStatements() {
+        assertEquals(OperationClass.JOB, OperationClass.classify("INSERT INTO sink SELECT * FROM src"));
+        assertEquals(OperationClass.JOB, OperationClass.classify("EXECUTE STATEMENT SET BEGIN END"));
+        assertEquals(OperationClass.JOB, OperationClass.classify("BEGIN STATEMENT SET"));
+        assertEquals(OperationClass.JOB, OperationClass.classify("STATEMENT SET BEGIN END"));
+    }
+
+    @Test
+    void createAsSelectRunsAJob() {
+        assertEquals(OperationClass.JOB, OperationClass.classify("CREATE TABLE t AS SELECT * FROM src"));
+        assertEquals(OperationClass.JOB, OperationClass.classify("CREATE TABLE t\nAS\n  WITH x AS (SELECT 1) SELECT * FROM x"));
+        assertEquals(OperationClass.JOB, OperationClass.classify("REPLACE TABLE t AS VALUES (1)"));
+    }
+
+    @Test
+    void ddlStatements() {
+        assertEquals(OperationClass.DDL, OperationClass.classify("CREATE TABLE t (id INT) WITH ('connector' = 'datagen')"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("CREATE FUNCTION f AS 'com.example.Upper'"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("DROP TABLE t"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("ALTER TABLE t RENAME TO u"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("ADD JAR '/tmp/udf.jar'"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("REMOVE JAR '/tmp/udf.jar'"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("LOAD MODULE hive"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("UNLOAD MODULE hive"));
+    }
+
+    @Test
+    void queriesAndUnknownStatements() {
+        assertEquals(OperationClass.QUERY, OperationClass.classify(null));
+        assertEquals(OperationClass.QUERY, OperationClass.classify(""));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("SELECT * FROM orders"));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("WITH x AS (SELECT 1) SELECT * FROM x"));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("VALUES (1), (2)"));
+    }
+
+    @Test
+    void keywordMustEndAtAWordBoundary() {
+        assertEquals(OperationClass.QUERY, OperationClass.classify("SHOWCASE"));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("settings"));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("DROPPED"));
+        assertEquals(OperationClass.METADATA, OperationClass.classify("SHOW\tTABLES"));
+    }
+
+    @Test
+    void leadingCommentsAreSkipped() {
+        assertEquals(OperationClass.JOB, OperationClass.classify("-- load the sink\nINSERT INTO sink VALUES (1)"));
+        assertEquals(OperationClass.DDL, OperationClass.classify("/* cleanup */ DROP TABLE t"));
+        assertEquals(OperationClass.METADATA,
+            OperationClass.classify("  /* a */\n-- b\n  /* c */ SHOW CATALOGS"));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("-- only a comment"));
+        assertEquals(OperationClass.QUERY, OperationClass.classify("/* unterminated DROP TABLE t"));
+    }
+
+    @Test
+    void stripLeadingCommentsKeepsTheStatement() {
+        assertEquals("SELECT 1 -- trailing", OperationClass.stripLeadingComments("-- a\n/* b */ SELECT 1 -- trailing"));
+        assertEquals("", OperationClass.stripLeadingComments("  -- nothing else"));
+    }
+}
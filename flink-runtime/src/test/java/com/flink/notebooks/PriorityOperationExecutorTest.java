@@ -0,0 +1,17 @@
+package com.flink.notebooks;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PriorityOperationExecutorTest {
+
+    @Test
+    void everyLaneHasItsOwnOptions() {
+        for (OperationClass operationClass : OperationClass.values()) {
+            String prefix = "notebooks.scheduler." + operationClass.laneName();
+            assertEquals(prefix + ".threads", PriorityOperationExecutor.threadsOption(operationClass).key());
+            assertEquals(prefix + ".queue-depth", PriorityOperationExecutor.queueDepthOption(operationClass).key());
+        }
+    }
+}
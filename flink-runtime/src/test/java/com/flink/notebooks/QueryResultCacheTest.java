@@ -0,0 +1,255 @@
+package com.flink.notebooks;
+
+import org.apache.flink.api.common.JobID;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.api.Schema;
+import org.apache.flink.table.catalog.CatalogTable;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ObjectIdentifier;
+import org.apache.flink.table.catalog.ResolvedCatalogBaseTable;
+import org.apache.flink.table.catalog.ResolvedCatalogTable;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.service.result.NotReadyResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryResultCacheTest {
+
+    private static final ResolvedSchema SCHEMA = ResolvedSchema.of(Column.physical("id", DataTypes.INT()));
+    private static final ObjectIdentifier SOURCE = ObjectIdentifier.of("default_catalog", "default_database", "t");
+
+    @TempDir
+    Path directory;
+
+    private final SessionHandle session = SessionHandle.create();
+    private final JobID jobID = new JobID();
+    private CompiledPlanCache planCache;
+    private QueryResultCache cache;
+
+    @AfterEach
+    void close() {
+        if (cache != null) {
+            cache.close();
+        }
+        if (planCache != null) {
+            planCache.close();
+        }
+    }
+
+    @Test
+    void nondeterministicFunctionsAreDetected() {
+        assertTrue(QueryResultCache.isNondeterministic("SELECT NOW()"));
+        assertTrue(QueryResultCache.isNondeterministic("SELECT id, rand() FROM t"));
+        assertTrue(QueryResultCache.isNondeterministic("SELECT * FROM t WHERE ts < CURRENT_TIMESTAMP"));
+        assertFalse(QueryResultCache.isNondeterministic("SELECT nowhere, now_ts, uuids FROM t"));
+        assertFalse(QueryResultCache.isNondeterministic("SELECT id FROM t"));
+    }
+
+    @Test
+    void nondeterministicQueriesAreNotLookedUp() throws Exception {
+        open(1024 * 1024, 100);
+        assertNull(cache.lookup(session, "SELECT UUID() FROM t"));
+        assertNotNull(cache.lookup(session, "SELECT id FROM t"));
+    }
+
+    @Test
+    void scannedTablesAreReadFromOperatorDescriptions() throws Exception {
+        String plan = "{\"nodes\":[{\"description\":\"TableSourceScan(table=[[default_catalog, default_database, t, "
+            + "project=[id]]], fields=[id])\"},{\"description\":\"TableSourceScan(table=[[lake, db, u]], fields=[a])\"},"
+            + "{\"description\":\"TableSourceScan(table=[[default_catalog, default_database, t]], fields=[id])\"}]}";
+        assertEquals(List.of(SOURCE, ObjectIdentifier.of("lake", "db", "u")), QueryResultCache.scannedTables(plan));
+        assertEquals(List.of(), QueryResultCache.scannedTables("{\"nodes\":[{\"description\":\"Values(tuples=[[{ 1 }]])\"}]}"));
+    }
+
+    @Test
+    void recordingFollowsTheFetchTokens() throws Exception {
+        QueryResultCache.Recording recording = new QueryResultCache.Recording(session, null);
+
+        assertFalse(recording.add(0, NotReadyResult.INSTANCE));
+        assertFalse(recording.add(0, payload(0, 3, 3L)));
+        // Fetching a token again, or one past the end, records nothing
+        assertFalse(recording.add(0, payload(0, 3, 3L)));
+        assertFalse(recording.add(5, payload(5, 2, 7L)));
+        assertFalse(recording.add(3, NotReadyResult.INSTANCE));
+        assertEquals(3, recording.rows);
+
+        assertFalse(recording.add(3, payload(3, 2, 5L)));
+        assertTrue(recording.add(5, eos()));
+        assertEquals(5, recording.rows);
+        assertEquals(jobID, recording.jobID);
+    }
+
+    @Test
+    void storedResultsAreServedUntilTheirFilesChange() throws Exception {
+        Path data = sourceDirectory();
+        open(1024 * 1024, 100);
+
+        QueryResultCache.Lookup miss = cache.lookup(session, "SELECT id FROM t");
+        assertFalse(miss.isHit());
+        cache.store(recorded(miss, 10), List.of(SOURCE));
+        assertEquals(1, cache.getEntries());
+
+        QueryResultCache.Lookup hit = cache.lookup(session, "SELECT id FROM t");
+        assertTrue(hit.isHit());
+        assertEquals(range(0, 10), ids(hit.getResult()));
+        assertEquals(ResultSet.ResultType.PAYLOAD, hit.getResult().getResultType());
+
+        Files.writeString(data.resolve("part-1.csv"), "10\n");
+        assertFalse(cache.lookup(session, "SELECT id FROM t").isHit());
+        assertEquals(0, cache.getEntries());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void queriesWithoutSourceTablesAreNotCached() throws Exception {
+        open(1024 * 1024, 100);
+        QueryResultCache.Lookup miss = cache.lookup(session, "SELECT id FROM t");
+        cache.store(recorded(miss, 3), List.of());
+        assertEquals(0, cache.getEntries());
+        assertNull(cache.lookup(session, "SELECT id FROM t"));
+    }
+
+    @Test
+    void resultsOverMaxEntryRowsAreNotCached() throws Exception {
+        open(1024 * 1024, 4);
+        QueryResultCache.Lookup miss = cache.lookup(session, "SELECT id FROM t");
+        OperationHandle operation = OperationHandle.create();
+        cache.record(session, operation, miss);
+        cache.onFetch(operation, 0, payload(0, 5, 5L));
+        assertNull(cache.lookup(session, "SELECT id FROM t"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvictedOverMaxBytes() throws Exception {
+        sourceDirectory();
+        long entryBytes = entryBytes();
+        open(entryBytes * 2 + entryBytes / 2, 100);
+
+        cache.store(recorded(cache.lookup(session, "SELECT id FROM t"), 10), List.of(SOURCE));
+        cache.store(recorded(cache.lookup(session, "SELECT id AS a FROM t"), 10), List.of(SOURCE));
+        // Reading the first makes the second the least recently used
+        assertTrue(cache.lookup(session, "SELECT id FROM t").isHit());
+        cache.store(recorded(cache.lookup(session, "SELECT id AS b FROM t"), 10), List.of(SOURCE));
+
+        assertEquals(2, cache.getEntries());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.lookup(session, "SELECT id FROM t").isHit());
+        assertFalse(cache.lookup(session, "SELECT id AS a FROM t").isHit());
+    }
+
+    private void open(long maxBytes, int maxEntryRows) {
+        Configuration config = new Configuration();
+        config.set(CompiledPlanCache.MAX_ENTRIES, 0);
+        config.set(QueryResultCache.ENABLED, true);
+        config.set(QueryResultCache.MAX_BYTES, maxBytes);
+        config.set(QueryResultCache.MAX_ENTRY_ROWS, maxEntryRows);
+        config.set(QueryResultCache.DIR, directory.resolve("cache").toString());
+        FakeService service = new FakeService(directory.resolve("t"));
+        planCache = new CompiledPlanCache(service, config);
+        cache = new QueryResultCache(service, planCache, null, config);
+    }
+
+    /** Compressed size of an entry of ten rows. */
+    private long entryBytes() throws Exception {
+        open(1024 * 1024, 100);
+        cache.store(recorded(cache.lookup(session, "SELECT id FROM t"), 10), List.of(SOURCE));
+        long bytes = cache.getBytes();
+        close();
+        return bytes;
+    }
+
+    /** A filesystem table's directory, last modified before any lookup. */
+    private Path sourceDirectory() throws Exception {
+        Path data = Files.createDirectories(directory.resolve("t"));
+        Path part = Files.writeString(data.resolve("part-0.csv"), "0\n1\n");
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(part, past);
+        Files.setLastModifiedTime(data, past);
+        return data;
+    }
+
+    private QueryResultCache.Recording recorded(QueryResultCache.Lookup lookup, int rows) throws Exception {
+        QueryResultCache.Recording recording = new QueryResultCache.Recording(session, lookup);
+        recording.add(0, payload(0, rows, (long) rows));
+        recording.add(rows, eos());
+        return recording;
+    }
+
+    private ResultSet payload(int first, int count, Long nextToken) {
+        List<RowData> rows = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            rows.add(GenericRowData.of(i));
+        }
+        return new ResultSetImpl(ResultSet.ResultType.PAYLOAD, nextToken, SCHEMA, rows, null, true, jobID,
+            ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    private ResultSet eos() {
+        return new ResultSetImpl(ResultSet.ResultType.EOS, null, SCHEMA, List.of(), null, true, jobID,
+            ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    private static List<Integer> range(int first, int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(ResultSet result) {
+        return result.getData().stream().map(row -> row.getInt(0)).collect(Collectors.toList());
+    }
+
+    private static class FakeService extends NotebookGatewayService {
+
+        private final Path data;
+
+        FakeService(Path data) {
+            super(null);
+            this.data = data;
+        }
+
+        @Override
+        public Map<String, String> getSessionConfig(SessionHandle sessionHandle) {
+            return Map.of("execution.runtime-mode", "batch");
+        }
+
+        @Override
+        public String getCurrentCatalog(SessionHandle sessionHandle) {
+            return "default_catalog";
+        }
+
+        @Override
+        public ResolvedCatalogBaseTable<?> getTable(SessionHandle sessionHandle, ObjectIdentifier tableIdentifier) {
+            CatalogTable table = CatalogTable.newBuilder()
+                .schema(Schema.newBuilder().fromResolvedSchema(SCHEMA).build())
+                .options(Map.of("connector", "filesystem", "path", data.toString(), "format", "csv"))
+                .build();
+            return new ResolvedCatalogTable(table, SCHEMA);
+        }
+    }
+}
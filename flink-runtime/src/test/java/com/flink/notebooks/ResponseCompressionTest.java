@@ -0,0 +1,74 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResponseCompressionTest {
+
+    private final ResponseCompression both = compression("lz4,gzip");
+
+    @Test
+    void offersGzipByDefault() {
+        ResponseCompression compression = new ResponseCompression(new Configuration());
+        assertEquals(ResponseCompression.Codec.GZIP, compression.negotiate("gzip, deflate, br"));
+        assertEquals(ResponseCompression.Codec.GZIP, compression.negotiate("lz4, gzip"));
+        assertNull(compression.negotiate("lz4"));
+    }
+
+    @Test
+    void sendsBodiesAsTheyAreWithoutAnAcceptedCodec() {
+        assertNull(both.negotiate(null));
+        assertNull(both.negotiate(" "));
+        assertNull(both.negotiate("identity"));
+        assertNull(both.negotiate("br, deflate"));
+    }
+
+    @Test
+    void equallyPreferredCodecsAreTakenInConfiguredOrder() {
+        assertEquals(ResponseCompression.Codec.LZ4, both.negotiate("gzip, lz4"));
+        assertEquals(ResponseCompression.Codec.GZIP, compression("gzip,lz4").negotiate("lz4, gzip"));
+        assertEquals(ResponseCompression.Codec.GZIP, both.negotiate("GZIP"));
+    }
+
+    @Test
+    void qValuesDecideBetweenCodecs() {
+        assertEquals(ResponseCompression.Codec.GZIP, both.negotiate("lz4;q=0.5, gzip"));
+        assertEquals(ResponseCompression.Codec.LZ4, both.negotiate("gzip ; q=0.2, lz4 ; q=0.8"));
+        assertNull(both.negotiate("gzip;q=0"));
+        assertNull(both.negotiate("gzip;q=0, lz4;q=0.0"));
+        // A q-value that does not parse counts as 0
+        assertNull(both.negotiate("gzip;q=high"));
+    }
+
+    @Test
+    void wildcardCoversCodecsNotListed() {
+        assertEquals(ResponseCompression.Codec.LZ4, both.negotiate("*"));
+        assertEquals(ResponseCompression.Codec.GZIP, both.negotiate("lz4;q=0, *"));
+        assertEquals(ResponseCompression.Codec.GZIP, both.negotiate("*;q=0.1, gzip;q=0.5"));
+        assertEquals(ResponseCompression.Codec.LZ4, both.negotiate("*;q=0.9, gzip;q=0.5"));
+        assertNull(both.negotiate("*;q=0"));
+    }
+
+    @Test
+    void emptyCodecsDisableCompression() {
+        ResponseCompression disabled = compression("");
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.negotiate("gzip, lz4"));
+    }
+
+    @Test
+    void rejectsUnknownCodecs() {
+        assertThrows(IllegalArgumentException.class, () -> compression("gzip,zstd"));
+    }
+
+    private static ResponseCompression compression(String codecs) {
+        Configuration config = new Configuration();
+        config.set(ResponseCompression.CODECS, codecs);
+        return new ResponseCompression(config);
+    }
+}
@@ -0,0 +1,58 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ResultFetchHandlerTest {
+
+    private final SessionHandle session = SessionHandle.create();
+    private final ResultFetchHandler handler =
+        new ResultFetchHandler(null, new FetchSizeAdvisor(new Configuration()));
+
+    @Test
+    void schemaVersionFollowsTheColumns() throws Exception {
+        ResolvedSchema schema = ResolvedSchema.of(Column.physical("id", DataTypes.INT()));
+        assertEquals(ResultFetchHandler.schemaVersion(schema),
+            ResultFetchHandler.schemaVersion(ResolvedSchema.of(Column.physical("id", DataTypes.INT()))));
+        assertNotEquals(ResultFetchHandler.schemaVersion(schema),
+            ResultFetchHandler.schemaVersion(ResolvedSchema.of(Column.physical("id", DataTypes.BIGINT()))));
+    }
+
+    @Test
+    void schemaVersionIsComputedOncePerOperation() throws Exception {
+        OperationHandle operation = OperationHandle.create();
+        ResolvedSchema schema = ResolvedSchema.of(Column.physical("id", DataTypes.INT()));
+        String version = handler.schemaVersion(session, operation, schema);
+        assertEquals(ResultFetchHandler.schemaVersion(schema), version);
+
+        // A cached version is returned as is, without checksumming the columns again
+        assertEquals(version, handler.schemaVersion(session, operation,
+            ResolvedSchema.of(Column.physical("name", DataTypes.STRING()))));
+        assertEquals(1, handler.getCachedSchemaVersionCount());
+    }
+
+    @Test
+    void closingForgetsTheSchemaVersion() throws Exception {
+        ResolvedSchema schema = ResolvedSchema.of(Column.physical("id", DataTypes.INT()));
+        OperationHandle first = OperationHandle.create();
+        OperationHandle second = OperationHandle.create();
+        OperationHandle other = OperationHandle.create();
+        handler.schemaVersion(session, first, schema);
+        handler.schemaVersion(session, second, schema);
+        handler.schemaVersion(SessionHandle.create(), other, schema);
+        assertEquals(3, handler.getCachedSchemaVersionCount());
+
+        handler.onOperationClosed(session, first);
+        assertEquals(2, handler.getCachedSchemaVersionCount());
+        handler.onSessionClosed(session);
+        assertEquals(1, handler.getCachedSchemaVersionCount());
+    }
+}
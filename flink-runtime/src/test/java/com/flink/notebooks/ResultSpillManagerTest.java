@@ -0,0 +1,67 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.service.result.NotReadyResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultSpillManagerTest {
+
+    @TempDir
+    Path directory;
+
+    private ResultSpillManager manager;
+
+    @AfterEach
+    void close() {
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    @Test
+    void deletesSegmentsLeftByAnEarlierRun() throws Exception {
+        Path leftover = Files.createFile(directory.resolve(OperationHandle.create() + "-0" + SpillingResultStore.SEGMENT_SUFFIX));
+        Path other = Files.createFile(directory.resolve("notes.txt"));
+        manager = new ResultSpillManager(config());
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(other));
+    }
+
+    @Test
+    void reapReleasesOperationsThatNoLongerExist() {
+        manager = new ResultSpillManager(config());
+        SessionHandle session = SessionHandle.create();
+        OperationHandle closed = OperationHandle.create();
+        OperationHandle running = OperationHandle.create();
+        manager.register(session, closed, (s, o, token, maxRows) -> NotReadyResult.INSTANCE, true);
+        manager.register(session, running, (s, o, token, maxRows) -> NotReadyResult.INSTANCE, true);
+
+        manager.reap((s, operation) -> !operation.equals(closed));
+        assertEquals(1, manager.getStoreCount());
+        assertNull(manager.getStore(closed));
+        assertNotNull(manager.getStore(running));
+
+        manager.reap((s, operation) -> !Set.of(running).contains(operation));
+        assertEquals(0, manager.getStoreCount());
+    }
+
+    private Configuration config() {
+        Configuration config = new Configuration();
+        config.set(ResultSpillManager.DIR, directory.toString());
+        return config;
+    }
+}
@@ -0,0 +1,189 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.gateway.api.SqlGatewayService;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultStreamHandlerTest {
+
+    private static final ResolvedSchema SCHEMA = ResolvedSchema.of(Column.physical("id", DataTypes.INT()));
+
+    private final SessionHandle session = SessionHandle.create();
+    private final OperationHandle operation = OperationHandle.create();
+    private final List<Integer> requestedRows = new CopyOnWriteArrayList<>();
+    private RunnerHttpServer server;
+    private String base;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new RunnerHttpServer("localhost", CdsTrainingRun.freePort());
+        new ResultStreamHandler(fakeService()).register(server);
+        server.start();
+        base = "http://localhost:" + server.getPort() + "/v1/sessions/" + session.getIdentifier()
+            + "/operations/" + operation.getIdentifier() + "/stream";
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void streamsBatchesUntilTheEnd() throws Exception {
+        HttpURLConnection connection = open(base + "?credits=100&maxRows=3");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/event-stream", connection.getHeaderField("Content-Type"));
+
+        List<String[]> events = readEvents(connection, 3);
+        assertEquals("results", events.get(0)[0]);
+        assertTrue(events.get(0)[1].contains("\"token\":0"), events.get(0)[1]);
+        assertTrue(events.get(0)[1].contains("\"nextToken\":1"), events.get(0)[1]);
+        assertTrue(events.get(0)[1].contains("\"fields\":[1]"), events.get(0)[1]);
+        // The empty NOT_READY batch in between is not sent
+        assertEquals("results", events.get(1)[0]);
+        assertTrue(events.get(1)[1].contains("\"token\":1"), events.get(1)[1]);
+        assertEquals("end", events.get(2)[0]);
+        assertEquals("{\"token\":2}", events.get(2)[1]);
+        assertEquals(3, requestedRows.get(0));
+    }
+
+    @Test
+    void fetchesNoMoreRowsThanGranted() throws Exception {
+        HttpURLConnection connection = open(base + "?credits=2&maxRows=500");
+        BufferedReader reader = reader(connection);
+        assertEquals("results", readEvent(reader)[0]);
+        // Two rows sent, no credits left: the handler waits instead of fetching
+        Thread.sleep(200);
+        assertEquals(List.of(2), requestedRows);
+
+        assertEquals(200, postCredits(base + "/credits", "{\"credits\": 5}"));
+        assertEquals("results", readEvent(reader)[0]);
+        assertEquals("end", readEvent(reader)[0]);
+        // Five granted: the not-ready fetch and the three rows ask for 5, the end for the 2 left
+        assertEquals(List.of(2, 5, 5, 2), requestedRows);
+    }
+
+    @Test
+    void rejectsASecondStreamAndUnknownCredits() throws Exception {
+        HttpURLConnection first = open(base + "?credits=0");
+        assertEquals(200, first.getResponseCode());
+
+        assertEquals(400, open(base).getResponseCode());
+        assertEquals(400, postCredits(base + "/credits", "{\"credits\": 0}"));
+        String other = base.replace(operation.getIdentifier().toString(), OperationHandle.create().getIdentifier().toString());
+        assertEquals(404, postCredits(other + "/credits", "{\"credits\": 5}"));
+        first.disconnect();
+    }
+
+    /**
+     * Token 0 has two rows, token 1 is not ready once and then has three, token 2 is the end.
+     */
+    private SqlGatewayService fakeService() {
+        boolean[] notReadyOnce = {true};
+        return (SqlGatewayService) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {SqlGatewayService.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getSessionConfig")) {
+                    return Collections.emptyMap();
+                }
+                if (method.getName().equals("fetchResults") && args[2] instanceof Long) {
+                    long token = (Long) args[2];
+                    int maxRows = (Integer) args[3];
+                    requestedRows.add(maxRows);
+                    if (token == 0) {
+                        return batch(ResultSet.ResultType.PAYLOAD, 1L, Math.min(2, maxRows));
+                    }
+                    if (token == 1 && notReadyOnce[0]) {
+                        notReadyOnce[0] = false;
+                        return batch(ResultSet.ResultType.NOT_READY, 1L, 0);
+                    }
+                    if (token == 1) {
+                        return batch(ResultSet.ResultType.PAYLOAD, 2L, Math.min(3, maxRows));
+                    }
+                    return batch(ResultSet.ResultType.EOS, null, 0);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private static ResultSet batch(ResultSet.ResultType type, Long nextToken, int rows) {
+        List<RowData> data = new ArrayList<>();
+        for (int i = 1; i <= rows; i++) {
+            data.add(GenericRowData.of(i));
+        }
+        return new ResultSetImpl(type, nextToken, SCHEMA, data, null, true, null, ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    private static HttpURLConnection open(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setReadTimeout(10_000);
+        return connection;
+    }
+
+    private static int postCredits(String url, String body) throws Exception {
+        HttpURLConnection connection = open(url);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+
+    private static BufferedReader reader(HttpURLConnection connection) throws Exception {
+        return new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static List<String[]> readEvents(HttpURLConnection connection, int count) throws Exception {
+        BufferedReader reader = reader(connection);
+        List<String[]> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(readEvent(reader));
+        }
+        return events;
+    }
+
+    /**
+     * The next event as {name, data}, skipping comments.
+     */
+    private static String[] readEvent(BufferedReader reader) throws Exception {
+        String event = null;
+        String data = null;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isEmpty() && event != null) {
+                return new String[] {event, data};
+            } else if (line.startsWith("event: ")) {
+                event = line.substring("event: ".length());
+            } else if (line.startsWith("data: ")) {
+                data = line.substring("data: ".length());
+            }
+        }
+        throw new AssertionError("Stream ended before the next event");
+    }
+}
@@ -0,0 +1,159 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.session.SessionEnvironment;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.util.SqlGatewayRestAPIVersion;
+import org.apache.flink.table.gateway.service.context.DefaultContext;
+import org.apache.flink.table.gateway.service.session.SessionManagerImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunnerMetricsTest {
+
+    @Test
+    void rendersCountersAndGaugesWithHelpAndType() {
+        RunnerMetrics metrics = new RunnerMetrics();
+        metrics.bindService(new FakeService(3, 7));
+        metrics.onJsonBytes(100);
+        metrics.onJsonBytes(20);
+        metrics.onColumnarBytes(5);
+
+        List<String> lines = lines(metrics.render());
+        assertContainsInOrder(lines,
+            "# HELP flink_notebooks_sessions_open Open gateway sessions, including pooled ones.",
+            "# TYPE flink_notebooks_sessions_open gauge",
+            "flink_notebooks_sessions_open 3",
+            "# HELP flink_notebooks_operations_open Operations not yet closed, over all open sessions.",
+            "# TYPE flink_notebooks_operations_open gauge",
+            "flink_notebooks_operations_open 7");
+        // Labelled samples of one metric share its HELP and TYPE lines
+        assertContainsInOrder(lines,
+            "# HELP flink_notebooks_result_bytes_total Result bytes served by the runner endpoint.",
+            "# TYPE flink_notebooks_result_bytes_total counter",
+            "flink_notebooks_result_bytes_total{format=\"columnar\"} 5",
+            "flink_notebooks_result_bytes_total{format=\"json\"} 120",
+            "flink_notebooks_result_bytes_total{format=\"stream\"} 0");
+        assertEquals(1, lines.stream().filter(line -> line.startsWith("# TYPE flink_notebooks_result_bytes_total ")).count());
+
+        // Unbound sources report zero
+        assertTrue(lines.contains("flink_notebooks_operation_queue_depth 0"));
+        assertTrue(lines.contains("flink_notebooks_plan_cache_hits_total 0"));
+    }
+
+    @Test
+    void rendersLatencyHistogramsWithCumulativeBuckets() {
+        RunnerMetrics metrics = new RunnerMetrics();
+        SessionHandle session = SessionHandle.create();
+        OperationHandle operation = OperationHandle.create();
+        long now = System.nanoTime();
+        metrics.onSubmitted(session, operation, now - 2_000_000_000L);
+        metrics.onFetched(operation, payload(2), now - 300_000_000L);
+
+        List<String> lines = lines(metrics.render());
+        assertContainsInOrder(lines,
+            "# HELP flink_notebooks_operation_fetch_seconds Time a result fetch took, on the gateway and runner endpoints.",
+            "# TYPE flink_notebooks_operation_fetch_seconds histogram",
+            "flink_notebooks_operation_fetch_seconds_bucket{le=\"0.001\"} 0",
+            "flink_notebooks_operation_fetch_seconds_bucket{le=\"0.25\"} 0",
+            "flink_notebooks_operation_fetch_seconds_bucket{le=\"0.5\"} 1",
+            "flink_notebooks_operation_fetch_seconds_bucket{le=\"+Inf\"} 1",
+            "flink_notebooks_operation_fetch_seconds_count 1");
+        assertContainsInOrder(lines,
+            "flink_notebooks_operation_first_row_seconds_bucket{le=\"1.0\"} 0",
+            "flink_notebooks_operation_first_row_seconds_bucket{le=\"2.5\"} 1",
+            "flink_notebooks_operation_first_row_seconds_count 1");
+        assertTrue(lines.contains("flink_notebooks_result_rows_total 2"));
+    }
+
+    @Test
+    void expiredSessionsLeaveTheOpenSessionGauge() {
+        SessionManagerImpl sessionManager =
+            new SessionManagerImpl(DefaultContext.load(new Configuration(), Collections.emptyList(), false));
+        NotebookGatewayService service = new NotebookGatewayService(sessionManager);
+        List<SessionHandle> closed = new CopyOnWriteArrayList<>();
+        service.addStatementListener(new NotebookGatewayService.StatementListener() {
+            @Override
+            public void onStatement(SessionHandle session, OperationHandle operation, String statement,
+                    OperationClass operationClass) {
+            }
+
+            @Override
+            public void onSessionClosed(SessionHandle session) {
+                closed.add(session);
+            }
+        });
+        RunnerMetrics metrics = new RunnerMetrics();
+        metrics.bindService(service);
+
+        SessionHandle expiring = service.openUnpooledSession(environment());
+        SessionHandle kept = service.openUnpooledSession(environment());
+        assertTrue(lines(metrics.render()).contains("flink_notebooks_sessions_open 2"));
+
+        // The session manager drops expired sessions without going through the service
+        sessionManager.closeSession(expiring);
+        assertTrue(lines(metrics.render()).contains("flink_notebooks_sessions_open 1"));
+        assertEquals(List.of(expiring), closed);
+
+        service.closeSession(kept);
+        service.reapExpiredSessions();
+        assertTrue(lines(metrics.render()).contains("flink_notebooks_sessions_open 0"));
+        assertEquals(List.of(expiring, kept), closed);
+    }
+
+    private static SessionEnvironment environment() {
+        return SessionEnvironment.newBuilder().setSessionEndpointVersion(SqlGatewayRestAPIVersion.V1).build();
+    }
+
+    private static ResultSet payload(int rows) {
+        return new ResultSetImpl(ResultSet.ResultType.PAYLOAD, (long) rows, null,
+            Collections.nCopies(rows, null), null, true, null, ResultKind.SUCCESS_WITH_CONTENT);
+    }
+
+    private static List<String> lines(String rendered) {
+        return Arrays.stream(rendered.split("\n")).collect(Collectors.toList());
+    }
+
+    private static void assertContainsInOrder(List<String> lines, String... expected) {
+        int next = 0;
+        for (String line : expected) {
+            int index = lines.subList(next, lines.size()).indexOf(line);
+            assertTrue(index >= 0, () -> "Missing " + line + " in\n" + String.join("\n", lines));
+            next += index + 1;
+        }
+    }
+
+    private static class FakeService extends NotebookGatewayService {
+
+        private final int sessions;
+        private final int operations;
+
+        FakeService(int sessions, int operations) {
+            super(null);
+            this.sessions = sessions;
+            this.operations = operations;
+        }
+
+        @Override
+        public int getOpenSessionCount() {
+            return sessions;
+        }
+
+        @Override
+        public int getOpenOperationCount() {
+            return operations;
+        }
+    }
+}
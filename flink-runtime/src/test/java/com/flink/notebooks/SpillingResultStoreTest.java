@@ -0,0 +1,228 @@
+package com.flink.notebooks;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.ResultKind;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.gateway.api.operation.OperationHandle;
+import org.apache.flink.table.gateway.api.results.ResultSet;
+import org.apache.flink.table.gateway.api.results.ResultSetImpl;
+import org.apache.flink.table.gateway.api.utils.SqlGatewayException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillingResultStoreTest {
+
+    private static final ResolvedSchema SCHEMA = ResolvedSchema.of(Column.physical("id", DataTypes.INT()));
+
+    @TempDir
+    Path directory;
+
+    private SpillingResultStore store;
+
+    @AfterEach
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void tokensAreRowNumbers() throws Exception {
+        store = open(100, 0, false);
+        store.append(rows(0, 10));
+
+        ResultSet first = store.fetch(0, 4);
+        assertEquals(List.of(0, 1, 2, 3), ids(first));
+        assertEquals(4L, first.getNextToken());
+        // Fetching a token again returns the same rows
+        assertEquals(List.of(0, 1, 2, 3), ids(store.fetch(0, 4)));
+        assertEquals(List.of(4, 5, 6, 7, 8, 9), ids(store.fetch(4, 100)));
+
+        // Caught up with a running job: no rows, same token
+        ResultSet empty = store.fetch(10, 100);
+        assertEquals(ResultSet.ResultType.PAYLOAD, empty.getResultType());
+        assertEquals(10L, empty.getNextToken());
+        assertTrue(empty.getData().isEmpty());
+
+        store.finish();
+        ResultSet end = store.fetch(10, 100);
+        assertEquals(ResultSet.ResultType.EOS, end.getResultType());
+        assertNull(end.getNextToken());
+    }
+
+    @Test
+    void notReadyUntilTheFirstBatch() {
+        store = new SpillingResultStore(OperationHandle.create(), directory, 100, 0, 0, false);
+        assertEquals(ResultSet.ResultType.NOT_READY, store.fetch(0, 10).getResultType());
+    }
+
+    @Test
+    void spilledRowsAreReadBackInOrder() throws Exception {
+        store = open(5, 0, false);
+        for (int i = 0; i < 4; i++) {
+            store.append(rows(i * 6, 6));
+        }
+        assertEquals(24, store.getSpilledRows());
+        assertEquals(4, segmentFiles().size());
+
+        List<Integer> read = new ArrayList<>();
+        long token = 0;
+        while (read.size() < 24) {
+            ResultSet result = store.fetch(token, 7);
+            read.addAll(ids(result));
+            token = result.getNextToken();
+        }
+        assertEquals(range(0, 24), read);
+    }
+
+    @Test
+    void acknowledgedSegmentsAreDeleted() throws Exception {
+        store = open(5, 0, false);
+        store.append(rows(0, 6));
+        store.append(rows(6, 6));
+        assertEquals(2, segmentFiles().size());
+
+        store.fetch(0, 5);
+        // Rows before token 6 are acknowledged, which covers the first segment
+        store.fetch(6, 5);
+        assertEquals(1, segmentFiles().size());
+        assertEquals(1, store.getBufferedRowCount());
+    }
+
+    @Test
+    void unboundedResultEvictsUnreadRowsOverTheSizeLimit() throws Exception {
+        store = open(5, segmentBytes(), false);
+        store.append(rows(0, 6));
+        store.append(rows(6, 6));
+        store.append(rows(12, 3));
+
+        // Only the newest segment is kept, so the fetch skips ahead to it
+        assertEquals(6, store.getEvictedRows());
+        ResultSet result = store.fetch(0, 100);
+        assertEquals(range(6, 5), ids(result));
+        assertEquals(1, segmentFiles().size());
+    }
+
+    @Test
+    void boundedResultWaitsForTheClientInsteadOfEvicting() throws Exception {
+        store = open(5, segmentBytes(), true);
+        store.append(rows(0, 6));
+        assertFalse(store.isBackpressured());
+
+        // The second segment goes over the limit, so the drain waits
+        CompletableFuture<Void> drain = appendAsync(rows(6, 6));
+        Thread.sleep(200);
+        assertFalse(drain.isDone());
+        assertTrue(store.isBackpressured());
+
+        // Reading past the first segment frees it and lets the drain continue
+        List<Integer> read = new ArrayList<>();
+        long token = 0;
+        while (read.size() < 12) {
+            ResultSet result = store.fetch(token, 100);
+            read.addAll(ids(result));
+            token = result.getNextToken();
+        }
+        store.fetch(token, 100);
+        drain.get(10, TimeUnit.SECONDS);
+
+        assertEquals(range(0, 12), read);
+        assertEquals(0, store.getEvictedRows());
+    }
+
+    @Test
+    void closingReleasesAWaitingDrain() throws Exception {
+        store = open(5, segmentBytes(), true);
+        store.append(rows(0, 6));
+        CompletableFuture<Void> drain = appendAsync(rows(6, 6));
+        Thread.sleep(100);
+
+        store.close();
+        drain.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(), segmentFiles());
+        assertThrows(SqlGatewayException.class, () -> store.fetch(0, 10));
+    }
+
+    @Test
+    void fetchRethrowsTheDrainFailure() {
+        store = new SpillingResultStore(OperationHandle.create(), directory, 100, 0, 0, false);
+        SqlGatewayException failure = new SqlGatewayException("job failed");
+        store.fail(failure);
+        assertSame(failure, assertThrows(SqlGatewayException.class, () -> store.fetch(0, 10)));
+    }
+
+    private SpillingResultStore open(int memoryRows, long maxDiskBytes, boolean bounded) {
+        SpillingResultStore opened =
+            new SpillingResultStore(OperationHandle.create(), directory, memoryRows, maxDiskBytes, 0, bounded);
+        opened.open(new ResultSetImpl(ResultSet.ResultType.PAYLOAD, 0L, SCHEMA, Collections.emptyList(),
+            row -> new String[] {String.valueOf(row.getInt(0))}, true, null, ResultKind.SUCCESS_WITH_CONTENT));
+        return opened;
+    }
+
+    private CompletableFuture<Void> appendAsync(List<RowData> rows) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                store.append(rows);
+            } catch (IOException | InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+    }
+
+    /** Size of a segment of six rows. */
+    private long segmentBytes() throws Exception {
+        try (SpillingResultStore measured = open(5, 0, false)) {
+            measured.append(rows(0, 6));
+            return measured.getDiskBytes();
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(SpillingResultStore.SEGMENT_SUFFIX))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static List<RowData> rows(int first, int count) {
+        List<RowData> rows = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            rows.add(GenericRowData.of(i));
+        }
+        return rows;
+    }
+
+    private static List<Integer> range(int first, int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(ResultSet result) {
+        return result.getData().stream().map(row -> row.getInt(0)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,107 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StartupPhasesTest {
+
+    @TempDir
+    Path directory;
+
+    private StartupPhases phases;
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void create() {
+        Configuration config = new Configuration();
+        config.set(RunnerTimings.FILE, directory.resolve("timings.json").toString());
+        phases = new StartupPhases(new RunnerTimings(config));
+    }
+
+    @Test
+    void phaseStartsAfterAllItsDependencies() throws Exception {
+        CompletableFuture<Void> slow = phases.run("slow", () -> record("slow", 100));
+        CompletableFuture<Void> fast = phases.run("fast", () -> record("fast", 0));
+        CompletableFuture<Void> after = phases.run("after", () -> record("after", 0), slow, fast);
+        phases.run("last", () -> record("last", 0), after);
+        phases.await();
+
+        assertTrue(events.indexOf("after:start") > events.indexOf("slow:end"), events.toString());
+        assertTrue(events.indexOf("after:start") > events.indexOf("fast:end"), events.toString());
+        assertTrue(events.indexOf("last:start") > events.indexOf("after:end"), events.toString());
+    }
+
+    @Test
+    void independentPhasesOverlap() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        // Each waits for the other to start, which only succeeds if they run concurrently
+        phases.run("a", () -> awaitBoth(bothRunning));
+        phases.run("b", () -> awaitBoth(bothRunning));
+        phases.await();
+    }
+
+    @Test
+    void resultsAreAvailableToDependents() throws Exception {
+        CompletableFuture<Integer> port = phases.supply("port", () -> 8084);
+        CompletableFuture<String> url = phases.supply("url", () -> "http://localhost:" + port.join(), port);
+        phases.await();
+        assertEquals("http://localhost:8084", url.get());
+    }
+
+    @Test
+    void failureSkipsDependentsButNotOtherPhases() {
+        IOException failure = new IOException("port in use");
+        AtomicBoolean dependentRan = new AtomicBoolean();
+        AtomicBoolean independentRan = new AtomicBoolean();
+
+        CompletableFuture<Void> bind = phases.run("bind", () -> {
+            throw failure;
+        });
+        phases.run("serve", () -> dependentRan.set(true), bind);
+        phases.run("metrics", () -> {
+            Thread.sleep(50);
+            independentRan.set(true);
+        });
+
+        assertSame(failure, assertThrows(IOException.class, phases::await));
+        assertFalse(dependentRan.get());
+        assertTrue(independentRan.get());
+    }
+
+    @Test
+    void rejectsFuturesThatAreNotPhases() {
+        assertThrows(IllegalArgumentException.class,
+            () -> phases.run("orphan", () -> { }, CompletableFuture.completedFuture(null)));
+    }
+
+    private void record(String name, long sleepMs) throws InterruptedException {
+        events.add(name + ":start");
+        Thread.sleep(sleepMs);
+        events.add(name + ":end");
+    }
+
+    private static void awaitBoth(CountDownLatch bothRunning) throws Exception {
+        bothRunning.countDown();
+        if (!bothRunning.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Phases did not run concurrently");
+        }
+    }
+}
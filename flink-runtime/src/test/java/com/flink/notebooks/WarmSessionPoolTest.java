@@ -0,0 +1,137 @@
+package com.flink.notebooks;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.gateway.api.session.SessionEnvironment;
+import org.apache.flink.table.gateway.api.session.SessionHandle;
+import org.apache.flink.table.gateway.rest.util.SqlGatewayRestAPIVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WarmSessionPoolTest {
+
+    private final List<SessionEnvironment> opened = new CopyOnWriteArrayList<>();
+    private final List<String> configured = new CopyOnWriteArrayList<>();
+    private WarmSessionPool pool;
+
+    @AfterEach
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void splitsStatementsAtLineEndSemicolons() {
+        String script = "-- set up\n"
+            + "CREATE TEMPORARY TABLE t (id INT)\n"
+            + "WITH ('connector' = 'datagen');\n"
+            + "\n"
+            + "SELECT ';' AS semicolon; SELECT 2\n"
+            + "  FROM t;\n"
+            + "SELECT 3";
+        assertEquals(List.of(
+                "CREATE TEMPORARY TABLE t (id INT)\nWITH ('connector' = 'datagen')",
+                "SELECT ';' AS semicolon; SELECT 2\n  FROM t",
+                "SELECT 3"),
+            WarmSessionPool.splitStatements(script));
+    }
+
+    @Test
+    void splitsNothingFromCommentsAndBlankLines() {
+        assertEquals(List.of(), WarmSessionPool.splitStatements("\n  -- only a comment\n\n"));
+    }
+
+    @Test
+    void disabledByDefault() {
+        pool = new WarmSessionPool(new FakeService(), new Configuration());
+        pool.start();
+        assertNull(pool.take(environment("notebook-session")));
+        assertEquals(List.of(), opened);
+    }
+
+    @Test
+    void handsOutPooledSessionsOnlyForTheirName() throws Exception {
+        Configuration config = new Configuration();
+        config.set(WarmSessionPool.SIZE, 1);
+        pool = new WarmSessionPool(new FakeService(), config);
+
+        // A request for another session name neither takes nor fills the pool
+        assertNull(pool.take(environment("etl")));
+        assertNull(pool.take(SessionEnvironment.newBuilder()
+            .setSessionEndpointVersion(SqlGatewayRestAPIVersion.V1).build()));
+        Thread.sleep(100);
+        assertEquals(List.of(), opened);
+
+        // The first matching request finds the pool empty and fills it
+        assertNull(pool.take(environment("notebook-session")));
+        SessionHandle session = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (session == null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            session = pool.take(environment("notebook-session", Map.of("execution.runtime-mode", "batch")));
+        }
+        assertNotNull(session);
+        assertEquals("notebook-session", opened.get(0).getSessionName().orElse(null));
+        assertEquals(List.of("SET 'execution.runtime-mode' = 'batch';\n"), configured);
+    }
+
+    private static SessionEnvironment environment(String name) {
+        return environment(name, Collections.emptyMap());
+    }
+
+    private static SessionEnvironment environment(String name, Map<String, String> properties) {
+        return SessionEnvironment.newBuilder()
+            .setSessionEndpointVersion(SqlGatewayRestAPIVersion.V1)
+            .setSessionName(name)
+            .addSessionConfig(properties)
+            .build();
+    }
+
+    private class FakeService extends NotebookGatewayService {
+
+        FakeService() {
+            super(null);
+        }
+
+        @Override
+        public SessionHandle openUnpooledSession(SessionEnvironment environment) {
+            opened.add(environment);
+            return SessionHandle.create();
+        }
+
+        @Override
+        public String getCurrentCatalog(SessionHandle sessionHandle) {
+            return "default_catalog";
+        }
+
+        @Override
+        public Set<String> listDatabases(SessionHandle sessionHandle, String catalogName) {
+            return Set.of("default_database");
+        }
+
+        @Override
+        public Map<String, String> getSessionConfig(SessionHandle sessionHandle) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void configureSession(SessionHandle sessionHandle, String statement, long executionTimeoutMs) {
+            configured.add(statement);
+        }
+
+        @Override
+        public void closeSession(SessionHandle sessionHandle) {
+        }
+    }
+}
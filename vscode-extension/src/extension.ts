@@ -37,10 +37,15 @@ export async function activate(context: vscode.ExtensionContext) {
   // Get configuration
   const config = vscode.workspace.getConfiguration('flink-notebooks');
   const gatewayPort = config.get<number>('gatewayPort', 8083);
+  const runnerPort = config.get<number>('runnerPort', 8084);
+  const resultFormat = config.get<string>('resultFormat', 'columnar');
+  const resultStore = config.get<string>('resultStore', 'gateway');
   const javaPath = config.get<string>('javaPath');
   const jvmMemory = config.get<string>('jvmMemory');
   const parallelism = config.get<number>('parallelism');
   const taskSlots = config.get<number>('taskSlots');
+  const taskManagers = config.get<number>('taskManagers');
+  const autoSizeTopology = config.get<boolean>('autoSizeTopology', false);
   const jarPath = config.get<string>('miniclusterJarPath');
   const connectorLibraryPath = config.get<string>('connectorLibraryPath');
 
@@ -50,7 +55,11 @@ export async function activate(context: vscode.ExtensionContext) {
     jvmMemory: jvmMemory || undefined,
     parallelism: parallelism || undefined,
     taskSlots: taskSlots || undefined,
+    taskManagers: taskManagers || undefined,
+    autoSizeTopology,
     gatewayPort,
+    runnerPort,
+    resultStore: resultStore === 'spill' ? 'spill' : 'gateway',
     jarPath: jarPath || undefined,
     connectorLibraryPath: connectorLibraryPath || undefined,
   });
@@ -62,7 +71,11 @@ export async function activate(context: vscode.ExtensionContext) {
   });
 
   // Initialize SQL Gateway client
-  gatewayClient = new SqlGatewayClient(`http://localhost:${gatewayPort}`);
+  gatewayClient = new SqlGatewayClient(
+    `http://localhost:${gatewayPort}`,
+    `http://localhost:${runnerPort}`,
+    resultFormat === 'columnar' ? 'COLUMNAR' : 'JSON'
+  );
 
   // Initialize Flink Job REST client
   jobClient = new FlinkJobClient('http://localhost:8081');
@@ -244,7 +257,7 @@ function registerCommands(context: vscode.ExtensionContext) {
   // Refresh catalog
   context.subscriptions.push(
     vscode.commands.registerCommand('flink-notebooks.refreshCatalog', () => {
-      catalogTreeProvider.refresh();
+      catalogTreeProvider.refresh(true);
     })
   );
 
@@ -11,6 +11,7 @@ export class CatalogTreeProvider implements vscode.TreeDataProvider<CatalogTreeI
   readonly onDidChangeTreeData = this._onDidChangeTreeData.event;
 
   private catalogTree: CatalogNode[] | null = null;
+  private forceReload = false;
   private suppressNotifications: boolean = false;
 
   constructor(
@@ -70,8 +71,13 @@ export class CatalogTreeProvider implements vscode.TreeDataProvider<CatalogTreeI
     return false;
   }
 
-  refresh(): void {
+  /**
+   * Reload the tree. force also reloads the runner's cached metadata, for changes made
+   * outside this Flink cluster.
+   */
+  refresh(force: boolean = false): void {
     this.catalogTree = null;
+    this.forceReload = this.forceReload || force;
     this._onDidChangeTreeData.fire();
   }
 
@@ -103,7 +109,9 @@ export class CatalogTreeProvider implements vscode.TreeDataProvider<CatalogTreeI
 
         // Fetch catalog tree if not cached
         if (!this.catalogTree) {
-          this.catalogTree = await this.catalogService.getCatalogTree();
+          const force = this.forceReload;
+          this.forceReload = false;
+          this.catalogTree = await this.catalogService.getCatalogTree(force);
         }
 
         if (!this.catalogTree || this.catalogTree.length === 0) {
@@ -21,6 +21,12 @@ interface StreamingCellInfo {
   paused: boolean;
 }
 
+/** Client-side copy of a runner materialized view: rows by id, in first-seen order. */
+interface MaterializedViewState {
+  version: number;
+  rows: Map<number, unknown>;
+}
+
 export class FlinkNotebookController {
   private controller: vscode.NotebookController;
   private executionOrder = 0;
@@ -165,7 +171,7 @@ export class FlinkNotebookController {
       let fetchAttempts = 0;
       const maxFetchAttempts = 60; // Wait up to 30 seconds for results to be ready
       const fetchRetryDelay = 500; // 500ms between retries
-      let firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+      let firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token);
 
       while (fetchAttempts < maxFetchAttempts) {
         console.log(`Fetch attempt ${fetchAttempts + 1}/${maxFetchAttempts} (token ${token}):`);
@@ -199,14 +205,14 @@ export class FlinkNotebookController {
               console.log(`Token ${token} empty, advancing to token ${nextUriToken}`);
               token = nextUriToken;
               fetchAttempts++;
-              firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+              firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token);
               continue;
             } else {
               // nextResultUri points to same or earlier token - this means we're waiting for data
               console.log(`Empty PAYLOAD at token ${token}, nextResultUri=${firstResult.nextResultUri}, waiting...`);
               await new Promise((resolve) => setTimeout(resolve, fetchRetryDelay));
               fetchAttempts++;
-              firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+              firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token);
               continue;
             }
           } else {
@@ -214,7 +220,7 @@ export class FlinkNotebookController {
             console.log(`Empty PAYLOAD at token ${token}, no nextResultUri, waiting for data...`);
             await new Promise((resolve) => setTimeout(resolve, fetchRetryDelay));
             fetchAttempts++;
-            firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+            firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token);
             continue;
           }
         }
@@ -224,7 +230,7 @@ export class FlinkNotebookController {
           console.log(`NOT_READY at token ${token}, waiting for materialization...`);
           await new Promise((resolve) => setTimeout(resolve, fetchRetryDelay));
           fetchAttempts++;
-          firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+          firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token);
           continue;
         }
 
@@ -232,7 +238,7 @@ export class FlinkNotebookController {
         console.log(`Unexpected state: resultType=${firstResult.resultType}, retrying...`);
         await new Promise((resolve) => setTimeout(resolve, fetchRetryDelay));
         fetchAttempts++;
-        firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+        firstResult = await this.gatewayClient.fetchResults(sessionId, statementId, token);
       }
 
       if (fetchAttempts >= maxFetchAttempts) {
@@ -288,6 +294,9 @@ export class FlinkNotebookController {
         // Display first batch immediately
         this.updateStreamingOutput(cell, execution, rows, columns);
 
+        // A materialized view re-reads the first batch itself
+        const firstToken = token;
+
         // Extract next token
         let nextToken = firstResult.nextResultUri;
         if (nextToken && nextToken.includes('/')) {
@@ -304,7 +313,8 @@ export class FlinkNotebookController {
           statementId,
           rows,
           columns,
-          token
+          token,
+          firstToken
         );
       } else {
         // Batch query - fetch remaining results
@@ -374,7 +384,7 @@ export class FlinkNotebookController {
 
     while (!isComplete) {
       console.log(`Fetching batch results: token=${token}`);
-      const result = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+      const result = await this.gatewayClient.fetchResults(sessionId, statementId, token);
 
       const rawData = result.results?.data || result.data || [];
       if (rawData.length > 0 && columns) {
@@ -407,6 +417,64 @@ export class FlinkNotebookController {
     this.updateCellOutput(cell, execution, rows, columns);
   }
 
+  /**
+   * Open a materialized view for a streaming query, if enabled. Returns undefined when the
+   * results should be read as a changelog instead.
+   */
+  private async openMaterializedView(
+    sessionId: string,
+    statementId: string,
+    firstToken: number
+  ): Promise<MaterializedViewState | undefined> {
+    const config = vscode.workspace.getConfiguration('flink-notebooks');
+    if (config.get<string>('streamingResultMode', 'changelog') !== 'materialized') {
+      return undefined;
+    }
+    try {
+      await this.gatewayClient.openMaterializedView(sessionId, statementId, firstToken);
+      return { version: 0, rows: new Map() };
+    } catch (error: any) {
+      console.log(`Materialized view unavailable (${error.message}), reading the changelog`);
+      return undefined;
+    }
+  }
+
+  /**
+   * Apply the view's changes since the last poll to rows.
+   *
+   * @returns Whether rows changed, and whether the result is complete
+   */
+  private async pollMaterializedView(
+    view: MaterializedViewState,
+    sessionId: string,
+    statementId: string,
+    rows: unknown[],
+    columns: any[] | undefined
+  ): Promise<{ changed: boolean; complete: boolean }> {
+    const result = await this.gatewayClient.fetchMaterializedView(sessionId, statementId, view.version);
+    if (result.resultType === 'NOT_READY') {
+      return { changed: false, complete: false };
+    }
+
+    const data = result.results?.data || [];
+    const deletes = result.deletes || [];
+    const changed = result.snapshot === true || data.length > 0 || deletes.length > 0;
+    if (changed) {
+      if (result.snapshot) {
+        view.rows.clear();
+      }
+      deletes.forEach((id) => view.rows.delete(id));
+      const viewColumns = result.results?.columns?.length ? result.results.columns : columns || [];
+      const transformed = this.transformRows(data, viewColumns);
+      (result.ids || []).forEach((id, index) => view.rows.set(id, transformed[index]));
+
+      rows.length = 0;
+      rows.push(...view.rows.values());
+    }
+    view.version = result.version;
+    return { changed, complete: result.resultType === 'EOS' };
+  }
+
   /**
    * Fetch streaming results with continuous polling
    */
@@ -417,7 +485,8 @@ export class FlinkNotebookController {
     statementId: string,
     rows: unknown[],
     columns: any[] | undefined,
-    startToken: number
+    startToken: number,
+    firstToken: number = 0
   ): Promise<void> {
     let token = startToken;
     let isComplete = false;
@@ -429,6 +498,9 @@ export class FlinkNotebookController {
 
     console.log(`Starting streaming results for cell ${cellKey}`);
 
+    // In materialized mode the runner compacts the changelog and rows hold the current result
+    const view = await this.openMaterializedView(sessionId, statementId, firstToken);
+
     while (!isComplete) {
       // Check if stop was requested
       const streamingInfo = this.streamingCells.get(cellKey);
@@ -460,7 +532,22 @@ export class FlinkNotebookController {
       }
 
       try {
-        const result = await this.gatewayClient.fetchResults(sessionId, statementId, token, 100);
+        if (view) {
+          const update = await this.pollMaterializedView(view, sessionId, statementId, rows, columns);
+          if (update.changed) {
+            this.updateStreamingOutput(cell, execution, rows, columns);
+            await this.updateCellMetadata(cell, {
+              total_rows_fetched: rows.length,
+            });
+          }
+          isComplete = update.complete;
+          if (!isComplete) {
+            await new Promise((resolve) => setTimeout(resolve, pollInterval));
+          }
+          continue;
+        }
+
+        const result = await this.gatewayClient.fetchResults(sessionId, statementId, token);
         const rawData = result.results?.data || result.data || [];
 
         // Transform and append new rows
@@ -577,6 +664,9 @@ export class FlinkNotebookController {
 
     // Clean up streaming tracking
     this.streamingCells.delete(cellKey);
+    if (view) {
+      this.gatewayClient.closeMaterializedView(sessionId, statementId).catch(() => undefined);
+    }
 
     console.log(`Streaming completed for cell ${cellKey}: ${rows.length} total rows`);
   }
@@ -1,9 +1,10 @@
 /**
  * Flink Catalog integration service
- * Queries Flink SQL Gateway to list catalogs, databases, and tables
+ * Reads catalogs, databases, and tables from the runner's metadata endpoint, or by running
+ * SHOW/DESCRIBE statements through the SQL Gateway when the runner is not available
  */
 
-import { SqlGatewayClient } from './sqlGatewayClient';
+import { SqlGatewayClient, CatalogTreeResult } from './sqlGatewayClient';
 
 export interface Database {
   name: string;
@@ -86,7 +87,7 @@ export class CatalogService {
     let isComplete = false;
 
     while (!isComplete) {
-      const fetchResult = await this.gatewayClient.fetchResults(sessionId, operationHandle, token, 100);
+      const fetchResult = await this.gatewayClient.fetchResults(sessionId, operationHandle, token);
       const rawData = fetchResult.results?.data || fetchResult.data || [];
       const columns = fetchResult.results?.columns || [];
 
@@ -190,6 +191,23 @@ export class CatalogService {
    * Get detailed table information
    */
   async getTable(catalog: string, database: string, table: string): Promise<Table> {
+    try {
+      const sessionId = await this.getSessionId();
+      const columns = await this.gatewayClient.getTableColumns(sessionId, catalog, database, table);
+      return {
+        name: table,
+        database,
+        catalog,
+        schema: columns.map(column => ({
+          column_name: column.name,
+          data_type: column.nullable ? column.type : `${column.type} NOT NULL`,
+          comment: column.comment ?? undefined,
+        })),
+      };
+    } catch (error) {
+      console.log(`Catalog metadata endpoint unavailable, using DESCRIBE: ${error instanceof Error ? error.message : error}`);
+    }
+
     try {
       // Use the catalog and database
       await this.executeSqlQuery(`USE CATALOG \`${catalog}\``);
@@ -221,9 +239,18 @@ export class CatalogService {
   }
 
   /**
-   * Build the complete catalog tree hierarchy
+   * Build the complete catalog tree hierarchy. The runner serves it in one call from its
+   * metadata cache; refresh bypasses the cache.
    */
-  async getCatalogTree(): Promise<CatalogNode[]> {
+  async getCatalogTree(refresh: boolean = false): Promise<CatalogNode[]> {
+    try {
+      const sessionId = await this.getSessionId();
+      const tree = await this.gatewayClient.getCatalogTree(sessionId, { refresh });
+      return this.toCatalogNodes(tree);
+    } catch (error) {
+      console.log(`Catalog metadata endpoint unavailable, using SHOW statements: ${error instanceof Error ? error.message : error}`);
+    }
+
     try {
       const catalogNames = await this.listCatalogs();
       const catalogNodes: CatalogNode[] = [];
@@ -283,4 +310,37 @@ export class CatalogService {
       throw error;
     }
   }
+
+  private toCatalogNodes(tree: CatalogTreeResult): CatalogNode[] {
+    return tree.catalogs.map(catalog => {
+      if (catalog.error) {
+        console.warn(`Failed to list databases in catalog ${catalog.name}: ${catalog.error}`);
+      }
+      return {
+        type: 'catalog' as const,
+        name: catalog.name,
+        children: (catalog.databases || []).map(db => {
+          if (db.error) {
+            console.warn(`Failed to list tables in ${catalog.name}.${db.name}: ${db.error}`);
+          }
+          return {
+            type: 'database' as const,
+            name: db.name,
+            metadata: {
+              catalog: catalog.name,
+            },
+            children: (db.tables || []).map(table => ({
+              type: 'table' as const,
+              name: table.name,
+              metadata: {
+                catalog: catalog.name,
+                database: db.name,
+                table_type: table.kind,
+              },
+            })),
+          };
+        }),
+      };
+    });
+  }
 }
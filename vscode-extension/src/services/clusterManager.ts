@@ -20,7 +20,11 @@ export interface ClusterConfig {
   jvmMemory?: string;
   parallelism?: number;
   taskSlots?: number;
+  taskManagers?: number;
+  autoSizeTopology?: boolean;
   gatewayPort?: number;
+  runnerPort?: number;
+  resultStore?: 'gateway' | 'spill';
   jarPath?: string;
   connectorLibraryPath?: string;
 }
@@ -37,6 +41,8 @@ export class ClusterManager {
   private config: Required<ClusterConfig>;
   private crashHandlers: Array<(exitCode: number | null) => void> = [];
   private logger?: Logger;
+  /** java.runtime.version of the Java executable, read once. */
+  private javaVersion?: Promise<string | undefined>;
 
   constructor(config: ClusterConfig = {}) {
     this.config = {
@@ -44,7 +50,11 @@ export class ClusterManager {
       jvmMemory: config.jvmMemory || '1024m',
       parallelism: config.parallelism || 2,
       taskSlots: config.taskSlots || 2,
+      taskManagers: config.taskManagers || 1,
+      autoSizeTopology: config.autoSizeTopology || false,
       gatewayPort: config.gatewayPort || 8083,
+      runnerPort: config.runnerPort || 8084,
+      resultStore: config.resultStore || 'gateway',
       jarPath: config.jarPath || this.findJarPath(),
       connectorLibraryPath: config.connectorLibraryPath || '',
     };
@@ -77,6 +87,48 @@ export class ClusterManager {
     return path.resolve(jarPath);
   }
 
+  /**
+   * The AppCDS archive `./gradlew cdsArchive` writes next to the JAR, if it is at least as new
+   * as the JAR and was built by the JDK the runner starts with. The JVM would only warn about
+   * a mismatched archive and map nothing from it.
+   */
+  private async findCdsArchive(): Promise<string | undefined> {
+    const archivePath = path.join(path.dirname(this.config.jarPath), 'flink-minicluster.jsa');
+    try {
+      const archive = fs.statSync(archivePath);
+      const jar = fs.statSync(this.config.jarPath);
+      if (archive.mtimeMs < jar.mtimeMs) {
+        return undefined;
+      }
+      const archiveJdk = fs.readFileSync(`${archivePath}.jdk`, 'utf8').trim();
+      return archiveJdk !== '' && archiveJdk === (await this.javaRuntimeVersion()) ? archivePath : undefined;
+    } catch {
+      return undefined;
+    }
+  }
+
+  /**
+   * java.runtime.version of the configured Java executable, or undefined if it cannot be read.
+   */
+  private javaRuntimeVersion(): Promise<string | undefined> {
+    if (this.javaVersion === undefined) {
+      this.javaVersion = new Promise((resolve) => {
+        let output = '';
+        const java = spawn(this.config.javaPath, ['-XshowSettings:properties', '-version'], {
+          timeout: 10000,
+        });
+        java.stdout.on('data', (data) => (output += data.toString()));
+        java.stderr.on('data', (data) => (output += data.toString()));
+        java.on('error', () => resolve(undefined));
+        java.on('close', () => {
+          const match = /^\s*java\.runtime\.version = (\S+)/m.exec(output);
+          resolve(match ? match[1] : undefined);
+        });
+      });
+    }
+    return this.javaVersion;
+  }
+
   private getFlinkConfDir(): string {
     // From JAR path, go up to flink-runtime root, then to conf/
     const jarPath = this.config.jarPath;
@@ -200,18 +252,36 @@ export class ClusterManager {
     // Build classpath: main JAR + connector JARs
     const classpath = [this.config.jarPath, ...connectorJars].join(path.delimiter);
 
-    const args = [
-      `-Xmx${memoryArg}`,
+    const args = [`-Xmx${memoryArg}`];
+
+    // Map the classes a runner start loads from the AppCDS archive built next to the JAR
+    const cdsArchive = await this.findCdsArchive();
+    if (cdsArchive) {
+      args.push(`-XX:SharedArchiveFile=${cdsArchive}`);
+    }
+
+    args.push(
       '-cp',
       classpath,
       'com.flink.notebooks.MiniClusterRunner',
-      '--parallelism',
-      String(parallelismArg),
       '--taskslots',
       String(this.config.taskSlots),
+      '--taskmanagers',
+      String(this.config.taskManagers),
       '--gateway-port',
       String(this.config.gatewayPort),
-    ];
+      '--runner-port',
+      String(this.config.runnerPort),
+      '--result-store',
+      this.config.resultStore
+    );
+
+    // With auto-sizing the runner derives parallelism from the core count
+    if (this.config.autoSizeTopology) {
+      args.push('--auto-size');
+    } else {
+      args.push('--parallelism', String(parallelismArg));
+    }
 
     const env: NodeJS.ProcessEnv = {
       ...process.env,
@@ -226,6 +296,7 @@ export class ClusterManager {
     console.log(`Starting MiniCluster: ${this.config.javaPath} -cp <classpath> com.flink.notebooks.MiniClusterRunner ...`);
     console.log(`FLINK_CONF_DIR: ${flinkConfDir}`);
     console.log(`Connector JARs: ${connectorJars.length} JAR(s) added to classpath`);
+    console.log(`CDS archive: ${cdsArchive ?? 'none'}`);
     if (this.logger) {
       this.logger.log(`Starting MiniCluster with ${connectorJars.length} connector JAR(s) in classpath`);
       this.logger.log(`Connector library directory: ${connectorLibDir}`);
@@ -0,0 +1,217 @@
+/**
+ * Decoder for the runner's columnar row format (rowFormat=COLUMNAR).
+ *
+ * See ColumnarResultEncoder in flink-runtime for the layout. Values are decoded into the
+ * same shapes the gateway's JSON row format produces, so callers can treat both alike.
+ */
+
+import { ColumnInfo } from './sqlGatewayClient';
+
+export const COLUMNAR_CONTENT_TYPE = 'application/vnd.flink-notebooks.columnar';
+
+const MAGIC = 0x31434e46; // "FNC1"
+const ROW_KINDS = ['INSERT', 'UPDATE_BEFORE', 'UPDATE_AFTER', 'DELETE'];
+
+const TYPE_NULL = 0;
+const TYPE_BOOLEAN = 1;
+const TYPE_TINYINT = 2;
+const TYPE_SMALLINT = 3;
+const TYPE_INT = 4;
+const TYPE_BIGINT = 5;
+const TYPE_FLOAT = 6;
+const TYPE_DOUBLE = 7;
+const TYPE_DECIMAL = 8;
+const TYPE_STRING = 9;
+const TYPE_BINARY = 10;
+const TYPE_DATE = 11;
+const TYPE_TIME = 12;
+const TYPE_TIMESTAMP = 13;
+const TYPE_TIMESTAMP_LTZ = 14;
+
+export interface ColumnarBatch {
+  /** Undefined for a batch sent without column descriptions (format version 2, schema=once). */
+  columns?: ColumnInfo[];
+  data: { kind: string; fields: unknown[] }[];
+}
+
+const utf8 = new TextDecoder('utf-8');
+
+export function decodeColumnar(buffer: ArrayBuffer | Uint8Array): ColumnarBatch {
+  const bytes = buffer instanceof Uint8Array ? buffer : new Uint8Array(buffer);
+  const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+  let pos = 0;
+
+  const readInt = (): number => {
+    const value = view.getInt32(pos, true);
+    pos += 4;
+    return value;
+  };
+  const readString = (): string => {
+    const length = readInt();
+    const value = utf8.decode(bytes.subarray(pos, pos + length));
+    pos += length;
+    return value;
+  };
+
+  if (readInt() !== MAGIC) {
+    throw new Error('Not a columnar result batch');
+  }
+  const version = bytes[pos++];
+  if (version !== 1 && version !== 2) {
+    throw new Error(`Unsupported columnar format version ${version}`);
+  }
+
+  const columnCount = readInt();
+  const rowCount = readInt();
+
+  const columns: ColumnInfo[] | undefined = version === 1 ? [] : undefined;
+  const tags: number[] = [];
+  for (let c = 0; c < columnCount; c++) {
+    if (!columns) {
+      tags.push(bytes[pos++]);
+      continue;
+    }
+    const name = readString();
+    tags.push(bytes[pos++]);
+    const type = readString();
+    const nullable = bytes[pos++] === 1;
+    columns.push({ name, logicalType: { type, nullable } });
+  }
+
+  const data = new Array(rowCount);
+  for (let r = 0; r < rowCount; r++) {
+    data[r] = { kind: ROW_KINDS[bytes[pos++]] || 'INSERT', fields: new Array(columnCount) };
+  }
+
+  const bitmapLength = (rowCount + 7) >> 3;
+  const isSet = (bitmapStart: number, r: number): boolean =>
+    (bytes[bitmapStart + (r >> 3)] & (1 << (r & 7))) !== 0;
+
+  for (let c = 0; c < columnCount; c++) {
+    const validity = pos;
+    pos += bitmapLength;
+    const set = (r: number, value: unknown): void => {
+      data[r].fields[c] = isSet(validity, r) ? value : null;
+    };
+
+    switch (tags[c]) {
+      case TYPE_NULL:
+        for (let r = 0; r < rowCount; r++) {
+          data[r].fields[c] = null;
+        }
+        break;
+      case TYPE_BOOLEAN: {
+        const bits = pos;
+        pos += bitmapLength;
+        for (let r = 0; r < rowCount; r++) {
+          set(r, isSet(bits, r));
+        }
+        break;
+      }
+      case TYPE_TINYINT:
+        for (let r = 0; r < rowCount; r++, pos += 1) {
+          set(r, view.getInt8(pos));
+        }
+        break;
+      case TYPE_SMALLINT:
+        for (let r = 0; r < rowCount; r++, pos += 2) {
+          set(r, view.getInt16(pos, true));
+        }
+        break;
+      case TYPE_INT:
+        for (let r = 0; r < rowCount; r++, pos += 4) {
+          set(r, view.getInt32(pos, true));
+        }
+        break;
+      case TYPE_DATE:
+        for (let r = 0; r < rowCount; r++, pos += 4) {
+          set(r, formatDate(view.getInt32(pos, true)));
+        }
+        break;
+      case TYPE_TIME:
+        for (let r = 0; r < rowCount; r++, pos += 4) {
+          set(r, formatTime(view.getInt32(pos, true)));
+        }
+        break;
+      case TYPE_BIGINT:
+        for (let r = 0; r < rowCount; r++, pos += 8) {
+          set(r, Number(view.getBigInt64(pos, true)));
+        }
+        break;
+      case TYPE_FLOAT:
+        for (let r = 0; r < rowCount; r++, pos += 4) {
+          set(r, view.getFloat32(pos, true));
+        }
+        break;
+      case TYPE_DOUBLE:
+        for (let r = 0; r < rowCount; r++, pos += 8) {
+          set(r, view.getFloat64(pos, true));
+        }
+        break;
+      case TYPE_TIMESTAMP:
+      case TYPE_TIMESTAMP_LTZ: {
+        const suffix = tags[c] === TYPE_TIMESTAMP_LTZ ? 'Z' : '';
+        for (let r = 0; r < rowCount; r++, pos += 12) {
+          const millis = Number(view.getBigInt64(pos, true));
+          const nanoOfMilli = view.getInt32(pos + 8, true);
+          set(r, formatTimestamp(millis, nanoOfMilli) + suffix);
+        }
+        break;
+      }
+      case TYPE_STRING:
+      case TYPE_BINARY:
+      case TYPE_DECIMAL: {
+        const offsets = pos;
+        const values = offsets + (rowCount + 1) * 4;
+        for (let r = 0; r < rowCount; r++) {
+          const start = values + view.getInt32(offsets + r * 4, true);
+          const end = values + view.getInt32(offsets + (r + 1) * 4, true);
+          const slice = bytes.subarray(start, end);
+          if (tags[c] === TYPE_STRING) {
+            set(r, utf8.decode(slice));
+          } else if (tags[c] === TYPE_BINARY) {
+            set(r, Buffer.from(slice).toString('base64'));
+          } else {
+            set(r, Number(utf8.decode(slice)));
+          }
+        }
+        pos = values + view.getInt32(offsets + rowCount * 4, true);
+        break;
+      }
+      default:
+        throw new Error(`Unknown column type tag ${tags[c]} for column ${columns?.[c].name ?? c}`);
+    }
+  }
+
+  return { columns, data };
+}
+
+function pad(value: number, width: number): string {
+  return String(value).padStart(width, '0');
+}
+
+function formatDate(epochDay: number): string {
+  const date = new Date(epochDay * 86400000);
+  return `${date.getUTCFullYear()}-${pad(date.getUTCMonth() + 1, 2)}-${pad(date.getUTCDate(), 2)}`;
+}
+
+function formatFraction(nanos: number): string {
+  if (nanos === 0) {
+    return '';
+  }
+  return '.' + pad(nanos, 9).replace(/0+$/, '');
+}
+
+// The gateway's JSON row format writes TIME as HH:mm:ss, without the fraction of a second
+function formatTime(millisOfDay: number): string {
+  const seconds = Math.floor(millisOfDay / 1000);
+  return `${pad(Math.floor(seconds / 3600), 2)}:${pad(Math.floor(seconds / 60) % 60, 2)}:${pad(seconds % 60, 2)}`;
+}
+
+function formatTimestamp(millis: number, nanoOfMilli: number): string {
+  const date = new Date(millis);
+  const nanos = (((millis % 1000) + 1000) % 1000) * 1000000 + nanoOfMilli;
+  return `${formatDate(Math.floor(millis / 86400000))}T` +
+    `${pad(date.getUTCHours(), 2)}:${pad(date.getUTCMinutes(), 2)}:${pad(date.getUTCSeconds(), 2)}` +
+    formatFraction(nanos);
+}
@@ -3,6 +3,7 @@
  */
 
 import axios, { AxiosInstance } from 'axios';
+import { COLUMNAR_CONTENT_TYPE, decodeColumnar } from './columnarDecoder';
 
 export interface SessionInfo {
   sessionHandle: string;
@@ -37,19 +38,105 @@ export interface ResultSet {
     data?: any[];
   };
   nextResultUri?: string;
+  recommendedMaxRows?: number; // Set by the runner endpoint
+  schemaVersion?: string; // Set by the runner endpoint with schema=once
   data?: any[]; // Legacy support
 }
 
+/**
+ * Snapshot or diff of a materialized result view on the runner. Apply deletes first, then
+ * upsert results.data by ids; a snapshot replaces all rows.
+ */
+export interface MaterializedViewResult {
+  resultType: string;
+  version: number;
+  snapshot?: boolean;
+  rowCount?: number;
+  keyColumns?: string[] | null;
+  results?: {
+    columns?: ColumnInfo[];
+    rowFormat?: string;
+    data?: any[];
+  };
+  ids?: number[];
+  deletes?: number[];
+}
+
+/**
+ * Catalog metadata tree from the runner. Nodes that could not be listed carry an error
+ * instead of their children.
+ */
+export interface CatalogTreeResult {
+  currentCatalog: string;
+  catalogs: Array<{
+    name: string;
+    error?: string;
+    databases?: Array<{
+      name: string;
+      error?: string;
+      tables?: Array<{
+        name: string;
+        kind: string;
+        error?: string;
+        columns?: CatalogColumn[];
+      }>;
+    }>;
+  }>;
+}
+
+export interface CatalogColumn {
+  name: string;
+  type: string;
+  nullable: boolean;
+  comment?: string | null;
+  primaryKey: boolean;
+}
+
+/** Batch size for the first gateway fetch of an operation. */
+const DEFAULT_FETCH_ROWS = 100;
+/** Upper bound when growing gateway batch sizes on the client. */
+const MAX_FETCH_ROWS = 10000;
+/** Byte budget per runner fetch; the runner converts it to rows from the observed row width. */
+const MAX_FETCH_BYTES = 4 * 1024 * 1024;
+/** How long the runner may hold a fetch open to fill the batch while the job is producing. */
+const MAX_FETCH_WAIT_MS = 250;
+
+export type RowFormat = 'JSON' | 'COLUMNAR';
+
 export class SqlGatewayClient {
   private client: AxiosInstance;
   private baseUrl: string;
+  private runnerClient?: AxiosInstance;
+  private rowFormat: RowFormat;
+  /** Cleared once the runner endpoint turns out to be unreachable; results then come from the gateway. */
+  private runnerFetch: boolean;
+  private batchSizes = new Map<string, number>();
+  private schemas = new Map<string, { version: string; columns: ColumnInfo[] }>();
 
-  constructor(baseUrl: string = 'http://localhost:8083') {
+  /**
+   * @param baseUrl SQL Gateway REST endpoint
+   * @param runnerUrl MiniClusterRunner endpoint, used for result fetches, materialized views and catalog metadata
+   * @param rowFormat Row format for result fetches; the COLUMNAR format needs the runner. Fetches fall back to
+   *     the gateway's JSON row format if the runner is unavailable
+   */
+  constructor(
+    baseUrl: string = 'http://localhost:8083',
+    runnerUrl?: string,
+    rowFormat: RowFormat = 'JSON'
+  ) {
     this.baseUrl = baseUrl;
     this.client = axios.create({
       baseURL: this.baseUrl,
       timeout: 30000,
     });
+    this.rowFormat = runnerUrl ? rowFormat : 'JSON';
+    this.runnerFetch = runnerUrl !== undefined;
+    if (runnerUrl) {
+      this.runnerClient = axios.create({
+        baseURL: runnerUrl,
+        timeout: 30000,
+      });
+    }
   }
 
   // Gateway info
@@ -121,24 +208,240 @@ export class SqlGatewayClient {
     return response.data;
   }
 
+  /**
+   * Fetch the next batch of results. Without maxRows the batch size adapts per operation:
+   * the runner recommends one from row width, buffered rows and drain rate, and gateway
+   * fetches double their size while batches come back full.
+   */
   async fetchResults(
     sessionHandle: string,
     operationHandle: string,
     token: number = 0,
-    maxRows: number = 100
+    maxRows?: number
   ): Promise<ResultSet> {
+    const result = await this.fetchBatch(
+      sessionHandle,
+      operationHandle,
+      token,
+      maxRows ?? this.batchSizes.get(operationHandle)
+    );
+
+    if (result.resultType === 'EOS' || !result.nextResultUri) {
+      this.batchSizes.delete(operationHandle);
+      this.schemas.delete(operationHandle);
+    } else if (result.recommendedMaxRows) {
+      this.batchSizes.set(operationHandle, result.recommendedMaxRows);
+    } else {
+      const requested = maxRows ?? this.batchSizes.get(operationHandle) ?? DEFAULT_FETCH_ROWS;
+      const returned = (result.results?.data || result.data || []).length;
+      if (returned >= requested) {
+        this.batchSizes.set(operationHandle, Math.min(requested * 2, MAX_FETCH_ROWS));
+      }
+    }
+    return result;
+  }
+
+  private async fetchBatch(
+    sessionHandle: string,
+    operationHandle: string,
+    token: number,
+    maxRows: number | undefined
+  ): Promise<ResultSet> {
+    if (this.runnerFetch && this.runnerClient) {
+      try {
+        return this.rowFormat === 'COLUMNAR'
+          ? await this.fetchResultsColumnar(sessionHandle, operationHandle, token, maxRows)
+          : await this.fetchResultsJson(sessionHandle, operationHandle, token, maxRows);
+      } catch (error: any) {
+        if (!error.response || error.response.status === 404) {
+          // Runner endpoint not reachable (e.g. external gateway); use the gateway from now on
+          console.log(`Runner fetch unavailable (${error.message}), fetching results from the gateway`);
+          this.runnerFetch = false;
+        }
+        // Otherwise let the gateway report the error for this fetch
+      }
+    }
+
     const response = await this.client.get(
       `/v1/sessions/${sessionHandle}/operations/${operationHandle}/result/${token}`,
       {
         params: {
           rowFormat: 'JSON',
+          maxRows: maxRows ?? DEFAULT_FETCH_ROWS,
+        },
+      }
+    );
+    return response.data;
+  }
+
+  /**
+   * Remember the columns of a schema=once JSON page, or put the remembered ones back into a
+   * page sent without them, so callers always see results.columns.
+   */
+  private withSchema(operationHandle: string, result: ResultSet): ResultSet {
+    if (!result.schemaVersion || !result.results) {
+      return result;
+    }
+    if (result.results.columns) {
+      this.schemas.set(operationHandle, { version: result.schemaVersion, columns: result.results.columns });
+    } else {
+      result.results.columns = this.schemas.get(operationHandle)?.columns;
+    }
+    return result;
+  }
+
+  /**
+   * Fetch a result batch in the JSON row format from the runner, which leaves out the
+   * columns once we hold them (schema=once).
+   */
+  private async fetchResultsJson(
+    sessionHandle: string,
+    operationHandle: string,
+    token: number,
+    maxRows: number | undefined
+  ): Promise<ResultSet> {
+    const response = await this.runnerClient!.get(
+      `/v1/sessions/${sessionHandle}/operations/${operationHandle}/result/${token}`,
+      {
+        params: {
+          rowFormat: 'JSON',
+          maxRows,
+          maxBytes: MAX_FETCH_BYTES,
+          maxWaitMs: MAX_FETCH_WAIT_MS,
+          schema: 'once',
+          schemaVersion: this.schemas.get(operationHandle)?.version,
+        },
+      }
+    );
+    return this.withSchema(operationHandle, response.data);
+  }
+
+  /**
+   * Fetch a result batch in the runner's columnar row format and decode it into the
+   * gateway's JSON response shape.
+   */
+  private async fetchResultsColumnar(
+    sessionHandle: string,
+    operationHandle: string,
+    token: number,
+    maxRows: number | undefined
+  ): Promise<ResultSet> {
+    // Without maxRows the runner picks the batch size itself. Batches, and JSON answers (see
+    // below), carry the columns only until the runner knows we hold them.
+    const response = await this.runnerClient!.get(
+      `/v1/sessions/${sessionHandle}/operations/${operationHandle}/result/${token}`,
+      {
+        params: {
+          rowFormat: 'COLUMNAR',
           maxRows,
+          maxBytes: MAX_FETCH_BYTES,
+          maxWaitMs: MAX_FETCH_WAIT_MS,
+          schema: 'once',
+          schemaVersion: this.schemas.get(operationHandle)?.version,
         },
+        responseType: 'arraybuffer',
       }
     );
+
+    const body = Buffer.from(response.data);
+    const contentType = String(response.headers['content-type'] || '');
+    if (!contentType.startsWith(COLUMNAR_CONTENT_TYPE)) {
+      // Result has types the columnar format does not cover; the runner answered with JSON
+      return this.withSchema(operationHandle, JSON.parse(body.toString('utf-8')));
+    }
+
+    const batch = decodeColumnar(body);
+    const header = (name: string): string | undefined => {
+      const value = response.headers[name];
+      return value === undefined || value === null ? undefined : String(value);
+    };
+    return this.withSchema(operationHandle, {
+      resultType: header('x-result-type'),
+      isQueryResult: header('x-is-query-result') === 'true',
+      jobID: header('x-job-id'),
+      resultKind: header('x-result-kind'),
+      results: {
+        columns: batch.columns,
+        rowFormat: 'COLUMNAR',
+        data: batch.data,
+      },
+      nextResultUri: header('x-next-result-uri'),
+      recommendedMaxRows: Number(header('x-recommended-max-rows')) || undefined,
+      schemaVersion: header('x-schema-version'),
+    });
+  }
+
+  /**
+   * Have the runner consume an operation's changelog into a materialized view, starting at
+   * the given result token. Without keyColumns the result's primary key is used if it has
+   * one, otherwise rows are matched by content. Returns the view's current version.
+   */
+  async openMaterializedView(
+    sessionHandle: string,
+    operationHandle: string,
+    token: number = 0,
+    keyColumns?: string[]
+  ): Promise<number> {
+    const response = await this.runner().post(
+      `/v1/sessions/${sessionHandle}/operations/${operationHandle}/view`,
+      { token, key: keyColumns }
+    );
+    return response.data.version;
+  }
+
+  /**
+   * Rows changed since the given view version, or a snapshot for version 0.
+   */
+  async fetchMaterializedView(
+    sessionHandle: string,
+    operationHandle: string,
+    since: number
+  ): Promise<MaterializedViewResult> {
+    const response = await this.runner().get(
+      `/v1/sessions/${sessionHandle}/operations/${operationHandle}/view`,
+      { params: { since } }
+    );
+    return response.data;
+  }
+
+  async closeMaterializedView(sessionHandle: string, operationHandle: string): Promise<void> {
+    await this.runner().delete(`/v1/sessions/${sessionHandle}/operations/${operationHandle}/view`);
+  }
+
+  /**
+   * Catalogs, databases and tables visible to a session in one call, served from the
+   * runner's metadata cache. refresh reloads the returned part of the tree.
+   */
+  async getCatalogTree(
+    sessionHandle: string,
+    options: { catalog?: string; database?: string; columns?: boolean; refresh?: boolean } = {}
+  ): Promise<CatalogTreeResult> {
+    const response = await this.runner().get(`/v1/sessions/${sessionHandle}/catalog-tree`, {
+      params: options,
+    });
     return response.data;
   }
 
+  async getTableColumns(
+    sessionHandle: string,
+    catalog: string,
+    database: string,
+    table: string
+  ): Promise<CatalogColumn[]> {
+    const path = [catalog, database, table].map(encodeURIComponent);
+    const response = await this.runner().get(
+      `/v1/sessions/${sessionHandle}/catalogs/${path[0]}/databases/${path[1]}/tables/${path[2]}`
+    );
+    return response.data.columns;
+  }
+
+  private runner(): AxiosInstance {
+    if (!this.runnerClient) {
+      throw new Error('This feature needs the MiniCluster runner endpoint');
+    }
+    return this.runnerClient;
+  }
+
   async cancelOperation(
     sessionHandle: string,
     operationHandle: string
@@ -0,0 +1,52 @@
+import * as assert from 'node:assert/strict';
+import { readFileSync } from 'node:fs';
+import * as path from 'node:path';
+import { test } from 'node:test';
+import { decodeColumnar } from '../services/columnarDecoder';
+
+// Written by ColumnarResultEncoderTest in flink-runtime: batch.bin is what the runner sends for
+// rowFormat=COLUMNAR, batch-without-columns.bin the same once the client holds the columns
+// (schema=once), batch.json the same rows in the gateway's JSON row format
+const FIXTURES = path.join(__dirname, '..', '..', '..', 'flink-runtime', 'src', 'test', 'resources', 'columnar');
+
+const encoded = readFileSync(path.join(FIXTURES, 'batch.bin'));
+const withoutColumns = readFileSync(path.join(FIXTURES, 'batch-without-columns.bin'));
+const expected = JSON.parse(readFileSync(path.join(FIXTURES, 'batch.json'), 'utf8'));
+
+test('decodes column names and types', () => {
+  assert.deepEqual(decodeColumnar(encoded).columns, expected.columns);
+});
+
+test('decodes row kinds', () => {
+  const kinds = decodeColumnar(encoded).data.map((row) => row.kind);
+  assert.deepEqual(kinds, expected.data.map((row: { kind: string }) => row.kind));
+});
+
+test('decodes every column like the JSON row format', () => {
+  // Covers null bitmaps, BOOLEAN bits, negative-epoch DATE and TIMESTAMP values, the Z suffix
+  // of TIMESTAMP_LTZ and DECIMAL
+  const batch = decodeColumnar(encoded);
+  expected.columns.forEach((column: { name: string }, c: number) => {
+    assert.deepEqual(
+      batch.data.map((row) => row.fields[c]),
+      expected.data.map((row: { fields: unknown[] }) => row.fields[c]),
+      `column ${column.name}`
+    );
+  });
+});
+
+test('decodes from an offset into a larger buffer', () => {
+  const padded = new Uint8Array(encoded.length + 16);
+  padded.set(encoded, 8);
+  assert.deepEqual(decodeColumnar(padded.subarray(8, 8 + encoded.length)).data, expected.data);
+});
+
+test('decodes a batch sent without column descriptions', () => {
+  const batch = decodeColumnar(withoutColumns);
+  assert.equal(batch.columns, undefined);
+  assert.deepEqual(batch.data, expected.data);
+});
+
+test('rejects other payloads', () => {
+  assert.throws(() => decodeColumnar(Buffer.from('{"results": []}')), /Not a columnar result batch/);
+});